@@ -28,6 +28,7 @@ import com.apple.foundationdb.Range;
 import com.apple.foundationdb.ReadTransaction;
 import com.apple.foundationdb.ReadTransactionContext;
 import com.apple.foundationdb.StreamingMode;
+import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.TransactionContext;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.ByteArrayUtil;
@@ -38,6 +39,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -173,6 +175,120 @@ public class RankedSet {
                 }));
     }
 
+    /**
+     * Add a batch of keys to the set.
+     *
+     * <p>
+     * This is equivalent to calling {@link #add} for each key, but cheaper when there are many keys. The keys are
+     * sorted and processed one level at a time, so that keys that share a predecessor at a level share the lookup of
+     * that predecessor and the adjustment of its count. At each level, the lookups for all the keys are issued together.
+     * Since the predecessor of a key at a level can only change where there is a key in the next finer level, only one
+     * lookup is needed for each run of keys that shared a predecessor at the finer level.
+     * </p>
+     * @param tc the transaction to use to access the database
+     * @param keys the keys to add
+     * @return a future that completes to the number of keys that were not already present
+     */
+    public CompletableFuture<Integer> addAll(TransactionContext tc, List<byte[]> keys) {
+        final List<byte[]> sortedKeys = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            checkKey(key);
+            sortedKeys.add(key);
+        }
+        sortedKeys.sort(ByteArrayUtil::compareUnsigned);
+        return tc.runAsync(tr -> {
+            final List<byte[]> distinctKeys = new ArrayList<>(sortedKeys.size());
+            final List<CompletableFuture<Boolean>> existsFutures = new ArrayList<>(sortedKeys.size());
+            for (byte[] key : sortedKeys) {
+                if (distinctKeys.isEmpty() || !Arrays.equals(distinctKeys.get(distinctKeys.size() - 1), key)) {
+                    distinctKeys.add(key);
+                    existsFutures.add(containsCheckedKey(tr, key));
+                }
+            }
+            return AsyncUtil.getAll(existsFutures).thenCompose(exists -> {
+                final List<List<byte[]>> runs = new ArrayList<>(distinctKeys.size());
+                for (int i = 0; i < distinctKeys.size(); i++) {
+                    if (!exists.get(i)) {
+                        byte[] key = distinctKeys.get(i);
+                        tr.set(subspace.pack(Tuple.from(0, key)), encodeLong(1));
+                        runs.add(Collections.singletonList(key));
+                    }
+                }
+                if (runs.isEmpty()) {
+                    return CompletableFuture.completedFuture(0);
+                }
+                return addAllLevels(tr, 1, runs).thenApply(vignore -> runs.size());
+            });
+        });
+    }
+
+    // Add sorted new keys to the given level and all coarser ones. The finer level has already been updated and
+    // the keys are grouped into runs that had the same predecessor there.
+    private CompletableFuture<Void> addAllLevels(Transaction tr, int level, List<List<byte[]>> finerRuns) {
+        if (level >= nlevels) {
+            return DONE;
+        }
+        final List<CompletableFuture<byte[]>> prevKeyFutures = new ArrayList<>(finerRuns.size());
+        for (List<byte[]> run : finerRuns) {
+            prevKeyFutures.add(getPreviousKey(tr, level, run.get(0)));
+        }
+        return AsyncUtil.getAll(prevKeyFutures).thenCompose(prevKeys -> {
+            final List<byte[]> runPrevKeys = new ArrayList<>(finerRuns.size());
+            final List<List<byte[]>> runs = new ArrayList<>(finerRuns.size());
+            for (int i = 0; i < finerRuns.size(); i++) {
+                final byte[] prevKey = prevKeys.get(i);
+                if (!runs.isEmpty() && Arrays.equals(runPrevKeys.get(runPrevKeys.size() - 1), prevKey)) {
+                    runs.get(runs.size() - 1).addAll(finerRuns.get(i));
+                } else {
+                    runPrevKeys.add(prevKey);
+                    runs.add(new ArrayList<>(finerRuns.get(i)));
+                }
+            }
+            final List<CompletableFuture<Void>> futures = new ArrayList<>(runs.size());
+            for (int i = 0; i < runs.size(); i++) {
+                futures.add(addAllToRun(tr, level, runPrevKeys.get(i), runs.get(i)));
+            }
+            return AsyncUtil.whenAll(futures).thenCompose(vignore -> addAllLevels(tr, level + 1, runs));
+        });
+    }
+
+    // Add sorted new keys that all have the same predecessor at this level.
+    private CompletableFuture<Void> addAllToRun(Transaction tr, int level, byte[] prevKey, List<byte[]> keys) {
+        final byte[] prevk = subspace.pack(Tuple.from(level, prevKey));
+        // The predecessor was only looked up for the first key, but must not change for any of them.
+        tr.addReadConflictRange(ByteArrayUtil.join(prevk, ZERO_ARRAY), subspace.pack(Tuple.from(level, keys.get(keys.size() - 1))));
+        final List<byte[]> levelKeys = new ArrayList<>();
+        for (byte[] key : keys) {
+            if ((hashKey(key) & LEVEL_FAN_VALUES[level]) == 0) {
+                levelKeys.add(key);
+            }
+        }
+        if (levelKeys.isEmpty()) {
+            tr.mutate(MutationType.ADD, prevk, encodeLong(keys.size()));
+            return DONE;
+        }
+        // Split the predecessor's count among it and the new keys on this level by recounting the finer level,
+        // which must already be complete. The last new key gets whatever remains.
+        final CompletableFuture<Long> prevCountFuture = tr.get(prevk).thenApply(RankedSet::decodeLong);
+        final List<CompletableFuture<Long>> countFutures = new ArrayList<>(levelKeys.size());
+        byte[] beginKey = prevKey;
+        for (byte[] levelKey : levelKeys) {
+            countFutures.add(countRange(tr, level - 1, beginKey, levelKey));
+            beginKey = levelKey;
+        }
+        return prevCountFuture.thenCombine(AsyncUtil.getAll(countFutures), (prevCount, counts) -> {
+            long remaining = prevCount + keys.size();
+            byte[] countKey = prevk;
+            for (int i = 0; i < counts.size(); i++) {
+                tr.set(countKey, encodeLong(counts.get(i)));
+                remaining -= counts.get(i);
+                countKey = subspace.pack(Tuple.from(level, levelKeys.get(i)));
+            }
+            tr.set(countKey, encodeLong(remaining));
+            return null;
+        });
+    }
+
     /**
      * Clears the entire set.
      * @param tc the transaction to use to access the database
@@ -99,6 +99,39 @@ public class RankedSetTest
         });
     }
 
+    @Test
+    public void addAll() throws Exception {
+        RankedSet rs = newRankedSet();
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            keys.add(Tuple.from(i * 7 % 500).pack());
+        }
+        db.run(tr -> {
+            // Some keys already present.
+            for (int i = 0; i < 50; ++i) {
+                rs.add(tr, Tuple.from(i * 3).pack()).join();
+            }
+            return null;
+        });
+        for (int i = 0; i < keys.size(); i += 100) {
+            List<byte[]> batch = new ArrayList<>(keys.subList(i, i + 100));
+            // And some duplicated in the batch.
+            batch.add(batch.get(0));
+            int added = db.run(tr -> rs.addAll(tr, batch).join());
+            assertEquals(100 - (int)batch.subList(0, 100).stream().filter(k -> Tuple.fromBytes(k).getLong(0) < 150 && Tuple.fromBytes(k).getLong(0) % 3 == 0).count(), added);
+        }
+        db.read(tr -> {
+            final RankedSet.Consistency consistency = rs.checkConsistency(tr);
+            assertTrue(consistency.isConsistent(), consistency.toString());
+            assertEquals(500L, rs.size(tr).join().longValue());
+            for (int i = 0; i < 500; ++i) {
+                assertEquals(i, rs.rank(tr, Tuple.from(i).pack()).join().longValue());
+                assertArrayEquals(Tuple.from(i).pack(), rs.getNth(tr, i).join());
+            }
+            return null;
+        });
+    }
+
     @Test
     public void concurrentAdd() throws Exception {
         // 20 does go onto level 1, 30 and 40 do not. There should be no reason for them to conflict on level 0.
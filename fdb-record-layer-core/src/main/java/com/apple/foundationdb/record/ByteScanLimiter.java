@@ -0,0 +1,82 @@
+/*
+ * ByteScanLimiter.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record;
+
+import com.apple.foundationdb.API;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Track the number of bytes scanned up to some limit, after which record scans should not be allowed.
+ * Since the size of a key-value pair is only known once it has been read, a scan is allowed as long as any bytes
+ * remain, and so the limit can be exceeded by the size of the last key-value pair read by each base cursor.
+ *
+ * @see ExecuteState#getByteScanLimiter
+ */
+@API(API.Status.EXPERIMENTAL)
+public class ByteScanLimiter {
+    private final long originalLimit;
+    private final AtomicLong bytesRemaining;
+
+    public ByteScanLimiter(long limit) {
+        originalLimit = limit;
+        bytesRemaining = new AtomicLong(limit);
+    }
+
+    /**
+     * Create a new {@code ByteScanLimiter} with this limiter's original limit, ignoring any calls to {@link #registerScannedBytes(long)}.
+     * @return a new limiter with the same original byte limit as this limiter
+     */
+    @Nonnull
+    public ByteScanLimiter reset() {
+        return new ByteScanLimiter(originalLimit);
+    }
+
+    /**
+     * Return whether or not any more bytes can be scanned.
+     * @return <code>true</code> if the number of bytes scanned so far is less than the limit
+     */
+    public boolean hasBytesRemaining() {
+        return bytesRemaining.get() > 0;
+    }
+
+    /**
+     * Record that the specified number of bytes have been scanned.
+     * @param bytes the number of key and value bytes scanned
+     */
+    public void registerScannedBytes(long bytes) {
+        bytesRemaining.addAndGet(-bytes);
+    }
+
+    /**
+     * Get the number of bytes scanned so far.
+     * @return the number of bytes scanned
+     */
+    public long getBytesScanned() {
+        return originalLimit - bytesRemaining.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ByteScanLimiter(%d limit, %d left)", originalLimit, bytesRemaining.get());
+    }
+}
@@ -35,6 +35,7 @@ import java.util.List;
  * <li>limit on number of records returned</li>
  * <li>time limit for execution</li>
  * <li>limit on number of key-value pairs scanned</li>
+ * <li>limit on number of bytes scanned</li>
  * </ul>
  */
 @API(API.Status.MAINTAINED)
@@ -155,6 +156,7 @@ public class ExecuteProperties {
      * Get whether reaching the scan limit throws an exception.
      * @return {@code true} if the scan limit throws an exception when reached,
      * {@code false} if the scan returns early with {@link com.apple.foundationdb.record.RecordCursor.NoNextReason#SCAN_LIMIT_REACHED}
+     * or {@link com.apple.foundationdb.record.RecordCursor.NoNextReason#BYTE_LIMIT_REACHED}
      */
     public boolean isFailOnScanLimitReached() {
         return failOnScanLimitReached;
@@ -235,7 +237,7 @@ public class ExecuteProperties {
         if (other.timeLimit != UNLIMITED_TIME) {
             builder.setTimeLimit(other.timeLimit);
         }
-        if (other.state.getRecordScanLimiter() != null) {
+        if (other.state.hasScanLimiter()) {
             builder.setState(other.state);
         }
         return builder.build();
@@ -355,6 +357,7 @@ public class ExecuteProperties {
         private int rowLimit = ReadTransaction.ROW_LIMIT_UNLIMITED;
         private long timeLimit = UNLIMITED_TIME;
         private int scannedRecordsLimit = Integer.MAX_VALUE;
+        private long scannedBytesLimit = Long.MAX_VALUE;
         private ExecuteState executeState = null;
         private boolean failOnScanLimitReached = false;
         private CursorStreamingMode defaultCursorStreamingMode = CursorStreamingMode.ITERATOR;
@@ -424,11 +427,41 @@ public class ExecuteProperties {
             return setScannedRecordsLimit(Integer.MAX_VALUE);
         }
 
+        /**
+         * Set the limit on the number of key and value bytes that may be scanned.
+         * Note that at most one of {@link #scannedBytesLimit} and {@link #executeState} may be set at the same time,
+         * since the {@link ExecuteState} contains a shared {@link ByteScanLimiter}.
+         * A plan that loads records by primary key, such as
+         * {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryLoadByKeysPlan}, counts the bytes it loads
+         * against the limit but, like the scanned records limit, does not itself stop when the limit is reached.
+         * @param limit the maximum number of bytes to scan
+         * @return an updated builder
+         */
+        @Nonnull
+        public Builder setScannedBytesLimit(long limit) {
+            if (executeState != null) {
+                throw new RecordCoreException("Tried to set a byte scan limit on a builder with an ExecuteState");
+            }
+            if (limit < 0) {
+                throw new RecordCoreException("Invalid byte scan limit specified: " + limit);
+            }
+            this.scannedBytesLimit = limit;
+            return this;
+        }
+
+        @Nonnull
+        public Builder clearScannedBytesLimit() {
+            return setScannedBytesLimit(Long.MAX_VALUE);
+        }
+
         @Nonnull
         public Builder setState(@Nullable ExecuteState state) {
             if (scannedRecordsLimit != Integer.MAX_VALUE) {
                 throw new RecordCoreException("Tried to set a state on a builder with a record scan limit");
             }
+            if (scannedBytesLimit != Long.MAX_VALUE) {
+                throw new RecordCoreException("Tried to set a state on a builder with a byte scan limit");
+            }
             this.executeState = state;
             return this;
         }
@@ -440,7 +473,7 @@ public class ExecuteProperties {
 
         /**
          * Set how scan limit reached is handled.
-         * This setting has no effect if {@link #setScannedRecordsLimit(int)} is not also set.
+         * This setting has no effect if neither {@link #setScannedRecordsLimit(int)} nor {@link #setScannedBytesLimit(long)} is also set.
          * @param failOnScanLimitReached {@code true} to throw an exception, {@code false} to return early
          * @return an updated builder
          */
@@ -472,10 +505,11 @@ public class ExecuteProperties {
             final ExecuteState state;
             if (executeState != null) {
                 state = executeState;
-            } else if (scannedRecordsLimit == Integer.MAX_VALUE) {
+            } else if (scannedRecordsLimit == Integer.MAX_VALUE && scannedBytesLimit == Long.MAX_VALUE) {
                 state = ExecuteState.NO_SCANNED_RECORDS_LIMIT;
             } else {
-                state = new ExecuteState(new RecordScanLimiter(scannedRecordsLimit));
+                state = new ExecuteState(scannedRecordsLimit == Integer.MAX_VALUE ? null : new RecordScanLimiter(scannedRecordsLimit),
+                        scannedBytesLimit == Long.MAX_VALUE ? null : new ByteScanLimiter(scannedBytesLimit));
             }
             return new ExecuteProperties(skip, rowLimit, isolationLevel, timeLimit, state, failOnScanLimitReached, defaultCursorStreamingMode);
         }
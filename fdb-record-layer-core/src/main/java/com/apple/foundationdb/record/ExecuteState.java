@@ -42,13 +42,20 @@ public class ExecuteState {
 
     @Nullable
     private final RecordScanLimiter recordScanLimiter;
+    @Nullable
+    private final ByteScanLimiter byteScanLimiter;
 
-    public ExecuteState(@Nullable RecordScanLimiter recordScanLimiter) {
+    public ExecuteState(@Nullable RecordScanLimiter recordScanLimiter, @Nullable ByteScanLimiter byteScanLimiter) {
         this.recordScanLimiter = recordScanLimiter;
+        this.byteScanLimiter = byteScanLimiter;
+    }
+
+    public ExecuteState(@Nullable RecordScanLimiter recordScanLimiter) {
+        this(recordScanLimiter, null);
     }
 
     public ExecuteState() {
-        this(null);
+        this(null, null);
     }
 
     /**
@@ -61,10 +68,11 @@ public class ExecuteState {
      */
     @Nonnull
     public ExecuteState reset() {
-        if (recordScanLimiter == null) {
+        if (recordScanLimiter == null && byteScanLimiter == null) {
             return NO_SCANNED_RECORDS_LIMIT;
         }
-        return new ExecuteState(recordScanLimiter.reset());
+        return new ExecuteState(recordScanLimiter == null ? null : recordScanLimiter.reset(),
+                byteScanLimiter == null ? null : byteScanLimiter.reset());
     }
     
     /**
@@ -83,11 +91,34 @@ public class ExecuteState {
         return recordScanLimiter;
     }
 
+    /**
+     * Get a limiter for the maximum number of bytes that can be retrieved from the database.
+     * As with the {@linkplain #getRecordScanLimiter record scan limit}, each base cursor is permitted to load at least
+     * one key-value entry, so the limit can be overrun by up to one key-value entry per base cursor in the cursor tree.
+     * @return the byte scan limiter or <code>null</code> if no limit is set
+     */
+    @Nullable
+    public ByteScanLimiter getByteScanLimiter() {
+        return byteScanLimiter;
+    }
+
+    /**
+     * Get whether this state limits scanning by either records or bytes.
+     * @return <code>true</code> if there is a record scan limiter or byte scan limiter
+     */
+    public boolean hasScanLimiter() {
+        return recordScanLimiter != null || byteScanLimiter != null;
+    }
+
     @Override
     public String toString() {
-        if (recordScanLimiter == null) {
+        if (recordScanLimiter == null && byteScanLimiter == null) {
             return "State()";
+        } else if (byteScanLimiter == null) {
+            return "State(" + recordScanLimiter + ")";
+        } else if (recordScanLimiter == null) {
+            return "State(" + byteScanLimiter + ")";
         }
-        return "State(" + recordScanLimiter + ")";
+        return "State(" + recordScanLimiter + ", " + byteScanLimiter + ")";
     }
 }
@@ -0,0 +1,178 @@
+/*
+ * IndexStatistics.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.Range;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.Tuple;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statistics about the entries in an index, for use by the query planner in estimating selectivity.
+ *
+ * <p>
+ * The statistics consist of the total number of index entries, the number of distinct values of each prefix of
+ * the index's key columns, and an equi-depth histogram in the form of entry keys (truncated to the key columns)
+ * that divide the index into buckets with about the same number of entries. They are gathered by
+ * {@link com.apple.foundationdb.record.provider.foundationdb.IndexStatisticsCollector} and are only as current
+ * as the last time that was run.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class IndexStatistics {
+    private final long keyCount;
+    @Nonnull
+    private final long[] distinctPrefixCounts;
+    @Nonnull
+    private final List<Tuple> histogram;
+
+    /**
+     * Create index statistics.
+     * @param keyCount the number of entries in the index
+     * @param distinctPrefixCounts the number of distinct values of each prefix of the key columns, starting with the
+     * first column alone
+     * @param histogram keys in ascending order that divide the index into buckets with about the same number of entries
+     */
+    public IndexStatistics(long keyCount, @Nonnull long[] distinctPrefixCounts, @Nonnull List<Tuple> histogram) {
+        this.keyCount = keyCount;
+        this.distinctPrefixCounts = Arrays.copyOf(distinctPrefixCounts, distinctPrefixCounts.length);
+        this.histogram = Collections.unmodifiableList(new ArrayList<>(histogram));
+    }
+
+    /**
+     * Get the number of entries in the index.
+     * @return the number of index entries
+     */
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Get the number of key column prefixes for which distinct counts are kept.
+     * @return the number of key columns counted
+     */
+    public int getPrefixColumnCount() {
+        return distinctPrefixCounts.length;
+    }
+
+    /**
+     * Get the number of distinct values of the first <code>prefixSize</code> key columns.
+     * A prefix of zero columns has a single value. A prefix longer than the counted columns is treated as unique.
+     * @param prefixSize the number of leading key columns
+     * @return the number of distinct values for that prefix
+     */
+    public long getDistinctPrefixCount(int prefixSize) {
+        if (prefixSize <= 0) {
+            return 1;
+        } else if (prefixSize > distinctPrefixCounts.length) {
+            return keyCount;
+        } else {
+            return distinctPrefixCounts[prefixSize - 1];
+        }
+    }
+
+    /**
+     * Get the histogram bucket boundaries.
+     * @return keys in ascending order that divide the index into buckets with about the same number of entries
+     */
+    @Nonnull
+    public List<Tuple> getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Estimate the fraction of index entries that have any particular value for the first <code>prefixSize</code>
+     * key columns, assuming that the values are evenly distributed.
+     * @param prefixSize the number of leading key columns that are fixed
+     * @return the estimated fraction of entries matching an equality on that prefix
+     */
+    public double getEqualitySelectivity(int prefixSize) {
+        return 1.0 / Math.max(1L, getDistinctPrefixCount(prefixSize));
+    }
+
+    /**
+     * Estimate the fraction of index entries in a given range from the histogram.
+     * This is the fraction of histogram boundaries that fall within the range, so it is coarse and will be zero for
+     * ranges narrower than a bucket.
+     * @param range the range of index keys
+     * @return the estimated fraction of entries within the range or <code>-1</code> if there is no histogram
+     */
+    public double getRangeSelectivity(@Nonnull TupleRange range) {
+        if (histogram.isEmpty()) {
+            return -1.0;
+        }
+        final Range byteRange = range.toRange();
+        int inside = 0;
+        for (Tuple boundary : histogram) {
+            final byte[] key = boundary.pack();
+            if (ByteArrayUtil.compareUnsigned(byteRange.begin, key) <= 0 && ByteArrayUtil.compareUnsigned(key, byteRange.end) < 0) {
+                inside++;
+            }
+        }
+        return (double)inside / histogram.size();
+    }
+
+    /**
+     * Encode these statistics for storage.
+     * @return a tuple that can be decoded by {@link #fromTuple}
+     */
+    @Nonnull
+    public Tuple toTuple() {
+        final List<Object> distinct = new ArrayList<>(distinctPrefixCounts.length);
+        for (long count : distinctPrefixCounts) {
+            distinct.add(count);
+        }
+        return Tuple.from(keyCount, Tuple.fromList(distinct), Tuple.fromList(new ArrayList<>(histogram)));
+    }
+
+    /**
+     * Decode statistics stored by {@link #toTuple}.
+     * @param tuple the encoded statistics
+     * @return the decoded statistics
+     */
+    @Nonnull
+    public static IndexStatistics fromTuple(@Nonnull Tuple tuple) {
+        final Tuple distinct = tuple.getNestedTuple(1);
+        final long[] distinctPrefixCounts = new long[distinct.size()];
+        for (int i = 0; i < distinctPrefixCounts.length; i++) {
+            distinctPrefixCounts[i] = distinct.getLong(i);
+        }
+        final Tuple histogramTuple = tuple.getNestedTuple(2);
+        final List<Tuple> histogram = new ArrayList<>(histogramTuple.size());
+        for (int i = 0; i < histogramTuple.size(); i++) {
+            histogram.add(histogramTuple.getNestedTuple(i));
+        }
+        return new IndexStatistics(tuple.getLong(0), distinctPrefixCounts, histogram);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexStatistics{keyCount=" + keyCount +
+               ", distinctPrefixCounts=" + Arrays.toString(distinctPrefixCounts) +
+               ", histogram=" + histogram.size() + " buckets}";
+    }
+}
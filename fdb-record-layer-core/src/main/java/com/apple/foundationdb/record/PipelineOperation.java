@@ -54,5 +54,6 @@ public class PipelineOperation {
     public static final PipelineOperation RESOLVE_UNIQUENESS = new PipelineOperation("RESOLVE_UNIQUENESS");
     public static final PipelineOperation IN_JOIN = new PipelineOperation("IN_JOIN");
     public static final PipelineOperation TEXT_INDEX_UPDATE = new PipelineOperation("TEXT_INDEX_UPDATE");
+    public static final PipelineOperation INDEX_BUILD_UPDATE = new PipelineOperation("INDEX_BUILD_UPDATE");
 
 }
@@ -188,7 +188,26 @@ public interface RecordCursor<T> extends AutoCloseable, Iterator<T> {
          * @see ExecuteProperties.Builder#setScannedRecordsLimit(int)
          * @see RecordScanLimiter
          */
-        SCAN_LIMIT_REACHED(true);
+        SCAN_LIMIT_REACHED(true),
+
+        /**
+         * The limit on the number of bytes to scan was reached.
+         * {@link #getContinuation()} may return a continuation for resuming the scan.
+         *
+         * As with {@link #SCAN_LIMIT_REACHED}, it is possible for <code>BYTE_LIMIT_REACHED</code> to be returned
+         * before any actual records.
+         * @see ExecuteProperties.Builder#setScannedBytesLimit(long)
+         * @see ByteScanLimiter
+         */
+        BYTE_LIMIT_REACHED(true),
+
+        /**
+         * The transaction has used more than its soft resource budget.
+         * {@link #getContinuation()} may return a continuation for resuming the scan, typically in a new transaction.
+         * @see com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext#setSoftResourceBudget
+         * @see com.apple.foundationdb.record.provider.foundationdb.TransactionResourceBudget
+         */
+        TRANSACTION_BUDGET_REACHED(true);
 
         final boolean outOfBand;
 
@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.cursors;
 
 import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.ByteScanLimiter;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.RecordScanLimiter;
@@ -28,6 +29,7 @@ import com.apple.foundationdb.record.ScanLimitReachedException;
 import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.TimeScanLimiter;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.TransactionResourceTracker;
 import com.apple.foundationdb.record.provider.foundationdb.cursors.IntersectionCursor;
 import com.apple.foundationdb.record.provider.foundationdb.cursors.UnionCursor;
 import com.google.common.annotations.VisibleForTesting;
@@ -56,17 +58,31 @@ public class CursorLimitManager {
     private final boolean failOnScanLimitReached;
     private boolean haltedDueToRecordScanLimit = false;
     @Nullable
+    private final ByteScanLimiter byteScanLimiter;
+    private boolean haltedDueToByteScanLimit = false;
+    @Nullable
     private final TimeScanLimiter timeScanLimiter;
     private boolean haltedDueToTimeLimit = false;
+    @Nullable
+    private final TransactionResourceTracker resourceTracker;
+    private boolean haltedDueToTransactionBudget = false;
 
     private boolean usedInitialPass = false;
 
     @VisibleForTesting
     public CursorLimitManager(@Nullable RecordScanLimiter recordScanLimiter, boolean failOnScanLimitReached,
                               @Nullable TimeScanLimiter timeScanLimiter) {
+        this(recordScanLimiter, null, failOnScanLimitReached, timeScanLimiter);
+    }
+
+    @VisibleForTesting
+    public CursorLimitManager(@Nullable RecordScanLimiter recordScanLimiter, @Nullable ByteScanLimiter byteScanLimiter,
+                              boolean failOnScanLimitReached, @Nullable TimeScanLimiter timeScanLimiter) {
         this.recordScanLimiter = recordScanLimiter;
+        this.byteScanLimiter = byteScanLimiter;
         this.failOnScanLimitReached = failOnScanLimitReached;
         this.timeScanLimiter = timeScanLimiter;
+        this.resourceTracker = null;
     }
 
     public CursorLimitManager(@Nonnull ScanProperties scanProperties) {
@@ -75,6 +91,7 @@ public class CursorLimitManager {
 
     public CursorLimitManager(@Nullable FDBRecordContext context, @Nonnull ScanProperties scanProperties) {
         this.recordScanLimiter = scanProperties.getExecuteProperties().getState().getRecordScanLimiter();
+        this.byteScanLimiter = scanProperties.getExecuteProperties().getState().getByteScanLimiter();
         this.failOnScanLimitReached = scanProperties.getExecuteProperties().isFailOnScanLimitReached();
         if (scanProperties.getExecuteProperties().getTimeLimit() != ExecuteProperties.UNLIMITED_TIME) {
             this.timeScanLimiter = new TimeScanLimiter(context != null ? context.getTransactionCreateTime() : System.currentTimeMillis(),
@@ -82,6 +99,7 @@ public class CursorLimitManager {
         } else {
             this.timeScanLimiter = null;
         }
+        this.resourceTracker = context != null ? context.getResourceTracker() : null;
     }
 
     /**
@@ -100,8 +118,12 @@ public class CursorLimitManager {
     public Optional<RecordCursor.NoNextReason> getStoppedReason() {
         if (haltedDueToRecordScanLimit) {
             return Optional.of(RecordCursor.NoNextReason.SCAN_LIMIT_REACHED);
+        } else if (haltedDueToByteScanLimit) {
+            return Optional.of(RecordCursor.NoNextReason.BYTE_LIMIT_REACHED);
         } else if (haltedDueToTimeLimit) {
             return Optional.of(RecordCursor.NoNextReason.TIME_LIMIT_REACHED);
+        } else if (haltedDueToTransactionBudget) {
+            return Optional.of(RecordCursor.NoNextReason.TRANSACTION_BUDGET_REACHED);
         }
         return Optional.empty();
     }
@@ -116,15 +138,31 @@ public class CursorLimitManager {
     public boolean tryRecordScan() {
         haltedDueToRecordScanLimit = recordScanLimiter != null && !recordScanLimiter.tryRecordScan()
                                      && (usedInitialPass || failOnScanLimitReached);
+        haltedDueToByteScanLimit = byteScanLimiter != null && !byteScanLimiter.hasBytesRemaining()
+                                   && (usedInitialPass || failOnScanLimitReached);
         haltedDueToTimeLimit = timeScanLimiter != null && !timeScanLimiter.tryRecordScan() && usedInitialPass;
-        final boolean halted = haltedDueToRecordScanLimit || haltedDueToTimeLimit;
+        haltedDueToTransactionBudget = resourceTracker != null && usedInitialPass && resourceTracker.isOverSoftBudget();
+        final boolean halted = haltedDueToRecordScanLimit || haltedDueToByteScanLimit || haltedDueToTimeLimit || haltedDueToTransactionBudget;
 
         if (!halted) {
             usedInitialPass = true;
-        } else if (failOnScanLimitReached) {
+        } else if (failOnScanLimitReached && haltedDueToByteScanLimit && !haltedDueToRecordScanLimit) {
+            throw new ScanLimitReachedException("limit on number of bytes scanned per transaction reached");
+        } else if (failOnScanLimitReached && (haltedDueToRecordScanLimit || haltedDueToTimeLimit)) {
             throw new ScanLimitReachedException("limit on number of key-values scanned per transaction reached");
         }
 
         return !halted;
     }
+
+    /**
+     * Inform the limit manager that a cursor has scanned the given number of bytes, which count toward any byte scan
+     * limit on later calls to {@link #tryRecordScan()}.
+     * @param bytes the number of key and value bytes scanned
+     */
+    public void reportScannedBytes(long bytes) {
+        if (byteScanLimiter != null) {
+            byteScanLimiter.registerScannedBytes(bytes);
+        }
+    }
 }
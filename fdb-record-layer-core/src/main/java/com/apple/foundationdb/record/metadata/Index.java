@@ -27,6 +27,7 @@ import com.apple.foundationdb.record.SpotBugsSuppressWarnings;
 import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.GroupingKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpressionEvaluator;
 import com.apple.foundationdb.tuple.Tuple;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Descriptors;
@@ -38,6 +39,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.apple.foundationdb.record.metadata.Key.Expressions.concat;
 import static com.apple.foundationdb.record.metadata.Key.Expressions.keyWithValue;
@@ -63,6 +65,8 @@ public class Index {
     private Object subspaceKey;
     private int addedVersion;
     private int lastModifiedVersion;
+    @Nonnull
+    private final Map<Descriptors.Descriptor, KeyExpressionEvaluator> rootExpressionEvaluators = new ConcurrentHashMap<>();
 
     public static Object decodeSubspaceKey(@Nonnull ByteString bytes) {
         Tuple tuple = Tuple.fromBytes(bytes.toByteArray());
@@ -267,6 +271,18 @@ public class Index {
         return rootExpression;
     }
 
+    /**
+     * Get an evaluator for the root expression compiled for records of the given type.
+     * Evaluators are cached, so this is cheap to call for each record.
+     * @param descriptor the descriptor of the records to be evaluated
+     * @return an evaluator for the root expression
+     */
+    @API(API.Status.INTERNAL)
+    @Nonnull
+    public KeyExpressionEvaluator getRootExpressionEvaluator(@Nonnull Descriptors.Descriptor descriptor) {
+        return rootExpressionEvaluators.computeIfAbsent(descriptor, d -> KeyExpressionEvaluator.compile(rootExpression, d));
+    }
+
     /**
      * Whether this index should have the property that any two records
      * with different primary keys should have different values for this
@@ -297,6 +297,14 @@ public class FieldKeyExpression extends BaseKeyExpression implements AtomKeyExpr
         return fanType;
     }
 
+    /**
+     * Get how an unset value of the field is represented.
+     * @return the null standin for this field
+     */
+    public Key.Evaluated.NullStandin getNullStandin() {
+        return nullStandin;
+    }
+
     @Override
     public String toString() {
         return "Field { '" + fieldName + "' " + fanType + '}';
@@ -0,0 +1,556 @@
+/*
+ * KeyExpressionEvaluator.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.metadata.expressions;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link KeyExpression} compiled against a particular record descriptor.
+ *
+ * <p>
+ * Evaluating a key expression with {@link KeyExpression#evaluate} looks up each field by name in the record's
+ * descriptor and builds a list of {@link Key.Evaluated} for each sub-expression, which are then combined. This evaluator
+ * gives the same result, but resolves field descriptors once when it is compiled and appends the values for each
+ * field directly onto the key being built. When no part of the expression fans out, which is the common case, a record
+ * is evaluated with no intermediate lists at all. Sub-expressions other than fields, concatenation, nesting, grouping
+ * and key-with-value are evaluated in the ordinary way.
+ * </p>
+ *
+ * <p>
+ * An evaluator is immutable and can be shared between threads. If it is given a message with a different descriptor
+ * from the one it was compiled for, it falls back to evaluating the expression in the ordinary way.
+ * </p>
+ *
+ * <p>
+ * Because it is shared, an evaluator keeps no scratch space of its own. A single-valued evaluation allocates only
+ * the key it returns, whose values list is sized from the expression's column size up front. When the expression
+ * fans out, each evaluation also allocates a working list and the list of results, and copies the working list for
+ * each key, since every returned key must own its values. Reusing a per-thread buffer instead would save one small
+ * allocation per evaluation at the cost of a thread-local lookup and of guarding against nested evaluations.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class KeyExpressionEvaluator {
+    @Nonnull
+    private final KeyExpression expression;
+    @Nonnull
+    private final Descriptors.Descriptor descriptor;
+    @Nonnull
+    private final Node root;
+    private final int columnSize;
+
+    private KeyExpressionEvaluator(@Nonnull KeyExpression expression, @Nonnull Descriptors.Descriptor descriptor) {
+        this.expression = expression;
+        this.descriptor = descriptor;
+        this.root = compile(expression, descriptor);
+        this.columnSize = expression.getColumnSize();
+    }
+
+    /**
+     * Compile a key expression for evaluation against records with the given descriptor.
+     * @param expression the key expression to compile
+     * @param descriptor the descriptor of the records that will be evaluated
+     * @return an evaluator for the expression
+     */
+    @Nonnull
+    public static KeyExpressionEvaluator compile(@Nonnull KeyExpression expression, @Nonnull Descriptors.Descriptor descriptor) {
+        return new KeyExpressionEvaluator(expression, descriptor);
+    }
+
+    /**
+     * Get the expression that this evaluator evaluates.
+     * @return the compiled key expression
+     */
+    @Nonnull
+    public KeyExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Get the record descriptor that this evaluator was compiled for.
+     * @return the descriptor of the records this evaluator expects
+     */
+    @Nonnull
+    public Descriptors.Descriptor getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Evaluate against a given record, giving the same result as {@link KeyExpression#evaluate}.
+     * @param <M> the type of record
+     * @param record the record to evaluate against
+     * @return the list of evaluated keys for the given record
+     */
+    @Nonnull
+    public <M extends Message> List<Key.Evaluated> evaluate(@Nullable FDBRecord<M> record) {
+        return evaluateMessage(record, record == null ? null : record.getRecord());
+    }
+
+    /**
+     * Evaluate against a given record and message, giving the same result as {@link KeyExpression#evaluateMessage}.
+     * @param <M> the type of record
+     * @param record the record to evaluate against
+     * @param message the Protobuf message to evaluate against
+     * @return the list of evaluated keys for the given record
+     */
+    @Nonnull
+    public <M extends Message> List<Key.Evaluated> evaluateMessage(@Nullable FDBRecord<M> record, @Nullable Message message) {
+        if (message != null && message.getDescriptorForType() != descriptor) {
+            return expression.evaluateMessage(record, message);
+        }
+        // When single-valued, this list becomes the returned key, so it is not extra allocation.
+        final List<Object> values = new ArrayList<>(columnSize);
+        if (root.isSingleValued()) {
+            root.append(record, message, values);
+            return Collections.singletonList(Key.Evaluated.concatenate(values));
+        }
+        final List<Key.Evaluated> results = new ArrayList<>();
+        root.evaluate(record, message, values, () -> results.add(Key.Evaluated.concatenate(new ArrayList<>(values))));
+        return results;
+    }
+
+    /**
+     * Determine whether two versions of a record are certain to evaluate to the same keys.
+     * Only the fields that the expression references are compared, which is much cheaper than evaluating both records
+     * when most of the record's fields are not indexed. Parts of the expression that do not just access fields are
+     * evaluated against both records and compared. This can return <code>false</code> for records that would in fact
+     * give the same keys, but never returns <code>true</code> for records that would not.
+     * @param <M> the type of record
+     * @param oldRecord the previous version of the record
+     * @param newRecord the new version of the record
+     * @return <code>true</code> if evaluating against either record gives the same result
+     */
+    public <M extends Message> boolean isUnchanged(@Nonnull FDBRecord<M> oldRecord, @Nonnull FDBRecord<M> newRecord) {
+        final Message oldMessage = oldRecord.getRecord();
+        final Message newMessage = newRecord.getRecord();
+        if (oldMessage.getDescriptorForType() != descriptor || newMessage.getDescriptorForType() != descriptor) {
+            return false;
+        }
+        return root.isUnchanged(oldRecord, oldMessage, newRecord, newMessage);
+    }
+
+    @Nonnull
+    private static Node compile(@Nonnull KeyExpression expression, @Nonnull Descriptors.Descriptor descriptor) {
+        if (expression instanceof FieldKeyExpression) {
+            return new FieldNode((FieldKeyExpression)expression, descriptor);
+        } else if (expression instanceof ThenKeyExpression) {
+            final List<KeyExpression> children = ((ThenKeyExpression)expression).getChildren();
+            final Node[] childNodes = new Node[children.size()];
+            for (int i = 0; i < childNodes.length; i++) {
+                childNodes[i] = compile(children.get(i), descriptor);
+            }
+            return new ThenNode(childNodes);
+        } else if (expression instanceof NestingKeyExpression) {
+            final NestingKeyExpression nesting = (NestingKeyExpression)expression;
+            final Descriptors.FieldDescriptor parentField = descriptor.findFieldByName(nesting.getParent().getFieldName());
+            final FanType parentFanType = nesting.getParent().getFanType();
+            if (parentField != null && parentField.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE &&
+                    !TupleFieldsHelper.isTupleField(parentField.getMessageType()) &&
+                    (parentField.isRepeated() ? parentFanType == FanType.FanOut : parentFanType == FanType.None)) {
+                return new NestingNode(nesting, descriptor, parentField, compile(nesting.getChild(), parentField.getMessageType()));
+            }
+        } else if (expression instanceof GroupingKeyExpression) {
+            return compile(((GroupingKeyExpression)expression).getWholeKey(), descriptor);
+        } else if (expression instanceof KeyWithValueExpression) {
+            return compile(((KeyWithValueExpression)expression).getInnerKey(), descriptor);
+        } else if (expression instanceof EmptyKeyExpression) {
+            return EmptyNode.INSTANCE;
+        }
+        return new OtherNode(expression);
+    }
+
+    // What to do with the values appended so far for each key produced by a node.
+    private interface Continuation {
+        void accept();
+    }
+
+    private interface Node {
+        // Whether this node always produces exactly one key for any message, in which case append can be used.
+        boolean isSingleValued();
+
+        // Append the values of the single key produced for the given message.
+        void append(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values);
+
+        // For each key produced for the given message, append its values, call the continuation and then remove them again.
+        void evaluate(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values, @Nonnull Continuation next);
+
+        // Whether the keys produced for the two messages are certain to be the same.
+        boolean isUnchanged(@Nullable FDBRecord<?> oldRecord, @Nullable Message oldMessage,
+                            @Nullable FDBRecord<?> newRecord, @Nullable Message newMessage);
+    }
+
+    // Only a pair of missing messages can be assumed to give the same keys without looking further.
+    private static boolean bothNull(@Nullable Message oldMessage, @Nullable Message newMessage) {
+        return oldMessage == null && newMessage == null;
+    }
+
+    private static boolean sameEvaluation(@Nonnull KeyExpression expression,
+                                          @Nullable FDBRecord<?> oldRecord, @Nullable Message oldMessage,
+                                          @Nullable FDBRecord<?> newRecord, @Nullable Message newMessage) {
+        return expression.evaluateMessage(oldRecord, oldMessage).equals(expression.evaluateMessage(newRecord, newMessage));
+    }
+
+    private abstract static class SingleValuedNode implements Node {
+        @Override
+        public boolean isSingleValued() {
+            return true;
+        }
+
+        @Override
+        public void evaluate(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values, @Nonnull Continuation next) {
+            final int size = values.size();
+            append(record, message, values);
+            next.accept();
+            truncate(values, size);
+        }
+    }
+
+    private static void truncate(@Nonnull List<Object> values, int size) {
+        while (values.size() > size) {
+            values.remove(values.size() - 1);
+        }
+    }
+
+    private static class FieldNode implements Node {
+        @Nonnull
+        private final FieldKeyExpression expression;
+        @Nonnull
+        private final Descriptors.Descriptor descriptor;
+        @Nullable
+        private final Descriptors.FieldDescriptor fieldDescriptor;
+        private final boolean tupleField;
+
+        FieldNode(@Nonnull FieldKeyExpression expression, @Nonnull Descriptors.Descriptor descriptor) {
+            this.expression = expression;
+            this.descriptor = descriptor;
+            this.fieldDescriptor = descriptor.findFieldByName(expression.getFieldName());
+            this.tupleField = fieldDescriptor != null && !fieldDescriptor.isRepeated() &&
+                              fieldDescriptor.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE &&
+                              TupleFieldsHelper.isTupleField(fieldDescriptor.getMessageType());
+        }
+
+        @Override
+        public boolean isSingleValued() {
+            return expression.getFanType() != FanType.FanOut;
+        }
+
+        @Override
+        public void append(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values) {
+            if (message != null && message.getDescriptorForType() != descriptor) {
+                values.addAll(expression.evaluateMessage(record, message).get(0).values());
+            } else if (message == null || fieldDescriptor == null) {
+                appendNull(values);
+            } else if (fieldDescriptor.isRepeated()) {
+                if (expression.getFanType() != FanType.Concatenate) {
+                    throw new RecordCoreException("FanType.None with repeated field");
+                }
+                values.add(getRepeatedValues(message));
+            } else if (!appendValue(message, values)) {
+                appendNull(values);
+            }
+        }
+
+        // Append the value of a non-repeated field, returning false if it is not set.
+        private boolean appendValue(@Nonnull Message message, @Nonnull List<Object> values) {
+            if (expression.getNullStandin() == Key.Evaluated.NullStandin.NOT_NULL || message.hasField(fieldDescriptor)) {
+                Object value = message.getField(fieldDescriptor);
+                if (tupleField) {
+                    value = TupleFieldsHelper.fromProto((Message)value, fieldDescriptor.getMessageType());
+                }
+                values.add(value);
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        private void appendNull(@Nonnull List<Object> values) {
+            if (expression.getFanType() == FanType.Concatenate) {
+                values.add(Collections.emptyList());
+            } else {
+                values.add(expression.getNullStandin());
+            }
+        }
+
+        @Nonnull
+        @SuppressWarnings("unchecked")
+        private List<Object> getRepeatedValues(@Nonnull Message message) {
+            // As with FieldKeyExpression, avoid DynamicMessage.getField() on an empty repeated message field.
+            if (message.getRepeatedFieldCount(fieldDescriptor) > 0) {
+                return (List<Object>)message.getField(fieldDescriptor);
+            } else {
+                return Collections.emptyList();
+            }
+        }
+
+        @Override
+        public void evaluate(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values, @Nonnull Continuation next) {
+            final int size = values.size();
+            if (expression.getFanType() != FanType.FanOut) {
+                append(record, message, values);
+                next.accept();
+            } else if (message != null && message.getDescriptorForType() != descriptor) {
+                for (Key.Evaluated key : expression.evaluateMessage(record, message)) {
+                    values.addAll(key.values());
+                    next.accept();
+                    truncate(values, size);
+                }
+            } else if (message != null && fieldDescriptor != null) {
+                if (fieldDescriptor.isRepeated()) {
+                    for (Object value : getRepeatedValues(message)) {
+                        values.add(value);
+                        next.accept();
+                        truncate(values, size);
+                    }
+                } else if (appendValue(message, values)) {
+                    // A non-repeated field ignores the fan type, except that it has no entry when it is not set.
+                    next.accept();
+                }
+            }
+            truncate(values, size);
+        }
+
+        @Override
+        public boolean isUnchanged(@Nullable FDBRecord<?> oldRecord, @Nullable Message oldMessage,
+                                   @Nullable FDBRecord<?> newRecord, @Nullable Message newMessage) {
+            if (oldMessage == null || newMessage == null) {
+                return bothNull(oldMessage, newMessage);
+            } else if (oldMessage.getDescriptorForType() != descriptor || newMessage.getDescriptorForType() != descriptor) {
+                return sameEvaluation(expression, oldRecord, oldMessage, newRecord, newMessage);
+            } else if (fieldDescriptor == null) {
+                return true;
+            } else if (fieldDescriptor.isRepeated()) {
+                return getRepeatedValues(oldMessage).equals(getRepeatedValues(newMessage));
+            } else {
+                return oldMessage.hasField(fieldDescriptor) == newMessage.hasField(fieldDescriptor) &&
+                       oldMessage.getField(fieldDescriptor).equals(newMessage.getField(fieldDescriptor));
+            }
+        }
+    }
+
+    private static class ThenNode implements Node {
+        @Nonnull
+        private final Node[] children;
+        private final boolean singleValued;
+
+        ThenNode(@Nonnull Node[] children) {
+            this.children = children;
+            boolean allSingleValued = true;
+            for (Node child : children) {
+                allSingleValued &= child.isSingleValued();
+            }
+            this.singleValued = allSingleValued;
+        }
+
+        @Override
+        public boolean isSingleValued() {
+            return singleValued;
+        }
+
+        @Override
+        public void append(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values) {
+            for (Node child : children) {
+                child.append(record, message, values);
+            }
+        }
+
+        @Override
+        public void evaluate(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values, @Nonnull Continuation next) {
+            evaluateFrom(0, record, message, values, next);
+        }
+
+        private void evaluateFrom(int index, @Nullable FDBRecord<?> record, @Nullable Message message,
+                                  @Nonnull List<Object> values, @Nonnull Continuation next) {
+            // Leading single-valued children can be appended without any continuation.
+            final int size = values.size();
+            int i = index;
+            while (i < children.length && children[i].isSingleValued()) {
+                children[i].append(record, message, values);
+                i++;
+            }
+            if (i == children.length) {
+                next.accept();
+            } else {
+                final int nextIndex = i + 1;
+                children[i].evaluate(record, message, values, () -> evaluateFrom(nextIndex, record, message, values, next));
+            }
+            truncate(values, size);
+        }
+
+        @Override
+        public boolean isUnchanged(@Nullable FDBRecord<?> oldRecord, @Nullable Message oldMessage,
+                                   @Nullable FDBRecord<?> newRecord, @Nullable Message newMessage) {
+            for (Node child : children) {
+                if (!child.isUnchanged(oldRecord, oldMessage, newRecord, newMessage)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class NestingNode implements Node {
+        @Nonnull
+        private final NestingKeyExpression expression;
+        @Nonnull
+        private final Descriptors.Descriptor descriptor;
+        @Nonnull
+        private final Descriptors.FieldDescriptor parentField;
+        @Nonnull
+        private final Node child;
+
+        NestingNode(@Nonnull NestingKeyExpression expression, @Nonnull Descriptors.Descriptor descriptor,
+                    @Nonnull Descriptors.FieldDescriptor parentField, @Nonnull Node child) {
+            this.expression = expression;
+            this.descriptor = descriptor;
+            this.parentField = parentField;
+            this.child = child;
+        }
+
+        @Override
+        public boolean isSingleValued() {
+            return expression.getParent().getFanType() == FanType.None && child.isSingleValued();
+        }
+
+        @Nullable
+        private Message getSubmessage(@Nonnull Message message) {
+            if (expression.getParent().getNullStandin() == Key.Evaluated.NullStandin.NOT_NULL || message.hasField(parentField)) {
+                return (Message)message.getField(parentField);
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public void append(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values) {
+            if (message != null && message.getDescriptorForType() != descriptor) {
+                values.addAll(expression.evaluateMessage(record, message).get(0).values());
+            } else {
+                child.append(record, message == null ? null : getSubmessage(message), values);
+            }
+        }
+
+        @Override
+        public void evaluate(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values, @Nonnull Continuation next) {
+            final int size = values.size();
+            if (message != null && message.getDescriptorForType() != descriptor) {
+                for (Key.Evaluated key : expression.evaluateMessage(record, message)) {
+                    values.addAll(key.values());
+                    next.accept();
+                    truncate(values, size);
+                }
+            } else if (expression.getParent().getFanType() != FanType.FanOut) {
+                child.evaluate(record, message == null ? null : getSubmessage(message), values, next);
+            } else if (message != null) {
+                final int count = message.getRepeatedFieldCount(parentField);
+                for (int i = 0; i < count; i++) {
+                    child.evaluate(record, (Message)message.getRepeatedField(parentField, i), values, next);
+                }
+            }
+            truncate(values, size);
+        }
+
+        @Override
+        public boolean isUnchanged(@Nullable FDBRecord<?> oldRecord, @Nullable Message oldMessage,
+                                   @Nullable FDBRecord<?> newRecord, @Nullable Message newMessage) {
+            if (oldMessage == null || newMessage == null) {
+                return bothNull(oldMessage, newMessage);
+            } else if (oldMessage.getDescriptorForType() != descriptor || newMessage.getDescriptorForType() != descriptor) {
+                return sameEvaluation(expression, oldRecord, oldMessage, newRecord, newMessage);
+            } else if (expression.getParent().getFanType() != FanType.FanOut) {
+                return child.isUnchanged(oldRecord, getSubmessage(oldMessage), newRecord, getSubmessage(newMessage));
+            } else {
+                final int count = oldMessage.getRepeatedFieldCount(parentField);
+                if (count != newMessage.getRepeatedFieldCount(parentField)) {
+                    return false;
+                }
+                for (int i = 0; i < count; i++) {
+                    if (!child.isUnchanged(oldRecord, (Message)oldMessage.getRepeatedField(parentField, i),
+                            newRecord, (Message)newMessage.getRepeatedField(parentField, i))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+    }
+
+    private static class EmptyNode extends SingleValuedNode {
+        static final EmptyNode INSTANCE = new EmptyNode();
+
+        @Override
+        public void append(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values) {
+            // Nothing to add.
+        }
+
+        @Override
+        public boolean isUnchanged(@Nullable FDBRecord<?> oldRecord, @Nullable Message oldMessage,
+                                   @Nullable FDBRecord<?> newRecord, @Nullable Message newMessage) {
+            return true;
+        }
+    }
+
+    private static class OtherNode implements Node {
+        @Nonnull
+        private final KeyExpression expression;
+
+        OtherNode(@Nonnull KeyExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean isSingleValued() {
+            return false;
+        }
+
+        @Override
+        public void append(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values) {
+            throw new RecordCoreException("expression is not single valued");
+        }
+
+        @Override
+        public void evaluate(@Nullable FDBRecord<?> record, @Nullable Message message, @Nonnull List<Object> values, @Nonnull Continuation next) {
+            final int size = values.size();
+            for (Key.Evaluated key : expression.evaluateMessage(record, message)) {
+                values.addAll(key.values());
+                next.accept();
+                truncate(values, size);
+            }
+        }
+
+        @Override
+        public boolean isUnchanged(@Nullable FDBRecord<?> oldRecord, @Nullable Message oldMessage,
+                                   @Nullable FDBRecord<?> newRecord, @Nullable Message newMessage) {
+            return sameEvaluation(expression, oldRecord, oldMessage, newRecord, newMessage);
+        }
+    }
+}
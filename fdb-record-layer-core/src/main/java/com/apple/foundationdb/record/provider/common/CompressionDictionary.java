@@ -0,0 +1,184 @@
+/*
+ * CompressionDictionary.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A preset dictionary for compressing records with {@link TransformedRecordSerializer}.
+ *
+ * <p>
+ * Small records do not compress well by themselves, since there is little repetition within any one of them. But
+ * records of the same type tend to repeat one another: the same field tags, the same enumerated strings, the same
+ * prefixes of identifiers. A preset dictionary containing these lets the compressor refer back to them as though
+ * they had appeared earlier in the record. Use {@link #train} to build one from a sample of serialized records.
+ * </p>
+ *
+ * <p>
+ * The id of the dictionary is stored with each record compressed with it, so a dictionary must never change once
+ * records have been written with it. To change dictionaries, train a new one with a new id and keep the old one
+ * registered with the serializer for reading, for as long as any records written with it remain.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class CompressionDictionary {
+    /**
+     * The largest dictionary that is useful, which is the size of the compression window.
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+    /**
+     * The default size of a trained dictionary.
+     */
+    public static final int DEFAULT_TRAINED_SIZE = 8 * 1024;
+
+    // The length of the substrings counted when training.
+    private static final int GRAM_LENGTH = 8;
+
+    private final int id;
+    @Nonnull
+    private final byte[] bytes;
+
+    /**
+     * Create a compression dictionary.
+     * @param id a positive number identifying the dictionary, unique among those used with a serializer
+     * @param bytes the contents of the dictionary
+     */
+    public CompressionDictionary(int id, @Nonnull byte[] bytes) {
+        if (id <= 0) {
+            throw new RecordCoreArgumentException("compression dictionary id must be positive", "id", id);
+        }
+        if (bytes.length == 0 || bytes.length > MAX_SIZE) {
+            throw new RecordCoreArgumentException("compression dictionary has invalid size", "size", bytes.length);
+        }
+        this.id = id;
+        this.bytes = Arrays.copyOf(bytes, bytes.length);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the contents of this dictionary.
+     * @return a copy of the dictionary bytes
+     */
+    @Nonnull
+    public byte[] getBytes() {
+        return Arrays.copyOf(bytes, bytes.length);
+    }
+
+    @Nonnull
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Train a dictionary from a sample of records.
+     * The dictionary is made up of the substrings that occur in the most samples, so the sample should be
+     * representative of the records that will be compressed with it, which is to say of a single record type.
+     * The samples should be records as serialized before any transformation, which is what the inner serializer of
+     * a {@link TransformedRecordSerializer} produces.
+     * @param id the id of the new dictionary
+     * @param samples serialized records
+     * @param maxSize the maximum size of the dictionary
+     * @return a new dictionary or <code>null</code> if the samples have nothing in common
+     */
+    @Nullable
+    public static CompressionDictionary train(int id, @Nonnull Collection<byte[]> samples, int maxSize) {
+        if (maxSize <= 0 || maxSize > MAX_SIZE) {
+            throw new RecordCoreArgumentException("compression dictionary has invalid size", "size", maxSize);
+        }
+        // Count the number of samples in which each substring occurs, using a one-to-one mapping of bytes to chars.
+        final Map<String, Integer> sampleCounts = new HashMap<>();
+        for (byte[] sample : samples) {
+            final String text = new String(sample, StandardCharsets.ISO_8859_1);
+            final Set<String> seen = new HashSet<>();
+            for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+                final String gram = text.substring(i, i + GRAM_LENGTH);
+                if (seen.add(gram)) {
+                    sampleCounts.merge(gram, 1, Integer::sum);
+                }
+            }
+        }
+        final List<Map.Entry<String, Integer>> common = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : sampleCounts.entrySet()) {
+            if (entry.getValue() > 1) {
+                common.add(entry);
+            }
+        }
+        common.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+
+        final StringBuilder dictionary = new StringBuilder();
+        final Set<String> included = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : common) {
+            final String gram = entry.getKey();
+            if (included.contains(gram)) {
+                continue;
+            }
+            // Overlapping substrings of a longer common string only add their last character.
+            final String added = dictionary.length() >= GRAM_LENGTH - 1 &&
+                                 dictionary.substring(dictionary.length() - (GRAM_LENGTH - 1)).equals(gram.substring(0, GRAM_LENGTH - 1)) ?
+                                 gram.substring(GRAM_LENGTH - 1) : gram;
+            if (dictionary.length() + added.length() > maxSize) {
+                break;
+            }
+            final int start = Math.max(0, dictionary.length() - (GRAM_LENGTH - 1));
+            dictionary.append(added);
+            for (int i = start; i + GRAM_LENGTH <= dictionary.length(); i++) {
+                included.add(dictionary.substring(i, i + GRAM_LENGTH));
+            }
+        }
+        if (dictionary.length() == 0) {
+            return null;
+        }
+        return new CompressionDictionary(id, dictionary.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Train a dictionary of the default size from a sample of records.
+     * @param id the id of the new dictionary
+     * @param samples serialized records
+     * @return a new dictionary or <code>null</code> if the samples have nothing in common
+     * @see #train(int, Collection, int)
+     */
+    @Nullable
+    public static CompressionDictionary train(int id, @Nonnull Collection<byte[]> samples) {
+        return train(id, samples, DEFAULT_TRAINED_SIZE);
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionDictionary{id=" + id + ", size=" + bytes.length + "}";
+    }
+}
@@ -36,7 +36,14 @@ import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -59,6 +66,15 @@ import java.util.zip.Inflater;
  * </p>
  *
  * <p>
+ * Compression can use a preset {@link CompressionDictionary} for each record type, which helps a lot with small
+ * records that have little repetition within themselves but much in common with each other. The id of the dictionary
+ * used is kept in the compression header, so the serializer must be given every dictionary that any stored record
+ * was compressed with. Since each compressor and decompressor holds native state that is expensive to allocate, idle
+ * ones are shared by all serializers in pools, one for each compression level and one for decompression. Each pool
+ * holds at most as many as there are available processors; one that is returned to a full pool is ended right away.
+ * </p>
+ *
+ * <p>
  * This base class does not itself support encryption: an exception will be thrown
  * when trying to construct a serializer with encryption enabled or when encountering
  * a serialized record that requires decryption. Subclasses, such as {@link TransformedRecordSerializerJCE},
@@ -88,7 +104,16 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     protected static final int ENCODING_PROTO_TYPE_MASK = 0x07;
     protected static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
     protected static final int MIN_COMPRESSION_VERSION = 1;
-    protected static final int MAX_COMPRESSION_VERSION = 1;
+    protected static final int MAX_COMPRESSION_VERSION = 2;
+    // Compression version 2 has the id of a preset dictionary after the version.
+    protected static final int DICTIONARY_COMPRESSION_VERSION = 2;
+
+    // Idle compressors for each level (offset by one for the default level of -1) and decompressors, which are expensive
+    // to create. The pools are bounded and one that does not fit back in is ended at once, so the native memory they
+    // hold does not grow with the number of threads that have ever used them.
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final List<Queue<Deflater>> COMPRESSORS = createCompressorPools();
+    private static final Queue<Inflater> DECOMPRESSORS = new ArrayBlockingQueue<>(POOL_SIZE);
 
     @SpotBugsSuppressWarnings("EI_EXPOSE_REP")
     protected static class TransformState {
@@ -143,39 +168,120 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     protected final boolean compressWhenSerializing;
     protected final int compressionLevel;
     protected final boolean encryptWhenSerializing;
+    @Nonnull
+    protected final Map<String, CompressionDictionary> compressionDictionariesByType;
+    @Nonnull
+    protected final Map<Integer, CompressionDictionary> compressionDictionariesById;
 
     protected TransformedRecordSerializer(@Nonnull RecordSerializer<M> inner,
                                           boolean compressWhenSerializing,
                                           int compressionLevel,
                                           boolean encryptWhenSerializing) {
+        this(inner, compressWhenSerializing, compressionLevel, encryptWhenSerializing, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    protected TransformedRecordSerializer(@Nonnull RecordSerializer<M> inner,
+                                          boolean compressWhenSerializing,
+                                          int compressionLevel,
+                                          boolean encryptWhenSerializing,
+                                          @Nonnull Map<String, CompressionDictionary> compressionDictionariesByType,
+                                          @Nonnull Map<Integer, CompressionDictionary> compressionDictionariesById) {
         this.inner = inner;
         this.compressWhenSerializing = compressWhenSerializing;
         this.compressionLevel = compressionLevel;
         this.encryptWhenSerializing = encryptWhenSerializing;
+        this.compressionDictionariesByType = compressionDictionariesByType;
+        this.compressionDictionariesById = compressionDictionariesById;
+    }
+
+    @Nonnull
+    private static List<Queue<Deflater>> createCompressorPools() {
+        final List<Queue<Deflater>> pools = new ArrayList<>(Deflater.BEST_COMPRESSION + 2);
+        for (int i = 0; i < Deflater.BEST_COMPRESSION + 2; i++) {
+            pools.add(new ArrayBlockingQueue<>(POOL_SIZE));
+        }
+        return pools;
+    }
+
+    @Nullable
+    private Queue<Deflater> getCompressorPool() {
+        final int index = compressionLevel + 1;
+        // Not a valid level, which the constructor will reject.
+        return index < 0 || index >= COMPRESSORS.size() ? null : COMPRESSORS.get(index);
+    }
+
+    @Nonnull
+    private Deflater borrowCompressor() {
+        final Queue<Deflater> pool = getCompressorPool();
+        final Deflater compressor = pool == null ? null : pool.poll();
+        return compressor == null ? new Deflater(compressionLevel) : compressor;
+    }
+
+    private void returnCompressor(@Nonnull Deflater compressor) {
+        final Queue<Deflater> pool = getCompressorPool();
+        compressor.reset();
+        if (pool == null || !pool.offer(compressor)) {
+            compressor.end();
+        }
+    }
+
+    @Nonnull
+    private static Inflater borrowDecompressor() {
+        final Inflater decompressor = DECOMPRESSORS.poll();
+        return decompressor == null ? new Inflater() : decompressor;
+    }
+
+    private static void returnDecompressor(@Nonnull Inflater decompressor) {
+        decompressor.reset();
+        if (!DECOMPRESSORS.offer(decompressor)) {
+            decompressor.end();
+        }
     }
 
     protected void compress(@Nonnull TransformState state, @Nullable StoreTimer timer) {
+        compress(state, null, timer);
+    }
+
+    protected void compress(@Nonnull TransformState state, @Nullable CompressionDictionary dictionary, @Nullable StoreTimer timer) {
         long startTime = System.nanoTime();
 
         byte[] compressed = new byte[state.length];
 
-        // Write compression version number and uncompressed size as these
-        // meta-data are needed when decompressing.
-        compressed[0] = (byte) MAX_COMPRESSION_VERSION;
-        ByteBuffer.wrap(compressed, 1, 4).order(ByteOrder.BIG_ENDIAN).putInt(state.length);
-
-        // Actually compress. If we end up filling the buffer, then just
-        // return the uncompressed value because it's pointless to compress
-        // if we actually increase the amount of data.
-        Deflater compressor = new Deflater(compressionLevel);
-        compressor.setInput(state.data, state.offset, state.length);
-        int compressedLength = compressor.deflate(compressed, 5, compressed.length - 5, Deflater.FULL_FLUSH);
-        compressor.end();
-        if (compressedLength == compressed.length - 5) {
-            state.compressed = false;
+        // Write compression version number, dictionary id and uncompressed size
+        // as these meta-data are needed when decompressing.
+        final int headerLength = dictionary == null ? 5 : 9;
+        if (state.length > headerLength) {
+            final ByteBuffer header = ByteBuffer.wrap(compressed, 0, headerLength).order(ByteOrder.BIG_ENDIAN);
+            if (dictionary == null) {
+                header.put((byte) MIN_COMPRESSION_VERSION);
+            } else {
+                header.put((byte) DICTIONARY_COMPRESSION_VERSION);
+                header.putInt(dictionary.getId());
+            }
+            header.putInt(state.length);
+
+            // Actually compress. If we end up filling the buffer, then just
+            // return the uncompressed value because it's pointless to compress
+            // if we actually increase the amount of data.
+            final Deflater compressor = borrowCompressor();
+            final int compressedLength;
+            try {
+                if (dictionary != null) {
+                    compressor.setDictionary(dictionary.bytes());
+                }
+                compressor.setInput(state.data, state.offset, state.length);
+                compressedLength = compressor.deflate(compressed, headerLength, compressed.length - headerLength, Deflater.FULL_FLUSH);
+            } finally {
+                returnCompressor(compressor);
+            }
+            if (compressedLength == compressed.length - headerLength) {
+                state.compressed = false;
+            } else {
+                state.compressed = true;
+                state.setDataArray(compressed, 0, compressedLength + headerLength);
+            }
         } else {
-            state.compressed = true;
-            state.setDataArray(compressed, 0, compressedLength + 5);
+            state.compressed = false;
         }
 
         if (timer != null) {
@@ -201,7 +307,7 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
         TransformState state = new TransformState(innerSerialized);
 
         if (compressWhenSerializing) {
-            compress(state, timer);
+            compress(state, compressionDictionariesByType.get(recordType.getName()), timer);
         }
 
         if (encryptWhenSerializing) {
@@ -238,23 +344,37 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     protected void decompress(@Nonnull TransformState state, @Nullable StoreTimer timer) throws DataFormatException {
         long startTime = System.nanoTime();
 
-        // At the moment, there is only one compression version, so
-        // we after we've verified it is in the right range, we
-        // can just move on. If we ever introduce a new format version,
-        // we will need to make this code more complicated.
+        // The versions differ only in whether there is a dictionary id before the uncompressed size.
         int compressionVersion = state.data[state.offset];
         if (compressionVersion < MIN_COMPRESSION_VERSION || compressionVersion > MAX_COMPRESSION_VERSION) {
             throw new RecordSerializationException("unknown compression version")
                     .addLogInfo("compressionVersion", compressionVersion);
         }
 
-        int decompressedLength = ByteBuffer.wrap(state.data, state.offset + 1, 4).order(ByteOrder.BIG_ENDIAN).getInt();
+        final ByteBuffer header = ByteBuffer.wrap(state.data, state.offset + 1, state.length - 1).order(ByteOrder.BIG_ENDIAN);
+        CompressionDictionary dictionary = null;
+        if (compressionVersion == DICTIONARY_COMPRESSION_VERSION) {
+            final int dictionaryId = header.getInt();
+            dictionary = compressionDictionariesById.get(dictionaryId);
+            if (dictionary == null) {
+                throw new RecordSerializationException("unknown compression dictionary")
+                        .addLogInfo("dictionaryId", dictionaryId);
+            }
+        }
+        int decompressedLength = header.getInt();
         byte[] decompressed = new byte[decompressedLength];
 
-        Inflater decompressor = new Inflater();
-        decompressor.setInput(state.data, state.offset + 5, state.length - 5);
-        decompressor.inflate(decompressed);
-        decompressor.end();
+        final Inflater decompressor = borrowDecompressor();
+        try {
+            decompressor.setInput(state.data, header.position(), state.offset + state.length - header.position());
+            int inflated = decompressor.inflate(decompressed);
+            if (inflated == 0 && dictionary != null && decompressor.needsDictionary()) {
+                decompressor.setDictionary(dictionary.bytes());
+                decompressor.inflate(decompressed);
+            }
+        } finally {
+            returnDecompressor(decompressor);
+        }
         state.setDataArray(decompressed);
 
         if (timer != null) {
@@ -323,7 +443,8 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     @Nonnull
     @Override
     public RecordSerializer<Message> widen() {
-        return new TransformedRecordSerializer<>(inner.widen(), compressWhenSerializing, compressionLevel, encryptWhenSerializing);
+        return new TransformedRecordSerializer<>(inner.widen(), compressWhenSerializing, compressionLevel, encryptWhenSerializing,
+                compressionDictionariesByType, compressionDictionariesById);
     }
 
     /**
@@ -368,6 +489,10 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
         protected boolean compressWhenSerializing;
         protected int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
         protected boolean encryptWhenSerializing;
+        @Nonnull
+        protected final Map<String, CompressionDictionary> compressionDictionariesByType = new HashMap<>();
+        @Nonnull
+        protected final Map<Integer, CompressionDictionary> compressionDictionariesById = new HashMap<>();
 
         protected Builder(@Nonnull RecordSerializer<M> inner) {
             this.inner = inner;
@@ -405,6 +530,36 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
             return this;
         }
 
+        /**
+         * Compress records of the given type with a preset dictionary. Records of other types are compressed without
+         * one. This does <i>not</i> automatically enable compression when serializing.
+         * @param recordTypeName the name of the record type
+         * @param dictionary the dictionary to use for that type
+         * @return this <code>Builder</code>
+         * @see CompressionDictionary#train
+         */
+        public Builder<M> setCompressionDictionary(@Nonnull String recordTypeName, @Nonnull CompressionDictionary dictionary) {
+            addCompressionDictionary(dictionary);
+            compressionDictionariesByType.put(recordTypeName, dictionary);
+            return this;
+        }
+
+        /**
+         * Make a dictionary available for decompressing records, without using it to compress new ones. This is needed
+         * for every dictionary that was ever used for records that are still stored.
+         * @param dictionary a dictionary that records might have been compressed with
+         * @return this <code>Builder</code>
+         * @throws RecordCoreArgumentException if a different dictionary with the same id has been added
+         */
+        public Builder<M> addCompressionDictionary(@Nonnull CompressionDictionary dictionary) {
+            final CompressionDictionary existing = compressionDictionariesById.putIfAbsent(dictionary.getId(), dictionary);
+            if (existing != null && existing != dictionary && !Arrays.equals(existing.bytes(), dictionary.bytes())) {
+                throw new RecordCoreArgumentException("different compression dictionaries with the same id",
+                        "dictionaryId", dictionary.getId());
+            }
+            return this;
+        }
+
         /**
          * Whether to encrypt records after serializing. Should
          * compression and encryption both be set, then data
@@ -438,7 +593,9 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
                     inner,
                     compressWhenSerializing,
                     compressionLevel,
-                    encryptWhenSerializing
+                    encryptWhenSerializing,
+                    new HashMap<>(compressionDictionariesByType),
+                    new HashMap<>(compressionDictionariesById)
             );
         }
     }
@@ -31,6 +31,9 @@ import javax.crypto.spec.IvParameterSpec;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * An extension of {@link TransformedRecordSerializer} to use JCE to encrypt and decrypt records.
@@ -57,7 +60,20 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
                                              @Nullable String cipherName,
                                              @Nullable Key encryptionKey,
                                              @Nullable SecureRandom secureRandom) {
-        super(inner, compressWhenSerializing, compressionLevel, encryptWhenSerializing);
+        this(inner, compressWhenSerializing, compressionLevel, encryptWhenSerializing, cipherName, encryptionKey, secureRandom,
+                Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    protected TransformedRecordSerializerJCE(@Nonnull RecordSerializer<M> inner,
+                                             boolean compressWhenSerializing,
+                                             int compressionLevel,
+                                             boolean encryptWhenSerializing,
+                                             @Nullable String cipherName,
+                                             @Nullable Key encryptionKey,
+                                             @Nullable SecureRandom secureRandom,
+                                             @Nonnull Map<String, CompressionDictionary> compressionDictionariesByType,
+                                             @Nonnull Map<Integer, CompressionDictionary> compressionDictionariesById) {
+        super(inner, compressWhenSerializing, compressionLevel, encryptWhenSerializing, compressionDictionariesByType, compressionDictionariesById);
         this.cipherName = cipherName;
         this.encryptionKey = encryptionKey;
         this.secureRandom = secureRandom;
@@ -285,7 +301,9 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
                     encryptWhenSerializing,
                     cipherName,
                     encryptionKey,
-                    secureRandom
+                    secureRandom,
+                    new HashMap<>(compressionDictionariesByType),
+                    new HashMap<>(compressionDictionariesById)
             );
         }
     }
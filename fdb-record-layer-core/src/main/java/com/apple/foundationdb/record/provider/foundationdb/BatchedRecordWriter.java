@@ -0,0 +1,558 @@
+/*
+ * BatchedRecordWriter.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.FDBException;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.async.MoreAsyncUtil;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.metadata.RecordType;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A writer that accepts independent requests to save or delete records and commits them in shared transactions.
+ *
+ * <p>
+ * Requests from any number of threads are gathered into batches. A batch is committed when it reaches
+ * {@link Builder#setMaxBatchCount a number of requests} or {@link Builder#setMaxBatchBytes a size}, or when
+ * {@link Builder#setWindowMillis a window} has passed since its first request, whichever comes first. The future
+ * returned for each request completes once its batch has committed. This saves the fixed cost of getting a read
+ * version and committing for each request, at the cost of some latency.
+ * </p>
+ *
+ * <p>
+ * Requests for the same primary key are run in the order they were made, whether they are in the same batch or not:
+ * a batch does not start until every earlier request for one of its records has finished. The other requests within
+ * a batch run concurrently, unless the maintainer of an index on one of the affected record types
+ * {@linkplain IndexMaintainer#needsSerialUpdates needs serial updates}, in which case they run one after another.
+ * If a batch fails with an error that FDB classifies as {@linkplain FDBException#isRetryable retryable}, such as a
+ * conflict, or for being too large, none of it has been committed, and it is split in half and each half tried again,
+ * one after the other. If it fails for any other reason, such as one of its records violating a unique index, each
+ * of its requests is run again on its own, so that only the one at fault fails. A request on its own is run with the
+ * {@link FDBDatabaseRunner}'s own retry loop. A transaction that fails with an unknown commit result may be retried
+ * after all, so requests should be idempotent, which saves are. A delete that is retried in this way will report that
+ * there was no record to delete.
+ * </p>
+ *
+ * <pre><code>
+ * try (BatchedRecordWriter writer = BatchedRecordWriter.newBuilder().setRecordStoreBuilder(recordStoreBuilder).build()) {
+ *     writer.saveRecord(record).thenAccept(...);
+ * }
+ * </code></pre>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class BatchedRecordWriter implements AutoCloseable {
+    /**
+     * Default maximum number of requests in one batch.
+     */
+    public static final int DEFAULT_MAX_BATCH_COUNT = 100;
+    /**
+     * Default maximum total size of the records saved in one batch, well below the transaction size limit.
+     */
+    public static final long DEFAULT_MAX_BATCH_BYTES = 1_000_000;
+    /**
+     * Default time to wait for more requests after the first one in a batch.
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = 5;
+
+    @Nonnull
+    private final FDBDatabaseRunner runner;
+    @Nonnull
+    private final FDBRecordStore.Builder recordStoreBuilder;
+    private final int maxBatchCount;
+    private final long maxBatchBytes;
+    private final long windowMillis;
+    @Nullable
+    private List<Request<?>> pending;
+    private long pendingBytes;
+    private boolean closed;
+    @Nonnull
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+    // The most recent request for each primary key that has not finished yet.
+    @Nonnull
+    private final Map<Tuple, Request<?>> lastRequestForKey = new ConcurrentHashMap<>();
+
+    protected BatchedRecordWriter(@Nonnull FDBDatabaseRunner runner, @Nonnull FDBRecordStore.Builder recordStoreBuilder,
+                                  int maxBatchCount, long maxBatchBytes, long windowMillis) {
+        this.runner = runner;
+        this.recordStoreBuilder = recordStoreBuilder;
+        this.maxBatchCount = maxBatchCount;
+        this.maxBatchBytes = maxBatchBytes;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Save a record in the next batch.
+     * @param record the record to save
+     * @return a future that completes with the stored record once its batch has committed
+     */
+    @Nonnull
+    public CompletableFuture<FDBStoredRecord<Message>> saveRecord(@Nonnull Message record) {
+        final RecordType recordType = recordStoreBuilder.getMetaDataProvider().getRecordMetaData()
+                .getRecordTypeForDescriptor(record.getDescriptorForType());
+        final Tuple primaryKey = recordType.getPrimaryKey()
+                .evaluateSingleton(FDBStoredRecord.newBuilder(record).setRecordType(recordType)).toTuple();
+        return submit(new Request<>(primaryKey, recordType.getName(), record.getSerializedSize(), store -> store.saveRecordAsync(record)));
+    }
+
+    /**
+     * Delete a record in the next batch.
+     * @param primaryKey the primary key of the record to delete
+     * @return a future that completes with whether the record existed once its batch has committed
+     */
+    @Nonnull
+    public CompletableFuture<Boolean> deleteRecord(@Nonnull Tuple primaryKey) {
+        return submit(new Request<>(primaryKey, null, primaryKey.pack().length, store -> store.deleteRecordAsync(primaryKey)));
+    }
+
+    @Nonnull
+    private <T> CompletableFuture<T> submit(@Nonnull Request<T> request) {
+        List<Request<?>> started = null;
+        List<Request<?>> full = null;
+        synchronized (this) {
+            if (closed) {
+                throw new RecordCoreException("Batched record writer is closed");
+            }
+            if (pending == null) {
+                pending = new ArrayList<>();
+                pendingBytes = 0;
+                started = pending;
+            }
+            pending.add(request);
+            pendingBytes += request.size;
+            // Registered while holding the lock, so that requests for a key are chained in the order they were made.
+            request.previous = lastRequestForKey.put(request.primaryKey, request);
+            if (pending.size() >= maxBatchCount || pendingBytes >= maxBatchBytes) {
+                full = pending;
+                pending = null;
+            }
+        }
+        request.result.whenComplete((vignore, err) -> lastRequestForKey.remove(request.primaryKey, request));
+        if (full != null) {
+            send(full);
+        } else if (started != null) {
+            final List<Request<?>> batch = started;
+            MoreAsyncUtil.delayedFuture(windowMillis, TimeUnit.MILLISECONDS).whenComplete((vignore, err) -> sendIfPending(batch));
+        }
+        return request.result;
+    }
+
+    private void sendIfPending(@Nonnull List<Request<?>> batch) {
+        synchronized (this) {
+            if (pending != batch) {
+                // Already sent because it filled up, or by close.
+                return;
+            }
+            pending = null;
+        }
+        send(batch);
+    }
+
+    private void send(@Nonnull List<Request<?>> batch) {
+        // Earlier requests for the same records that are in other batches must finish first, including any retries.
+        final Set<Request<?>> inBatch = new HashSet<>(batch);
+        final List<CompletableFuture<?>> earlier = new ArrayList<>();
+        for (Request<?> request : batch) {
+            if (request.previous != null && !inBatch.contains(request.previous)) {
+                earlier.add(request.previous.result);
+            }
+            request.previous = null;
+        }
+        final CompletableFuture<Void> done;
+        if (earlier.isEmpty()) {
+            done = runBatch(batch);
+        } else {
+            done = CompletableFuture.allOf(earlier.toArray(new CompletableFuture<?>[0]))
+                    .handle((vignore, err) -> batch)
+                    .thenCompose(this::runBatch);
+        }
+        inFlight.add(done);
+        done.whenComplete((vignore, err) -> inFlight.remove(done));
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> runBatch(@Nonnull List<Request<?>> batch) {
+        if (batch.size() == 1) {
+            return runSingle(batch.get(0));
+        }
+        return tryBatch(batch).handle((vignore, err) -> {
+            if (err == null) {
+                return AsyncUtil.DONE;
+            }
+            if (!shouldSplit(err)) {
+                // Probably one request's own fault, so find out which by running each alone, in order.
+                CompletableFuture<Void> singles = AsyncUtil.DONE;
+                for (Request<?> request : batch) {
+                    singles = singles.thenCompose(vignore2 -> runSingle(request));
+                }
+                return singles;
+            }
+            if (runner.getTimer() != null) {
+                runner.getTimer().increment(FDBStoreTimer.Counts.BATCHED_WRITER_SPLITS);
+            }
+            // The halves run one after the other, so that requests for the same record stay in order.
+            final int middle = batch.size() / 2;
+            return runBatch(batch.subList(0, middle)).thenCompose(vignore2 -> runBatch(batch.subList(middle, batch.size())));
+        }).thenCompose(Function.identity());
+    }
+
+    // Whether a batch that failed with the given error might succeed as two smaller ones.
+    private static boolean shouldSplit(@Nonnull Throwable err) {
+        if (FDBExceptions.isRetriable(err)) {
+            return true;
+        }
+        Throwable current = err;
+        while (current != null) {
+            if (current instanceof FDBException) {
+                return ((FDBException)current).getCode() == 2101; // transaction_too_large
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    @Nonnull
+    private <T> CompletableFuture<Void> runSingle(@Nonnull Request<T> request) {
+        final CompletableFuture<T> result;
+        try {
+            result = runner.runAsync(context -> openStore(context).thenCompose(request.operation));
+        } catch (RuntimeException e) {
+            request.result.completeExceptionally(e);
+            return AsyncUtil.DONE;
+        }
+        return result.handle((value, err) -> {
+            if (err != null) {
+                request.result.completeExceptionally(err);
+            } else {
+                countCommit(1);
+                request.result.complete(value);
+            }
+            return null;
+        });
+    }
+
+    // Run the whole batch in one transaction, completing the requests only if it commits.
+    @Nonnull
+    private CompletableFuture<Void> tryBatch(@Nonnull List<Request<?>> batch) {
+        final FDBRecordContext context;
+        try {
+            context = runner.openContext();
+        } catch (RuntimeException e) {
+            final CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return openStore(context).thenCompose(store -> {
+            final boolean serial = needsSerialUpdates(store, batch);
+            final Map<Tuple, CompletableFuture<?>> lastForKey = new HashMap<>();
+            final List<CompletableFuture<?>> attempts = new ArrayList<>(batch.size());
+            CompletableFuture<?> lastAttempt = null;
+            for (Request<?> request : batch) {
+                final CompletableFuture<?> attempt = request.start(store, serial ? lastAttempt : lastForKey.get(request.primaryKey));
+                lastForKey.put(request.primaryKey, attempt);
+                lastAttempt = attempt;
+                attempts.add(attempt);
+            }
+            return CompletableFuture.allOf(attempts.toArray(new CompletableFuture<?>[0]));
+        }).thenCompose(vignore -> context.commitAsync()).whenComplete((vignore, err) -> {
+            context.close();
+            if (err == null) {
+                countCommit(batch.size());
+                for (Request<?> request : batch) {
+                    request.finish();
+                }
+            }
+        });
+    }
+
+    // Whether any index that the requests might update needs its updates made one after another.
+    // A delete could be of a record of any type.
+    private static boolean needsSerialUpdates(@Nonnull FDBRecordStore store, @Nonnull List<Request<?>> batch) {
+        final RecordMetaData metaData = store.getRecordMetaData();
+        final Set<Index> indexes = new HashSet<>();
+        for (Request<?> request : batch) {
+            if (request.recordTypeName == null) {
+                indexes.addAll(metaData.getAllIndexes());
+                break;
+            }
+            indexes.addAll(metaData.getRecordType(request.recordTypeName).getAllIndexes());
+        }
+        for (Index index : indexes) {
+            if (!store.isIndexDisabled(index) && store.getIndexMaintainer(index).needsSerialUpdates()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private CompletableFuture<FDBRecordStore> openStore(@Nonnull FDBRecordContext context) {
+        return recordStoreBuilder.copyBuilder().setContext(context).openAsync();
+    }
+
+    /**
+     * Send the batch being gathered now, without waiting for it to fill up or for its window to pass.
+     */
+    public void flush() {
+        final List<Request<?>> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = null;
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Get a future that completes when every request made so far has been committed or has failed.
+     * This flushes the batch being gathered.
+     * @return a future that completes when all outstanding requests are done
+     */
+    @Nonnull
+    public CompletableFuture<Void> flushAsync() {
+        flush();
+        return CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Commit any outstanding requests and close the runner. Requests cannot be made after this.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            // Batches that split are still in flight until their halves are done.
+            while (hasOutstanding()) {
+                runner.asyncToSync(FDBStoreTimer.Waits.WAIT_BATCHED_WRITES, flushAsync());
+            }
+        } finally {
+            runner.close();
+        }
+    }
+
+    private synchronized boolean hasOutstanding() {
+        return pending != null || !inFlight.isEmpty();
+    }
+
+    private void countCommit(int requests) {
+        final FDBStoreTimer timer = runner.getTimer();
+        if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.BATCHED_WRITER_COMMITS);
+            timer.increment(FDBStoreTimer.Counts.BATCHED_WRITER_REQUESTS, requests);
+        }
+    }
+
+    private static class Request<T> {
+        @Nonnull
+        private final Tuple primaryKey;
+        @Nullable
+        private final String recordTypeName;
+        private final long size;
+        @Nonnull
+        private final Function<FDBRecordStore, CompletableFuture<T>> operation;
+        @Nonnull
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        @Nullable
+        private CompletableFuture<T> attempt;
+        // The request for the same primary key made just before this one, until this one's batch is sent.
+        @Nullable
+        private Request<?> previous;
+
+        private Request(@Nonnull Tuple primaryKey, @Nullable String recordTypeName, long size,
+                        @Nonnull Function<FDBRecordStore, CompletableFuture<T>> operation) {
+            this.primaryKey = primaryKey;
+            this.recordTypeName = recordTypeName;
+            this.size = size;
+            this.operation = operation;
+        }
+
+        // Start this request's operation in a batch's transaction, after the one before it in the same transaction.
+        @Nonnull
+        private CompletableFuture<T> start(@Nonnull FDBRecordStore store, @Nullable CompletableFuture<?> previous) {
+            attempt = previous == null ? operation.apply(store) : previous.thenCompose(vignore -> operation.apply(store));
+            return attempt;
+        }
+
+        // Complete with the result of the attempt whose transaction committed.
+        private void finish() {
+            result.complete(attempt.join());
+        }
+    }
+
+    /**
+     * Builder for {@link BatchedRecordWriter}.
+     *
+     * <pre><code>
+     * BatchedRecordWriter.newBuilder().setRecordStoreBuilder(recordStoreBuilder).setWindowMillis(10).build()
+     * </code></pre>
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static class Builder {
+        @Nullable
+        protected FDBDatabaseRunner runner;
+        @Nullable
+        protected FDBRecordStore.Builder recordStoreBuilder;
+        protected int maxBatchCount = DEFAULT_MAX_BATCH_COUNT;
+        protected long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+        protected long windowMillis = DEFAULT_WINDOW_MILLIS;
+
+        protected Builder() {
+        }
+
+        /**
+         * Set the runner that will be used to call into the database.
+         *
+         * Normally the runner is gotten from {@link #setDatabase} or {@link #setRecordStore} or {@link #setRecordStoreBuilder}.
+         * @param runner the runner that connects to the target database
+         * @return this builder
+         */
+        public Builder setRunner(@Nullable FDBDatabaseRunner runner) {
+            this.runner = runner;
+            return this;
+        }
+
+        /**
+         * Set the database in which to write records.
+         *
+         * Normally the database is gotten from {@link #setRecordStore} or {@link #setRecordStoreBuilder}.
+         * @param database the target database
+         * @return this builder
+         */
+        public Builder setDatabase(@Nonnull FDBDatabase database) {
+            this.runner = database.newRunner();
+            return this;
+        }
+
+        /**
+         * Set the record store builder that will be used to open the record store in each transaction.
+         * @param recordStoreBuilder the record store builder
+         * @return this builder
+         * @see #setRecordStore
+         */
+        public Builder setRecordStoreBuilder(@Nonnull FDBRecordStore.Builder recordStoreBuilder) {
+            this.recordStoreBuilder = recordStoreBuilder.copyBuilder().setContext(null);
+            if (runner == null && recordStoreBuilder.getContext() != null) {
+                runner = recordStoreBuilder.getContext().getDatabase().newRunner();
+                runner.setTimer(recordStoreBuilder.getContext().getTimer());
+                runner.setMdcContext(recordStoreBuilder.getContext().getMdcContext());
+            }
+            return this;
+        }
+
+        /**
+         * Set the record store that will be used as a template to open the record store in each transaction.
+         * @param recordStore the target record store
+         * @return this builder
+         */
+        public Builder setRecordStore(@Nonnull FDBRecordStore recordStore) {
+            recordStoreBuilder = recordStore.asBuilder().setContext(null);
+            if (runner == null) {
+                runner = recordStore.getRecordContext().getDatabase().newRunner();
+                runner.setTimer(recordStore.getTimer());
+                runner.setMdcContext(recordStore.getRecordContext().getMdcContext());
+            }
+            return this;
+        }
+
+        /**
+         * Set the maximum number of requests in one batch.
+         * @param maxBatchCount the maximum number of requests committed together
+         * @return this builder
+         */
+        public Builder setMaxBatchCount(int maxBatchCount) {
+            this.maxBatchCount = maxBatchCount;
+            return this;
+        }
+
+        /**
+         * Set the total size of the records saved in a batch at which it is committed without waiting for more.
+         * @param maxBatchBytes the maximum serialized size of the records in one batch
+         * @return this builder
+         */
+        public Builder setMaxBatchBytes(long maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        /**
+         * Set how long to wait for more requests after the first one in a batch.
+         * @param windowMillis the batching window
+         * @return this builder
+         */
+        public Builder setWindowMillis(long windowMillis) {
+            this.windowMillis = windowMillis;
+            return this;
+        }
+
+        /**
+         * Build a {@link BatchedRecordWriter}.
+         * @return a new batched record writer
+         */
+        public BatchedRecordWriter build() {
+            if (runner == null) {
+                throw new MetaDataException("record store or runner must be set");
+            }
+            if (recordStoreBuilder == null) {
+                throw new MetaDataException("record store must be set");
+            }
+            if (maxBatchCount < 1 || maxBatchBytes < 1 || windowMillis < 0) {
+                throw new RecordCoreArgumentException("batch limits must be positive and window must not be negative",
+                        "maxBatchCount", maxBatchCount,
+                        "maxBatchBytes", maxBatchBytes,
+                        "windowMillis", windowMillis);
+            }
+            return new BatchedRecordWriter(runner, recordStoreBuilder, maxBatchCount, maxBatchBytes, windowMillis);
+        }
+    }
+
+    /**
+     * Create a batched record writer builder.
+     * @return a new batched record writer builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+}
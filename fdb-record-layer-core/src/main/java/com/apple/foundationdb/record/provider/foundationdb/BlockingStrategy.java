@@ -0,0 +1,127 @@
+/*
+ * BlockingStrategy.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.API;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How the synchronous API, by way of {@link FDBDatabase#asyncToSync}, waits for a future that has not yet completed.
+ *
+ * <p>
+ * {@link #FUTURE_GET} simply calls {@link CompletableFuture#get()}, which is the default. {@link #PARK} instead parks the
+ * waiting thread with {@link LockSupport} and is unparked by the completion of the future. Unlike a
+ * <code>get</code> from within a {@link java.util.concurrent.ForkJoinPool}, this never asks the pool to compensate for
+ * the blocked thread, and it leaves a virtual thread unmounted from its carrier while it waits, so it suits callers that
+ * run each request on its own (possibly virtual) thread.
+ * </p>
+ *
+ * @see FDBDatabaseFactory#setBlockingStrategy(BlockingStrategy)
+ * @see FDBDatabase#setBlockingStrategy(BlockingStrategy)
+ */
+@API(API.Status.EXPERIMENTAL)
+public interface BlockingStrategy {
+    /**
+     * Wait by calling {@link CompletableFuture#get()}.
+     */
+    BlockingStrategy FUTURE_GET = new FutureGet();
+
+    /**
+     * Wait by parking the current thread until the future completes.
+     */
+    BlockingStrategy PARK = new Park();
+
+    /**
+     * Wait for the given future to complete.
+     * @param future the future to wait for
+     * @param timeout the maximum time to wait or a negative value to wait indefinitely
+     * @param unit the unit of <code>timeout</code>
+     * @param <T> the type of the future's value
+     * @return the value of the future
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @throws ExecutionException if the future completed exceptionally
+     * @throws TimeoutException if the future did not complete within the timeout
+     */
+    <T> T get(@Nonnull CompletableFuture<T> future, long timeout, @Nonnull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException;
+
+    /**
+     * A {@link BlockingStrategy} that calls {@link CompletableFuture#get()}.
+     */
+    class FutureGet implements BlockingStrategy {
+        @Override
+        public <T> T get(@Nonnull CompletableFuture<T> future, long timeout, @Nonnull TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (timeout < 0) {
+                return future.get();
+            } else {
+                return future.get(timeout, unit);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "FUTURE_GET";
+        }
+    }
+
+    /**
+     * A {@link BlockingStrategy} that parks the current thread until the future completes.
+     */
+    class Park implements BlockingStrategy {
+        @Override
+        public <T> T get(@Nonnull CompletableFuture<T> future, long timeout, @Nonnull TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!future.isDone()) {
+                final Thread waiter = Thread.currentThread();
+                future.whenComplete((vignore, errignore) -> LockSupport.unpark(waiter));
+                final long deadline = timeout < 0 ? 0L : System.nanoTime() + unit.toNanos(timeout);
+                while (!future.isDone()) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (timeout < 0) {
+                        LockSupport.park(future);
+                    } else {
+                        final long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new TimeoutException();
+                        }
+                        LockSupport.parkNanos(future, remaining);
+                    }
+                }
+            }
+            // Already complete, so this does not block.
+            return future.get();
+        }
+
+        @Override
+        public String toString() {
+            return "PARK";
+        }
+    }
+}
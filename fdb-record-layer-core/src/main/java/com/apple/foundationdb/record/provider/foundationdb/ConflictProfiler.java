@@ -0,0 +1,501 @@
+/*
+ * ConflictProfiler.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.ByteArrayUtil2;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An opt-in profiler of the conflict ranges of transactions, for finding which key ranges cause transactions to
+ * fail with <code>not_committed</code>.
+ *
+ * <p>
+ * A record context with a profiler (see {@link FDBRecordContext#setConflictProfiler} and
+ * {@link FDBDatabase#setConflictProfiler}) records the ranges of its non-snapshot reads, writes and explicitly added
+ * conflict ranges, together with the kind of operation that added them. Keys are attributed to the longest
+ * {@linkplain #registerSubspace registered subspace} that contains them; record stores opened in a profiled context
+ * register their records and index subspaces themselves.
+ * </p>
+ *
+ * <p>
+ * When a profiled transaction commits, its write ranges are counted and kept in a bounded window of recent commits.
+ * When one fails with a conflict, a sample of such failures is examined: the read ranges that overlap a write from the
+ * window committed after the transaction's read version are counted as confirmed conflicts. Those are necessarily
+ * from this process, so if none are found, all of the transaction's read ranges are counted as candidates instead.
+ * Ranges are counted in bounded top-K sketches, whose counts may overestimate by at most the reported error.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class ConflictProfiler {
+    /**
+     * The default number of distinct ranges tracked by each sketch.
+     */
+    public static final int DEFAULT_TOP_K = 100;
+    /**
+     * The default number of committed write ranges kept for finding overlaps.
+     */
+    public static final int DEFAULT_RECENT_WRITES = 10_000;
+    /**
+     * The default number of registered subspaces kept for attributing keys.
+     */
+    public static final int DEFAULT_MAX_LABELS = 10_000;
+
+    static final String UNKNOWN_LABEL = "unknown";
+
+    @Nonnull
+    private final NavigableMap<byte[], String> labels = new ConcurrentSkipListMap<>(ByteArrayUtil::compareUnsigned);
+    // Registered subspace keys, oldest first, so that the oldest can be forgotten when there are too many.
+    @Nonnull
+    private final Queue<byte[]> labelOrder = new ConcurrentLinkedQueue<>();
+    @Nonnull
+    private final AtomicInteger labelCount = new AtomicInteger();
+    private final int maxLabels;
+    @Nonnull
+    private final TopK hotWrites;
+    @Nonnull
+    private final TopK confirmedConflicts;
+    @Nonnull
+    private final TopK candidateConflicts;
+    @Nonnull
+    private final Deque<CommittedRange> recentWrites;
+    private final int maxRecentWrites;
+    private final double conflictSampleRate;
+
+    public ConflictProfiler() {
+        this(DEFAULT_TOP_K, DEFAULT_RECENT_WRITES, 1.0);
+    }
+
+    public ConflictProfiler(int topK, int maxRecentWrites, double conflictSampleRate) {
+        this(topK, maxRecentWrites, conflictSampleRate, DEFAULT_MAX_LABELS);
+    }
+
+    /**
+     * Create a profiler.
+     * @param topK the number of distinct ranges tracked by each sketch
+     * @param maxRecentWrites the number of committed write ranges to keep for finding overlaps
+     * @param conflictSampleRate the fraction of conflicts to examine
+     * @param maxLabels the number of registered subspaces to keep, after which the oldest are forgotten
+     */
+    public ConflictProfiler(int topK, int maxRecentWrites, double conflictSampleRate, int maxLabels) {
+        if (topK < 1 || maxRecentWrites < 0 || conflictSampleRate < 0.0 || conflictSampleRate > 1.0 || maxLabels < 1) {
+            throw new RecordCoreArgumentException("invalid conflict profiler parameters",
+                    "topK", topK,
+                    "maxRecentWrites", maxRecentWrites,
+                    "conflictSampleRate", conflictSampleRate,
+                    "maxLabels", maxLabels);
+        }
+        this.maxLabels = maxLabels;
+        this.hotWrites = new TopK(topK);
+        this.confirmedConflicts = new TopK(topK);
+        this.candidateConflicts = new TopK(topK);
+        this.recentWrites = new ArrayDeque<>(Math.min(maxRecentWrites, 1024));
+        this.maxRecentWrites = maxRecentWrites;
+        this.conflictSampleRate = conflictSampleRate;
+    }
+
+    /**
+     * Attribute keys in the given subspace to the given label, unless they are in a longer registered subspace.
+     * If this makes more than the maximum number of registered subspaces, the one registered longest ago is forgotten.
+     * @param subspace the subspace
+     * @param label a description of what the subspace holds
+     */
+    public void registerSubspace(@Nonnull Subspace subspace, @Nonnull String label) {
+        final byte[] key = subspace.getKey();
+        if (labels.put(key, label) == null) {
+            labelOrder.add(key);
+            if (labelCount.incrementAndGet() > maxLabels) {
+                final byte[] oldest = labelOrder.poll();
+                if (oldest != null && labels.remove(oldest) != null) {
+                    labelCount.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get whether the given subspace is currently registered.
+     * @param subspace the subspace
+     * @return whether keys in the subspace have a label of their own
+     */
+    public boolean isRegistered(@Nonnull Subspace subspace) {
+        return labels.containsKey(subspace.getKey());
+    }
+
+    /**
+     * Get the label of the longest registered subspace containing the given key.
+     * @param key the key to attribute
+     * @return the label for the key or <code>"unknown"</code> if it is not in a registered subspace
+     */
+    @Nonnull
+    public String attribute(@Nonnull byte[] key) {
+        byte[] search = key;
+        while (true) {
+            final Map.Entry<byte[], String> entry = labels.floorEntry(search);
+            if (entry == null) {
+                return UNKNOWN_LABEL;
+            }
+            final byte[] prefix = entry.getKey();
+            final int common = commonPrefixLength(prefix, key);
+            if (common == prefix.length) {
+                return entry.getValue();
+            }
+            // Any registered prefix of the key must also be a prefix of what it has in common with this entry.
+            search = Arrays.copyOf(key, common);
+        }
+    }
+
+    private static int commonPrefixLength(@Nonnull byte[] a, @Nonnull byte[] b) {
+        final int max = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < max && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    void committed(@Nonnull List<ConflictRange> ranges, long committedVersion) {
+        synchronized (recentWrites) {
+            for (ConflictRange range : ranges) {
+                if (range.isWrite()) {
+                    hotWrites.add(describe(range));
+                    if (committedVersion > 0) {
+                        recentWrites.addLast(new CommittedRange(range, committedVersion));
+                        if (recentWrites.size() > maxRecentWrites) {
+                            recentWrites.removeFirst();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    boolean conflicted(@Nonnull List<ConflictRange> ranges, @Nullable Long readVersion) {
+        if (conflictSampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= conflictSampleRate) {
+            return false;
+        }
+        final List<ConflictRange> overlapping = new ArrayList<>();
+        if (readVersion != null) {
+            synchronized (recentWrites) {
+                for (ConflictRange range : ranges) {
+                    if (!range.isWrite() && overlapsRecentWrite(range, readVersion)) {
+                        overlapping.add(range);
+                    }
+                }
+            }
+        }
+        if (overlapping.isEmpty()) {
+            for (ConflictRange range : ranges) {
+                if (!range.isWrite()) {
+                    candidateConflicts.add(describe(range));
+                }
+            }
+        } else {
+            for (ConflictRange range : overlapping) {
+                confirmedConflicts.add(describe(range));
+            }
+        }
+        return true;
+    }
+
+    private boolean overlapsRecentWrite(@Nonnull ConflictRange read, long readVersion) {
+        for (CommittedRange write : recentWrites) {
+            if (write.committedVersion > readVersion && write.range.overlaps(read)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private HotRange describe(@Nonnull ConflictRange range) {
+        return new HotRange(attribute(range.getBegin()), range.getOperation(),
+                ByteArrayUtil2.loggable(range.getBegin()), ByteArrayUtil2.loggable(range.getEnd()));
+    }
+
+    /**
+     * Get the ranges most often written by committed transactions.
+     * @return hot write ranges with their counts, most frequent first
+     */
+    @Nonnull
+    public List<HotRangeCount> getHotWrites() {
+        return hotWrites.top();
+    }
+
+    /**
+     * Get the read ranges of conflicting transactions that most often overlapped a write committed by this process
+     * after the transaction's read version.
+     * @return confirmed conflict ranges with their counts, most frequent first
+     */
+    @Nonnull
+    public List<HotRangeCount> getConfirmedConflicts() {
+        return confirmedConflicts.top();
+    }
+
+    /**
+     * Get the read ranges most often held by conflicting transactions for which no overlapping write was found.
+     * @return candidate conflict ranges with their counts, most frequent first
+     */
+    @Nonnull
+    public List<HotRangeCount> getCandidateConflicts() {
+        return candidateConflicts.top();
+    }
+
+    /**
+     * Discard everything recorded so far, but not the registered subspaces.
+     */
+    public void reset() {
+        hotWrites.clear();
+        confirmedConflicts.clear();
+        candidateConflicts.clear();
+        synchronized (recentWrites) {
+            recentWrites.clear();
+        }
+    }
+
+    /**
+     * A conflict range added by a transaction.
+     */
+    static class ConflictRange {
+        @Nonnull
+        private final byte[] begin;
+        @Nonnull
+        private final byte[] end;
+        private final boolean write;
+        @Nonnull
+        private final String operation;
+
+        ConflictRange(@Nonnull byte[] begin, @Nonnull byte[] end, boolean write, @Nonnull String operation) {
+            this.begin = begin;
+            this.end = end;
+            this.write = write;
+            this.operation = operation;
+        }
+
+        @Nonnull
+        byte[] getBegin() {
+            return begin;
+        }
+
+        @Nonnull
+        byte[] getEnd() {
+            return end;
+        }
+
+        boolean isWrite() {
+            return write;
+        }
+
+        @Nonnull
+        String getOperation() {
+            return operation;
+        }
+
+        boolean overlaps(@Nonnull ConflictRange other) {
+            return ByteArrayUtil.compareUnsigned(begin, other.end) < 0 && ByteArrayUtil.compareUnsigned(other.begin, end) < 0;
+        }
+    }
+
+    private static class CommittedRange {
+        @Nonnull
+        private final ConflictRange range;
+        private final long committedVersion;
+
+        CommittedRange(@Nonnull ConflictRange range, long committedVersion) {
+            this.range = range;
+            this.committedVersion = committedVersion;
+        }
+    }
+
+    /**
+     * A key range attributed to a subspace and to the kind of operation that added it.
+     */
+    public static class HotRange {
+        @Nonnull
+        private final String label;
+        @Nonnull
+        private final String operation;
+        @Nonnull
+        private final String begin;
+        @Nonnull
+        private final String end;
+
+        public HotRange(@Nonnull String label, @Nonnull String operation, @Nonnull String begin, @Nonnull String end) {
+            this.label = label;
+            this.operation = operation;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        @Nonnull
+        public String getLabel() {
+            return label;
+        }
+
+        @Nonnull
+        public String getOperation() {
+            return operation;
+        }
+
+        @Nonnull
+        public String getBegin() {
+            return begin;
+        }
+
+        @Nonnull
+        public String getEnd() {
+            return end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            HotRange hotRange = (HotRange)o;
+            return label.equals(hotRange.label) && operation.equals(hotRange.operation) &&
+                   begin.equals(hotRange.begin) && end.equals(hotRange.end);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(label, operation, begin, end);
+        }
+
+        @Override
+        public String toString() {
+            return label + " " + operation + " [" + begin + ", " + end + ")";
+        }
+    }
+
+    /**
+     * A {@link HotRange} with its approximate count.
+     */
+    public static class HotRangeCount {
+        @Nonnull
+        private final HotRange range;
+        private final long count;
+        private final long error;
+
+        HotRangeCount(@Nonnull HotRange range, long count, long error) {
+            this.range = range;
+            this.count = count;
+            this.error = error;
+        }
+
+        @Nonnull
+        public HotRange getRange() {
+            return range;
+        }
+
+        /**
+         * Get the number of times the range was counted, which may be an overestimate.
+         * @return the approximate count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the most by which {@link #getCount()} may overestimate.
+         * @return the maximum overestimate
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return range + " = " + count + (error > 0 ? " (+/- " + error + ")" : "");
+        }
+    }
+
+    // A Space-Saving sketch: when full, a new item replaces the one with the smallest count and inherits that count.
+    private static class TopK {
+        private final int capacity;
+        @Nonnull
+        private final Map<HotRange, long[]> counters;
+
+        TopK(int capacity) {
+            this.capacity = capacity;
+            this.counters = new HashMap<>(capacity * 2);
+        }
+
+        synchronized void add(@Nonnull HotRange range) {
+            long[] counter = counters.get(range);
+            if (counter == null) {
+                if (counters.size() < capacity) {
+                    counter = new long[] {0L, 0L};
+                } else {
+                    HotRange minRange = null;
+                    long[] minCounter = null;
+                    for (Map.Entry<HotRange, long[]> entry : counters.entrySet()) {
+                        if (minCounter == null || entry.getValue()[0] < minCounter[0]) {
+                            minRange = entry.getKey();
+                            minCounter = entry.getValue();
+                        }
+                    }
+                    counters.remove(minRange);
+                    counter = new long[] {minCounter[0], minCounter[0]};
+                }
+                counters.put(range, counter);
+            }
+            counter[0]++;
+        }
+
+        @Nonnull
+        synchronized List<HotRangeCount> top() {
+            final List<HotRangeCount> result = new ArrayList<>(counters.size());
+            for (Map.Entry<HotRange, long[]> entry : counters.entrySet()) {
+                result.add(new HotRangeCount(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+            }
+            result.sort(Comparator.comparingLong(HotRangeCount::getCount).reversed());
+            return result;
+        }
+
+        synchronized void clear() {
+            counters.clear();
+        }
+    }
+}
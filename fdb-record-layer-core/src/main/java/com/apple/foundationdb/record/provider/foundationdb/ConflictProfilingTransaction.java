@@ -0,0 +1,218 @@
+/*
+ * ConflictProfilingTransaction.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.KeySelector;
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.MutationType;
+import com.apple.foundationdb.Range;
+import com.apple.foundationdb.StreamingMode;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.async.AsyncIterable;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link Transaction} that records the conflict ranges it adds for a {@link ConflictProfiler}.
+ * Reads through {@link #snapshot()} add no conflict ranges and so are not recorded. Ranges read by key selectors are
+ * approximated by the selectors' keys.
+ */
+class ConflictProfilingTransaction extends DelegatingTransaction {
+    private static final byte[] ZERO = {0x00};
+
+    @Nonnull
+    private final ConflictProfiler profiler;
+    @Nonnull
+    private final List<ConflictProfiler.ConflictRange> ranges = new ArrayList<>();
+
+    ConflictProfilingTransaction(@Nonnull Transaction transaction, @Nonnull ConflictProfiler profiler) {
+        super(transaction);
+        this.profiler = profiler;
+    }
+
+    @Nonnull
+    ConflictProfiler getProfiler() {
+        return profiler;
+    }
+
+    @Nonnull
+    synchronized List<ConflictProfiler.ConflictRange> getRanges() {
+        return new ArrayList<>(ranges);
+    }
+
+    private synchronized void record(@Nonnull byte[] begin, @Nonnull byte[] end, boolean write, @Nonnull String operation) {
+        ranges.add(new ConflictProfiler.ConflictRange(begin, end, write, operation));
+    }
+
+    private void recordKey(@Nonnull byte[] key, boolean write, @Nonnull String operation) {
+        record(key, ByteArrayUtil.join(key, ZERO), write, operation);
+    }
+
+    @Override
+    public void addReadConflictRange(byte[] keyBegin, byte[] keyEnd) {
+        record(keyBegin, keyEnd, false, "addReadConflictRange");
+        super.addReadConflictRange(keyBegin, keyEnd);
+    }
+
+    @Override
+    public void addReadConflictKey(byte[] key) {
+        recordKey(key, false, "addReadConflictKey");
+        super.addReadConflictKey(key);
+    }
+
+    @Override
+    public void addWriteConflictRange(byte[] keyBegin, byte[] keyEnd) {
+        record(keyBegin, keyEnd, true, "addWriteConflictRange");
+        super.addWriteConflictRange(keyBegin, keyEnd);
+    }
+
+    @Override
+    public void addWriteConflictKey(byte[] key) {
+        recordKey(key, true, "addWriteConflictKey");
+        super.addWriteConflictKey(key);
+    }
+
+    @Override
+    public void set(byte[] key, byte[] value) {
+        recordKey(key, true, "set");
+        super.set(key, value);
+    }
+
+    @Override
+    public void clear(byte[] key) {
+        recordKey(key, true, "clear");
+        super.clear(key);
+    }
+
+    @Override
+    public void clear(byte[] beginKey, byte[] endKey) {
+        record(beginKey, endKey, true, "clearRange");
+        super.clear(beginKey, endKey);
+    }
+
+    @Override
+    public void clear(Range range) {
+        record(range.begin, range.end, true, "clearRange");
+        super.clear(range);
+    }
+
+    @Override
+    @Deprecated
+    public void clearRangeStartsWith(byte[] prefix) {
+        final Range range = Range.startsWith(prefix);
+        record(range.begin, range.end, true, "clearRange");
+        super.clearRangeStartsWith(prefix);
+    }
+
+    @Override
+    public void mutate(MutationType optype, byte[] key, byte[] param) {
+        recordKey(key, true, "mutate:" + optype.name());
+        super.mutate(optype, key, param);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> get(byte[] key) {
+        recordKey(key, false, "get");
+        return super.get(key);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getKey(KeySelector selector) {
+        recordKey(selector.getKey(), false, "getKey");
+        return super.getKey(selector);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(KeySelector begin, KeySelector end, int limit, boolean reverse, StreamingMode mode) {
+        record(begin.getKey(), end.getKey(), false, "getRange");
+        return super.getRange(begin, end, limit, reverse, mode);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(KeySelector begin, KeySelector end) {
+        record(begin.getKey(), end.getKey(), false, "getRange");
+        return super.getRange(begin, end);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(KeySelector begin, KeySelector end, int limit) {
+        record(begin.getKey(), end.getKey(), false, "getRange");
+        return super.getRange(begin, end, limit);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(KeySelector begin, KeySelector end, int limit, boolean reverse) {
+        record(begin.getKey(), end.getKey(), false, "getRange");
+        return super.getRange(begin, end, limit, reverse);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(byte[] begin, byte[] end) {
+        record(begin, end, false, "getRange");
+        return super.getRange(begin, end);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(byte[] begin, byte[] end, int limit) {
+        record(begin, end, false, "getRange");
+        return super.getRange(begin, end, limit);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(byte[] begin, byte[] end, int limit, boolean reverse) {
+        record(begin, end, false, "getRange");
+        return super.getRange(begin, end, limit, reverse);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(byte[] begin, byte[] end, int limit, boolean reverse, StreamingMode mode) {
+        record(begin, end, false, "getRange");
+        return super.getRange(begin, end, limit, reverse, mode);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(Range range) {
+        record(range.begin, range.end, false, "getRange");
+        return super.getRange(range);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(Range range, int limit) {
+        record(range.begin, range.end, false, "getRange");
+        return super.getRange(range, limit);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(Range range, int limit, boolean reverse) {
+        record(range.begin, range.end, false, "getRange");
+        return super.getRange(range, limit, reverse);
+    }
+
+    @Override
+    public AsyncIterable<KeyValue> getRange(Range range, int limit, boolean reverse, StreamingMode mode) {
+        record(range.begin, range.end, false, "getRange");
+        return super.getRange(range, limit, reverse, mode);
+    }
+}
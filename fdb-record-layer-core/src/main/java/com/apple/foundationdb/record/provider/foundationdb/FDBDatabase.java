@@ -111,6 +111,16 @@ public class FDBDatabase {
     @Nonnull
     private ExceptionMapper asyncToSyncExceptionMapper;
     @Nonnull
+    private BlockingStrategy blockingStrategy = BlockingStrategy.FUTURE_GET;
+    @Nonnull
+    private FDBRecordContext.MdcPropagation mdcPropagation = FDBRecordContext.MdcPropagation.RESTORE;
+    @Nullable
+    private volatile ConflictProfiler conflictProfiler;
+    @Nonnull
+    private volatile TransactionResourceBudget softResourceBudget = TransactionResourceBudget.UNLIMITED;
+    @Nonnull
+    private volatile TransactionResourceBudget hardResourceBudget = TransactionResourceBudget.UNLIMITED;
+    @Nonnull
     private AsyncLoadingCache<LocatableResolver, ResolverStateProto.State> resolverStateCache;
     @Nonnull
     private Cache<ScopedValue<String>, ResolverResult> directoryCache;
@@ -134,6 +144,8 @@ public class FDBDatabase {
 
     private boolean trackLastSeenVersionOnRead = false;
     private boolean trackLastSeenVersionOnCommit = false;
+    @Nullable
+    private volatile ReadVersionBatcher readVersionBatcher;
 
     private String datacenterId;
 
@@ -213,6 +225,49 @@ public class FDBDatabase {
         return trackLastSeenVersionOnRead || trackLastSeenVersionOnCommit;
     }
 
+    /**
+     * Set the window within which requests for read versions are coalesced.
+     * When batching is on, {@link #getReadVersion(FDBRecordContext)} on a context that does not yet have a read
+     * version joins a batch of such requests that share a single GRV, issued once the window has elapsed. The version
+     * is then remembered as the last seen version, so contexts opened with {@link WeakReadSemantics} can reuse it
+     * within their staleness bound without any GRV at all. Batching is off by default.
+     * @param windowMillis how long to gather requests before issuing the shared GRV or a negative number to turn
+     * batching off
+     */
+    public synchronized void setReadVersionBatchWindowMillis(long windowMillis) {
+        if (windowMillis < 0) {
+            readVersionBatcher = null;
+        } else {
+            readVersionBatcher = new ReadVersionBatcher(this::getBatchReadVersion, windowMillis);
+        }
+    }
+
+    /**
+     * Get the window within which requests for read versions are coalesced.
+     * @return the batching window or <code>-1</code> if batching is off
+     * @see #setReadVersionBatchWindowMillis(long)
+     */
+    public long getReadVersionBatchWindowMillis() {
+        final ReadVersionBatcher batcher = readVersionBatcher;
+        return batcher == null ? -1 : batcher.getWindowMillis();
+    }
+
+    public boolean isReadVersionBatching() {
+        return readVersionBatcher != null;
+    }
+
+    @Nonnull
+    private CompletableFuture<Long> getBatchReadVersion() {
+        final Transaction transaction = database().createTransaction(getExecutor());
+        final long startTime = System.currentTimeMillis();
+        return transaction.getReadVersion().whenComplete((readVersion, err) -> {
+            transaction.close();
+            if (err == null) {
+                updateLastSeenFDBVersion(startTime, readVersion);
+            }
+        });
+    }
+
     /**
      * Get the factory that produced this database.
      * @return the database factory
@@ -273,7 +328,7 @@ public class FDBDatabase {
             context.setTimer(timer);
             timer.increment(FDBStoreTimer.Counts.OPEN_CONTEXT);
         }
-        if (isTrackLastSeenVersion() && (weakReadSemantics != null)) {
+        if ((isTrackLastSeenVersion() || isReadVersionBatching()) && (weakReadSemantics != null)) {
             Pair<Long, Long> pair = lastSeenFDBVersion.get();
             if (pair != initialVersionPair) {
                 long version = pair.getLeft();
@@ -282,7 +337,7 @@ public class FDBDatabase {
                 // otherwise getReadVersion does not use the cached value and results in a GRV call to FDB
                 if (version >= weakReadSemantics.getMinVersion() &&
                         (System.currentTimeMillis() - versionTimeMillis) <= weakReadSemantics.getStalenessBoundMillis()) {
-                    context.ensureActive().setReadVersion(version);
+                    context.setReadVersion(version);
                     if (timer != null) {
                         timer.increment(FDBStoreTimer.Counts.SET_READ_VERSION_TO_LAST_SEEN);
                     }
@@ -317,10 +372,26 @@ public class FDBDatabase {
      * Get the read version (GRV) for the given context.
      * An explicit get read version is no more expensive than the implicit one that every operation will entail.
      * Measuring it explicitly gives an indication of the cluster's GRV latency, which is driven by its rate keeping.
+     *
+     * <p>
+     * If {@linkplain #setReadVersionBatchWindowMillis(long) read version batching} is on and the context does not
+     * have a read version yet, it gets one shared with other contexts asking at about the same time. This must be
+     * called before the context's transaction is used, since a transaction that may have read already has its own
+     * version. Such a context, or one that starts using its transaction before the batch completes, just gets its own.
+     * </p>
      * @param context transaction to use to access the database
      * @return a future that will be completed with the read version of the current transaction
      */
     public CompletableFuture<Long> getReadVersion(@Nonnull FDBRecordContext context) {
+        final ReadVersionBatcher batcher = readVersionBatcher;
+        if (batcher != null && context.canSetReadVersion()) {
+            return batcher.getReadVersion().thenApply(readVersion -> {
+                if (context.setReadVersion(readVersion) && context.getTimer() != null) {
+                    context.getTimer().increment(FDBStoreTimer.Counts.BATCHED_READ_VERSION);
+                }
+                return readVersion;
+            }).thenCompose(vignore -> context.ensureActive().getReadVersion());
+        }
         CompletableFuture<Long> readVersionFuture = context.ensureActive().getReadVersion();
         if (!isTrackLastSeenVersionOnRead()) {
             return readVersionFuture;
@@ -676,6 +747,102 @@ public class FDBDatabase {
         this.asyncToSyncExceptionMapper = asyncToSyncExceptionMapper;
     }
 
+    /**
+     * Get how {@link #asyncToSync} waits for futures that have not completed.
+     * @return the blocking strategy
+     */
+    @Nonnull
+    public BlockingStrategy getBlockingStrategy() {
+        return blockingStrategy;
+    }
+
+    /**
+     * Set how {@link #asyncToSync} waits for futures that have not completed.
+     * @param blockingStrategy the blocking strategy to use
+     */
+    public void setBlockingStrategy(@Nonnull BlockingStrategy blockingStrategy) {
+        this.blockingStrategy = blockingStrategy;
+    }
+
+    /**
+     * Get how contexts opened with an MDC context propagate it to their asynchronous tasks.
+     * @return the default MDC propagation mode for new contexts
+     */
+    @Nonnull
+    public FDBRecordContext.MdcPropagation getMdcPropagation() {
+        return mdcPropagation;
+    }
+
+    /**
+     * Set how contexts opened with an MDC context from now on propagate it to their asynchronous tasks.
+     * The default is {@link FDBRecordContext.MdcPropagation#RESTORE}.
+     * @param mdcPropagation the default MDC propagation mode for new contexts
+     * @see FDBRecordContext#setMdcPropagation(FDBRecordContext.MdcPropagation)
+     */
+    public void setMdcPropagation(@Nonnull FDBRecordContext.MdcPropagation mdcPropagation) {
+        this.mdcPropagation = mdcPropagation;
+    }
+
+    /**
+     * Get the profiler that records the conflict ranges of every context opened from this database, if any.
+     * @return the conflict profiler or <code>null</code> if contexts are not profiled by default
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nullable
+    public ConflictProfiler getConflictProfiler() {
+        return conflictProfiler;
+    }
+
+    /**
+     * Set a profiler to record the conflict ranges of every context opened from this database from now on.
+     * @param conflictProfiler the conflict profiler or <code>null</code> to stop profiling new contexts
+     * @see FDBRecordContext#setConflictProfiler(ConflictProfiler)
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setConflictProfiler(@Nullable ConflictProfiler conflictProfiler) {
+        this.conflictProfiler = conflictProfiler;
+    }
+
+    /**
+     * Get the soft resource budget given to contexts opened from this database.
+     * @return the default soft resource budget
+     * @see FDBRecordContext#setSoftResourceBudget(TransactionResourceBudget)
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public TransactionResourceBudget getSoftResourceBudget() {
+        return softResourceBudget;
+    }
+
+    /**
+     * Set the soft resource budget given to contexts opened from this database from now on.
+     * @param softResourceBudget the default soft resource budget
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setSoftResourceBudget(@Nonnull TransactionResourceBudget softResourceBudget) {
+        this.softResourceBudget = softResourceBudget;
+    }
+
+    /**
+     * Get the hard resource budget given to contexts opened from this database.
+     * @return the default hard resource budget
+     * @see FDBRecordContext#setHardResourceBudget(TransactionResourceBudget)
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public TransactionResourceBudget getHardResourceBudget() {
+        return hardResourceBudget;
+    }
+
+    /**
+     * Set the hard resource budget given to contexts opened from this database from now on.
+     * @param hardResourceBudget the default hard resource budget
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setHardResourceBudget(@Nonnull TransactionResourceBudget hardResourceBudget) {
+        this.hardResourceBudget = hardResourceBudget;
+    }
+
     protected RuntimeException mapAsyncToSyncException(@Nonnull Throwable ex) {
         return asyncToSyncExceptionMapper.apply(ex, null);
     }
@@ -696,9 +863,9 @@ public class FDBDatabase {
             final long startTime = System.nanoTime();
             try {
                 if (timeout != null) {
-                    return async.get(timeout.getLeft(), timeout.getRight());
+                    return blockingStrategy.get(async, timeout.getLeft(), timeout.getRight());
                 } else {
-                    return async.get();
+                    return blockingStrategy.get(async, -1L, TimeUnit.MILLISECONDS);
                 }
             } catch (TimeoutException ex) {
                 if (timer != null) {
@@ -31,9 +31,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -53,6 +55,10 @@ public class FDBDatabaseFactory {
     @Nullable
     private Executor networkExecutor = null;
     private Executor executor = ForkJoinPool.commonPool();
+    @Nonnull
+    private BlockingStrategy blockingStrategy = BlockingStrategy.FUTURE_GET;
+    @Nonnull
+    private FDBRecordContext.MdcPropagation mdcPropagation = FDBRecordContext.MdcPropagation.RESTORE;
 
     @Nullable
     private FDB fdb;
@@ -128,6 +134,54 @@ public class FDBDatabaseFactory {
         this.executor = executor;
     }
 
+    /**
+     * Run asynchronous continuations on a new virtual thread for each task, rather than on a pool of platform threads.
+     * Virtual threads require a Java runtime that supports them; this does not change the language level needed
+     * by this library. Synchronous callers running on virtual threads will usually also want to
+     * {@linkplain #setBlockingStrategy(BlockingStrategy) set the blocking strategy} to {@link BlockingStrategy#PARK}.
+     * @throws RecordCoreException if the running Java runtime does not support virtual threads
+     */
+    public void setVirtualThreadPerTaskExecutor() {
+        final Executor virtualExecutor;
+        try {
+            virtualExecutor = (Executor)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+            throw new RecordCoreException("virtual threads are not supported by this Java runtime", ex)
+                    .addLogInfo("javaVersion", System.getProperty("java.version"));
+        }
+        setExecutor(virtualExecutor);
+    }
+
+    @Nonnull
+    public BlockingStrategy getBlockingStrategy() {
+        return blockingStrategy;
+    }
+
+    /**
+     * Set how the synchronous API waits for the asynchronous operations that it calls for databases created
+     * by this factory from now on. The default is {@link BlockingStrategy#FUTURE_GET}.
+     * @param blockingStrategy the blocking strategy to use
+     * @see FDBDatabase#setBlockingStrategy(BlockingStrategy)
+     */
+    public void setBlockingStrategy(@Nonnull BlockingStrategy blockingStrategy) {
+        this.blockingStrategy = blockingStrategy;
+    }
+
+    @Nonnull
+    public FDBRecordContext.MdcPropagation getMdcPropagation() {
+        return mdcPropagation;
+    }
+
+    /**
+     * Set how record contexts propagate their MDC context to asynchronous tasks, for databases created
+     * by this factory from now on.
+     * @param mdcPropagation the MDC propagation mode
+     * @see FDBDatabase#setMdcPropagation(FDBRecordContext.MdcPropagation)
+     */
+    public void setMdcPropagation(@Nonnull FDBRecordContext.MdcPropagation mdcPropagation) {
+        this.mdcPropagation = mdcPropagation;
+    }
+
     public synchronized void shutdown() {
         if (inited) {
             if (LOGGER.isDebugEnabled()) {
@@ -356,6 +410,8 @@ public class FDBDatabaseFactory {
             database.setTrackLastSeenVersion(getTrackLastSeenVersion());
             database.setResolverStateRefreshTimeMillis(getStateRefreshTimeMillis());
             database.setDatacenterId(getDatacenterId());
+            database.setBlockingStrategy(getBlockingStrategy());
+            database.setMdcPropagation(getMdcPropagation());
             databases.put(clusterFile, database);
         }
         return database;
@@ -72,6 +72,8 @@ public class FDBDatabaseRunner implements AutoCloseable {
     private Map<String, String> mdcContext;
     @Nullable
     private FDBDatabase.WeakReadSemantics weakReadSemantics;
+    @Nullable
+    private ConflictProfiler conflictProfiler;
 
     private int maxAttempts;
     private long maxDelayMillis;
@@ -163,6 +165,27 @@ public class FDBDatabaseRunner implements AutoCloseable {
         this.mdcContext = mdcContext;
     }
 
+    /**
+     * Get the profiler of conflict ranges used in record contexts opened by this runner.
+     * @return the conflict profiler or <code>null</code> if not profiling
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nullable
+    public ConflictProfiler getConflictProfiler() {
+        return conflictProfiler;
+    }
+
+    /**
+     * Set the profiler of conflict ranges used in record contexts opened by this runner.
+     * Since the runner retries conflicts, this is a way to see what caused the retries.
+     * @param conflictProfiler the conflict profiler or <code>null</code> to not profile
+     * @see FDBRecordContext#setConflictProfiler(ConflictProfiler)
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setConflictProfiler(@Nullable ConflictProfiler conflictProfiler) {
+        this.conflictProfiler = conflictProfiler;
+    }
+
     /**
      * Get the read semantics used in record contexts opened by this runner.
      * @return allowable staleness parameters if caching read versions
@@ -287,10 +310,23 @@ public class FDBDatabaseRunner implements AutoCloseable {
             throw new RunnerClosed();
         }
         FDBRecordContext context = database.openContext(mdcContext, timer, weakReadSemantics);
+        if (conflictProfiler != null) {
+            context.setConflictProfiler(conflictProfiler);
+        }
         addContextToClose(context);
         return context;
     }
 
+    // Get the context's read version before running, so that it can share a GRV with other contexts.
+    @Nonnull
+    private CompletableFuture<Void> joinReadVersionBatch(@Nonnull FDBRecordContext context) {
+        if (database.isReadVersionBatching()) {
+            return database.getReadVersion(context).thenApply(vignore -> null);
+        } else {
+            return AsyncUtil.DONE;
+        }
+    }
+
     private class RunRetriable<T> {
         private int tries = 0;
         private long currDelay = getInitialDelayMillis();
@@ -358,7 +394,7 @@ public class FDBDatabaseRunner implements AutoCloseable {
             AsyncUtil.whileTrue(() -> {
                 try {
                     context = openContext();
-                    return retriable.apply(context).thenCompose(val ->
+                    return joinReadVersionBatch(context).thenCompose(vignore -> retriable.apply(context)).thenCompose(val ->
                         context.commitAsync().thenApply( vignore -> val)
                     ).handle(this::handle).thenCompose(Function.identity());
                 } catch (Throwable e) {
@@ -385,6 +421,7 @@ public class FDBDatabaseRunner implements AutoCloseable {
             while (again) {
                 try {
                     context = openContext();
+                    database.asyncToSync(timer, FDBStoreTimer.Waits.WAIT_GET_READ_VERSION, joinReadVersionBatch(context));
                     T ret = retriable.apply(context);
                     context.commit();
                     again = database.asyncToSync(timer, FDBStoreTimer.Waits.WAIT_RETRY_DELAY, handle(ret, null));
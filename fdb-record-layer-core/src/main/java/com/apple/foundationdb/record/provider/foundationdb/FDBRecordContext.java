@@ -21,12 +21,16 @@
 package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.API;
+import com.apple.foundationdb.FDBException;
 import com.apple.foundationdb.MutationType;
 import com.apple.foundationdb.ReadTransaction;
 import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.async.MoreAsyncUtil;
+import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCoreStorageException;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.ByteArrayUtil2;
 import com.apple.foundationdb.tuple.Tuple;
@@ -39,7 +43,10 @@ import org.slf4j.MDC;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
@@ -77,7 +84,11 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
     @Nonnull private AtomicInteger localVersion;
     @Nonnull private ConcurrentNavigableMap<Tuple, Integer> localVersionCache;
     @Nonnull private ConcurrentNavigableMap<byte[], Pair<MutationType, byte[]>> versionMutationCache;
+    @Nonnull private ConcurrentNavigableMap<byte[], CompletableFuture<RangeSetSnapshot>> rangeSetSnapshots;
+    @Nonnull private final TransactionResourceTracker resourceTracker;
     private FDBDatabase.WeakReadSemantics weakReadSemantics;
+    private boolean readVersionSet;
+    private volatile boolean transactionInUse;
     @Nullable private Consumer<FDBStoreTimer.Wait> hookForAsyncToSync = null;
 
     protected FDBRecordContext(@Nonnull FDBDatabase fdb, @Nullable Map<String, String> mdcContext,
@@ -87,6 +98,10 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         this.localVersion = new AtomicInteger(0);
         this.localVersionCache = new ConcurrentSkipListMap<>();
         this.versionMutationCache = new ConcurrentSkipListMap<>(ByteArrayUtil::compareUnsigned);
+        this.rangeSetSnapshots = new ConcurrentSkipListMap<>(ByteArrayUtil::compareUnsigned);
+        this.resourceTracker = new TransactionResourceTracker(transactionCreateTime);
+        resourceTracker.setSoftBudget(fdb.getSoftResourceBudget());
+        resourceTracker.setHardBudget(fdb.getHardResourceBudget());
 
         if (transactionIsTraced) {
             final String uuid = mdcContext == null ? null : mdcContext.get("uuid");
@@ -101,6 +116,11 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         }
 
         this.weakReadSemantics = weakReadSemantics;
+
+        final ConflictProfiler conflictProfiler = fdb.getConflictProfiler();
+        if (conflictProfiler != null) {
+            setConflictProfiler(conflictProfiler);
+        }
     }
 
     public boolean isClosed() {
@@ -140,6 +160,11 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
     public CompletableFuture<Void> commitAsync() {
         long startTimeNanos = System.nanoTime();
         ensureActive();
+        final TransactionBudgetExceededException budgetExceeded = resourceTracker.getHardBudgetExceeded();
+        if (budgetExceeded != null) {
+            // Some of the work that went over the budget may already be in the transaction.
+            throw new TransactionBudgetExceededException("cannot commit transaction that exceeded hard resource budget", budgetExceeded);
+        }
         versionMutationCache.forEach((key, valuePair) ->
                 transaction.mutate(valuePair.getLeft(), key, valuePair.getRight()));
         runCommitChecks();
@@ -148,6 +173,9 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         return transaction.commit().whenComplete((v, ex) -> {
             StoreTimer.Event event = FDBStoreTimer.Events.COMMIT;
             try {
+                if (transaction instanceof ConflictProfilingTransaction) {
+                    profileCommit((ConflictProfilingTransaction)transaction, ex);
+                }
                 if (ex != null) {
                     event = FDBStoreTimer.Events.COMMIT_FAILURE;
                 } else {
@@ -181,15 +209,110 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         });
     }
 
+    private void profileCommit(@Nonnull ConflictProfilingTransaction profiled, @Nullable Throwable ex) {
+        final ConflictProfiler profiler = profiled.getProfiler();
+        if (ex == null) {
+            profiler.committed(profiled.getRanges(), profiled.getCommittedVersion());
+        } else if (isNotCommitted(ex)) {
+            final CompletableFuture<Long> readVersion = profiled.getReadVersion();
+            final Long version = MoreAsyncUtil.isCompletedNormally(readVersion) ? readVersion.join() : null;
+            if (profiler.conflicted(profiled.getRanges(), version)) {
+                increment(FDBStoreTimer.Counts.PROFILED_CONFLICTS);
+            }
+        }
+    }
+
+    private static boolean isNotCommitted(@Nullable Throwable ex) {
+        Throwable current = ex;
+        while (current != null) {
+            if (current instanceof FDBException) {
+                return ((FDBException)current).getCode() == 1020; // not_committed
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Record the conflict ranges added by this context's transaction from now on in the given profiler.
+     * @param profiler the profiler in which to record conflict ranges
+     * @see ConflictProfiler
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public synchronized void setConflictProfiler(@Nonnull ConflictProfiler profiler) {
+        final Transaction current = activeTransaction();
+        if (current instanceof ConflictProfilingTransaction) {
+            if (((ConflictProfilingTransaction)current).getProfiler() == profiler) {
+                return;
+            }
+            throw new RecordCoreException("context already has a different conflict profiler");
+        }
+        transaction = new ConflictProfilingTransaction(current, profiler);
+    }
+
+    /**
+     * Get the profiler recording this context's conflict ranges, if any.
+     * @return the conflict profiler or <code>null</code> if this context is not being profiled
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nullable
+    public ConflictProfiler getConflictProfiler() {
+        final Transaction current = transaction;
+        return current instanceof ConflictProfilingTransaction ? ((ConflictProfilingTransaction)current).getProfiler() : null;
+    }
+
+    /**
+     * Get the accounting of resources used by this context, which also holds its resource budgets.
+     * @return this context's resource tracker
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public TransactionResourceTracker getResourceTracker() {
+        return resourceTracker;
+    }
+
+    /**
+     * Set the budget beyond which cursors opened in this context stop early with
+     * {@link com.apple.foundationdb.record.RecordCursor.NoNextReason#TRANSACTION_BUDGET_REACHED}.
+     * @param budget the soft resource budget
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setSoftResourceBudget(@Nonnull TransactionResourceBudget budget) {
+        resourceTracker.setSoftBudget(budget);
+    }
+
+    /**
+     * Set the budget beyond which operations in this context fail with a {@link TransactionBudgetExceededException}.
+     * @param budget the hard resource budget
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setHardResourceBudget(@Nonnull TransactionResourceBudget budget) {
+        resourceTracker.setHardBudget(budget);
+    }
+
     @Override
     @Nonnull
     public Transaction ensureActive() {
+        final Transaction current = activeTransaction();
+        if (!transactionInUse) {
+            // The caller may read with the transaction, which gives it a read version that cannot be replaced.
+            markTransactionInUse();
+        }
+        return current;
+    }
+
+    @Nonnull
+    private Transaction activeTransaction() {
         if (transaction == null) {
             throw new RecordCoreStorageException("Transaction is no longer active.");
         }
         return transaction;
     }
 
+    private synchronized void markTransactionInUse() {
+        transactionInUse = true;
+    }
+
     @Nonnull
     public ReadTransaction readTransaction(boolean snapshot) {
         if (snapshot) {
@@ -211,6 +334,41 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         return transactionCreateTime;
     }
 
+    /**
+     * Get whether this context's read version has been set explicitly, whether from the last seen version or from a
+     * batch shared with other contexts. A context that has done reads of its own may have a read version even if this
+     * returns <code>false</code>, so a context whose transaction has been used is not given a batched read version.
+     * @return <code>true</code> if the read version has been set
+     * @see FDBDatabase#getReadVersion(FDBRecordContext)
+     */
+    public synchronized boolean hasReadVersion() {
+        return readVersionSet;
+    }
+
+    /**
+     * Get whether this context's read version can still be set. It cannot once it has been set or once the transaction
+     * has been handed out by {@link #ensureActive()}, since it may then have been used to read, which gets the
+     * transaction its own read version.
+     * @return <code>true</code> if {@link #setReadVersion(long)} would set the read version
+     */
+    synchronized boolean canSetReadVersion() {
+        return !readVersionSet && !transactionInUse;
+    }
+
+    /**
+     * Set this context's read version, unless it has been set already or the transaction may have read.
+     * @param readVersion the read version to use
+     * @return <code>true</code> if the read version was set by this call
+     */
+    synchronized boolean setReadVersion(long readVersion) {
+        if (!canSetReadVersion()) {
+            return false;
+        }
+        activeTransaction().setReadVersion(readVersion);
+        readVersionSet = true;
+        return true;
+    }
+
     /**
      * A consistency check, such as uniqueness, that can execute asynchronously and is finally checked at or before commit time.
      */
@@ -233,12 +391,19 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         commitChecks.add(check);
     }
 
-    public synchronized void runCommitChecks() {
-        while (!commitChecks.isEmpty()) {
-            commitChecks.remove().check();
+    public void runCommitChecks() {
+        // Checks may need to wait, which should not be done while holding this context's monitor.
+        CommitCheck check;
+        while ((check = nextCommitCheck()) != null) {
+            check.check();
         }
     }
 
+    @Nullable
+    private synchronized CommitCheck nextCommitCheck() {
+        return commitChecks.poll();
+    }
+
     /**
      * A hook to run after commit has completed successfully.
      */
@@ -252,12 +417,18 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         afterCommits.add(afterCommit);
     }
 
-    public synchronized void runAfterCommits() {
-        while (!afterCommits.isEmpty()) {
-            afterCommits.remove().run();
+    public void runAfterCommits() {
+        AfterCommit afterCommit;
+        while ((afterCommit = nextAfterCommit()) != null) {
+            afterCommit.run();
         }
     }
 
+    @Nullable
+    private synchronized AfterCommit nextAfterCommit() {
+        return afterCommits.poll();
+    }
+
     /**
      * Return the eight byte version assigned to this context at commit time. This version is
      * used internally by the database to determine which transactions should be visible
@@ -337,25 +508,70 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         if (mdcContext == null) {
             return fdb.getExecutor();
         } else {
-            return new ContextRestoringExecutor(fdb.getExecutor(), mdcContext);
+            return new ContextRestoringExecutor(fdb.getExecutor(), mdcContext, fdb.getMdcPropagation());
         }
     }
 
+    /**
+     * How the MDC context given when opening a record context is made current for the asynchronous tasks
+     * run by the record context's executor.
+     */
+    public enum MdcPropagation {
+        /**
+         * Replace the whole MDC of the thread with the context before each task and remove the context's keys after it.
+         */
+        RESTORE,
+        /**
+         * Leave the context's entries in place after each task, so that successive tasks on a thread from the same
+         * context need no change to the MDC beyond putting back any entry whose value has changed. When a thread runs
+         * a task from a different context than the last one it set up, its whole MDC is replaced, so no entries are
+         * left over from that context. Other tasks later run by the same thread see the context's entries until they
+         * are replaced.
+         */
+        RESTORE_IF_DIFFERENT,
+        /**
+         * Do not propagate the MDC context at all, so that tasks are handed to the executor unwrapped.
+         */
+        NONE
+    }
+
     static class ContextRestoringExecutor implements Executor {
+        // The snapshot most recently made current on each thread by RESTORE_IF_DIFFERENT, compared by identity.
+        private static final ThreadLocal<Map<String, String>> LAST_APPLIED = new ThreadLocal<>();
+
         @Nonnull
         private final Executor delegate;
         @Nonnull
         private final Map<String, String> mdcContext;
+        @Nonnull
+        private final String[] mdcKeys;
+        @Nonnull
+        private final String[] mdcValues;
+        @Nonnull
+        private volatile MdcPropagation propagation;
 
-        public ContextRestoringExecutor(@Nonnull Executor delegate, @Nonnull Map<String, String> mdcContext) {
+        public ContextRestoringExecutor(@Nonnull Executor delegate, @Nonnull Map<String, String> mdcContext,
+                                        @Nonnull MdcPropagation propagation) {
             this.delegate = delegate;
-            this.mdcContext = mdcContext;
+            // Snapshot once, so that each task can restore without iterating over (or copying) a map.
+            this.mdcContext = Collections.unmodifiableMap(new HashMap<>(mdcContext));
+            this.mdcKeys = new String[this.mdcContext.size()];
+            this.mdcValues = new String[this.mdcContext.size()];
+            int i = 0;
+            for (Map.Entry<String, String> entry : this.mdcContext.entrySet()) {
+                mdcKeys[i] = entry.getKey();
+                mdcValues[i] = entry.getValue();
+                i++;
+            }
+            this.propagation = propagation;
         }
 
         @Override
         public void execute(Runnable task) {
-            if (!(task instanceof ContextRestoringRunnable)) {
-                task = new ContextRestoringRunnable(task, mdcContext);
+            // The mode is fixed when the task is submitted, so that changing it does not affect tasks already queued.
+            final MdcPropagation currentPropagation = propagation;
+            if (currentPropagation != MdcPropagation.NONE && !(task instanceof ContextRestoringRunnable)) {
+                task = new ContextRestoringRunnable(task, this, currentPropagation);
             }
             delegate.execute(task);
         }
@@ -364,24 +580,78 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         public Map<String, String> getMdcContext() {
             return mdcContext;
         }
+
+        @Nonnull
+        public MdcPropagation getMdcPropagation() {
+            return propagation;
+        }
+
+        public void setMdcPropagation(@Nonnull MdcPropagation propagation) {
+            this.propagation = propagation;
+        }
+
+        void restore() {
+            MDC.clear();
+            for (int i = 0; i < mdcKeys.length; i++) {
+                MDC.put(mdcKeys[i], mdcValues[i]);
+            }
+        }
+
+        void clear() {
+            for (String mdcKey : mdcKeys) {
+                MDC.remove(mdcKey);
+            }
+            // Whatever was applied to this thread before is no longer current.
+            LAST_APPLIED.remove();
+        }
+
+        // Only put entries that differ, since MDC adapters can copy their whole map on each put. A different context's
+        // entries could still be in place, so switching contexts replaces the whole MDC.
+        void setCurrentIfDifferent() {
+            if (LAST_APPLIED.get() != mdcContext) {
+                restore();
+                LAST_APPLIED.set(mdcContext);
+                return;
+            }
+            for (int i = 0; i < mdcKeys.length; i++) {
+                if (!Objects.equals(mdcValues[i], MDC.get(mdcKeys[i]))) {
+                    MDC.put(mdcKeys[i], mdcValues[i]);
+                }
+            }
+        }
     }
 
     static class ContextRestoringRunnable implements Runnable {
         private final Runnable delegate;
-        private final Map<String, String> mdcContext;
+        private final ContextRestoringExecutor executor;
+        private final MdcPropagation propagation;
 
-        public ContextRestoringRunnable(@Nonnull Runnable delegate, @Nonnull Map<String, String> mdcContext) {
+        public ContextRestoringRunnable(@Nonnull Runnable delegate, @Nonnull ContextRestoringExecutor executor,
+                                        @Nonnull MdcPropagation propagation) {
             this.delegate = delegate;
-            this.mdcContext = mdcContext;
+            this.executor = executor;
+            this.propagation = propagation;
         }
 
         @Override
         public void run() {
-            try {
-                restoreMdc(mdcContext);
-                delegate.run();
-            } finally {
-                clearMdc(mdcContext);
+            switch (propagation) {
+                case RESTORE_IF_DIFFERENT:
+                    executor.setCurrentIfDifferent();
+                    delegate.run();
+                    break;
+                case NONE:
+                    delegate.run();
+                    break;
+                case RESTORE:
+                default:
+                    try {
+                        executor.restore();
+                        delegate.run();
+                    } finally {
+                        executor.clear();
+                    }
+                    break;
             }
         }
     }
@@ -395,16 +665,28 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         }
     }
 
-    static void restoreMdc(@Nonnull Map<String, String> mdcContext) {
-        MDC.clear();
-        for (Map.Entry<String, String> entry : mdcContext.entrySet()) {
-            MDC.put(entry.getKey(), entry.getValue());
+    /**
+     * Get how this context's MDC context is propagated to its asynchronous tasks.
+     * @return the MDC propagation mode or {@code null} if this context was opened without an MDC context
+     */
+    @Nullable
+    public MdcPropagation getMdcPropagation() {
+        if (getExecutor() instanceof ContextRestoringExecutor) {
+            return ((ContextRestoringExecutor)getExecutor()).getMdcPropagation();
+        } else {
+            return null;
         }
     }
 
-    static void clearMdc(@Nonnull Map<String, String> mdcContext) {
-        for (String key : mdcContext.keySet()) {
-            MDC.remove(key);
+    /**
+     * Change how this context's MDC context is propagated to asynchronous tasks submitted from now on.
+     * This can be used to turn propagation off around hot paths that do not log, such as loading many records.
+     * It has no effect if the context was opened without an MDC context.
+     * @param propagation the MDC propagation mode
+     */
+    public void setMdcPropagation(@Nonnull MdcPropagation propagation) {
+        if (getExecutor() instanceof ContextRestoringExecutor) {
+            ((ContextRestoringExecutor)getExecutor()).setMdcPropagation(propagation);
         }
     }
 
@@ -509,6 +791,51 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         return existingValue != null ? existingValue.getRight() : null;
     }
 
+    /**
+     * Get a snapshot of the {@link com.apple.foundationdb.async.RangeSet} stored in the given subspace.
+     * The snapshot is read the first time it is requested and then shared by later requests in this transaction,
+     * so that repeated membership checks, such as whether a record is in the built part of a write-only index,
+     * only cost one range read. Code that modifies the range set in this transaction must call
+     * {@link #invalidateRangeSetSnapshot(Subspace)}.
+     * @param subspace the subspace of the range set
+     * @return a future that completes to a snapshot of the range set
+     */
+    @API(API.Status.INTERNAL)
+    @Nonnull
+    public CompletableFuture<RangeSetSnapshot> getRangeSetSnapshot(@Nonnull Subspace subspace) {
+        final byte[] key = subspace.getKey();
+        CompletableFuture<RangeSetSnapshot> future = rangeSetSnapshots.get(key);
+        if (future == null) {
+            final CompletableFuture<RangeSetSnapshot> loading = new CompletableFuture<>();
+            future = rangeSetSnapshots.putIfAbsent(key, loading);
+            if (future == null) {
+                increment(FDBStoreTimer.Counts.LOAD_RANGE_SET_SNAPSHOT);
+                RangeSetSnapshot.load(ensureActive(), subspace).whenComplete((snapshot, err) -> {
+                    if (err == null) {
+                        loading.complete(snapshot);
+                    } else {
+                        // Do not remember failures, so that a later request can try again.
+                        rangeSetSnapshots.remove(key, loading);
+                        loading.completeExceptionally(err);
+                    }
+                });
+                future = loading;
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Discard any snapshot of the {@link com.apple.foundationdb.async.RangeSet} stored in the given subspace
+     * because the range set has been changed in this transaction.
+     * @param subspace the subspace of the range set
+     * @see #getRangeSetSnapshot(Subspace)
+     */
+    @API(API.Status.INTERNAL)
+    public void invalidateRangeSetSnapshot(@Nonnull Subspace subspace) {
+        rangeSetSnapshots.remove(subspace.getKey());
+    }
+
     public FDBDatabase.WeakReadSemantics getWeakReadSemantics() {
         return weakReadSemantics;
     }
@@ -21,7 +21,9 @@
 package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.API;
+import com.apple.foundationdb.KeySelector;
 import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.LocalityUtil;
 import com.apple.foundationdb.MutationType;
 import com.apple.foundationdb.Range;
 import com.apple.foundationdb.ReadTransaction;
@@ -29,6 +31,7 @@ import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.async.AsyncIterable;
 import com.apple.foundationdb.async.AsyncIterator;
 import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.async.CloseableAsyncIterator;
 import com.apple.foundationdb.async.MoreAsyncUtil;
 import com.apple.foundationdb.async.RangeSet;
 import com.apple.foundationdb.record.EndpointType;
@@ -38,6 +41,7 @@ import com.apple.foundationdb.record.FunctionNames;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IndexScanType;
 import com.apple.foundationdb.record.IndexState;
+import com.apple.foundationdb.record.IndexStatistics;
 import com.apple.foundationdb.record.IsolationLevel;
 import com.apple.foundationdb.record.MutableRecordStoreState;
 import com.apple.foundationdb.record.PipelineOperation;
@@ -78,9 +82,11 @@ import com.apple.foundationdb.record.query.expressions.AndComponent;
 import com.apple.foundationdb.record.query.expressions.Query;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
 import com.apple.foundationdb.record.query.expressions.RecordTypeKeyComparison;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanCache;
 import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.ByteArrayUtil2;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.foundationdb.tuple.TupleHelpers;
@@ -156,6 +162,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     protected static final Object INDEX_RANGE_SPACE_KEY = FDBRecordStoreKeyspace.INDEX_RANGE_SPACE.key();
     protected static final Object INDEX_UNIQUENESS_VIOLATIONS_KEY = FDBRecordStoreKeyspace.INDEX_UNIQUENESS_VIOLATIONS_SPACE.key();
     protected static final Object RECORD_VERSION_KEY = FDBRecordStoreKeyspace.RECORD_VERSION_SPACE.key();
+    protected static final Object INDEX_STATISTICS_KEY = FDBRecordStoreKeyspace.INDEX_STATISTICS_SPACE.key();
 
     @SuppressWarnings("squid:S2386")
     @SpotBugsSuppressWarnings("MS_MUTABLE_ARRAY")
@@ -190,6 +197,12 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     @Nullable
     private Subspace cachedRecordsSubspace;
 
+    @Nullable
+    private Map<String, IndexStatistics> indexStatistics;
+
+    @Nullable
+    private RecordQueryPlanCache planCache;
+
     private final Cache<Tuple, FDBRawRecord> preloadCache;
 
     @SuppressWarnings("squid:S00107")
@@ -412,6 +425,9 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         final SplitHelper.SizeInfo sizeInfo = new SplitHelper.SizeInfo();
         SplitHelper.saveWithSplit(context, recordsSubspace(), recordBuilder.getPrimaryKey(), serialized, splitVersion, metaData.isSplitLongRecords(), omitUnsplitRecordSuffix, true, oldSizeInfo, sizeInfo);
         countKeysAndValues(FDBStoreTimer.Counts.SAVE_RECORD_KEY, FDBStoreTimer.Counts.SAVE_RECORD_KEY_BYTES, FDBStoreTimer.Counts.SAVE_RECORD_VALUE_BYTES, sizeInfo);
+        // The split sizes are only known once written; exceeding the hard budget here still prevents the commit.
+        context.getResourceTracker().chargeRecordWrite(recordBuilder.getRecordType().getName(),
+                sizeInfo.getKeyCount(), sizeInfo.getKeySize() + sizeInfo.getValueSize());
         recordBuilder.setSize(sizeInfo);
 
         if (version != null && useOldVersionFormat()) {
@@ -557,6 +573,35 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return getSubspace().subspace(Tuple.from(INDEX_KEY, index.getSubspaceKey()));
     }
 
+    // Let a conflict profiler attribute keys to this store's records and indexes. Subspaces registered when the store
+    // was opened before are skipped, so that reopening it does not build their labels again.
+    @Nonnull
+    private FDBRecordStore registerWithConflictProfiler(@Nonnull ConflictProfiler profiler) {
+        final String storeLabel = subspaceProvider.toString();
+        if (!profiler.isRegistered(getSubspace())) {
+            profiler.registerSubspace(getSubspace(), storeLabel);
+            profiler.registerSubspace(recordsSubspace(), storeLabel + " records");
+        }
+        for (Index index : getRecordMetaData().getAllIndexes()) {
+            final Subspace indexSubspace = indexSubspace(index);
+            if (!profiler.isRegistered(indexSubspace)) {
+                profiler.registerSubspace(indexSubspace, storeLabel + " index " + index.getName());
+            }
+        }
+        return this;
+    }
+
+    // Only profiled contexts need the registration step.
+    @Nonnull
+    private static CompletableFuture<FDBRecordStore> registerWithConflictProfiler(@Nonnull FDBRecordStore recordStore,
+                                                                              @Nonnull CompletableFuture<?> opened) {
+        final ConflictProfiler profiler = recordStore.getRecordContext().getConflictProfiler();
+        if (profiler == null) {
+            return opened.thenApply(vignore -> recordStore);
+        }
+        return opened.thenApply(vignore -> recordStore.registerWithConflictProfiler(profiler));
+    }
+
     @Nonnull
     public Subspace indexSubspaceFromMaintainer(@Nonnull Index index) {
         return getIndexMaintainer(index).getIndexSubspace();
@@ -596,6 +641,16 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return getSubspace().subspace(Tuple.from(INDEX_UNIQUENESS_VIOLATIONS_KEY, index.getSubspaceKey()));
     }
 
+    /**
+     * Subspace for index in which to place its {@link IndexStatistics}.
+     * @param index the index to retrieve the statistics subspace for
+     * @return the subspace for the statistics for the given index
+     */
+    @Nonnull
+    public Subspace indexStatisticsSubspace(@Nonnull Index index) {
+        return getSubspace().subspace(Tuple.from(INDEX_STATISTICS_KEY, index.getSubspaceKey()));
+    }
+
     /**
      * Get the maintainer for a given index.
      * @param index the required index
@@ -805,6 +860,8 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             final RecordType recordType = metaData.getRecordTypeForDescriptor(record.getDescriptorForType());
             countKeysAndValues(FDBStoreTimer.Counts.LOAD_RECORD_KEY, FDBStoreTimer.Counts.LOAD_RECORD_KEY_BYTES, FDBStoreTimer.Counts.LOAD_RECORD_VALUE_BYTES,
                     rawRecord);
+            context.getResourceTracker().chargeRecordRead(recordType.getName(),
+                    rawRecord.getKeyCount(), rawRecord.getKeySize() + rawRecord.getValueSize());
 
             final FDBStoredRecordBuilder<M> recordBuilder = FDBStoredRecord.newBuilder(record)
                     .setPrimaryKey(primaryKey).setRecordType(recordType).setSize(rawRecord);
@@ -1003,6 +1060,52 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         }
     }
 
+    /**
+     * Get primary keys that fall about on the boundaries between the storage shards holding the records in a range.
+     * These can be used to divide work over the records, such as building an index, into pieces that each mostly
+     * touch a single storage server and so can proceed in parallel without contending with one another.
+     * The boundaries are read at snapshot isolation, since they only guide how the work is divided.
+     * @param low the lowest primary key of the range or <code>null</code> to start from the beginning
+     * @param high the (exclusive) highest primary key of the range or <code>null</code> to go to the end
+     * @return a future that completes to distinct primary keys in ascending order strictly within the range
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<List<Tuple>> getPrimaryKeyBoundariesAsync(@Nullable Tuple low, @Nullable Tuple high) {
+        final Subspace recordsSubspace = recordsSubspace();
+        final byte[] begin = low == null ? recordsSubspace.range().begin : recordsSubspace.pack(low);
+        final byte[] end = high == null ? recordsSubspace.range().end : recordsSubspace.pack(high);
+        final Transaction tr = ensureContextActive();
+        // The record keys have a split suffix after the primary key unless the store predates it.
+        final boolean hasSuffix = getRecordMetaData().isSplitLongRecords() || !omitUnsplitRecordSuffix;
+        final CloseableAsyncIterator<byte[]> iter = LocalityUtil.getBoundaryKeys(tr, begin, end);
+        final CompletableFuture<List<Tuple>> result = AsyncUtil.collectRemaining(iter, getExecutor()).thenCompose(boundaryKeys -> {
+            // A shard boundary can fall anywhere, so move each one to the start of the next record key.
+            final List<CompletableFuture<byte[]>> keyFutures = new ArrayList<>(boundaryKeys.size());
+            for (byte[] boundaryKey : boundaryKeys) {
+                keyFutures.add(tr.snapshot().getKey(KeySelector.firstGreaterOrEqual(boundaryKey)));
+            }
+            return AsyncUtil.getAll(keyFutures);
+        }).thenApply(keys -> {
+            final List<Tuple> boundaries = new ArrayList<>(keys.size());
+            for (byte[] key : keys) {
+                if (ByteArrayUtil.compareUnsigned(key, begin) <= 0 || ByteArrayUtil.compareUnsigned(key, end) >= 0) {
+                    continue;
+                }
+                Tuple primaryKey = recordsSubspace.unpack(key);
+                if (hasSuffix) {
+                    primaryKey = TupleHelpers.subTuple(primaryKey, 0, primaryKey.size() - 1);
+                }
+                if ((low == null || primaryKey.compareTo(low) > 0) &&
+                        (boundaries.isEmpty() || primaryKey.compareTo(boundaries.get(boundaries.size() - 1)) > 0)) {
+                    boundaries.add(primaryKey);
+                }
+            }
+            return boundaries;
+        }).whenComplete((vignore, err) -> iter.close());
+        return context.instrument(FDBStoreTimer.Events.COMPUTE_BOUNDARY_KEYS, result);
+    }
+
     @Override
     @Nonnull
     public RecordCursor<IndexEntry> scanIndex(@Nonnull Index index, @Nonnull IndexScanType scanType,
@@ -1061,6 +1164,8 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             if (oldRecord == null) {
                 return AsyncUtil.READY_FALSE;
             }
+            context.getResourceTracker().chargeRecordWrite(oldRecord.getRecordType().getName(),
+                    oldRecord.getKeyCount(), oldRecord.getKeySize());
             SplitHelper.deleteSplit(getRecordContext(), recordsSubspace(), primaryKey, metaData.isSplitLongRecords(), omitUnsplitRecordSuffix, true, oldRecord);
             countKeysAndValues(FDBStoreTimer.Counts.DELETE_RECORD_KEY, FDBStoreTimer.Counts.DELETE_RECORD_KEY_BYTES, FDBStoreTimer.Counts.DELETE_RECORD_VALUE_BYTES,
                     oldRecord);
@@ -1419,9 +1524,95 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     @Nonnull
     public RecordQueryPlan planQuery(@Nonnull RecordQuery query) {
         final RecordQueryPlanner planner = new RecordQueryPlanner(getRecordMetaData(), getRecordStoreState());
+        if (indexStatistics != null) {
+            planner.setIndexStatistics(indexStatistics);
+        }
+        if (planCache != null) {
+            return planCache.plan(planner, query);
+        }
         return planner.plan(query);
     }
 
+    /**
+     * Get the cache of query plans used by {@link #planQuery}.
+     * @return the plan cache or <code>null</code> if every query is planned from scratch
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nullable
+    public RecordQueryPlanCache getPlanCache() {
+        return planCache;
+    }
+
+    /**
+     * Set the cache of query plans used by {@link #planQuery}.
+     * The same cache can be given to the record stores of many transactions, as long as they have the same meta-data.
+     * @param planCache the plan cache or <code>null</code> to plan every query from scratch
+     * @see RecordQueryPlanCache
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setPlanCache(@Nullable RecordQueryPlanCache planCache) {
+        this.planCache = planCache;
+    }
+
+    /**
+     * Save statistics for an index, replacing any previously saved.
+     * @param index the index that the statistics describe
+     * @param statistics the statistics to save
+     * @see IndexStatisticsCollector
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void saveIndexStatistics(@Nonnull Index index, @Nonnull IndexStatistics statistics) {
+        final Transaction tr = ensureContextActive();
+        final Subspace statisticsSubspace = indexStatisticsSubspace(index);
+        tr.clear(statisticsSubspace.range());
+        tr.set(statisticsSubspace.pack(), statistics.toTuple().pack());
+        if (indexStatistics != null) {
+            final Map<String, IndexStatistics> newStatistics = new HashMap<>(indexStatistics);
+            newStatistics.put(index.getName(), statistics);
+            indexStatistics = Collections.unmodifiableMap(newStatistics);
+        }
+    }
+
+    /**
+     * Load the saved {@link IndexStatistics} for all of the indexes in this store. Once loaded, the statistics
+     * will be used by {@link #planQuery} to estimate the selectivity of candidate index scans.
+     * Statistics are read at snapshot isolation, since they are only estimates anyway.
+     * @return a future that completes to a map from index name to the statistics saved for that index
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<Map<String, IndexStatistics>> loadIndexStatisticsAsync() {
+        final Map<Tuple, Index> indexesBySubspaceKey = new HashMap<>();
+        for (Index index : getRecordMetaData().getAllIndexes()) {
+            indexesBySubspaceKey.put(Tuple.from(index.getSubspaceKey()), index);
+        }
+        final Subspace statisticsSubspace = getSubspace().subspace(Tuple.from(INDEX_STATISTICS_KEY));
+        final CompletableFuture<Map<String, IndexStatistics>> result = context.readTransaction(true)
+                .getRange(statisticsSubspace.range()).asList().thenApply(list -> {
+                    final Map<String, IndexStatistics> statistics = new HashMap<>();
+                    for (KeyValue kv : list) {
+                        final Index index = indexesBySubspaceKey.get(statisticsSubspace.unpack(kv.getKey()));
+                        if (index != null) {
+                            statistics.put(index.getName(), IndexStatistics.fromTuple(Tuple.fromBytes(kv.getValue())));
+                        }
+                    }
+                    indexStatistics = Collections.unmodifiableMap(statistics);
+                    return indexStatistics;
+                });
+        return context.instrument(FDBStoreTimer.Events.LOAD_INDEX_STATISTICS, result);
+    }
+
+    /**
+     * Load the saved {@link IndexStatistics} for all of the indexes in this store.
+     * This is a blocking variant of {@link #loadIndexStatisticsAsync()}.
+     * @return a map from index name to the statistics saved for that index
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public Map<String, IndexStatistics> loadIndexStatistics() {
+        return context.asyncToSync(FDBStoreTimer.Waits.WAIT_LOAD_INDEX_STATISTICS, loadIndexStatisticsAsync());
+    }
+
     // The maximum number of records to allow before triggering online index builds
     // instead of a transactional rebuild.
     public static final int MAX_RECORDS_FOR_REBUILD = 200;
@@ -1595,6 +1786,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         tr.clear(getSubspace().range(Tuple.from(INDEX_RANGE_SPACE_KEY)));
         tr.clear(getSubspace().range(Tuple.from(INDEX_STATE_SPACE_KEY)));
         tr.clear(getSubspace().range(Tuple.from(INDEX_UNIQUENESS_VIOLATIONS_KEY)));
+        tr.clear(getSubspace().range(Tuple.from(INDEX_STATISTICS_KEY)));
         List<CompletableFuture<Void>> work = new LinkedList<>();
         addRebuildRecordCountsJob(work);
         return rebuildIndexes(getRecordMetaData().getIndexesSince(-1), Collections.emptyMap(), work, RebuildIndexReason.REBUILD_ALL, null);
@@ -2624,7 +2816,15 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         tr.clear(Range.startsWith(indexSubspace(index).pack())); // startsWith to handle ungrouped aggregate indexes
         tr.clear(indexSecondarySubspace(index).range());
         tr.clear(indexRangeSubspace(index).range());
+        context.invalidateRangeSetSnapshot(indexRangeSubspace(index));
         tr.clear(indexUniquenessViolationsSubspace(index).range());
+        tr.clear(indexStatisticsSubspace(index).range());
+        tr.clear(indexStatisticsSubspace(index).pack());
+        if (indexStatistics != null && indexStatistics.containsKey(index.getName())) {
+            final Map<String, IndexStatistics> newStatistics = new HashMap<>(indexStatistics);
+            newStatistics.remove(index.getName());
+            indexStatistics = Collections.unmodifiableMap(newStatistics);
+        }
     }
 
     public void removeFormerIndex(FormerIndex formerIndex) {
@@ -2644,6 +2844,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         tr.clear(getSubspace().range(Tuple.from(INDEX_RANGE_SPACE_KEY, formerIndex.getSubspaceKey())));
         tr.clear(getSubspace().pack(Tuple.from(INDEX_STATE_SPACE_KEY, formerIndex.getSubspaceKey())));
         tr.clear(getSubspace().range(Tuple.from(INDEX_UNIQUENESS_VIOLATIONS_KEY, formerIndex.getSubspaceKey())));
+        tr.clear(getSubspace().pack(Tuple.from(INDEX_STATISTICS_KEY, formerIndex.getSubspaceKey())));
         if (getTimer() != null) {
             getTimer().recordSinceNanoTime(FDBStoreTimer.Events.REMOVE_FORMER_INDEX, startTime);
         }
@@ -2783,6 +2984,9 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         @Nonnull
         private FDBRecordStoreBase.PipelineSizer pipelineSizer = DEFAULT_PIPELINE_SIZER;
 
+        @Nullable
+        private RecordQueryPlanCache planCache;
+
         protected Builder() {
         }
 
@@ -2809,6 +3013,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             this.indexMaintainerRegistry = other.indexMaintainerRegistry;
             this.indexMaintenanceFilter = other.indexMaintenanceFilter;
             this.pipelineSizer = other.pipelineSizer;
+            this.planCache = other.planCache;
         }
 
         /**
@@ -2824,6 +3029,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             this.indexMaintainerRegistry = store.indexMaintainerRegistry;
             this.indexMaintenanceFilter = store.indexMaintenanceFilter;
             this.pipelineSizer = store.pipelineSizer;
+            this.planCache = store.planCache;
         }
 
         @Override
@@ -2976,6 +3182,29 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             return this;
         }
 
+        /**
+         * Get the cache of query plans to be used by the record store.
+         * @return the plan cache or <code>null</code> if queries are not to be cached
+         */
+        @API(API.Status.EXPERIMENTAL)
+        @Nullable
+        public RecordQueryPlanCache getPlanCache() {
+            return planCache;
+        }
+
+        /**
+         * Set the cache of query plans to be used by the record store.
+         * @param planCache the plan cache or <code>null</code> to plan every query from scratch
+         * @return this builder
+         * @see FDBRecordStore#setPlanCache
+         */
+        @API(API.Status.EXPERIMENTAL)
+        @Nonnull
+        public Builder setPlanCache(@Nullable RecordQueryPlanCache planCache) {
+            this.planCache = planCache;
+            return this;
+        }
+
         @Override
         @Nonnull
         public Builder copyBuilder() {
@@ -2994,8 +3223,10 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             if (serializer == null) {
                 throw new RecordCoreException("serializer must be supplied");
             }
-            return new FDBRecordStore(context, subspaceProvider, formatVersion, getMetaDataProviderForBuild(),
+            final FDBRecordStore recordStore = new FDBRecordStore(context, subspaceProvider, formatVersion, getMetaDataProviderForBuild(),
                     serializer, indexMaintainerRegistry, indexMaintenanceFilter, pipelineSizer);
+            recordStore.setPlanCache(planCache);
+            return recordStore;
         }
 
         @Override
@@ -3005,7 +3236,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             FDBRecordStore recordStore = build();
             final CompletableFuture<Void> subspaceFuture = recordStore.preloadSubspaceAsync();
             final CompletableFuture<Void> loadStoreState = subspaceFuture.thenCompose(vignore -> recordStore.preloadRecordStoreStateAsync());
-            return CompletableFuture.allOf(preloadMetaData, loadStoreState).thenApply(vignore -> recordStore);
+            return registerWithConflictProfiler(recordStore, CompletableFuture.allOf(preloadMetaData, loadStoreState));
         }
 
         @Override
@@ -3020,7 +3251,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             final CompletableFuture<KeyValue> loadStoreInfo = subspaceFuture.thenCompose(vignore -> recordStore.readStoreFirstKey());
             final CompletableFuture<KeyValue> combinedFuture = CompletableFuture.allOf(preloadMetaData, loadStoreState).thenCombine(loadStoreInfo, (v, kv) -> kv);
             final CompletableFuture<Boolean> checkVersion = recordStore.checkVersion(combinedFuture, userVersionChecker, existenceCheck);
-            return checkVersion.thenApply(vignore -> recordStore);
+            return registerWithConflictProfiler(recordStore, checkVersion);
         }
 
         @Nonnull
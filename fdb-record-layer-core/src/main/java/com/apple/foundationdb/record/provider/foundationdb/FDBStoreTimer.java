@@ -52,6 +52,8 @@ public class FDBStoreTimer extends StoreTimer {
         LOAD_RECORD_STORE_INFO("load record store info"),
         /** The amount of time taken loading a record store's {@link com.apple.foundationdb.record.RecordStoreState} listing inactive indexes. */
         LOAD_RECORD_STORE_STATE("load record store state"),
+        /** The amount of time taken loading a record store's {@link com.apple.foundationdb.record.IndexStatistics}. */
+        LOAD_INDEX_STATISTICS("load index statistics"),
         /** The amount of time taken getting the current version from a {@link MetaDataCache}. */
         GET_META_DATA_CACHE_VERSION("get meta-data cache version"),
         /** The amount of time taken getting cached meta-data from a {@link MetaDataCache}. */
@@ -87,10 +89,14 @@ public class FDBStoreTimer extends StoreTimer {
         SKIP_INDEX_RECORD("skip index record"),
         /** The amount of time spent maintaining an index when an entry is skipped by the {@link IndexMaintenanceFilter}. */
         SKIP_INDEX_ENTRY("skip index entry"),
+        /** The amount of time spent checking that the fields an index uses did not change when skipping its update. */
+        SKIP_UNCHANGED_INDEX_UPDATE("skip unchanged index update"),
         /** The amount of time spent saving an entry to a secondary index. */
         SAVE_INDEX_ENTRY("save index entry"),
         /** The amount of time spent deleting an entry from a secondary index. */
         DELETE_INDEX_ENTRY("delete index entry"),
+        /** The amount of time taken by each successful transaction of {@link OnlineIndexer} that builds part of an index, including its commit. */
+        ONLINE_INDEX_BUILDER_TRANSACTION("online index build transaction"),
         /** The amount of time spent updating an entry in an atomic mutation index. */
         MUTATE_INDEX_ENTRY("mutate index entry"),
         /** The amount of time spent deleting an entry from a secondary index. */
@@ -234,6 +240,8 @@ public class FDBStoreTimer extends StoreTimer {
         WAIT_CHECK_VERSION("wait for check version"),
         /** Wait for {@link OnlineIndexer} to complete building an index. */
         WAIT_ONLINE_BUILD_INDEX("wait for online build index"),
+        /** Wait for outstanding requests to a {@link BatchedRecordWriter} to be committed. */
+        WAIT_BATCHED_WRITES("wait for batched record writes"),
         /** Wait for a record scan without an index. */
         WAIT_SCAN_RECORDS("wait for scan records"),
         /** Wait for a indexed record scan. */
@@ -270,7 +278,9 @@ public class FDBStoreTimer extends StoreTimer {
         /** Wait for a backoff delay on retryable error in {@link FDBDatabase#run}. */
         WAIT_RETRY_DELAY("wait for retry delay"),
         /** Wait for statistics to be collected by a {@link SizeStatisticsCollector}. */
-        WAIT_COLLECT_STATISTICS("wait for statistics to be collected of a record store or index");
+        WAIT_COLLECT_STATISTICS("wait for statistics to be collected of a record store or index"),
+        /** Wait for {@link com.apple.foundationdb.record.IndexStatistics} to be loaded for the query planner. */
+        WAIT_LOAD_INDEX_STATISTICS("wait for index statistics to be loaded");
 
         private final String title;
         Waits(String title) {
@@ -403,6 +413,8 @@ public class FDBStoreTimer extends StoreTimer {
         QUERY_INTERSECTION_PLAN_MATCHES("number of matching records found by RecordQueryIntersectionPlan", false),
         /** The number of non-matching records found by {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan}. */
         QUERY_INTERSECTION_PLAN_NONMATCHES("number of non-matching records found by RecordQueryIntersectionPlan", false),
+        /** The number of times {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan} re-opened a lagging child at a later key. */
+        QUERY_INTERSECTION_PLAN_SEEKS("number of child seeks by RecordQueryIntersectionPlan", false),
         /** The number of duplicate records found by {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedDistinctPlan}. */
         QUERY_UNION_PLAN_DUPLICATES("number of duplicates found by RecordQueryUnorderedDistinctPlan", false),
         /** The number of unique records found by {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedDistinctPlan}. */
@@ -411,10 +423,28 @@ public class FDBStoreTimer extends StoreTimer {
         QUERY_DISCARDED("number of records loaded but filtered out", false),
         /** The number of times the read version was taken from the cache of the last seen version. */
         SET_READ_VERSION_TO_LAST_SEEN("set read version to last seen version", false),
+        /** The number of times the read version was taken from a GRV shared with other contexts. */
+        BATCHED_READ_VERSION("set read version from batched GRV", false),
+        /** The number of times that a transaction loaded a snapshot of a range set, such as the built ranges of a write-only index. */
+        LOAD_RANGE_SET_SNAPSHOT("load range set snapshot", false),
+        /** The number of transaction conflicts examined by a {@link ConflictProfiler}. */
+        PROFILED_CONFLICTS("conflicts examined by conflict profiler", false),
         /** The number of records scanned by {@link OnlineIndexer}. */
         ONLINE_INDEX_BUILDER_RECORDS_SCANNED("number of records scanned by online index build", false),
         /** The number of records indexed by {@link OnlineIndexer}. */
         ONLINE_INDEX_BUILDER_RECORDS_INDEXED("number of records indexed by online index build", false),
+        /** The number of bytes of records scanned by {@link OnlineIndexer}. */
+        ONLINE_INDEX_BUILDER_BYTES_SCANNED("number of record bytes scanned by online index build", true),
+        /** The number of times that {@link OnlineIndexer} increased the number of records it processes in one transaction. */
+        ONLINE_INDEX_BUILDER_LIMIT_INCREASED("number of times online index build limit was increased", false),
+        /** The number of times that {@link OnlineIndexer} decreased the number of records it processes in one transaction. */
+        ONLINE_INDEX_BUILDER_LIMIT_DECREASED("number of times online index build limit was decreased", false),
+        /** The number of requests committed by {@link BatchedRecordWriter}. */
+        BATCHED_WRITER_REQUESTS("number of requests committed by batched record writer", false),
+        /** The number of transactions committed by {@link BatchedRecordWriter}. */
+        BATCHED_WRITER_COMMITS("number of batches committed by batched record writer", false),
+        /** The number of times that {@link BatchedRecordWriter} split a failed batch to retry its halves. */
+        BATCHED_WRITER_SPLITS("number of failed batches split by batched record writer", false),
         /** The number of times that a leaderboard update adds a time window. */
         TIME_WINDOW_LEADERBOARD_ADD_WINDOW("number of leaderboard windows added", false),
         /** The number of times that a leaderboard update deleted a time window. */
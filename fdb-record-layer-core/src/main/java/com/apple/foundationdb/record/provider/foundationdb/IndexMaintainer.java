@@ -192,6 +192,17 @@ public abstract class IndexMaintainer {
      */
     public abstract boolean isIdempotent();
 
+    /**
+     * Whether updates to this index for different records need to be made one after another. An index whose updates
+     * read what earlier updates wrote, such as one that keeps a shared structure up to date, needs this. An index whose
+     * updates only write their own entries or apply atomic mutations can have updates for several records in flight
+     * at once, which lets bulk updates like those from {@link OnlineIndexer} be pipelined.
+     * @return whether updates for different records must not overlap
+     */
+    public boolean needsSerialUpdates() {
+        return true;
+    }
+
     /**
      * Whether this key has been added to some range within the {@link com.apple.foundationdb.async.RangeSet RangeSet}
      * associated with this index. This is used within the context of seeing if one should update a non-idempotent
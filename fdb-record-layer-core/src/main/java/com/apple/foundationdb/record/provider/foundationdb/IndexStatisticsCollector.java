@@ -0,0 +1,262 @@
+/*
+ * IndexStatisticsCollector.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.CursorStreamingMode;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IndexStatistics;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyWithValueExpression;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.tuple.TupleHelpers;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A class that collects {@link IndexStatistics} for an index by scanning its entries. Like the
+ * {@link SizeStatisticsCollector}, it must perform a full scan of the index, should not be expected to finish within a
+ * single transaction and keeps a continuation internally, so calling {@link #collect(FDBRecordContext, ExecuteProperties)}
+ * successively makes progress. Distinct prefix counts are exact for the entries seen, since index entries are
+ * read in order. The histogram is built from a fixed-size uniform sample of the entries. As with the size statistics,
+ * the results are not transactional and are only approximately right for a changing index.
+ *
+ * <p>
+ * Once collection is done, {@link #saveStatistics(FDBRecordStore)} stores the statistics in the record store, where
+ * {@link FDBRecordStore#loadIndexStatisticsAsync()} makes them available to the query planner.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class IndexStatisticsCollector {
+    /**
+     * The default number of histogram buckets.
+     */
+    public static final int DEFAULT_HISTOGRAM_BUCKETS = 32;
+    /**
+     * The default number of entries sampled to build the histogram.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 1000;
+
+    @Nonnull
+    private final Index index;
+    @Nonnull
+    private final Subspace subspace;
+    private final int prefixColumnCount;
+    private final int histogramBuckets;
+    private final int sampleSize;
+    private long keyCount;
+    @Nonnull
+    private final long[] distinctPrefixCounts;
+    @Nullable
+    private Tuple lastKey;
+    @Nonnull
+    private final List<Tuple> sample;
+    @Nullable
+    private byte[] continuation;
+    private boolean done;
+
+    private IndexStatisticsCollector(@Nonnull Index index, @Nonnull Subspace subspace, int histogramBuckets, int sampleSize) {
+        if (histogramBuckets < 1 || sampleSize < histogramBuckets) {
+            throw new RecordCoreArgumentException("sample size must be at least the number of histogram buckets",
+                    "histogramBuckets", histogramBuckets,
+                    "sampleSize", sampleSize);
+        }
+        this.index = index;
+        this.subspace = subspace;
+        KeyExpression keyExpression = index.getRootExpression();
+        if (keyExpression instanceof KeyWithValueExpression) {
+            keyExpression = ((KeyWithValueExpression)keyExpression).getKeyExpression();
+        }
+        this.prefixColumnCount = keyExpression.getColumnSize();
+        this.histogramBuckets = histogramBuckets;
+        this.sampleSize = sampleSize;
+        this.keyCount = 0;
+        this.distinctPrefixCounts = new long[prefixColumnCount];
+        this.lastKey = null;
+        this.sample = new ArrayList<>(sampleSize);
+        this.continuation = null;
+        this.done = false;
+    }
+
+    /**
+     * Collect statistics about the index entries.
+     * This will pick up from where this object previously left off. The limits in <code>executeProperties</code>
+     * are applied to a scan of the index.
+     *
+     * @param context the transaction context in which to collect statistics
+     * @param executeProperties limits on execution
+     * @return a future that completes to <code>true</code> if this object is done collecting statistics or <code>false</code> otherwise
+     */
+    @Nonnull
+    public CompletableFuture<Boolean> collectAsync(@Nonnull FDBRecordContext context, @Nonnull ExecuteProperties executeProperties) {
+        if (done) {
+            return AsyncUtil.READY_TRUE;
+        }
+        final ScanProperties scanProperties = new ScanProperties(executeProperties)
+                .setStreamingMode(CursorStreamingMode.WANT_ALL);
+        final KeyValueCursor kvCursor = KeyValueCursor.Builder.withSubspace(subspace)
+                .setContext(context)
+                .setContinuation(continuation)
+                .setScanProperties(scanProperties)
+                .build();
+        return kvCursor.forEach(kv -> {
+            addKey(subspace.unpack(kv.getKey()));
+            continuation = kvCursor.getContinuation();
+        }).handle((vignore, err) -> {
+            if (err == null) {
+                boolean exhausted = kvCursor.getNoNextReason().isSourceExhausted();
+                if (!exhausted) {
+                    continuation = kvCursor.getContinuation();
+                } else {
+                    done = true;
+                }
+                return exhausted;
+            } else {
+                if (FDBExceptions.isRetriable(err)) {
+                    return false;
+                } else {
+                    throw context.getDatabase().mapAsyncToSyncException(err);
+                }
+            }
+        }).whenComplete((vignore, err) -> kvCursor.close());
+    }
+
+    /**
+     * Collect statistics about the index entries.
+     * This is a blocking variant of {@link #collectAsync(FDBRecordContext, ExecuteProperties)}.
+     *
+     * @param context the transaction context in which to collect statistics
+     * @param executeProperties limits on execution
+     * @return <code>true</code> if this object is done collecting statistics or <code>false</code> otherwise
+     */
+    public boolean collect(@Nonnull FDBRecordContext context, @Nonnull ExecuteProperties executeProperties) {
+        return context.asyncToSync(FDBStoreTimer.Waits.WAIT_COLLECT_STATISTICS, collectAsync(context, executeProperties));
+    }
+
+    private void addKey(@Nonnull Tuple key) {
+        // Entries come in order, so a prefix is new exactly when it differs from the previous entry's.
+        int firstDifference = 0;
+        if (lastKey != null) {
+            while (firstDifference < prefixColumnCount && firstDifference < key.size() && firstDifference < lastKey.size() &&
+                    Tuple.from(key.get(firstDifference)).equals(Tuple.from(lastKey.get(firstDifference)))) {
+                firstDifference++;
+            }
+        }
+        for (int i = firstDifference; i < prefixColumnCount; i++) {
+            distinctPrefixCounts[i]++;
+        }
+        lastKey = key;
+        keyCount++;
+        final Tuple prefix = key.size() > prefixColumnCount ? TupleHelpers.subTuple(key, 0, prefixColumnCount) : key;
+        if (sample.size() < sampleSize) {
+            sample.add(prefix);
+        } else {
+            // Reservoir sampling: the sample is uniform over all of the entries seen.
+            final long slot = ThreadLocalRandom.current().nextLong(keyCount);
+            if (slot < sampleSize) {
+                sample.set((int)slot, prefix);
+            }
+        }
+    }
+
+    /**
+     * Get whether this collector has scanned the whole index.
+     * @return <code>true</code> if collection is complete
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Get the statistics collected so far.
+     * @return statistics for the entries that have been scanned
+     */
+    @Nonnull
+    public IndexStatistics getStatistics() {
+        final List<Tuple> sorted = new ArrayList<>(sample);
+        sorted.sort(TupleHelpers::compare);
+        final int buckets = Math.min(histogramBuckets, sorted.size());
+        final List<Tuple> histogram = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            histogram.add(sorted.get(i * sorted.size() / buckets));
+        }
+        return new IndexStatistics(keyCount, distinctPrefixCounts, histogram);
+    }
+
+    /**
+     * Save the statistics collected in the given record store, replacing any previously saved for the index.
+     * @param store the record store containing the index
+     */
+    public void saveStatistics(@Nonnull FDBRecordStore store) {
+        store.saveIndexStatistics(index, getStatistics());
+    }
+
+    // Static initializers
+
+    /**
+     * Create a statistics collector for the given index within a record store.
+     *
+     * @param store a store with the given index
+     * @param indexName the name of the index to collect statistics on
+     * @return a statistics collector of the given index
+     */
+    @Nonnull
+    public static IndexStatisticsCollector ofIndex(@Nonnull FDBRecordStore store, @Nonnull String indexName) {
+        return ofIndex(store, store.getRecordMetaData().getIndex(indexName));
+    }
+
+    /**
+     * Create a statistics collector for the given index within a record store.
+     *
+     * @param store a store with the given index
+     * @param index the index to collect statistics on
+     * @return a statistics collector of the given index
+     */
+    @Nonnull
+    public static IndexStatisticsCollector ofIndex(@Nonnull FDBRecordStore store, @Nonnull Index index) {
+        return ofIndex(store, index, DEFAULT_HISTOGRAM_BUCKETS, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * Create a statistics collector for the given index within a record store.
+     *
+     * @param store a store with the given index
+     * @param index the index to collect statistics on
+     * @param histogramBuckets the number of buckets in the histogram
+     * @param sampleSize the number of entries to sample to build the histogram
+     * @return a statistics collector of the given index
+     */
+    @Nonnull
+    public static IndexStatisticsCollector ofIndex(@Nonnull FDBRecordStore store, @Nonnull Index index,
+                                                   int histogramBuckets, int sampleSize) {
+        return new IndexStatisticsCollector(index, store.indexSubspace(index), histogramBuckets, sampleSize);
+    }
+}
@@ -153,6 +153,7 @@ public class KeyValueCursor implements BaseCursor<KeyValue> {
                         context.increment(FDBStoreTimer.Counts.LOAD_SCAN_ENTRY);
                         context.increment(FDBStoreTimer.Counts.LOAD_KEY_VALUE);
                     }
+                    limitManager.reportScannedBytes(kv.getKey().length + kv.getValue().length);
                     // Note that this mutates the pointer and NOT the array.
                     // If the value of lastKey is mutated, the Continuation class will break.
                     lastKey = kv.getKey();
@@ -234,6 +235,29 @@ public class KeyValueCursor implements BaseCursor<KeyValue> {
         return visitor.visitLeave(this);
     }
 
+    /**
+     * Get a continuation that resumes a scan at a given key.
+     * A continuation for this cursor is the suffix of the last key returned after the bytes common to both ends of
+     * the scan's range. Given such a suffix for a key that may or may not exist, this returns a continuation from
+     * which the scan will next return that key, if present, or else the key that follows it in the scan direction.
+     * @param keySuffix the suffix after the common prefix of the range of the key at which to resume
+     * @param reverse whether the scan is in reverse
+     * @return a continuation that resumes the scan at the given key
+     */
+    @API(API.Status.INTERNAL)
+    @Nonnull
+    public static byte[] continuationAtKey(@Nonnull byte[] keySuffix, boolean reverse) {
+        if (reverse) {
+            // Resuming in reverse is exclusive of the continuation, and nothing sorts between a key and the key with a zero byte appended.
+            return Arrays.copyOf(keySuffix, keySuffix.length + 1);
+        } else if (keySuffix.length == 0) {
+            throw new RecordCoreException("cannot resume a forward scan before an empty key suffix");
+        } else {
+            // Resuming forward starts at the continuation with a zero byte appended, which sorts no later than the key itself.
+            return Arrays.copyOf(keySuffix, keySuffix.length - 1);
+        }
+    }
+
     private static class Continuation implements RecordCursorContinuation {
         @Nullable
         private final byte[] lastKey;
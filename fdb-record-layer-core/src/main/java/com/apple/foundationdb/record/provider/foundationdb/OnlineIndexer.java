@@ -30,7 +30,10 @@ import com.apple.foundationdb.async.MoreAsyncUtil;
 import com.apple.foundationdb.async.RangeSet;
 import com.apple.foundationdb.record.EndpointType;
 import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.IndexScanType;
 import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.PipelineOperation;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCoreStorageException;
 import com.apple.foundationdb.record.RecordCursor;
@@ -41,11 +44,18 @@ import com.apple.foundationdb.record.TupleRange;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
 import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.metadata.MetaDataException;
 import com.apple.foundationdb.record.metadata.RecordType;
+import com.apple.foundationdb.record.metadata.expressions.FieldKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.NestingKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.RecordTypeKeyExpression;
 import com.apple.foundationdb.record.provider.common.RecordSerializer;
+import com.apple.foundationdb.record.query.plan.IndexKeyValueToPartialRecord;
 import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.ByteArrayUtil2;
 import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.annotations.VisibleForTesting;
@@ -56,18 +66,23 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 /**
@@ -116,6 +131,24 @@ public class OnlineIndexer implements AutoCloseable {
      * Default number of times to retry a single range rebuild.
      */
     public static final int DEFAULT_MAX_RETRIES = 100;
+    /**
+     * Default number of concurrent workers building the index.
+     */
+    public static final int DEFAULT_PARALLELISM = 1;
+    /**
+     * Default maximum number of records to attempt to run in a single transaction when the limit is adaptive.
+     */
+    public static final int DEFAULT_MAX_LIMIT = 10_000;
+    /**
+     * Default duration of a transaction, including its commit, that an adaptive limit aims to stay under. This leaves
+     * plenty of room below the five second transaction limit for a slower cluster or a batch of larger records.
+     */
+    public static final long DEFAULT_ADAPTIVE_TARGET_MILLIS = 1_000;
+    /**
+     * Default number of bytes of records scanned by a transaction that an adaptive limit aims to stay under. This leaves
+     * plenty of room below the ten megabyte transaction limit for the index entries that the records produce.
+     */
+    public static final long DEFAULT_ADAPTIVE_TARGET_BYTES = 1_000_000;
     /**
      * Constant indicating that there should be no limit to some usually limited operation.
      */
@@ -132,23 +165,82 @@ public class OnlineIndexer implements AutoCloseable {
     @Nonnull private final FDBDatabaseRunner runner;
     @Nonnull private final FDBRecordStore.Builder recordStoreBuilder;
     @Nonnull private final Index index;
+    @Nonnull private final List<Index> targetIndexes;
     @Nonnull private final Collection<RecordType> recordTypes;
     @Nonnull private final TupleRange recordsRange;
-    private int limit;  // Not final as may be adjusted when running.
+    @Nonnull private final AtomicInteger limit;  // Adjusted when running (by several workers if parallel).
     private final int maxRetries;
     private final int recordsPerSecond;
+    private final int parallelism;
+    @Nullable private final Index sourceIndex;
+    @Nullable private final IndexKeyValueToPartialRecord sourceIndexToRecord;
+    private final boolean adaptiveLimit;
+    private final int maxLimit;
+    private final long adaptiveTargetMillis;
+    private final long adaptiveTargetBytes;
 
     protected OnlineIndexer(@Nonnull FDBDatabaseRunner runner,
                             @Nonnull FDBRecordStore.Builder recordStoreBuilder,
                             @Nonnull Index index, @Nonnull Collection<RecordType> recordTypes,
                             int limit, int maxRetries, int recordsPerSecond) {
+        this(runner, recordStoreBuilder, index, recordTypes, limit, maxRetries, recordsPerSecond, DEFAULT_PARALLELISM);
+    }
+
+    protected OnlineIndexer(@Nonnull FDBDatabaseRunner runner,
+                            @Nonnull FDBRecordStore.Builder recordStoreBuilder,
+                            @Nonnull Index index, @Nonnull Collection<RecordType> recordTypes,
+                            int limit, int maxRetries, int recordsPerSecond, int parallelism) {
+        this(runner, recordStoreBuilder, Collections.singletonList(index), recordTypes, limit, maxRetries, recordsPerSecond, parallelism);
+    }
+
+    protected OnlineIndexer(@Nonnull FDBDatabaseRunner runner,
+                            @Nonnull FDBRecordStore.Builder recordStoreBuilder,
+                            @Nonnull List<Index> targetIndexes, @Nonnull Collection<RecordType> recordTypes,
+                            int limit, int maxRetries, int recordsPerSecond, int parallelism) {
+        this(runner, recordStoreBuilder, targetIndexes, recordTypes, limit, maxRetries, recordsPerSecond, parallelism, null, null);
+    }
+
+    protected OnlineIndexer(@Nonnull FDBDatabaseRunner runner,
+                            @Nonnull FDBRecordStore.Builder recordStoreBuilder,
+                            @Nonnull List<Index> targetIndexes, @Nonnull Collection<RecordType> recordTypes,
+                            int limit, int maxRetries, int recordsPerSecond, int parallelism,
+                            @Nullable Index sourceIndex, @Nullable IndexKeyValueToPartialRecord sourceIndexToRecord) {
+        this(runner, recordStoreBuilder, targetIndexes, recordTypes, limit, maxRetries, recordsPerSecond, parallelism,
+                sourceIndex, sourceIndexToRecord, false, DEFAULT_MAX_LIMIT);
+    }
+
+    protected OnlineIndexer(@Nonnull FDBDatabaseRunner runner,
+                            @Nonnull FDBRecordStore.Builder recordStoreBuilder,
+                            @Nonnull List<Index> targetIndexes, @Nonnull Collection<RecordType> recordTypes,
+                            int limit, int maxRetries, int recordsPerSecond, int parallelism,
+                            @Nullable Index sourceIndex, @Nullable IndexKeyValueToPartialRecord sourceIndexToRecord,
+                            boolean adaptiveLimit, int maxLimit) {
+        this(runner, recordStoreBuilder, targetIndexes, recordTypes, limit, maxRetries, recordsPerSecond, parallelism,
+                sourceIndex, sourceIndexToRecord, adaptiveLimit, maxLimit, DEFAULT_ADAPTIVE_TARGET_MILLIS, DEFAULT_ADAPTIVE_TARGET_BYTES);
+    }
+
+    protected OnlineIndexer(@Nonnull FDBDatabaseRunner runner,
+                            @Nonnull FDBRecordStore.Builder recordStoreBuilder,
+                            @Nonnull List<Index> targetIndexes, @Nonnull Collection<RecordType> recordTypes,
+                            int limit, int maxRetries, int recordsPerSecond, int parallelism,
+                            @Nullable Index sourceIndex, @Nullable IndexKeyValueToPartialRecord sourceIndexToRecord,
+                            boolean adaptiveLimit, int maxLimit, long adaptiveTargetMillis, long adaptiveTargetBytes) {
         this.runner = runner;
         this.recordStoreBuilder = recordStoreBuilder;
-        this.index = index;
+        // The first index's range set determines what remains to be built; the others are kept in step with it.
+        this.index = targetIndexes.get(0);
+        this.targetIndexes = targetIndexes;
         this.recordTypes = recordTypes;
-        this.limit = limit;
+        this.limit = new AtomicInteger(limit);
         this.maxRetries = maxRetries;
         this.recordsPerSecond = recordsPerSecond;
+        this.parallelism = parallelism;
+        this.sourceIndex = sourceIndex;
+        this.sourceIndexToRecord = sourceIndexToRecord;
+        this.adaptiveLimit = adaptiveLimit;
+        this.maxLimit = maxLimit;
+        this.adaptiveTargetMillis = adaptiveTargetMillis;
+        this.adaptiveTargetBytes = adaptiveTargetBytes;
         this.recordsRange = computeRecordsRange();
     }
 
@@ -228,6 +320,40 @@ public class OnlineIndexer implements AutoCloseable {
         return recordStoreBuilder.copyBuilder().setContext(context).openAsync();
     }
 
+    // Mark a range as built in the range sets of all of the target indexes, returning whether it was new to all of them.
+    @Nonnull
+    private CompletableFuture<Boolean> insertRanges(@Nonnull FDBRecordStore store, @Nullable byte[] start, @Nullable byte[] end,
+                                                    boolean requireEmpty) {
+        final Transaction tr = store.ensureContextActive();
+        final List<CompletableFuture<Boolean>> inserts = new ArrayList<>(targetIndexes.size());
+        for (Index targetIndex : targetIndexes) {
+            final Subspace rangeSubspace = store.indexRangeSubspace(targetIndex);
+            store.getContext().invalidateRangeSetSnapshot(rangeSubspace);
+            inserts.add(new RangeSet(rangeSubspace).insertRange(tr, start, end, requireEmpty));
+        }
+        return AsyncUtil.getAll(inserts).thenApply(changes -> !changes.contains(false));
+    }
+
+    /**
+     * Get the indexes built by this indexer.
+     * @return the indexes that are built together from a single scan of the records
+     */
+    @Nonnull
+    public List<Index> getTargetIndexes() {
+        return targetIndexes;
+    }
+
+    /**
+     * Get the number of records currently processed in one transaction.
+     * This starts out as the limit given to the {@link Builder} and is lowered when a transaction does too much work.
+     * If the limit is adaptive, it is also raised when transactions do much less work than they could.
+     * @return the current maximum number of records to process in one transaction
+     * @see Builder#setAdaptiveLimit
+     */
+    public int getLimit() {
+        return limit.get();
+    }
+
     @Override
     public void close() {
         runner.close();
@@ -252,10 +378,12 @@ public class OnlineIndexer implements AutoCloseable {
                     // priority to "batch" on all transactions in order to avoid other stepping on the toes of other work.
                     context.ensureActive().options().setPriorityBatch();
                     return openRecordStore(context).thenCompose(store -> {
-                        if (!store.isIndexWriteOnly(index)) {
-                            throw new RecordCoreStorageException("Attempted to build readable index",
-                                    LogMessageKeys.INDEX_NAME, index.getName(),
-                                    recordStoreBuilder.getSubspaceProvider().logKey(), recordStoreBuilder.getSubspaceProvider());
+                        for (Index targetIndex : targetIndexes) {
+                            if (!store.isIndexWriteOnly(targetIndex)) {
+                                throw new RecordCoreStorageException("Attempted to build readable index",
+                                        LogMessageKeys.INDEX_NAME, targetIndex.getName(),
+                                        recordStoreBuilder.getSubspaceProvider().logKey(), recordStoreBuilder.getSubspaceProvider());
+                            }
                         }
                         return function.apply(store);
                     });
@@ -276,14 +404,17 @@ public class OnlineIndexer implements AutoCloseable {
                             return AsyncUtil.READY_FALSE;
                         } else {
                             if (lessenWorkCodes.contains(fdbE.getCode())) {
-                                limit = Math.max(1, (3 * limit) / 4);
+                                final int lessenedLimit = limit.updateAndGet(oldLimit -> Math.max(1, (3 * oldLimit) / 4));
+                                if (runner.getTimer() != null) {
+                                    runner.getTimer().increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_LIMIT_DECREASED);
+                                }
                                 if (LOGGER.isInfoEnabled()) {
                                     LOGGER.info(KeyValueLogMessage.of("Lessening limit of online index build",
                                                     "indexName", index.getName(),
                                                     "indexVersion", index.getLastModifiedVersion(),
                                                     "error", fdbE.getMessage(),
                                                     "errorCode", fdbE.getCode(),
-                                                    "limit", limit),
+                                                    "limit", lessenedLimit),
                                             fdbE);
                                 }
                                 long delay = (long)(Math.random() * toWait.get());
@@ -305,49 +436,157 @@ public class OnlineIndexer implements AutoCloseable {
         return ret;
     }
 
+    // Runs one transaction that builds part of the index, giving the function somewhere to tally what it scans. When the
+    // transaction has committed, how long it took and how much it scanned are used to adjust the limit for the next one.
+    // Failures that call for less work have already lowered the limit in runAsync, so they are not counted again here.
+    @Nonnull
+    private <R> CompletableFuture<R> runBatchAsync(@Nonnull BiFunction<FDBRecordStore, BatchProgress, CompletableFuture<R>> function) {
+        final AtomicInteger attempts = new AtomicInteger(0);
+        final AtomicReference<BatchProgress> lastProgress = new AtomicReference<>();
+        return runAsync(store -> {
+            attempts.incrementAndGet();
+            final BatchProgress progress = new BatchProgress(limit.get());
+            lastProgress.set(progress);
+            return function.apply(store, progress);
+        }).thenApply(result -> {
+            adjustLimit(lastProgress.get(), attempts.get());
+            return result;
+        });
+    }
+
+    // Grows the limit while transactions are finishing well within the targets and shrinks it, in proportion to how far
+    // over they were, when they are not. A transaction that had to be retried never grows it.
+    private void adjustLimit(@Nonnull BatchProgress progress, int attempts) {
+        final long elapsedNanos = System.nanoTime() - progress.startTime;
+        final FDBStoreTimer timer = runner.getTimer();
+        if (timer != null) {
+            timer.record(FDBStoreTimer.Events.ONLINE_INDEX_BUILDER_TRANSACTION, elapsedNanos);
+        }
+        if (!adaptiveLimit) {
+            return;
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        final long bytes = progress.bytes.get();
+        final double scale;
+        if (elapsedMillis > adaptiveTargetMillis || bytes > adaptiveTargetBytes) {
+            double shrink = 0.75;
+            if (elapsedMillis > adaptiveTargetMillis) {
+                shrink = Math.min(shrink, (double)adaptiveTargetMillis / elapsedMillis);
+            }
+            if (bytes > adaptiveTargetBytes) {
+                shrink = Math.min(shrink, (double)adaptiveTargetBytes / bytes);
+            }
+            scale = Math.max(0.5, shrink);
+        } else if (attempts == 1 && progress.records.get() >= progress.limit &&
+                   elapsedMillis < adaptiveTargetMillis / 2 && bytes < adaptiveTargetBytes / 2) {
+            // Only a transaction that was cut off by the limit says anything about whether a larger one would fit.
+            scale = 1.25;
+        } else {
+            scale = 1.0;
+        }
+        if (scale == 1.0) {
+            return;
+        }
+        // Other workers may be adjusting the limit at the same time, so apply the change to whatever it is now.
+        int oldLimit;
+        int newLimit;
+        do {
+            oldLimit = limit.get();
+            if (scale > 1.0) {
+                newLimit = Math.min(maxLimit, Math.max(oldLimit + 1, (int)(oldLimit * scale)));
+            } else {
+                newLimit = Math.max(1, (int)(oldLimit * scale));
+            }
+        } while (newLimit != oldLimit && !limit.compareAndSet(oldLimit, newLimit));
+        if (newLimit != oldLimit) {
+            if (timer != null) {
+                timer.increment(newLimit > oldLimit ?
+                                FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_LIMIT_INCREASED :
+                                FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_LIMIT_DECREASED);
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(KeyValueLogMessage.of("Adjusting limit of online index build",
+                                "indexName", index.getName(),
+                                "indexVersion", index.getLastModifiedVersion(),
+                                "attempts", attempts,
+                                "elapsedMillis", elapsedMillis,
+                                "records", progress.records.get(),
+                                "bytes", bytes,
+                                "limit", newLimit));
+            }
+        }
+    }
+
+    // What one attempt at a transaction that builds part of the index did.
+    private static class BatchProgress {
+        private final int limit;
+        private final long startTime;
+        @Nonnull
+        private final AtomicInteger records = new AtomicInteger(0);
+        @Nonnull
+        private final AtomicLong bytes = new AtomicLong(0);
+
+        BatchProgress(int limit) {
+            this.limit = limit;
+            this.startTime = System.nanoTime();
+        }
+
+        void add(long recordBytes) {
+            records.incrementAndGet();
+            bytes.addAndGet(recordBytes);
+        }
+    }
+
     // Builds the index for all of the keys within a given range. This does not update the range set
     // associated with this index, so it is really designed to be a helper for other methods.
     @Nonnull
     private CompletableFuture<Tuple> buildRangeOnly(@Nonnull FDBRecordStore store,
                                                     @Nullable Tuple start, @Nullable Tuple end,
-                                                    boolean respectLimit) {
-        return buildRangeOnly(store, TupleRange.between(start, end), respectLimit).thenApply(realEnd -> realEnd == null ? end : realEnd);
+                                                    boolean respectLimit, @Nullable BatchProgress progress) {
+        return buildRangeOnly(store, TupleRange.between(start, end), respectLimit, progress).thenApply(realEnd -> realEnd == null ? end : realEnd);
     }
 
     // TupleRange version of above.
     @Nonnull
-    private CompletableFuture<Tuple> buildRangeOnly(@Nonnull FDBRecordStore store, @Nonnull TupleRange range, boolean respectLimit) {
+    private CompletableFuture<Tuple> buildRangeOnly(@Nonnull FDBRecordStore store, @Nonnull TupleRange range, boolean respectLimit,
+                                                    @Nullable BatchProgress progress) {
         if (store.getRecordMetaData() != recordStoreBuilder.getMetaDataProvider().getRecordMetaData()) {
             throw new MetaDataException("Store does not have the same metadata");
         }
-        final IndexMaintainer maintainer = store.getIndexMaintainer(index);
+        final List<IndexMaintainer> maintainers = new ArrayList<>(targetIndexes.size());
+        for (Index targetIndex : targetIndexes) {
+            maintainers.add(store.getIndexMaintainer(targetIndex));
+        }
         final ExecuteProperties.Builder executeProperties = ExecuteProperties.newBuilder()
                 .setIsolationLevel(IsolationLevel.SERIALIZABLE);
         if (respectLimit) {
-            executeProperties.setReturnedRowLimit(limit);
+            executeProperties.setReturnedRowLimit(progress == null ? limit.get() : progress.limit);
         }
         final ScanProperties scanProperties = new ScanProperties(executeProperties.build());
         final RecordCursor<FDBStoredRecord<Message>> cursor = store.scanRecords(range, null, scanProperties);
         final AtomicBoolean empty = new AtomicBoolean(true);
         final FDBStoreTimer timer = runner.getTimer();
 
-        // Note: This runs all of the updates in serial in order to not invoke a race condition
-        // in the rank code that was causing incorrect results. If everything were thread safe,
-        // a larger pipeline size would be possible.
+        // Note: This runs all of the updates in serial if any of the indexes need it, since, for example,
+        // concurrent updates invoke a race condition in the rank code that was causing incorrect results.
         return cursor.forEachAsync(rec -> {
             empty.set(false);
+            if (progress != null) {
+                progress.add(rec.getKeySize() + rec.getValueSize());
+            }
             if (timer != null) {
                 timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED);
+                timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_BYTES_SCANNED, rec.getKeySize() + rec.getValueSize());
             }
             if (recordTypes.contains(rec.getRecordType())) {
                 if (timer != null) {
                     timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_INDEXED);
                 }
-                return maintainer.update(null, rec);
+                return updateTargetIndexes(maintainers, rec);
             } else {
                 return AsyncUtil.DONE;
             }
-        }, 1).thenCompose(vignore -> {
+        }, updatePipelineSize(store, maintainers)).thenCompose(vignore -> {
             byte[] nextCont = empty.get() ? null : cursor.getContinuation();
             if (nextCont == null) {
                 return CompletableFuture.completedFuture(null);
@@ -368,6 +607,94 @@ public class OnlineIndexer implements AutoCloseable {
         });
     }
 
+    // The number of records whose index updates can be in flight at once.
+    private static int updatePipelineSize(@Nonnull FDBRecordStore store, @Nonnull List<IndexMaintainer> maintainers) {
+        for (IndexMaintainer maintainer : maintainers) {
+            if (maintainer.needsSerialUpdates()) {
+                return 1;
+            }
+        }
+        return store.getPipelineSize(PipelineOperation.INDEX_BUILD_UPDATE);
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> updateTargetIndexes(@Nonnull List<IndexMaintainer> maintainers, @Nonnull FDBStoredRecord<Message> rec) {
+        if (maintainers.size() == 1) {
+            return maintainers.get(0).update(null, rec);
+        }
+        // Each record is read and deserialized once for all of the target indexes.
+        final List<CompletableFuture<Void>> updates = new ArrayList<>(maintainers.size());
+        for (IndexMaintainer maintainer : maintainers) {
+            updates.add(maintainer.update(null, rec));
+        }
+        return AsyncUtil.whenAll(updates);
+    }
+
+    // Builds the target indexes from up to limit entries of the source index, starting from the given continuation, and
+    // returns the continuation from which to go on or null if the whole source index has been scanned.
+    @Nonnull
+    private CompletableFuture<byte[]> buildFromSourceIndexOnly(@Nonnull FDBRecordStore store, @Nullable byte[] continuation,
+                                                               @Nonnull BatchProgress progress) {
+        if (store.getRecordMetaData() != recordStoreBuilder.getMetaDataProvider().getRecordMetaData()) {
+            throw new MetaDataException("Store does not have the same metadata");
+        }
+        if (!store.isIndexReadable(sourceIndex)) {
+            throw new RecordCoreStorageException("Attempted to build from source index that is not readable",
+                    LogMessageKeys.INDEX_NAME, sourceIndex.getName(),
+                    recordStoreBuilder.getSubspaceProvider().logKey(), recordStoreBuilder.getSubspaceProvider());
+        }
+        final List<IndexMaintainer> maintainers = new ArrayList<>(targetIndexes.size());
+        for (Index targetIndex : targetIndexes) {
+            final IndexMaintainer maintainer = store.getIndexMaintainer(targetIndex);
+            if (!maintainer.isIdempotent()) {
+                // Records that change during the build are only indexed by the change if their range has been built.
+                throw new RecordCoreException("Only idempotent indexes can be built from a source index",
+                        LogMessageKeys.INDEX_NAME, targetIndex.getName());
+            }
+            maintainers.add(maintainer);
+        }
+        final ExecuteProperties executeProperties = ExecuteProperties.newBuilder()
+                .setIsolationLevel(IsolationLevel.SERIALIZABLE)
+                .setReturnedRowLimit(progress.limit)
+                .build();
+        final RecordCursor<IndexEntry> cursor = store.scanIndex(sourceIndex, IndexScanType.BY_VALUE, TupleRange.ALL,
+                continuation, new ScanProperties(executeProperties));
+        final RecordType recordType = recordTypes.iterator().next();
+        final FDBStoreTimer timer = runner.getTimer();
+        return cursor.forEachAsync(entry -> {
+            // Source index entries are small, so only the number of them matters to the adaptive limit.
+            progress.add(0);
+            if (timer != null) {
+                timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED);
+                timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_INDEXED);
+            }
+            final FDBStoredRecord<Message> rec = FDBStoredRecord.newBuilder(sourceIndexToRecord.toRecord(recordType.getDescriptor(), entry))
+                    .setPrimaryKey(FDBRecordStoreBase.indexEntryPrimaryKey(sourceIndex, entry.getKey()))
+                    .setRecordType(recordType)
+                    .build();
+            return updateTargetIndexes(maintainers, rec);
+        }, updatePipelineSize(store, maintainers)).thenApply(vignore -> cursor.getContinuation());
+    }
+
+    // Builds the target indexes from the whole source index across multiple transactions and then marks them as
+    // completely built. Nothing is recorded until the end, so a build that is interrupted starts again from the beginning.
+    @Nonnull
+    private CompletableFuture<Void> buildFromSourceIndex() {
+        final long toWait = (recordsPerSecond == UNLIMITED) ? 0 : 1000L * limit.get() / recordsPerSecond;
+        final AtomicReference<byte[]> continuation = new AtomicReference<>();
+        return AsyncUtil.whileTrue(() ->
+                runBatchAsync((store, progress) -> buildFromSourceIndexOnly(store, continuation.get(), progress)).thenCompose(nextContinuation -> {
+                    continuation.set(nextContinuation);
+                    if (nextContinuation == null) {
+                        return AsyncUtil.READY_FALSE;
+                    } else {
+                        return MoreAsyncUtil.delayedFuture(toWait, TimeUnit.MILLISECONDS).thenApply(vignore -> true);
+                    }
+                }), runner.getExecutor())
+                .thenCompose(vignore -> runAsync(store -> insertRanges(store, null, null, false)))
+                .thenApply(vignore -> null);
+    }
+
     // Builds a range within a single transaction. It will look for the missing ranges within the given range and build those while
     // updating the range set.
     @Nonnull
@@ -384,8 +711,8 @@ public class OnlineIndexer implements AutoCloseable {
                             // All of the requested range without limit.
                             // In practice, this method works because it is only called for the endpoint ranges, which are empty and
                             // one long, respectively.
-                            buildRangeOnly(store, rangeStart, rangeEnd, false),
-                            rangeSet.insertRange(store.ensureContextActive(), range, true)
+                            buildRangeOnly(store, rangeStart, rangeEnd, false, null),
+                            insertRanges(store, range.begin, range.end, true)
                     ).thenCompose(vignore -> ranges.onHasNext());
                 }, store.getExecutor());
             } else {
@@ -427,7 +754,7 @@ public class OnlineIndexer implements AutoCloseable {
                     AtomicReference<Tuple> currStart = new AtomicReference<>(startTuple);
                     return AsyncUtil.whileTrue(() ->
                         // Bold claim: this will never cause a RecordBuiltRangeException because of transactions.
-                        buildUnbuiltRange(store, currStart.get(), endTuple).thenApply(realEnd -> {
+                        buildUnbuiltRange(store, currStart.get(), endTuple, null).thenApply(realEnd -> {
                             if (realEnd != null && !realEnd.equals(endTuple)) {
                                 currStart.set(realEnd);
                                 return true;
@@ -491,7 +818,7 @@ public class OnlineIndexer implements AutoCloseable {
     @Nonnull
     private CompletableFuture<Boolean> handleBuiltRange(@Nonnull Subspace subspace, RangeSet rangeSet, Queue<Range> rangeDeque, Tuple startTuple, Tuple endTuple, Tuple realEnd, Throwable ex) {
         final RuntimeException unwrappedEx = ex == null ? null : runner.getDatabase().mapAsyncToSyncException(ex);
-        long toWait = (recordsPerSecond == UNLIMITED) ? 0 : 1000 * limit / recordsPerSecond;
+        long toWait = (recordsPerSecond == UNLIMITED) ? 0 : 1000L * limit.get() / recordsPerSecond;
         if (unwrappedEx == null) {
             if (realEnd != null && !realEnd.equals(endTuple)) {
                 // We didn't make it to the end. Continue on to the next item.
@@ -506,7 +833,7 @@ public class OnlineIndexer implements AutoCloseable {
             Throwable cause = unwrappedEx;
             while (cause != null) {
                 if (cause instanceof RecordBuiltRangeException) {
-                    return rangeSet.missingRanges(runner.getDatabase().database(), startTuple.pack(), endTuple.pack())
+                    return rangeSet.missingRanges(runner.getDatabase().database(), startTuple.pack(), packOrNull(endTuple))
                             .thenCompose(list -> {
                                 rangeDeque.addAll(list);
                                 return MoreAsyncUtil.delayedFuture(toWait, TimeUnit.MILLISECONDS);
@@ -525,18 +852,111 @@ public class OnlineIndexer implements AutoCloseable {
         }
     }
 
+    /**
+     * Builds (with retry loops) the index by adding records with primary keys within the given range, using several
+     * concurrent workers. The unbuilt parts of the range are split at the primary keys nearest to the boundaries
+     * between storage shards (see {@link FDBRecordStore#getPrimaryKeyBoundariesAsync}) and the pieces are shared out
+     * among the workers, each of which builds one piece at a time as {@link #buildRange(Key.Evaluated, Key.Evaluated)}
+     * does and rate limits itself separately. Since all progress is recorded in the index's range set, several
+     * indexers, even in different processes, can build the same index at once: a worker that finds its piece already
+     * built by someone else just moves on to what remains unbuilt.
+     *
+     * @param start the (inclusive) beginning primary key of the range to build (or <code>null</code> to go from the beginning)
+     * @param end the (exclusive) end primary key of the range to build (or <code>null</code> to go to the end)
+     * @param parallelism the number of concurrent workers
+     * @return a future that will be ready when the build has completed
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public CompletableFuture<Void> buildRangeInParallel(@Nullable Key.Evaluated start, @Nullable Key.Evaluated end, int parallelism) {
+        return recordStoreBuilder.getSubspaceProvider().getSubspaceAsync().thenCompose(subspace ->
+                buildRangeInParallel(subspace, convertOrNull(start), convertOrNull(end), parallelism));
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> buildRangeInParallel(@Nonnull Subspace subspace, @Nullable Tuple start, @Nullable Tuple end,
+                                                         int parallelism) {
+        RangeSet rangeSet = new RangeSet(subspace.subspace(Tuple.from(FDBRecordStore.INDEX_RANGE_SPACE_KEY, index.getSubspaceKey())));
+        CompletableFuture<List<Range>> missingFuture = rangeSet.missingRanges(runner.getDatabase().database(), packOrNull(start), packOrNull(end));
+        CompletableFuture<List<Tuple>> boundariesFuture = runner.runAsync(context ->
+                openRecordStore(context).thenCompose(store -> store.getPrimaryKeyBoundariesAsync(start, end)));
+        return missingFuture.thenCombine(boundariesFuture, this::splitRanges).thenCompose(pieces -> {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info(KeyValueLogMessage.of("building index in parallel",
+                        LogMessageKeys.INDEX_NAME, index.getName(),
+                        LogMessageKeys.RANGE_START, start,
+                        LogMessageKeys.RANGE_END, end,
+                        "pieces", pieces.size(),
+                        "parallelism", parallelism));
+            }
+            // Shuffled so that indexers in other processes working on the same index are unlikely to collide.
+            Collections.shuffle(pieces);
+            Queue<Range> sharedQueue = new ConcurrentLinkedQueue<>(pieces);
+            List<CompletableFuture<Void>> workers = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(buildRangesFromQueue(subspace, rangeSet, sharedQueue));
+            }
+            return AsyncUtil.whenAll(workers);
+        });
+    }
+
+    // Split each of the given ranges at any of the given (sorted) boundaries that fall within it.
+    @Nonnull
+    private List<Range> splitRanges(@Nonnull List<Range> ranges, @Nonnull List<Tuple> boundaries) {
+        List<Range> pieces = new ArrayList<>();
+        int boundaryIndex = 0;
+        for (Range range : ranges) {
+            byte[] pieceBegin = range.begin;
+            while (boundaryIndex < boundaries.size()) {
+                byte[] boundary = boundaries.get(boundaryIndex).pack();
+                if (ByteArrayUtil.compareUnsigned(boundary, range.end) >= 0) {
+                    break;
+                }
+                if (ByteArrayUtil.compareUnsigned(boundary, pieceBegin) > 0) {
+                    pieces.add(new Range(pieceBegin, boundary));
+                    pieceBegin = boundary;
+                }
+                boundaryIndex++;
+            }
+            pieces.add(new Range(pieceBegin, range.end));
+        }
+        return pieces;
+    }
+
+    // One worker of a parallel build. Remainders of a partly built piece go back to the worker's own queue, so that
+    // it finishes its current piece before taking another from the shared queue.
+    @Nonnull
+    private CompletableFuture<Void> buildRangesFromQueue(@Nonnull Subspace subspace, @Nonnull RangeSet rangeSet, @Nonnull Queue<Range> sharedQueue) {
+        Queue<Range> rangeDeque = new ArrayDeque<>();
+        return AsyncUtil.whileTrue(() -> {
+            Range toBuild = rangeDeque.poll();
+            if (toBuild == null) {
+                toBuild = sharedQueue.poll();
+                if (toBuild == null) {
+                    return AsyncUtil.READY_FALSE; // We're done.
+                }
+            }
+            // This only works if the things included within the rangeSet are serialized Tuples.
+            Tuple startTuple = Tuple.fromBytes(toBuild.begin);
+            Tuple endTuple = Arrays.equals(toBuild.end, END_BYTES) ? null : Tuple.fromBytes(toBuild.end);
+            return buildUnbuiltRange(startTuple, endTuple)
+                    .handle((realEnd, ex) -> handleBuiltRange(subspace, rangeSet, rangeDeque, startTuple, endTuple, realEnd, ex))
+                    .thenCompose(Function.identity());
+        }, runner.getExecutor());
+    }
+
     // Helper function that works on Tuples instead of keys.
     @Nonnull
-    private CompletableFuture<Tuple> buildUnbuiltRange(@Nonnull FDBRecordStore store, @Nullable Tuple start, @Nullable Tuple end) {
-        CompletableFuture<Tuple> buildFuture = buildRangeOnly(store, start, end, true);
+    private CompletableFuture<Tuple> buildUnbuiltRange(@Nonnull FDBRecordStore store, @Nullable Tuple start, @Nullable Tuple end,
+                                                       @Nullable BatchProgress progress) {
+        CompletableFuture<Tuple> buildFuture = buildRangeOnly(store, start, end, true, progress);
 
-        RangeSet rangeSet = new RangeSet(store.indexRangeSubspace(index));
         byte[] startBytes = packOrNull(start);
 
         AtomicReference<Tuple> toReturn = new AtomicReference<>();
         return buildFuture.thenCompose(realEnd -> {
             toReturn.set(realEnd);
-            return rangeSet.insertRange(store.ensureContextActive(), startBytes, packOrNull(realEnd), true);
+            return insertRanges(store, startBytes, packOrNull(realEnd), true);
         }).thenApply(changed -> {
             if (changed) {
                 return toReturn.get();
@@ -577,14 +997,14 @@ public class OnlineIndexer implements AutoCloseable {
      */
     @Nonnull
     public CompletableFuture<Key.Evaluated> buildUnbuiltRange(@Nonnull FDBRecordStore store, @Nullable Key.Evaluated start, @Nullable Key.Evaluated end) {
-        return buildUnbuiltRange(store, convertOrNull(start), convertOrNull(end))
+        return buildUnbuiltRange(store, convertOrNull(start), convertOrNull(end), null)
                 .thenApply(tuple -> (tuple == null) ? null : Key.Evaluated.fromTuple(tuple));
     }
 
     // Helper function with the same behavior as buildUnbuiltRange, but it works on tuples instead of primary keys.
     @Nonnull
     private CompletableFuture<Tuple> buildUnbuiltRange(@Nullable Tuple start, @Nullable Tuple end) {
-        return runAsync(store -> buildUnbuiltRange(store, start, end));
+        return runBatchAsync((store, progress) -> buildUnbuiltRange(store, start, end, progress));
     }
 
     @VisibleForTesting
@@ -608,20 +1028,25 @@ public class OnlineIndexer implements AutoCloseable {
     @Nonnull
     public CompletableFuture<Void> rebuildIndexAsync(@Nonnull FDBRecordStore store) {
         Transaction tr = store.ensureContextActive();
-        store.clearIndexData(index);
-
-        // Clear the associated range set and make it instead equal to
-        // the complete range. This isn't super necessary, but it is done
-        // to avoid (1) concurrent OnlineIndexBuilders doing more work and
-        // (2) to allow for write-only indexes to continue to do the right thing.
-        RangeSet rangeSet = new RangeSet(store.indexRangeSubspace(index));
-        CompletableFuture<Boolean> rangeFuture = rangeSet.clear(tr)
-                .thenCompose(vignore -> rangeSet.insertRange(tr, null, null));
+        List<CompletableFuture<Boolean>> rangeFutures = new ArrayList<>(targetIndexes.size());
+        for (Index targetIndex : targetIndexes) {
+            store.clearIndexData(targetIndex);
+
+            // Clear the associated range set and make it instead equal to
+            // the complete range. This isn't super necessary, but it is done
+            // to avoid (1) concurrent OnlineIndexBuilders doing more work and
+            // (2) to allow for write-only indexes to continue to do the right thing.
+            RangeSet rangeSet = new RangeSet(store.indexRangeSubspace(targetIndex));
+            store.getContext().invalidateRangeSetSnapshot(store.indexRangeSubspace(targetIndex));
+            rangeFutures.add(rangeSet.clear(tr)
+                    .thenCompose(vignore -> rangeSet.insertRange(tr, null, null)));
+        }
+        CompletableFuture<List<Boolean>> rangeFuture = AsyncUtil.getAll(rangeFutures);
 
         // Rebuild the index by going through all of the records in a transaction.
         AtomicReference<TupleRange> rangeToGo = new AtomicReference<>(recordsRange);
         CompletableFuture<Void> buildFuture = AsyncUtil.whileTrue(() ->
-                buildRangeOnly(store, rangeToGo.get(), true).thenApply(nextStart -> {
+                buildRangeOnly(store, rangeToGo.get(), true, null).thenApply(nextStart -> {
                     if (nextStart == null) {
                         return false;
                     } else {
@@ -665,17 +1090,42 @@ public class OnlineIndexer implements AutoCloseable {
     @Nonnull
     public CompletableFuture<TupleRange> buildEndpoints(@Nonnull FDBRecordStore store) {
         final RangeSet rangeSet = new RangeSet(store.indexRangeSubspace(index));
+        final CompletableFuture<Void> checkFuture = checkTargetIndexesInStep(store, rangeSet);
         if (TupleRange.ALL.equals(recordsRange)) {
-            return buildEndpoints(store, rangeSet);
+            return checkFuture.thenCompose(vignore -> buildEndpoints(store, rangeSet));
         }
         // If records do not occupy whole range, first mark outside as built.
         final Range asRange = recordsRange.toRange();
-        return CompletableFuture.allOf(
-                rangeSet.insertRange(store.ensureContextActive(), null, asRange.begin),
-                rangeSet.insertRange(store.ensureContextActive(), asRange.end, null))
+        return checkFuture.thenCompose(vignore -> CompletableFuture.allOf(
+                insertRanges(store, null, asRange.begin, false),
+                insertRanges(store, asRange.end, null, false)))
                 .thenCompose(vignore -> buildEndpoints(store, rangeSet));
     }
 
+    // Since the first index's range set determines what gets built for all of them, building must have progressed
+    // equally far for each. Otherwise, some records could be indexed twice, which is not safe for aggregate indexes.
+    @Nonnull
+    private CompletableFuture<Void> checkTargetIndexesInStep(@Nonnull FDBRecordStore store, @Nonnull RangeSet rangeSet) {
+        if (targetIndexes.size() == 1) {
+            return AsyncUtil.DONE;
+        }
+        final Transaction tr = store.ensureContextActive();
+        final List<CompletableFuture<List<Range>>> missingFutures = new ArrayList<>(targetIndexes.size());
+        missingFutures.add(rangeSet.missingRanges(tr).asList());
+        for (Index targetIndex : targetIndexes.subList(1, targetIndexes.size())) {
+            missingFutures.add(new RangeSet(store.indexRangeSubspace(targetIndex)).missingRanges(tr).asList());
+        }
+        return AsyncUtil.getAll(missingFutures).thenAccept(missingLists -> {
+            for (int i = 1; i < missingLists.size(); i++) {
+                if (!missingLists.get(i).equals(missingLists.get(0))) {
+                    throw new RecordCoreException("Target indexes have been built to different extents",
+                            LogMessageKeys.INDEX_NAME, index.getName(),
+                            "otherIndexName", targetIndexes.get(i).getName());
+                }
+            }
+        });
+    }
+
     @Nonnull
     private CompletableFuture<TupleRange> buildEndpoints(@Nonnull FDBRecordStore store, @Nonnull RangeSet rangeSet) {
         final ExecuteProperties limit1 = ExecuteProperties.newBuilder()
@@ -690,7 +1140,7 @@ public class OnlineIndexer implements AutoCloseable {
                 return buildRange(store, null, firstTuple).thenApply(vignore -> firstTuple);
             } else {
                 // Empty range -- add the whole thing.
-                return rangeSet.insertRange(store.ensureContextActive(), null, null).thenApply(bignore -> null);
+                return insertRanges(store, null, null, false).thenApply(bignore -> null);
             }
         });
 
@@ -734,14 +1184,20 @@ public class OnlineIndexer implements AutoCloseable {
      * parameters set in the constructor of this class. It will also retry
      * any retriable errors that it encounters while it runs the build. At the
      * end, it will mark the index readable in the store if specified.
+     * If the builder was given a parallelism greater than one, the interior of the
+     * record range is built by {@link #buildRangeInParallel}.
+     * If the builder was given a source index, its entries are scanned instead of the records
+     * (see {@link Builder#setSourceIndex(Index)}).
      *
      * @param markReadable whether to mark the index as readable after building the index
      * @return a future that will be ready when the build has completed
      */
     @Nonnull
     public CompletableFuture<Void> buildIndexAsync(boolean markReadable) {
-        CompletableFuture<Void> buildFuture = buildEndpoints().thenCompose(tupleRange -> {
-            if (tupleRange != null) {
+        CompletableFuture<Void> buildFuture = sourceIndex != null ? buildFromSourceIndex() : buildEndpoints().thenCompose(tupleRange -> {
+            if (tupleRange != null && parallelism > 1) {
+                return buildRangeInParallel(Key.Evaluated.fromTuple(tupleRange.getLow()), Key.Evaluated.fromTuple(tupleRange.getHigh()), parallelism);
+            } else if (tupleRange != null) {
                 return buildRange(Key.Evaluated.fromTuple(tupleRange.getLow()), Key.Evaluated.fromTuple(tupleRange.getHigh()));
             } else {
                 return CompletableFuture.completedFuture(null);
@@ -752,7 +1208,13 @@ public class OnlineIndexer implements AutoCloseable {
             return buildFuture.thenCompose(vignore ->
                 runner.runAsync(context ->
                         openRecordStore(context)
-                                .thenCompose(store -> store.markIndexReadable(index))
+                                .thenCompose(store -> {
+                                    final List<CompletableFuture<Boolean>> marks = new ArrayList<>(targetIndexes.size());
+                                    for (Index targetIndex : targetIndexes) {
+                                        marks.add(store.markIndexReadable(targetIndex));
+                                    }
+                                    return AsyncUtil.getAll(marks);
+                                })
                                 .thenApply(ignore -> null))
             );
         } else {
@@ -820,11 +1282,22 @@ public class OnlineIndexer implements AutoCloseable {
         @Nullable
         protected Index index;
         @Nullable
+        protected List<Index> additionalIndexes;
+        @Nullable
         protected Collection<RecordType> recordTypes;
 
         protected int limit = DEFAULT_LIMIT;
         protected int maxRetries = DEFAULT_MAX_RETRIES;
         protected int recordsPerSecond = DEFAULT_RECORDS_PER_SECOND;
+        protected int parallelism = DEFAULT_PARALLELISM;
+        protected boolean adaptiveLimit = false;
+        protected int maxLimit = DEFAULT_MAX_LIMIT;
+        protected long adaptiveTargetMillis = DEFAULT_ADAPTIVE_TARGET_MILLIS;
+        protected long adaptiveTargetBytes = DEFAULT_ADAPTIVE_TARGET_BYTES;
+        @Nullable
+        protected Index sourceIndex;
+        @Nullable
+        private IndexKeyValueToPartialRecord sourceIndexToRecord;
 
         protected Builder() {
         }
@@ -919,6 +1392,7 @@ public class OnlineIndexer implements AutoCloseable {
          */
         public Builder setIndex(@Nullable Index index) {
             this.index = index;
+            this.additionalIndexes = null;
             return this;
         }
 
@@ -928,10 +1402,106 @@ public class OnlineIndexer implements AutoCloseable {
          * @return this builder
          */
         public Builder setIndex(@Nonnull String indexName) {
-            this.index = getRecordMetaData().getIndex(indexName);
+            return setIndex(getRecordMetaData().getIndex(indexName));
+        }
+
+        /**
+         * Get the indexes to be built.
+         * @return the indexes to be built
+         */
+        @Nonnull
+        public List<Index> getTargetIndexes() {
+            final List<Index> targetIndexes = new ArrayList<>();
+            if (index != null) {
+                targetIndexes.add(index);
+            }
+            if (additionalIndexes != null) {
+                targetIndexes.addAll(additionalIndexes);
+            }
+            return targetIndexes;
+        }
+
+        /**
+         * Set the indexes to be built together.
+         * Each record is read once and given to the maintainers of all of the indexes, which must be on the same record types.
+         * Progress is recorded in the range set of each index. The first index's range set determines what remains to
+         * be built, so each index must have been built to the same extent, as is the case for newly added indexes.
+         * @param targetIndexes the indexes to be built
+         * @return this builder
+         */
+        public Builder setTargetIndexes(@Nonnull List<Index> targetIndexes) {
+            if (targetIndexes.isEmpty()) {
+                return setIndex((Index)null);
+            }
+            this.index = targetIndexes.get(0);
+            this.additionalIndexes = new ArrayList<>(targetIndexes.subList(1, targetIndexes.size()));
             return this;
         }
 
+        /**
+         * Add an index to be built along with any already set.
+         * @param index an additional index to be built
+         * @return this builder
+         * @see #setTargetIndexes
+         */
+        public Builder addTargetIndex(@Nonnull Index index) {
+            if (this.index == null) {
+                this.index = index;
+            } else {
+                if (additionalIndexes == null) {
+                    additionalIndexes = new ArrayList<>();
+                }
+                additionalIndexes.add(index);
+            }
+            return this;
+        }
+
+        /**
+         * Add an index to be built along with any already set.
+         * @param indexName the name of an additional index to be built
+         * @return this builder
+         * @see #setTargetIndexes
+         */
+        public Builder addTargetIndex(@Nonnull String indexName) {
+            return addTargetIndex(getRecordMetaData().getIndex(indexName));
+        }
+
+        /**
+         * Get the index to scan instead of the records.
+         * @return the index from which the target indexes are built or {@code null} to build them from the records
+         */
+        @Nullable
+        public Index getSourceIndex() {
+            return sourceIndex;
+        }
+
+        /**
+         * Set an index to scan instead of the records when building the whole index with {@link #buildIndexAsync}.
+         * The source index must be a readable {@code VALUE} index on the single record type being indexed, whose
+         * entries include every field that the target indexes need, as when a new index reorders the columns of an
+         * existing one. Partial records are made from its entries in the same way as for a covering index query,
+         * so that much less needs to be read than when scanning whole records. Since the source index is not in
+         * primary key order, the build only records its progress once the whole source index has been scanned, and
+         * the target indexes must be idempotent, that is, kept up to date by record changes even before they are built.
+         * The indexing methods that take ranges of primary keys are not affected.
+         * @param sourceIndex the index from which to build the target indexes or {@code null} to build them from the records
+         * @return this builder
+         */
+        public Builder setSourceIndex(@Nullable Index sourceIndex) {
+            this.sourceIndex = sourceIndex;
+            return this;
+        }
+
+        /**
+         * Set an index to scan instead of the records when building the whole index.
+         * @param sourceIndexName the name of the index from which to build the target indexes
+         * @return this builder
+         * @see #setSourceIndex(Index)
+         */
+        public Builder setSourceIndex(@Nonnull String sourceIndexName) {
+            return setSourceIndex(getRecordMetaData().getIndex(sourceIndexName));
+        }
+
         /**
          * Get the explicit set of record types to be indexed.
          *
@@ -1015,6 +1585,119 @@ public class OnlineIndexer implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Get the number of concurrent workers used by {@link #buildIndex}.
+         * @return the number of workers building the index at once
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Set the number of concurrent workers used by {@link #buildIndex}.
+         * Each worker builds a separate range of records in its own transactions, splitting the records near storage
+         * shard boundaries, and is rate limited separately by {@link #setRecordsPerSecond}. Other indexers, such as
+         * those in other processes, can build the same index at the same time without repeating work.
+         *
+         * The default parallelism is {@link #DEFAULT_PARALLELISM} = {@value #DEFAULT_PARALLELISM}.
+         * @param parallelism the number of workers building the index at once
+         * @return this builder
+         */
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Get whether the number of records processed in one transaction is adjusted to how the transactions go.
+         * @return <code>true</code> if the limit is adaptive
+         */
+        public boolean isAdaptiveLimit() {
+            return adaptiveLimit;
+        }
+
+        /**
+         * Set whether the number of records processed in one transaction is adjusted to how the transactions go.
+         * Whatever this is set to, the limit is lowered when a transaction fails for doing too much work. If it is
+         * adaptive, the limit starts out at {@link #setLimit}, is raised, up to {@link #setMaxLimit}, while transactions
+         * that were cut off by the limit take less than half of {@link #setAdaptiveTargetMillis} and scan less than half of
+         * {@link #setAdaptiveTargetBytes} of records, and is lowered when a transaction goes over either of those. A
+         * transaction that had to be retried does not raise it. Records per second are still limited by {@link #setRecordsPerSecond}.
+         * The {@link FDBStoreTimer} gets the time taken by each transaction and the number of records and bytes scanned,
+         * from which the rate of the build can be found, along with the number of times the limit changed.
+         *
+         * The limit is not adaptive by default.
+         * @param adaptiveLimit whether the limit should be adaptive
+         * @return this builder
+         */
+        public Builder setAdaptiveLimit(boolean adaptiveLimit) {
+            this.adaptiveLimit = adaptiveLimit;
+            return this;
+        }
+
+        /**
+         * Get the largest number of records that an adaptive limit will process in one transaction.
+         * @return the maximum adaptive limit
+         */
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        /**
+         * Set the largest number of records that an adaptive limit will process in one transaction.
+         *
+         * The default maximum is {@link #DEFAULT_MAX_LIMIT} = {@value #DEFAULT_MAX_LIMIT}.
+         * @param maxLimit the maximum adaptive limit
+         * @return this builder
+         * @see #setAdaptiveLimit
+         */
+        public Builder setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Get the duration of a transaction that an adaptive limit aims to stay under.
+         * @return the target transaction duration in milliseconds
+         */
+        public long getAdaptiveTargetMillis() {
+            return adaptiveTargetMillis;
+        }
+
+        /**
+         * Set the duration of a transaction, including its commit, that an adaptive limit aims to stay under.
+         *
+         * The default target is {@link #DEFAULT_ADAPTIVE_TARGET_MILLIS} = {@value #DEFAULT_ADAPTIVE_TARGET_MILLIS}.
+         * @param adaptiveTargetMillis the target transaction duration in milliseconds
+         * @return this builder
+         * @see #setAdaptiveLimit
+         */
+        public Builder setAdaptiveTargetMillis(long adaptiveTargetMillis) {
+            this.adaptiveTargetMillis = adaptiveTargetMillis;
+            return this;
+        }
+
+        /**
+         * Get the number of bytes of records scanned by a transaction that an adaptive limit aims to stay under.
+         * @return the target bytes scanned per transaction
+         */
+        public long getAdaptiveTargetBytes() {
+            return adaptiveTargetBytes;
+        }
+
+        /**
+         * Set the number of bytes of records scanned by a transaction that an adaptive limit aims to stay under.
+         *
+         * The default target is {@link #DEFAULT_ADAPTIVE_TARGET_BYTES} = {@value #DEFAULT_ADAPTIVE_TARGET_BYTES}.
+         * @param adaptiveTargetBytes the target bytes scanned per transaction
+         * @return this builder
+         * @see #setAdaptiveLimit
+         */
+        public Builder setAdaptiveTargetBytes(long adaptiveTargetBytes) {
+            this.adaptiveTargetBytes = adaptiveTargetBytes;
+            return this;
+        }
+
         /**
          * Get the timer used in {@link #buildIndex}.
          * @return the timer or <code>null</code> if none is set
@@ -1245,14 +1928,58 @@ public class OnlineIndexer implements AutoCloseable {
          */
         public OnlineIndexer build() {
             validate();
-            return new OnlineIndexer(runner, recordStoreBuilder, index, recordTypes, limit, maxRetries, recordsPerSecond);
+            return new OnlineIndexer(runner, recordStoreBuilder, getTargetIndexes(), recordTypes, limit, maxRetries, recordsPerSecond, parallelism,
+                    sourceIndex, sourceIndexToRecord, adaptiveLimit, Math.max(limit, maxLimit), adaptiveTargetMillis, adaptiveTargetBytes);
         }
 
         protected void validate() {
             validateIndex();
+            validateSourceIndex();
             validateLimits();
         }
 
+        // Check that the source index has everything needed to make partial records that index the same as whole ones.
+        private void validateSourceIndex() {
+            sourceIndexToRecord = null;
+            if (sourceIndex == null) {
+                return;
+            }
+            final RecordMetaData metaData = getRecordMetaData();
+            if (!metaData.hasIndex(sourceIndex.getName()) || sourceIndex != metaData.getIndex(sourceIndex.getName())) {
+                throw new MetaDataException("Index " + sourceIndex.getName() + " not contained within specified metadata");
+            }
+            if (!IndexTypes.VALUE.equals(sourceIndex.getType()) || sourceIndex.getRootExpression().createsDuplicates()) {
+                throw new MetaDataException("Source index " + sourceIndex.getName() + " must be a value index with one entry per record");
+            }
+            final Collection<RecordType> sourceRecordTypes = metaData.recordTypesForIndex(sourceIndex);
+            if (sourceRecordTypes.size() != 1 || !new HashSet<>(sourceRecordTypes).equals(new HashSet<>(recordTypes))) {
+                throw new MetaDataException("Source index " + sourceIndex.getName() + " must be on just the record type being indexed");
+            }
+            for (KeyExpression sourceField : sourceIndex.getRootExpression().normalizeKeyForPositions()) {
+                while (sourceField instanceof NestingKeyExpression) {
+                    sourceField = ((NestingKeyExpression)sourceField).getChild();
+                }
+                // Such an entry holds the default value where the record does not have the field at all.
+                if (sourceField instanceof FieldKeyExpression &&
+                        ((FieldKeyExpression)sourceField).getNullStandin() == Key.Evaluated.NullStandin.NOT_NULL) {
+                    throw new MetaDataException("Source index " + sourceIndex.getName() + " does not distinguish missing fields");
+                }
+            }
+            final List<KeyExpression> requiredFields = new ArrayList<>();
+            for (Index targetIndex : getTargetIndexes()) {
+                for (KeyExpression targetField : targetIndex.getRootExpression().normalizeKeyForPositions()) {
+                    // The record type of a partial record is known without it being in the source index.
+                    if (!(targetField instanceof RecordTypeKeyExpression)) {
+                        requiredFields.add(targetField);
+                    }
+                }
+            }
+            sourceIndexToRecord = IndexKeyValueToPartialRecord.forIndex(sourceIndex, sourceRecordTypes.iterator().next(), requiredFields);
+            if (sourceIndexToRecord == null) {
+                throw new MetaDataException("Source index " + sourceIndex.getName() + " does not cover the fields of the indexes being built");
+            }
+        }
+
         // Check pointer equality to make sure other objects really came from given metaData.
         // Also resolve record types to use if not specified.
         private void validateIndex() {
@@ -1260,8 +1987,18 @@ public class OnlineIndexer implements AutoCloseable {
             if (index == null) {
                 throw new MetaDataException("index must be set");
             }
-            if (!metaData.hasIndex(index.getName()) || index != metaData.getIndex(index.getName())) {
-                throw new MetaDataException("Index " + index.getName() + " not contained within specified metadata");
+            for (Index targetIndex : getTargetIndexes()) {
+                if (!metaData.hasIndex(targetIndex.getName()) || targetIndex != metaData.getIndex(targetIndex.getName())) {
+                    throw new MetaDataException("Index " + targetIndex.getName() + " not contained within specified metadata");
+                }
+            }
+            if (additionalIndexes != null) {
+                final Set<RecordType> indexRecordTypes = new HashSet<>(metaData.recordTypesForIndex(index));
+                for (Index additionalIndex : additionalIndexes) {
+                    if (!indexRecordTypes.equals(new HashSet<>(metaData.recordTypesForIndex(additionalIndex)))) {
+                        throw new MetaDataException("Index " + additionalIndex.getName() + " is not on the same record types as " + index.getName());
+                    }
+                }
             }
             if (recordTypes == null) {
                 recordTypes = metaData.recordTypesForIndex(index);
@@ -1278,9 +2015,13 @@ public class OnlineIndexer implements AutoCloseable {
             checkPositive(maxRetries, "maximum retries");
             checkPositive(limit, "record limit");
             checkPositive(recordsPerSecond, "records per second value");
+            checkPositive(parallelism, "parallelism");
+            checkPositive(maxLimit, "maximum record limit");
+            checkPositive(adaptiveTargetMillis, "adaptive target milliseconds");
+            checkPositive(adaptiveTargetBytes, "adaptive target bytes");
         }
 
-        private static void checkPositive(int value, String desc) {
+        private static void checkPositive(long value, String desc) {
             if (value <= 0) {
                 throw new RecordCoreException("Non-positive value " + value + " given for " + desc);
             }
@@ -0,0 +1,111 @@
+/*
+ * RangeSetSnapshot.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.async.RangeSet;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An in-memory copy of the ranges in a {@link RangeSet}, read once with a single range read.
+ *
+ * <p>
+ * Checking whether a key is in the set then only needs a floor lookup on the begin keys of the ranges, which
+ * never overlap. As with {@link RangeSet#contains}, the snapshot itself is read at snapshot isolation level and
+ * each lookup adds a read conflict on just the key being checked, so a concurrent change to the set that
+ * covers that key will still cause the transaction to conflict. The snapshot does not see changes made to the
+ * set later in the same transaction; such changes must go through {@link FDBRecordContext#invalidateRangeSetSnapshot}.
+ * </p>
+ *
+ * @see FDBRecordContext#getRangeSetSnapshot(Subspace)
+ */
+@API(API.Status.INTERNAL)
+public class RangeSetSnapshot {
+    @Nonnull
+    private final Subspace subspace;
+    @Nonnull
+    private final NavigableMap<byte[], byte[]> ranges;
+
+    private RangeSetSnapshot(@Nonnull Subspace subspace, @Nonnull NavigableMap<byte[], byte[]> ranges) {
+        this.subspace = subspace;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Read all of the ranges of the range set stored in the given subspace.
+     * @param tr the transaction in which to read, which is used at snapshot isolation level
+     * @param subspace the subspace of the range set
+     * @return a future that completes to a snapshot of the range set
+     */
+    @Nonnull
+    public static CompletableFuture<RangeSetSnapshot> load(@Nonnull ReadTransaction tr, @Nonnull Subspace subspace) {
+        return tr.snapshot().getRange(subspace.range()).asList().thenApply(kvs -> fromKeyValues(subspace, kvs));
+    }
+
+    @Nonnull
+    static RangeSetSnapshot fromKeyValues(@Nonnull Subspace subspace, @Nonnull List<KeyValue> kvs) {
+        final NavigableMap<byte[], byte[]> ranges = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+        for (KeyValue kv : kvs) {
+            ranges.put(subspace.unpack(kv.getKey()).getBytes(0), kv.getValue());
+        }
+        return new RangeSetSnapshot(subspace, ranges);
+    }
+
+    /**
+     * Determine whether the given key is contained in one of the ranges, adding a read conflict on that key.
+     * @param tr the transaction to which to add the read conflict
+     * @param key the key to check
+     * @return <code>true</code> if the key is in the range set
+     */
+    public boolean contains(@Nonnull Transaction tr, @Nonnull byte[] key) {
+        tr.addReadConflictKey(subspace.pack(key));
+        return containsKey(key);
+    }
+
+    boolean containsKey(@Nonnull byte[] key) {
+        final Map.Entry<byte[], byte[]> entry = ranges.floorEntry(key);
+        return entry != null && ByteArrayUtil.compareUnsigned(key, entry.getValue()) < 0;
+    }
+
+    /**
+     * Get the number of disjoint ranges in the snapshot.
+     * @return the number of ranges
+     */
+    public int size() {
+        return ranges.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RangeSetSnapshot{" + ranges.size() + " ranges}";
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * ReadVersionBatcher.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.async.MoreAsyncUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces requests for a read version so that callers asking within a short window share a single GRV.
+ *
+ * <p>
+ * The first request starts a batch, which is sent once the window has elapsed. Every request that arrives before then
+ * joins the batch. Since the shared GRV is only issued after all of its requests were made, the version it returns
+ * is at least as new as any commit that completed before any of them asked, so sharing it does not weaken
+ * consistency. Requests that arrive after a batch has been sent start the next one.
+ * </p>
+ */
+class ReadVersionBatcher {
+    @Nonnull
+    private final Supplier<CompletableFuture<Long>> readVersionSupplier;
+    private final long windowMillis;
+    @Nullable
+    private CompletableFuture<Long> pending;
+
+    ReadVersionBatcher(@Nonnull Supplier<CompletableFuture<Long>> readVersionSupplier, long windowMillis) {
+        this.readVersionSupplier = readVersionSupplier;
+        this.windowMillis = windowMillis;
+    }
+
+    long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Get a read version, joining the batch being gathered if there is one.
+     * @return a future that completes to a read version no older than the time of this call
+     */
+    @Nonnull
+    CompletableFuture<Long> getReadVersion() {
+        final CompletableFuture<Long> batch;
+        boolean first = false;
+        synchronized (this) {
+            if (pending == null) {
+                pending = new CompletableFuture<>();
+                first = true;
+            }
+            batch = pending;
+        }
+        if (first) {
+            MoreAsyncUtil.delayedFuture(windowMillis, TimeUnit.MILLISECONDS).whenComplete((vignore, delayErr) -> send(batch));
+        }
+        // A separate future for each caller, so that one cancelling does not cancel the others.
+        return batch.thenApply(version -> version);
+    }
+
+    private void send(@Nonnull CompletableFuture<Long> batch) {
+        synchronized (this) {
+            if (pending == batch) {
+                pending = null;
+            }
+        }
+        final CompletableFuture<Long> readVersion;
+        try {
+            readVersion = readVersionSupplier.get();
+        } catch (RuntimeException e) {
+            batch.completeExceptionally(e);
+            return;
+        }
+        readVersion.whenComplete((version, err) -> {
+            if (err != null) {
+                batch.completeExceptionally(err);
+            } else {
+                batch.complete(version);
+            }
+        });
+    }
+}
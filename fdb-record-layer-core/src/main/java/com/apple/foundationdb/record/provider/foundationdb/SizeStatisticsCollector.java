@@ -21,7 +21,13 @@
 package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.API;
+import com.apple.foundationdb.KeySelector;
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.LocalityUtil;
+import com.apple.foundationdb.Range;
+import com.apple.foundationdb.ReadTransaction;
 import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.async.CloseableAsyncIterator;
 import com.apple.foundationdb.record.CursorStreamingMode;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.RecordCoreArgumentException;
@@ -29,11 +35,16 @@ import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A class that collects statistics on the keys and values within a record store or within
@@ -46,6 +57,14 @@ import java.util.concurrent.CompletableFuture;
  * there are no guarantees that the values it returns were ever actually true for any
  * version in the transaction history. However, as long as the data set is not too volatile,
  * it should produce an approximate answer for the statistics it gives.
+ *
+ * <p>
+ * For large subspaces, the collector can instead be put into a sampling mode with {@link #setSampling(int, int)}.
+ * In that mode, it does not read every key. Instead, it uses the shard boundaries within the subspace to divide it
+ * into pieces of roughly similar size and then estimates the number of keys in each shard from a few random range
+ * reads within it. The key and value sizes and the size distribution are then scaled up from the keys that were read.
+ * The statistics are then only estimates, and {@link #getKeyCountStandardError()} gives a measure of their accuracy.
+ * </p>
  */
 @API(API.Status.EXPERIMENTAL)
 public class SizeStatisticsCollector {
@@ -61,6 +80,17 @@ public class SizeStatisticsCollector {
     @Nullable
     private byte[] continuation;
     private boolean done;
+    private int samplesPerShard;
+    private int keysPerSample;
+    @Nullable
+    private Random random;
+    @Nullable
+    private List<byte[]> shardBoundaries;
+    private int shardIndex;
+    private double keyCountVariance;
+
+    // Number of bytes following the common prefix of a shard's boundaries used to position keys within it.
+    private static final int POSITION_BYTES = 7;
 
     private SizeStatisticsCollector(@Nonnull Subspace subspace) {
         this.subspace = subspace;
@@ -72,6 +102,67 @@ public class SizeStatisticsCollector {
         this.sizeBuckets = new long[Integer.SIZE];
         this.continuation = null;
         this.done = false;
+        this.samplesPerShard = 0;
+        this.keysPerSample = 0;
+        this.random = null;
+        this.shardBoundaries = null;
+        this.shardIndex = 0;
+        this.keyCountVariance = 0.0;
+    }
+
+    /**
+     * Estimate statistics by sampling instead of reading every key. Each shard within the subspace will be sampled
+     * using <code>samplesPerShard</code> range reads starting at random keys within it, each of which will read
+     * up to <code>keysPerSample</code> keys. A shard with no more than <code>keysPerSample</code> keys is therefore
+     * counted exactly. The number of keys in a larger shard is estimated from how much of the shard's key space
+     * each read covered. This must be called before statistics are collected.
+     *
+     * @param samplesPerShard the number of random range reads to perform within each shard
+     * @param keysPerSample the maximum number of keys to read in each range read
+     * @return this collector
+     */
+    @Nonnull
+    public SizeStatisticsCollector setSampling(int samplesPerShard, int keysPerSample) {
+        return setSampling(samplesPerShard, keysPerSample, null);
+    }
+
+    /**
+     * Estimate statistics by sampling instead of reading every key, choosing where to start each range read
+     * using the given source of randomness.
+     *
+     * @param samplesPerShard the number of random range reads to perform within each shard
+     * @param keysPerSample the maximum number of keys to read in each range read
+     * @param random the source of random sample positions or <code>null</code> to use {@link ThreadLocalRandom}
+     * @return this collector
+     * @see #setSampling(int, int)
+     */
+    @Nonnull
+    public SizeStatisticsCollector setSampling(int samplesPerShard, int keysPerSample, @Nullable Random random) {
+        if (samplesPerShard < 1 || keysPerSample < 1) {
+            throw new RecordCoreArgumentException("sampling parameters must be positive",
+                    "samplesPerShard", samplesPerShard,
+                    "keysPerSample", keysPerSample);
+        }
+        if (continuation != null || shardBoundaries != null || done) {
+            throw new RecordCoreArgumentException("sampling cannot be changed once collection has started");
+        }
+        this.samplesPerShard = samplesPerShard;
+        this.keysPerSample = keysPerSample;
+        this.random = random;
+        return this;
+    }
+
+    private double nextRandomDouble() {
+        return random != null ? random.nextDouble() : ThreadLocalRandom.current().nextDouble();
+    }
+
+    /**
+     * Get whether this collector estimates statistics by sampling.
+     * @return {@code true} if {@link #setSampling(int, int)} has been called
+     * @see #setSampling(int, int)
+     */
+    public boolean isSampling() {
+        return samplesPerShard > 0;
     }
 
     /**
@@ -83,6 +174,8 @@ public class SizeStatisticsCollector {
      * is done collecting statistics (i.e., if there are no more keys in the range of keys that
      * it was tasked to collect statistics on), then this method will return a future that completes
      * to <code>true</code>. Otherwise, this function will return a future that completes to <code>false</code>.
+     * When {@linkplain #setSampling(int, int) sampling}, the row limit bounds the number of keys read rather than
+     * returned, and whole shards are sampled until a limit is reached.
      *
      * @param context the transaction context in which to collect statistics
      * @param executeProperties limits on execution
@@ -93,6 +186,9 @@ public class SizeStatisticsCollector {
         if (done) {
             return AsyncUtil.READY_TRUE;
         }
+        if (isSampling()) {
+            return estimateAsync(context, executeProperties);
+        }
         final ScanProperties scanProperties = new ScanProperties(executeProperties)
                 .setStreamingMode(CursorStreamingMode.WANT_ALL);
         final KeyValueCursor kvCursor = KeyValueCursor.Builder.withSubspace(subspace)
@@ -130,6 +226,226 @@ public class SizeStatisticsCollector {
         }).whenComplete((vignore, err) -> kvCursor.close());
     }
 
+    @Nonnull
+    private CompletableFuture<Boolean> estimateAsync(@Nonnull FDBRecordContext context, @Nonnull ExecuteProperties executeProperties) {
+        final ReadTransaction tr = context.readTransaction(true);
+        final CompletableFuture<Void> boundariesFuture = shardBoundaries == null ? loadShardBoundaries(context) : AsyncUtil.DONE;
+        final long startTime = System.currentTimeMillis();
+        final int keyLimit = executeProperties.getReturnedRowLimitOrMax();
+        final long timeLimit = executeProperties.getTimeLimit();
+        final long[] keysRead = {0L};
+        return boundariesFuture.thenCompose(vignore -> AsyncUtil.whileTrue(() -> {
+            if (shardIndex >= shardBoundaries.size() - 1 || keysRead[0] >= keyLimit ||
+                    (timeLimit != ExecuteProperties.UNLIMITED_TIME && System.currentTimeMillis() - startTime >= timeLimit)) {
+                return AsyncUtil.READY_FALSE;
+            }
+            return sampleShard(tr, shardBoundaries.get(shardIndex), shardBoundaries.get(shardIndex + 1)).thenApply(sampled -> {
+                keysRead[0] += sampled;
+                shardIndex++;
+                return true;
+            });
+        }, context.getExecutor())).handle((vignore, err) -> {
+            if (err == null) {
+                done = shardIndex >= shardBoundaries.size() - 1;
+                return done;
+            } else {
+                if (FDBExceptions.isRetriable(err)) {
+                    return false;
+                } else {
+                    throw context.getDatabase().mapAsyncToSyncException(err);
+                }
+            }
+        });
+    }
+
+    // Determine the shards to be sampled, trimmed to the keys actually present in the subspace.
+    @Nonnull
+    private CompletableFuture<Void> loadShardBoundaries(@Nonnull FDBRecordContext context) {
+        final Range range = subspace.range();
+        final ReadTransaction tr = context.readTransaction(true);
+        final CompletableFuture<byte[]> firstKeyFuture = tr.getKey(KeySelector.firstGreaterOrEqual(range.begin));
+        final CompletableFuture<byte[]> lastKeyFuture = tr.getKey(KeySelector.lastLessThan(range.end));
+        final CloseableAsyncIterator<byte[]> iter = LocalityUtil.getBoundaryKeys(context.ensureActive(), range.begin, range.end);
+        final CompletableFuture<List<byte[]>> boundariesFuture = AsyncUtil.collectRemaining(iter, context.getExecutor())
+                .whenComplete((vignore, err) -> iter.close());
+        final CompletableFuture<Void> result = CompletableFuture.allOf(firstKeyFuture, lastKeyFuture, boundariesFuture).thenApply(vignore -> {
+            final byte[] firstKey = firstKeyFuture.join();
+            final List<byte[]> boundaries = new ArrayList<>();
+            if (ByteArrayUtil.compareUnsigned(firstKey, range.end) < 0) {
+                final byte[] lastKey = lastKeyFuture.join();
+                boundaries.add(firstKey);
+                for (byte[] boundary : boundariesFuture.join()) {
+                    if (ByteArrayUtil.compareUnsigned(firstKey, boundary) < 0 && ByteArrayUtil.compareUnsigned(boundary, lastKey) <= 0) {
+                        boundaries.add(boundary);
+                    }
+                }
+                boundaries.add(ByteArrayUtil.join(lastKey, new byte[] { 0x00 }));
+            }
+            shardBoundaries = boundaries;
+            return null;
+        });
+        return context.instrument(FDBStoreTimer.Events.COMPUTE_BOUNDARY_KEYS, result);
+    }
+
+    // Sample one shard and add its estimated contribution. Returns the number of keys read.
+    @Nonnull
+    private CompletableFuture<Long> sampleShard(@Nonnull ReadTransaction tr, @Nonnull byte[] begin, @Nonnull byte[] end) {
+        final int prefixLength = commonPrefixLength(begin, end);
+        final double beginPosition = keyPosition(begin, prefixLength);
+        final double span = keyPosition(end, prefixLength) - beginPosition;
+        final List<CompletableFuture<Sample>> sampleFutures = new ArrayList<>(samplesPerShard);
+        for (int i = 0; i < samplesPerShard; i++) {
+            byte[] startKey = begin;
+            if (span > 0) {
+                startKey = keyAtPosition(begin, prefixLength, beginPosition + nextRandomDouble() * span);
+                if (ByteArrayUtil.compareUnsigned(startKey, begin) < 0 || ByteArrayUtil.compareUnsigned(startKey, end) >= 0) {
+                    startKey = begin;
+                }
+            }
+            sampleFutures.add(sample(tr, begin, end, startKey, prefixLength, beginPosition, span));
+        }
+        return AsyncUtil.getAll(sampleFutures).thenApply(samples -> {
+            long sampledKeys = 0;
+            long sampledKeySize = 0;
+            long sampledValueSize = 0;
+            long[] sampledBuckets = new long[Integer.SIZE];
+            double sum = 0.0;
+            double sumSquares = 0.0;
+            int estimates = 0;
+            long maxCount = 0;
+            boolean exact = false;
+            double estimate = 0.0;
+            for (Sample sample : samples) {
+                for (KeyValue kv : sample.keyValues) {
+                    sampledKeys += 1;
+                    sampledKeySize += kv.getKey().length;
+                    maxKeySize = Math.max(maxKeySize, kv.getKey().length);
+                    sampledValueSize += kv.getValue().length;
+                    maxValueSize = Math.max(maxValueSize, kv.getValue().length);
+                    int totalSize = kv.getKey().length + kv.getValue().length;
+                    if (totalSize > 0) {
+                        sampledBuckets[Integer.SIZE - Integer.numberOfLeadingZeros(totalSize) - 1] += 1;
+                    }
+                }
+                final int count = sample.keyValues.size();
+                maxCount = Math.max(maxCount, count);
+                if (sample.complete) {
+                    exact = true;
+                    estimate = count;
+                } else if (sample.coverage > 0) {
+                    final double sampleEstimate = count / sample.coverage;
+                    sum += sampleEstimate;
+                    sumSquares += sampleEstimate * sampleEstimate;
+                    estimates++;
+                }
+            }
+            double variance = 0.0;
+            if (!exact) {
+                if (estimates == 0) {
+                    // Keys too dense to position: all that is known is that at least these were there.
+                    estimate = maxCount;
+                    variance = Double.POSITIVE_INFINITY;
+                } else {
+                    estimate = sum / estimates;
+                    // With only one sample, there is no measure of the spread, so assume the worst.
+                    variance = estimates > 1 ? (sumSquares - sum * sum / estimates) / (estimates - 1) / estimates : estimate * estimate;
+                }
+            }
+            if (sampledKeys > 0) {
+                final double scale = estimate / sampledKeys;
+                // Count from the rounded buckets so that the distribution stays consistent with the count.
+                for (int i = 0; i < sampledBuckets.length; i++) {
+                    final long bucketEstimate = Math.round(sampledBuckets[i] * scale);
+                    sizeBuckets[i] += bucketEstimate;
+                    keyCount += bucketEstimate;
+                }
+                keySize += Math.round(sampledKeySize * scale);
+                valueSize += Math.round(sampledValueSize * scale);
+                keyCountVariance += variance;
+            }
+            return sampledKeys;
+        });
+    }
+
+    // Read forward from the start key, wrapping around to the start of the shard if necessary.
+    @Nonnull
+    private CompletableFuture<Sample> sample(@Nonnull ReadTransaction tr, @Nonnull byte[] begin, @Nonnull byte[] end, @Nonnull byte[] startKey,
+                                             int prefixLength, double beginPosition, double span) {
+        final double startOffset = span > 0 ? (keyPosition(startKey, prefixLength) - beginPosition) / span : 0.0;
+        return tr.getRange(startKey, end, keysPerSample).asList().thenCompose(after -> {
+            if (after.size() >= keysPerSample) {
+                final byte[] lastKey = after.get(after.size() - 1).getKey();
+                final double coverage = span > 0 ? (keyPosition(lastKey, prefixLength) - beginPosition) / span - startOffset : 0.0;
+                return CompletableFuture.completedFuture(new Sample(after, coverage, false));
+            }
+            if (Arrays.equals(startKey, begin)) {
+                return CompletableFuture.completedFuture(new Sample(after, 1.0, true));
+            }
+            final int remaining = keysPerSample - after.size();
+            return tr.getRange(begin, startKey, remaining).asList().thenApply(before -> {
+                final List<KeyValue> keyValues = new ArrayList<>(after.size() + before.size());
+                keyValues.addAll(after);
+                keyValues.addAll(before);
+                if (before.size() < remaining) {
+                    return new Sample(keyValues, 1.0, true);
+                }
+                final byte[] lastKey = before.get(before.size() - 1).getKey();
+                final double coverage = 1.0 - startOffset + (keyPosition(lastKey, prefixLength) - beginPosition) / span;
+                return new Sample(keyValues, coverage, false);
+            });
+        });
+    }
+
+    private static int commonPrefixLength(@Nonnull byte[] key1, @Nonnull byte[] key2) {
+        int length = 0;
+        while (length < key1.length && length < key2.length && key1[length] == key2[length]) {
+            length++;
+        }
+        return length;
+    }
+
+    // Treat the bytes following the prefix as a fraction in [0, 1).
+    private static double keyPosition(@Nonnull byte[] key, int prefixLength) {
+        double position = 0.0;
+        double scale = 1.0;
+        for (int i = prefixLength; i < key.length && i < prefixLength + POSITION_BYTES; i++) {
+            scale /= 256;
+            position += (key[i] & 0xff) * scale;
+        }
+        return position;
+    }
+
+    @Nonnull
+    private static byte[] keyAtPosition(@Nonnull byte[] prefixKey, int prefixLength, double position) {
+        final byte[] key = Arrays.copyOf(prefixKey, prefixLength + POSITION_BYTES);
+        double remainder = position;
+        for (int i = prefixLength; i < key.length; i++) {
+            remainder *= 256;
+            final int b = Math.min(Math.max((int)remainder, 0), 0xff);
+            key[i] = (byte)b;
+            remainder -= b;
+        }
+        return key;
+    }
+
+    /**
+     * The result of a single sampled range read.
+     */
+    private static class Sample {
+        @Nonnull
+        private final List<KeyValue> keyValues;
+        // Fraction of the shard's key space that the read covered.
+        private final double coverage;
+        // Whether the read covered the entire shard.
+        private final boolean complete;
+
+        Sample(@Nonnull List<KeyValue> keyValues, double coverage, boolean complete) {
+            this.keyValues = keyValues;
+            this.coverage = coverage;
+            this.complete = complete;
+        }
+    }
+
     /**
      * Collect statistics about the key and value sizes.
      * This is a blocking variant of {@link #collectAsync(FDBRecordContext, ExecuteProperties)}.
@@ -150,6 +466,19 @@ public class SizeStatisticsCollector {
         return keyCount;
     }
 
+    /**
+     * Get the standard error of the estimated number of keys in the requested key range.
+     * This is zero unless {@linkplain #setSampling(int, int) sampling}. The estimated
+     * key count should be within two standard errors of the true count about 95% of the time,
+     * and the size estimates have about the same relative error. It is infinite if some shard's keys
+     * were too close together to tell how much of it a read covered, in which case the estimate is only
+     * a lower bound.
+     * @return the standard error of the key count
+     */
+    public double getKeyCountStandardError() {
+        return Math.sqrt(keyCountVariance);
+    }
+
     /**
      * Get the total size (in bytes) of all keys in the requested key range.
      * @return the size (in bytes) of the requested keys
@@ -176,6 +505,7 @@ public class SizeStatisticsCollector {
 
     /**
      * Get the size (in bytes) of the largest key in the requested key range.
+     * When sampling, this is only the largest key that was read.
      * @return the size (in bytes) of the largest key
      */
     public long getMaxKeySize() {
@@ -184,6 +514,7 @@ public class SizeStatisticsCollector {
 
     /**
      * Get the size (in bytes) of the largest value in the requested key range.
+     * When sampling, this is only the largest value that was read.
      * @return the size (in bytes) of the largest value
      */
     public long getMaxValueSize() {
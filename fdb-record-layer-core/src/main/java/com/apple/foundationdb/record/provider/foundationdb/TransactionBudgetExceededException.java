@@ -0,0 +1,45 @@
+/*
+ * TransactionBudgetExceededException.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.RecordCoreException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Exception thrown when a transaction uses more of some resource than its hard {@link TransactionResourceBudget} allows.
+ * This is meant to fail a transaction that is going to be too large or too slow before it has done all of its work,
+ * rather than when FDB rejects it at commit.
+ * @see FDBRecordContext#setHardResourceBudget(TransactionResourceBudget)
+ */
+@SuppressWarnings("serial")
+@API(API.Status.EXPERIMENTAL)
+public class TransactionBudgetExceededException extends RecordCoreException {
+    public TransactionBudgetExceededException(@Nonnull String msg, @Nullable Object ... keyValues) {
+        super(msg, keyValues);
+    }
+
+    public TransactionBudgetExceededException(@Nonnull String msg, @Nullable Throwable cause) {
+        super(msg, cause);
+    }
+}
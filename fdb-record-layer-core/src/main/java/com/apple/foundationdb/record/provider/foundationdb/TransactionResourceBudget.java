@@ -0,0 +1,217 @@
+/*
+ * TransactionResourceBudget.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Limits on the resources used by a single transaction.
+ *
+ * <p>
+ * An {@link FDBRecordContext} has a soft budget and a hard budget. When the soft budget is exceeded, cursors stop
+ * with {@link com.apple.foundationdb.record.RecordCursor.NoNextReason#TRANSACTION_BUDGET_REACHED} so that the
+ * caller can commit what it has and continue in a new transaction. When the hard budget is exceeded, the operation
+ * that exceeded it fails with a {@link TransactionBudgetExceededException}. FDB limits a transaction to 10MB of
+ * writes and five seconds, so budgets somewhat below those catch a batch that is too big well before commit.
+ * </p>
+ *
+ * @see TransactionResourceTracker
+ */
+@API(API.Status.EXPERIMENTAL)
+public class TransactionResourceBudget {
+    /**
+     * A budget that does not limit anything.
+     */
+    public static final TransactionResourceBudget UNLIMITED = newBuilder().build();
+
+    private final long maxBytesRead;
+    private final long maxBytesWritten;
+    private final long maxKeysRead;
+    private final long maxMutations;
+    private final long maxMillis;
+
+    private TransactionResourceBudget(long maxBytesRead, long maxBytesWritten, long maxKeysRead, long maxMutations, long maxMillis) {
+        this.maxBytesRead = maxBytesRead;
+        this.maxBytesWritten = maxBytesWritten;
+        this.maxKeysRead = maxKeysRead;
+        this.maxMutations = maxMutations;
+        this.maxMillis = maxMillis;
+    }
+
+    public long getMaxBytesRead() {
+        return maxBytesRead;
+    }
+
+    public long getMaxBytesWritten() {
+        return maxBytesWritten;
+    }
+
+    public long getMaxKeysRead() {
+        return maxKeysRead;
+    }
+
+    public long getMaxMutations() {
+        return maxMutations;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * Get whether this budget limits anything.
+     * @return <code>true</code> if this budget does not limit any resource
+     */
+    public boolean isUnlimited() {
+        return maxBytesRead == Long.MAX_VALUE && maxBytesWritten == Long.MAX_VALUE && maxKeysRead == Long.MAX_VALUE &&
+               maxMutations == Long.MAX_VALUE && maxMillis == Long.MAX_VALUE;
+    }
+
+    /**
+     * Get the first resource for which the given usage exceeds this budget.
+     * @param usage the resources used so far
+     * @param elapsedMillis the age of the transaction
+     * @return the name of an exceeded resource or <code>null</code> if the usage is within budget
+     */
+    String exceeded(@Nonnull TransactionResourceTracker.Usage usage, long elapsedMillis) {
+        if (usage.getBytesWritten() > maxBytesWritten) {
+            return "bytes_written";
+        } else if (usage.getMutations() > maxMutations) {
+            return "mutations";
+        } else if (usage.getBytesRead() > maxBytesRead) {
+            return "bytes_read";
+        } else if (usage.getKeysRead() > maxKeysRead) {
+            return "keys_read";
+        } else if (elapsedMillis > maxMillis) {
+            return "millis";
+        } else {
+            return null;
+        }
+    }
+
+    @Nonnull
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    @Nonnull
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionResourceBudget{bytesRead=" + maxBytesRead + ", bytesWritten=" + maxBytesWritten +
+               ", keysRead=" + maxKeysRead + ", mutations=" + maxMutations + ", millis=" + maxMillis + "}";
+    }
+
+    /**
+     * A builder for {@link TransactionResourceBudget}. Any resource not set is unlimited.
+     */
+    public static class Builder {
+        private long maxBytesRead = Long.MAX_VALUE;
+        private long maxBytesWritten = Long.MAX_VALUE;
+        private long maxKeysRead = Long.MAX_VALUE;
+        private long maxMutations = Long.MAX_VALUE;
+        private long maxMillis = Long.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        private Builder(@Nonnull TransactionResourceBudget budget) {
+            this.maxBytesRead = budget.maxBytesRead;
+            this.maxBytesWritten = budget.maxBytesWritten;
+            this.maxKeysRead = budget.maxKeysRead;
+            this.maxMutations = budget.maxMutations;
+            this.maxMillis = budget.maxMillis;
+        }
+
+        private static long check(@Nonnull String name, long limit) {
+            if (limit < 0) {
+                throw new RecordCoreArgumentException("resource budget cannot be negative", name, limit);
+            }
+            return limit;
+        }
+
+        /**
+         * Set the number of key and value bytes that can be read.
+         * @param maxBytesRead the read byte limit
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setMaxBytesRead(long maxBytesRead) {
+            this.maxBytesRead = check("maxBytesRead", maxBytesRead);
+            return this;
+        }
+
+        /**
+         * Set the number of key and value bytes that can be written. Cleared keys count toward this.
+         * @param maxBytesWritten the write byte limit
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setMaxBytesWritten(long maxBytesWritten) {
+            this.maxBytesWritten = check("maxBytesWritten", maxBytesWritten);
+            return this;
+        }
+
+        /**
+         * Set the number of keys that can be read.
+         * @param maxKeysRead the read key limit
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setMaxKeysRead(long maxKeysRead) {
+            this.maxKeysRead = check("maxKeysRead", maxKeysRead);
+            return this;
+        }
+
+        /**
+         * Set the number of sets, clears and atomic mutations that can be issued.
+         * @param maxMutations the mutation limit
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setMaxMutations(long maxMutations) {
+            this.maxMutations = check("maxMutations", maxMutations);
+            return this;
+        }
+
+        /**
+         * Set the number of milliseconds since the transaction was created after which it is over budget.
+         * @param maxMillis the time limit
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setMaxMillis(long maxMillis) {
+            this.maxMillis = check("maxMillis", maxMillis);
+            return this;
+        }
+
+        @Nonnull
+        public TransactionResourceBudget build() {
+            return new TransactionResourceBudget(maxBytesRead, maxBytesWritten, maxKeysRead, maxMutations, maxMillis);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * TransactionResourceTracker.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.API;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts for the resources used by a single {@link FDBRecordContext} and checks them against its budgets.
+ *
+ * <p>
+ * Usage is charged by the record store and index maintainers as records and index entries are loaded, saved and
+ * deleted, so it is broken down by record type and by index as well as totaled. Reads and writes done directly against
+ * the transaction are not seen. Key bytes of cleared keys count as bytes written.
+ * </p>
+ *
+ * <p>
+ * Callers charge before issuing the mutations being charged for where they can. Since some sizes are only known
+ * afterwards, once the hard budget has been exceeded the context's transaction refuses to commit, whether or not
+ * the {@link TransactionBudgetExceededException} was caught.
+ * </p>
+ *
+ * @see TransactionResourceBudget
+ * @see FDBRecordContext#getResourceTracker()
+ */
+@API(API.Status.EXPERIMENTAL)
+public class TransactionResourceTracker {
+    private static final String RECORD_TYPE_PREFIX = "record_type:";
+    private static final String INDEX_PREFIX = "index:";
+
+    private final long transactionCreateTime;
+    @Nonnull
+    private final Usage total;
+    // Keyed by the plain names, so that charging does not need to build category names.
+    @Nonnull
+    private final ConcurrentMap<String, Usage> byRecordType;
+    @Nonnull
+    private final ConcurrentMap<String, Usage> byIndex;
+    @Nonnull
+    private volatile TransactionResourceBudget softBudget;
+    @Nonnull
+    private volatile TransactionResourceBudget hardBudget;
+    @Nullable
+    private volatile TransactionBudgetExceededException hardBudgetExceeded;
+
+    public TransactionResourceTracker(long transactionCreateTime) {
+        this.transactionCreateTime = transactionCreateTime;
+        this.total = new Usage();
+        this.byRecordType = new ConcurrentHashMap<>();
+        this.byIndex = new ConcurrentHashMap<>();
+        this.softBudget = TransactionResourceBudget.UNLIMITED;
+        this.hardBudget = TransactionResourceBudget.UNLIMITED;
+    }
+
+    /**
+     * Get the usage category for records of the given type.
+     * @param recordTypeName the name of the record type
+     * @return the category name
+     */
+    @Nonnull
+    public static String recordTypeCategory(@Nonnull String recordTypeName) {
+        return RECORD_TYPE_PREFIX + recordTypeName;
+    }
+
+    /**
+     * Get the usage category for entries of the given index.
+     * @param indexName the name of the index
+     * @return the category name
+     */
+    @Nonnull
+    public static String indexCategory(@Nonnull String indexName) {
+        return INDEX_PREFIX + indexName;
+    }
+
+    @Nonnull
+    public TransactionResourceBudget getSoftBudget() {
+        return softBudget;
+    }
+
+    public void setSoftBudget(@Nonnull TransactionResourceBudget softBudget) {
+        this.softBudget = softBudget;
+    }
+
+    @Nonnull
+    public TransactionResourceBudget getHardBudget() {
+        return hardBudget;
+    }
+
+    public void setHardBudget(@Nonnull TransactionResourceBudget hardBudget) {
+        this.hardBudget = hardBudget;
+    }
+
+    /**
+     * Charge for record keys read.
+     * @param recordTypeName the type of the records read
+     * @param keys the number of keys read
+     * @param bytes the number of key and value bytes read
+     * @throws TransactionBudgetExceededException if this exceeds the hard budget
+     */
+    public void chargeRecordRead(@Nonnull String recordTypeName, long keys, long bytes) {
+        chargeRead(usageFor(byRecordType, recordTypeName), keys, bytes);
+        checkHardBudget(RECORD_TYPE_PREFIX, recordTypeName);
+    }
+
+    /**
+     * Charge for record mutations.
+     * @param recordTypeName the type of the records written or deleted
+     * @param mutations the number of sets and clears
+     * @param bytes the number of key and value bytes written
+     * @throws TransactionBudgetExceededException if this exceeds the hard budget
+     */
+    public void chargeRecordWrite(@Nonnull String recordTypeName, long mutations, long bytes) {
+        chargeWrite(usageFor(byRecordType, recordTypeName), mutations, bytes);
+        checkHardBudget(RECORD_TYPE_PREFIX, recordTypeName);
+    }
+
+    /**
+     * Charge for index entries read.
+     * @param indexName the index whose entries were read
+     * @param keys the number of keys read
+     * @param bytes the number of key and value bytes read
+     * @throws TransactionBudgetExceededException if this exceeds the hard budget
+     */
+    public void chargeIndexRead(@Nonnull String indexName, long keys, long bytes) {
+        chargeRead(usageFor(byIndex, indexName), keys, bytes);
+        checkHardBudget(INDEX_PREFIX, indexName);
+    }
+
+    /**
+     * Charge for index mutations.
+     * @param indexName the index whose entries were written or cleared
+     * @param mutations the number of sets, clears and atomic mutations
+     * @param bytes the number of key and value bytes written
+     * @throws TransactionBudgetExceededException if this exceeds the hard budget
+     */
+    public void chargeIndexWrite(@Nonnull String indexName, long mutations, long bytes) {
+        chargeWrite(usageFor(byIndex, indexName), mutations, bytes);
+        checkHardBudget(INDEX_PREFIX, indexName);
+    }
+
+    private void chargeRead(@Nonnull Usage usage, long keys, long bytes) {
+        total.keysRead.addAndGet(keys);
+        total.bytesRead.addAndGet(bytes);
+        usage.keysRead.addAndGet(keys);
+        usage.bytesRead.addAndGet(bytes);
+    }
+
+    private void chargeWrite(@Nonnull Usage usage, long mutations, long bytes) {
+        total.mutations.addAndGet(mutations);
+        total.bytesWritten.addAndGet(bytes);
+        usage.mutations.addAndGet(mutations);
+        usage.bytesWritten.addAndGet(bytes);
+    }
+
+    // A plain get first, since the entry is almost always there already.
+    @Nonnull
+    private static Usage usageFor(@Nonnull ConcurrentMap<String, Usage> usages, @Nonnull String name) {
+        Usage usage = usages.get(name);
+        if (usage == null) {
+            final Usage newUsage = new Usage();
+            usage = usages.putIfAbsent(name, newUsage);
+            if (usage == null) {
+                usage = newUsage;
+            }
+        }
+        return usage;
+    }
+
+    private void checkHardBudget(@Nonnull String categoryPrefix, @Nonnull String name) {
+        final TransactionResourceBudget budget = hardBudget;
+        if (budget.isUnlimited()) {
+            return;
+        }
+        final String resource = budget.exceeded(total, elapsedMillis(budget));
+        if (resource != null) {
+            final TransactionBudgetExceededException exceeded = new TransactionBudgetExceededException("transaction exceeded hard resource budget",
+                    "resource", resource,
+                    "category", categoryPrefix + name,
+                    "usage", total,
+                    "budget", budget);
+            if (hardBudgetExceeded == null) {
+                hardBudgetExceeded = exceeded;
+            }
+            throw exceeded;
+        }
+    }
+
+    /**
+     * Get the failure from when the transaction first exceeded its hard budget.
+     * A transaction that has exceeded its hard budget may have issued some of the mutations that took it over, so it
+     * must not be committed.
+     * @return the exception thrown when the hard budget was first exceeded or <code>null</code> if it has not been
+     */
+    @Nullable
+    public TransactionBudgetExceededException getHardBudgetExceeded() {
+        return hardBudgetExceeded;
+    }
+
+    private long elapsedMillis(@Nonnull TransactionResourceBudget budget) {
+        return budget.getMaxMillis() == Long.MAX_VALUE ? 0L : System.currentTimeMillis() - transactionCreateTime;
+    }
+
+    /**
+     * Get whether the transaction has used more than its soft budget of any resource.
+     * @return <code>true</code> if the soft budget has been exceeded
+     */
+    public boolean isOverSoftBudget() {
+        final TransactionResourceBudget budget = softBudget;
+        return !budget.isUnlimited() && budget.exceeded(total, elapsedMillis(budget)) != null;
+    }
+
+    /**
+     * Get the total resources used by the transaction.
+     * @return the total usage, which continues to be updated
+     */
+    @Nonnull
+    public Usage getUsage() {
+        return total;
+    }
+
+    /**
+     * Get the resources charged to the given category.
+     * @param category the category name
+     * @return the category's usage, which is zero if nothing has been charged to it
+     */
+    @Nonnull
+    public Usage getUsage(@Nonnull String category) {
+        final Usage usage;
+        if (category.startsWith(RECORD_TYPE_PREFIX)) {
+            usage = byRecordType.get(category.substring(RECORD_TYPE_PREFIX.length()));
+        } else if (category.startsWith(INDEX_PREFIX)) {
+            usage = byIndex.get(category.substring(INDEX_PREFIX.length()));
+        } else {
+            usage = null;
+        }
+        return usage == null ? new Usage() : usage;
+    }
+
+    /**
+     * Get the resources charged to each category.
+     * @return a map from category name to usage
+     */
+    @Nonnull
+    public Map<String, Usage> getUsageByCategory() {
+        final Map<String, Usage> usages = new HashMap<>();
+        for (Map.Entry<String, Usage> entry : byRecordType.entrySet()) {
+            usages.put(recordTypeCategory(entry.getKey()), entry.getValue());
+        }
+        for (Map.Entry<String, Usage> entry : byIndex.entrySet()) {
+            usages.put(indexCategory(entry.getKey()), entry.getValue());
+        }
+        return Collections.unmodifiableMap(usages);
+    }
+
+    /**
+     * Resources used by a transaction or by one category within it.
+     */
+    public static class Usage {
+        @Nonnull
+        private final AtomicLong bytesRead = new AtomicLong();
+        @Nonnull
+        private final AtomicLong bytesWritten = new AtomicLong();
+        @Nonnull
+        private final AtomicLong keysRead = new AtomicLong();
+        @Nonnull
+        private final AtomicLong mutations = new AtomicLong();
+
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        public long getKeysRead() {
+            return keysRead.get();
+        }
+
+        public long getMutations() {
+            return mutations.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Usage{bytesRead=" + getBytesRead() + ", bytesWritten=" + getBytesWritten() +
+                   ", keysRead=" + getKeysRead() + ", mutations=" + getMutations() + "}";
+        }
+    }
+}
@@ -26,10 +26,12 @@ import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.google.common.collect.ImmutableList;
 import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 
@@ -51,6 +53,12 @@ public class IntersectionCursor<T> extends IntersectionCursorBase<T, T> {
         super(comparisonKeyFunction, reverse, cursorStates, timer);
     }
 
+    private IntersectionCursor(@Nonnull Function<? super T, ? extends List<Object>> comparisonKeyFunction,
+                               boolean reverse, boolean comparePackedKeys, @Nonnull List<CursorState<T>> cursorStates,
+                               @Nullable FDBStoreTimer timer) {
+        super(comparisonKeyFunction, reverse, comparePackedKeys, cursorStates, timer);
+    }
+
     @Override
     T getNextResult(@Nonnull List<CursorState<T>> cursorStates) {
         return cursorStates.get(0).getResult().get();
@@ -83,7 +91,7 @@ public class IntersectionCursor<T> extends IntersectionCursorBase<T, T> {
             @Nullable byte[] continuation) {
         return create(
                 (S record) -> comparisonKey.evaluateSingleton(record).toTupleAppropriateList(),
-                reverse, left, right, continuation, store.getTimer());
+                reverse, true, ImmutableList.of(left, right), Collections.nCopies(2, null), continuation, store.getTimer());
     }
 
     /**
@@ -138,7 +146,7 @@ public class IntersectionCursor<T> extends IntersectionCursorBase<T, T> {
             @Nullable byte[] continuation) {
         return create(
                 (S record) -> comparisonKey.evaluateSingleton(record).toTupleAppropriateList(),
-                reverse, cursorFunctions, continuation, store.getTimer());
+                reverse, true, cursorFunctions, Collections.nCopies(cursorFunctions.size(), null), continuation, store.getTimer());
     }
 
     /**
@@ -181,4 +189,101 @@ public class IntersectionCursor<T> extends IntersectionCursorBase<T, T> {
             @Nullable FDBStoreTimer timer) {
         return new IntersectionCursor<>(comparisonKeyFunction, reverse, createCursorStates(cursorFunctions, continuation), timer);
     }
+
+    /**
+     * Create an intersection cursor from two or more compatibly-ordered cursors, some of which can seek.
+     * As its comparison key function, it will evaluate the provided comparison key
+     * on each record from each cursor. This otherwise behaves exactly the same way
+     * as the overload of this function that takes a function to extract a comparison
+     * key.
+     *
+     * @param store record store from which records will be fetched
+     * @param comparisonKey the key expression used to compare records from different cursors
+     * @param reverse whether records are returned in descending or ascending order by the comparison key
+     * @param cursorFunctions a list of functions to produce {@link RecordCursor}s from a continuation
+     * @param seekFunctions a list of functions, one for each child, to produce a continuation positioned at a comparison key
+     * @param continuation any continuation from a previous scan
+     * @param <M> the type of the Protobuf record elements of the cursor
+     * @param <S> the type of record wrapping a record of type <code>M</code>
+     * @return a cursor containing all records in all child cursors
+     * @see #create(Function, boolean, List, List, byte[], FDBStoreTimer)
+     */
+    @Nonnull
+    public static <M extends Message, S extends FDBRecord<M>> IntersectionCursor<S> create(
+            @Nonnull FDBRecordStoreBase<M> store,
+            @Nonnull KeyExpression comparisonKey, boolean reverse,
+            @Nonnull List<Function<byte[], RecordCursor<S>>> cursorFunctions,
+            @Nonnull List<? extends Function<? super List<Object>, byte[]>> seekFunctions,
+            @Nullable byte[] continuation) {
+        return create(
+                (S record) -> comparisonKey.evaluateSingleton(record).toTupleAppropriateList(),
+                reverse, true, cursorFunctions, seekFunctions, continuation, store.getTimer());
+    }
+
+    /**
+     * Create an intersection cursor from two or more compatibly-ordered cursors, some of which can seek.
+     * This behaves like the overload of {@link #create(Function, boolean, List, byte[], FDBStoreTimer) create()}
+     * without seek functions, except that when a child keeps falling behind the others, rather than reading every
+     * element up to the others' position, it is re-opened there, in the manner of a leapfrog join. This avoids
+     * reading most of a broad child when it is intersected with a much more selective one.
+     *
+     * <p>
+     * A child's seek function is given the comparison key that the child needs to reach and returns a continuation
+     * for that child's cursor function which resumes at or before the first element with that key, skipping only
+     * elements that sort before it. It can return <code>null</code> if it cannot seek to that key. The list of seek
+     * functions is parallel to the list of cursor functions and can contain <code>null</code> for a child that
+     * cannot seek at all.
+     * </p>
+     *
+     * @param comparisonKeyFunction the function evaluated to compare elements from different cursors
+     * @param reverse whether records are returned in descending or ascending order by the comparison key
+     * @param cursorFunctions a list of functions to produce {@link RecordCursor}s from a continuation
+     * @param seekFunctions a list of functions, one for each child, to produce a continuation positioned at a comparison key
+     * @param continuation any continuation from a previous scan
+     * @param timer the timer used to instrument events
+     * @param <T> the type of elements returned by this cursor
+     * @return a cursor containing all records in all child cursors
+     */
+    @Nonnull
+    public static <T> IntersectionCursor<T> create(
+            @Nonnull Function<? super T, ? extends List<Object>> comparisonKeyFunction,
+            boolean reverse,
+            @Nonnull List<Function<byte[], RecordCursor<T>>> cursorFunctions,
+            @Nonnull List<? extends Function<? super List<Object>, byte[]>> seekFunctions,
+            @Nullable byte[] continuation,
+            @Nullable FDBStoreTimer timer) {
+        return new IntersectionCursor<>(comparisonKeyFunction, reverse, createCursorStates(cursorFunctions, seekFunctions, continuation), timer);
+    }
+
+    /**
+     * Create an intersection cursor from two or more compatibly-ordered cursors, optionally comparing keys in their
+     * packed form. This behaves like the overload of
+     * {@link #create(Function, boolean, List, List, byte[], FDBStoreTimer) create()} that does not take
+     * <code>comparePackedKeys</code>, except that, if it is <code>true</code>, each element's comparison key is
+     * packed into a {@link com.apple.foundationdb.tuple.Tuple} once and children are merged by comparing the packed
+     * bytes with {@link KeyComparisons#PACKED_KEY_COMPARATOR}. This requires that every comparison key can be encoded
+     * as a tuple and that the children are ordered by the packed key, as is the case for scans of indexes and records.
+     * The overloads that take a comparison {@link KeyExpression} always compare packed keys.
+     *
+     * @param comparisonKeyFunction the function evaluated to compare elements from different cursors
+     * @param reverse whether records are returned in descending or ascending order by the comparison key
+     * @param comparePackedKeys whether to compare the packed form of comparison keys
+     * @param cursorFunctions a list of functions to produce {@link RecordCursor}s from a continuation
+     * @param seekFunctions a list of functions, one for each child, to produce a continuation positioned at a comparison key
+     * @param continuation any continuation from a previous scan
+     * @param timer the timer used to instrument events
+     * @param <T> the type of elements returned by this cursor
+     * @return a cursor containing all records in all child cursors
+     */
+    @Nonnull
+    public static <T> IntersectionCursor<T> create(
+            @Nonnull Function<? super T, ? extends List<Object>> comparisonKeyFunction,
+            boolean reverse, boolean comparePackedKeys,
+            @Nonnull List<Function<byte[], RecordCursor<T>>> cursorFunctions,
+            @Nonnull List<? extends Function<? super List<Object>, byte[]>> seekFunctions,
+            @Nullable byte[] continuation,
+            @Nullable FDBStoreTimer timer) {
+        return new IntersectionCursor<>(comparisonKeyFunction, reverse, comparePackedKeys,
+                createCursorStates(cursorFunctions, seekFunctions, continuation), timer);
+    }
 }
@@ -66,6 +66,7 @@ abstract class IntersectionCursorBase<T, U> implements RecordCursor<U> {
     @Nonnull
     private final Function<? super T, ? extends List<Object>> comparisonKeyFunction;
     private final boolean reverse;
+    private final boolean comparePackedKeys;
     @Nonnull
     private final List<CursorState<T>> cursorStates;
     @Nullable
@@ -86,29 +87,57 @@ abstract class IntersectionCursorBase<T, U> implements RecordCursor<U> {
     private static final Set<StoreTimer.Count> nonmatchesCounts =
             ImmutableSet.of(FDBStoreTimer.Counts.QUERY_INTERSECTION_PLAN_NONMATCHES, FDBStoreTimer.Counts.QUERY_DISCARDED);
 
+    // The number of elements in a row that a child must fall behind before it is re-opened at the leading key.
+    // Below this, stepping through results that have already been read is cheaper than starting another range read.
+    static final int SEEK_THRESHOLD = 4;
+
     protected static class CursorState<T> {
         @Nonnull
-        private final RecordCursor<T> cursor;
+        private RecordCursor<T> cursor;
+        @Nullable
+        private final Function<byte[], RecordCursor<T>> cursorFunction;
+        @Nullable
+        private final Function<? super List<Object>, byte[]> seekFunction;
         @Nullable
         private CompletableFuture<RecordCursorResult<T>> onNextFuture;
         private List<Object> key;
+        @Nullable
+        private byte[] packedKey;
         @Nonnull
         private RecordCursorContinuation continuation;
         @Nullable
         private RecordCursorResult<T> result;
+        private int lagCount;
 
         CursorState(@Nonnull RecordCursor<T> cursor, @Nonnull RecordCursorContinuation continuation) {
+            this(cursor, null, null, continuation);
+        }
+
+        CursorState(@Nonnull RecordCursor<T> cursor,
+                    @Nullable Function<byte[], RecordCursor<T>> cursorFunction,
+                    @Nullable Function<? super List<Object>, byte[]> seekFunction,
+                    @Nonnull RecordCursorContinuation continuation) {
             this.cursor = cursor;
+            this.cursorFunction = cursorFunction;
+            this.seekFunction = seekFunction;
             this.continuation = continuation;
         }
 
         @Nonnull
         public CompletableFuture<RecordCursorResult<T>> getOnNextFuture(@Nonnull Function<? super T, ? extends List<Object>> keyFunction) {
+            return getOnNextFuture(keyFunction, false);
+        }
+
+        @Nonnull
+        CompletableFuture<RecordCursorResult<T>> getOnNextFuture(@Nonnull Function<? super T, ? extends List<Object>> keyFunction,
+                                                                 boolean packKey) {
             if (onNextFuture == null) {
                 onNextFuture = cursor.onNext().thenApply(cursorResult -> {
                     result = cursorResult;
                     if (result.hasNext()) {
                         key = keyFunction.apply(result.get());
+                        // Pack once per element, since the key may be compared against every other child's repeatedly.
+                        packedKey = packKey ? KeyComparisons.packKey(key) : null;
                     } else {
                         continuation = result.getContinuation(); // no result, so we advanced the cached continuation
                     }
@@ -125,14 +154,45 @@ abstract class IntersectionCursorBase<T, U> implements RecordCursor<U> {
             continuation = result.getContinuation();
         }
 
+        /**
+         * Move past an element that is not in the intersection. If this child has fallen behind repeatedly and can
+         * seek, it is re-opened at the leading key instead of being advanced by one element.
+         * @param targetKey the comparison key of the leading children
+         * @return <code>true</code> if the child was re-opened
+         */
+        boolean skipTo(@Nonnull List<Object> targetKey) {
+            if (seekFunction != null && cursorFunction != null && ++lagCount >= SEEK_THRESHOLD) {
+                final byte[] seekContinuation = seekFunction.apply(targetKey);
+                if (seekContinuation != null) {
+                    cursor.close();
+                    cursor = cursorFunction.apply(seekContinuation);
+                    // The new position only skips elements before the target, so it is also safe to resume from.
+                    continuation = ByteArrayContinuation.fromNullable(seekContinuation);
+                    onNextFuture = null;
+                    lagCount = 0;
+                    return true;
+                }
+            }
+            consume();
+            return false;
+        }
+
+        @Nonnull
+        public static <T> CursorState<T> from(
+                @Nonnull Function<byte[], RecordCursor<T>> cursorFunction,
+                @Nonnull RecordCursorContinuation continuation) {
+            return from(cursorFunction, null, continuation);
+        }
+
         @Nonnull
         public static <T> CursorState<T> from(
                 @Nonnull Function<byte[], RecordCursor<T>> cursorFunction,
+                @Nullable Function<? super List<Object>, byte[]> seekFunction,
                 @Nonnull RecordCursorContinuation continuation) {
             if (continuation.isEnd()) {
                 return new CursorState<>(RecordCursor.empty(), RecordCursorEndContinuation.END);
             } else {
-                return new CursorState<>(cursorFunction.apply(continuation.toBytes()), continuation);
+                return new CursorState<>(cursorFunction.apply(continuation.toBytes()), cursorFunction, seekFunction, continuation);
             }
         }
 
@@ -145,18 +205,35 @@ abstract class IntersectionCursorBase<T, U> implements RecordCursor<U> {
     protected IntersectionCursorBase(@Nonnull Function<? super T, ? extends List<Object>> comparisonKeyFunction,
                                      boolean reverse, @Nonnull List<CursorState<T>> cursorStates,
                                      @Nullable FDBStoreTimer timer) {
+        this(comparisonKeyFunction, reverse, false, cursorStates, timer);
+    }
+
+    protected IntersectionCursorBase(@Nonnull Function<? super T, ? extends List<Object>> comparisonKeyFunction,
+                                     boolean reverse, boolean comparePackedKeys, @Nonnull List<CursorState<T>> cursorStates,
+                                     @Nullable FDBStoreTimer timer) {
         this.comparisonKeyFunction = comparisonKeyFunction;
         this.reverse = reverse;
+        this.comparePackedKeys = comparePackedKeys;
         this.cursorStates = cursorStates;
         this.timer = timer;
     }
 
+    private int compareKeys(@Nonnull CursorState<T> cursorState1, @Nonnull CursorState<T> cursorState2) {
+        final int compare;
+        if (comparePackedKeys) {
+            compare = KeyComparisons.PACKED_KEY_COMPARATOR.compare(cursorState1.packedKey, cursorState2.packedKey);
+        } else {
+            compare = KeyComparisons.KEY_COMPARATOR.compare(cursorState1.key, cursorState2.key);
+        }
+        return compare * (reverse ? -1 : 1);
+    }
+
     // Identify the list of maximal (and non-maximal) elements from the list of cursor states.
     private void mergeStates(@Nonnull List<CursorState<T>> maxStates, @Nonnull List<CursorState<T>> nonMaxCursors, long startTime) {
         maxStates.add(cursorStates.get(0));
-        List<Object> maxKey = cursorStates.get(0).key;
+        CursorState<T> maxState = cursorStates.get(0);
         for (CursorState<T> cursorState : cursorStates.subList(1, cursorStates.size())) {
-            int compare = KeyComparisons.KEY_COMPARATOR.compare(cursorState.key, maxKey) * (reverse ? -1 : 1);
+            int compare = compareKeys(cursorState, maxState);
             if (compare == 0) {
                 maxStates.add(cursorState);
             } else if (compare < 0) {
@@ -167,15 +244,26 @@ abstract class IntersectionCursorBase<T, U> implements RecordCursor<U> {
                 // this new cursor is now the only max cursor
                 nonMaxCursors.addAll(maxStates);
                 maxStates.clear();
-                maxKey = cursorState.key;
+                maxState = cursorState;
                 maxStates.add(cursorState);
             }
         }
 
         if (!nonMaxCursors.isEmpty()) {
             // Any non-maximal cursor is definitely not in the intersection,
-            // so we can consume those records (which updates their continuations).
-            nonMaxCursors.forEach(CursorState::consume);
+            // so we can consume those records (which updates their continuations),
+            // or else re-open a cursor that keeps falling behind at the maximal key.
+            final List<Object> maxKey = maxState.key;
+            maxStates.forEach(cursorState -> cursorState.lagCount = 0);
+            int seeks = 0;
+            for (CursorState<T> cursorState : nonMaxCursors) {
+                if (cursorState.skipTo(maxKey)) {
+                    seeks++;
+                }
+            }
+            if (seeks > 0 && timer != null) {
+                timer.increment(FDBStoreTimer.Counts.QUERY_INTERSECTION_PLAN_SEEKS, seeks);
+            }
         }
 
         if (timer != null) {
@@ -202,7 +290,7 @@ abstract class IntersectionCursorBase<T, U> implements RecordCursor<U> {
             CompletableFuture<?>[] onNextFutures = new CompletableFuture<?>[cursorStates.size()];
             int i = 0;
             for (CursorState<T> cursorState : cursorStates) {
-                onNextFutures[i] = cursorState.getOnNextFuture(comparisonKeyFunction);
+                onNextFutures[i] = cursorState.getOnNextFuture(comparisonKeyFunction, comparePackedKeys);
                 i++;
             }
             return CompletableFuture.allOf(onNextFutures).thenApply(vignore -> {
@@ -500,6 +588,16 @@ abstract class IntersectionCursorBase<T, U> implements RecordCursor<U> {
     }
 
     protected static <T> List<CursorState<T>> createCursorStates(@Nonnull List<Function<byte[], RecordCursor<T>>> cursorFunctions, @Nullable byte[] byteContinuation) {
+        return createCursorStates(cursorFunctions, Collections.nCopies(cursorFunctions.size(), null), byteContinuation);
+    }
+
+    protected static <T> List<CursorState<T>> createCursorStates(@Nonnull List<Function<byte[], RecordCursor<T>>> cursorFunctions,
+                                                                 @Nonnull List<? extends Function<? super List<Object>, byte[]>> seekFunctions,
+                                                                 @Nullable byte[] byteContinuation) {
+        if (seekFunctions.size() != cursorFunctions.size()) {
+            throw new RecordCoreArgumentException("seek functions do not match child cursors")
+                    .addLogInfo(LogMessageKeys.CHILD_COUNT, cursorFunctions.size());
+        }
         if (cursorFunctions.size() < 2) {
             throw new RecordCoreArgumentException("not enough child cursors provided to IntersectionCursor")
                     .addLogInfo(LogMessageKeys.CHILD_COUNT, cursorFunctions.size());
@@ -508,7 +606,7 @@ abstract class IntersectionCursorBase<T, U> implements RecordCursor<U> {
         final IntersectionContinuation continuation = IntersectionContinuation.from(byteContinuation, cursorFunctions.size());
         int i = 0;
         for (Function<byte[], RecordCursor<T>> cursorFunction : cursorFunctions) {
-            cursorStates.add(CursorState.from(cursorFunction, continuation.continuations.get(i)));
+            cursorStates.add(CursorState.from(cursorFunction, seekFunctions.get(i), continuation.continuations.get(i)));
             i++;
         }
         return cursorStates;
@@ -29,6 +29,7 @@ import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.google.common.collect.ImmutableList;
 import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
@@ -46,13 +47,15 @@ public class UnionCursor<T> extends UnionCursorBase<T> {
     @Nonnull
     private final Function<? super T, ? extends List<Object>> comparisonKeyFunction;
     private final boolean reverse;
+    private final boolean comparePackedKeys;
 
     private UnionCursor(@Nonnull Function<? super T, ? extends List<Object>> comparisonKeyFunction,
-                        boolean reverse, @Nonnull List<CursorState<T>> cursorStates,
+                        boolean reverse, boolean comparePackedKeys, @Nonnull List<CursorState<T>> cursorStates,
                         @Nullable FDBStoreTimer timer) {
         super(cursorStates, timer);
         this.comparisonKeyFunction = comparisonKeyFunction;
         this.reverse = reverse;
+        this.comparePackedKeys = comparePackedKeys;
     }
 
     @Nonnull
@@ -75,25 +78,24 @@ public class UnionCursor<T> extends UnionCursorBase<T> {
 
     @Override
     void chooseStates(@Nonnull List<CursorState<T>> allStates, @Nonnull List<CursorState<T>> chosenStates, @Nonnull List<CursorState<T>> otherStates) {
-        List<Object> nextKey = null;
+        CursorState<T> nextState = null;
         for (CursorState<T> cursorState : allStates) {
             final RecordCursorResult<T> result = cursorState.getResult();
             if (result.hasNext()) {
                 int compare;
-                final List<Object> resultKey = comparisonKeyFunction.apply(result.get());
-                if (nextKey == null) {
+                if (nextState == null) {
                     // This is the first key we've seen, so always chose it.
                     compare = -1;
                 } else {
                     // Choose the minimum of the previous minimum key and this next one
                     // If doing a reverse scan, choose the maximum.
-                    compare = KeyComparisons.KEY_COMPARATOR.compare(resultKey, nextKey) * (reverse ? -1 : 1);
+                    compare = compareKeys(cursorState, nextState) * (reverse ? -1 : 1);
                 }
                 if (compare < 0) {
                     // We have a new next key. Reset the book-keeping information.
                     otherStates.addAll(chosenStates);
                     chosenStates.clear();
-                    nextKey = resultKey;
+                    nextState = cursorState;
                 }
                 if (compare <= 0) {
                     chosenStates.add(cursorState);
@@ -106,6 +108,16 @@ public class UnionCursor<T> extends UnionCursorBase<T> {
         }
     }
 
+    private int compareKeys(@Nonnull CursorState<T> cursorState1, @Nonnull CursorState<T> cursorState2) {
+        if (comparePackedKeys) {
+            return KeyComparisons.PACKED_KEY_COMPARATOR.compare(
+                    cursorState1.getPackedComparisonKey(comparisonKeyFunction), cursorState2.getPackedComparisonKey(comparisonKeyFunction));
+        } else {
+            return KeyComparisons.KEY_COMPARATOR.compare(
+                    cursorState1.getComparisonKey(comparisonKeyFunction), cursorState2.getComparisonKey(comparisonKeyFunction));
+        }
+    }
+
     /**
      * Create a union cursor from two compatibly-ordered cursors. This cursor
      * is identical to the cursor that would be produced by calling the overload of
@@ -132,7 +144,7 @@ public class UnionCursor<T> extends UnionCursorBase<T> {
             @Nullable byte[] continuation) {
         return create(
                 (S record) -> comparisonKey.evaluateSingleton(record).toTupleAppropriateList(),
-                reverse, left, right, continuation, store.getTimer());
+                reverse, true, ImmutableList.of(left, right), continuation, store.getTimer());
     }
 
     /**
@@ -159,7 +171,7 @@ public class UnionCursor<T> extends UnionCursorBase<T> {
             @Nullable byte[] byteContinuation,
             @Nullable FDBStoreTimer timer) {
         final List<CursorState<T>> cursorStates = createCursorStates(left, right, byteContinuation);
-        return new UnionCursor<>(comparisonKeyFunction, reverse, cursorStates, timer);
+        return new UnionCursor<>(comparisonKeyFunction, reverse, false, cursorStates, timer);
     }
 
     /**
@@ -187,7 +199,7 @@ public class UnionCursor<T> extends UnionCursorBase<T> {
             @Nullable byte[] continuation) {
         return create(
                 (S record) -> comparisonKey.evaluateSingleton(record).toTupleAppropriateList(),
-                reverse, cursorFunctions, continuation, store.getTimer());
+                reverse, true, cursorFunctions, continuation, store.getTimer());
     }
 
     /**
@@ -228,11 +240,40 @@ public class UnionCursor<T> extends UnionCursorBase<T> {
             @Nonnull List<Function<byte[], RecordCursor<T>>> cursorFunctions,
             @Nullable byte[] byteContinuation,
             @Nullable FDBStoreTimer timer) {
+        return create(comparisonKeyFunction, reverse, false, cursorFunctions, byteContinuation, timer);
+    }
+
+    /**
+     * Create a union cursor from two or more compatibly-ordered cursors, optionally comparing keys in their
+     * packed form. This behaves like the overload of {@link #create(Function, boolean, List, byte[], FDBStoreTimer) create()}
+     * that does not take <code>comparePackedKeys</code>, except that, if it is <code>true</code>, each element's
+     * comparison key is packed into a {@link com.apple.foundationdb.tuple.Tuple} once and children are merged by
+     * comparing the packed bytes with {@link KeyComparisons#PACKED_KEY_COMPARATOR}. This requires that every
+     * comparison key can be encoded as a tuple and that the children are ordered by the packed key, as is the case
+     * for scans of indexes and records. The overloads that take a comparison {@link KeyExpression} always compare
+     * packed keys.
+     *
+     * @param comparisonKeyFunction the function evaluated to compare elements from different cursors
+     * @param reverse whether records are returned in descending or ascending order by the comparison key
+     * @param comparePackedKeys whether to compare the packed form of comparison keys
+     * @param cursorFunctions a list of functions to produce {@link RecordCursor}s from a continuation
+     * @param byteContinuation any continuation from a previous scan
+     * @param timer the timer used to instrument events
+     * @param <T> the type of elements returned by this cursor
+     * @return a cursor containing any records in any child cursors
+     */
+    @Nonnull
+    public static <T> UnionCursor<T> create(
+            @Nonnull Function<? super T, ? extends List<Object>> comparisonKeyFunction,
+            boolean reverse, boolean comparePackedKeys,
+            @Nonnull List<Function<byte[], RecordCursor<T>>> cursorFunctions,
+            @Nullable byte[] byteContinuation,
+            @Nullable FDBStoreTimer timer) {
         if (cursorFunctions.size() < 2) {
             throw new RecordCoreArgumentException("not enough child cursors provided to UnionCursor")
                     .addLogInfo(LogMessageKeys.CHILD_COUNT, cursorFunctions.size());
         }
         final List<CursorState<T>> cursorStates = createCursorStates(cursorFunctions, byteContinuation);
-        return new UnionCursor<>(comparisonKeyFunction, reverse, cursorStates, timer);
+        return new UnionCursor<>(comparisonKeyFunction, reverse, comparePackedKeys, cursorStates, timer);
     }
 }
@@ -95,6 +95,10 @@ abstract class UnionCursorBase<T> implements RecordCursor<T> {
         private RecordCursorContinuation continuation;
         @Nullable
         private RecordCursorResult<T> result;
+        @Nullable
+        private List<Object> comparisonKey;
+        @Nullable
+        private byte[] packedComparisonKey;
 
         public CursorState(@Nonnull RecordCursor<T> cursor, @Nonnull RecordCursorContinuation continuationStart) {
             this.cursor = cursor;
@@ -118,6 +122,25 @@ abstract class UnionCursorBase<T> implements RecordCursor<T> {
         public void consume() {
             onNextFuture = null;
             continuation = result.getContinuation();
+            comparisonKey = null;
+            packedComparisonKey = null;
+        }
+
+        // A state that is not chosen is compared again on the next step, so its key is kept until it is consumed.
+        @Nonnull
+        List<Object> getComparisonKey(@Nonnull Function<? super T, ? extends List<Object>> keyFunction) {
+            if (comparisonKey == null) {
+                comparisonKey = keyFunction.apply(getResult().get());
+            }
+            return comparisonKey;
+        }
+
+        @Nonnull
+        byte[] getPackedComparisonKey(@Nonnull Function<? super T, ? extends List<Object>> keyFunction) {
+            if (packedComparisonKey == null) {
+                packedComparisonKey = KeyComparisons.packKey(getComparisonKey(keyFunction));
+            }
+            return packedComparisonKey;
         }
 
         public boolean isExhausted() {
@@ -147,6 +147,7 @@ public class AtomicMutationIndexMaintainer extends StandardIndexMaintainer {
             }
 
             final byte[] key = state.indexSubspace.pack(groupKey);
+            state.context.getResourceTracker().chargeIndexWrite(state.index.getName(), 1, key.length + param.length);
             state.transaction.mutate(mutationType, key, param);
             if (state.store.getTimer() != null) {
                 state.store.getTimer().recordSinceNanoTime(FDBStoreTimer.Events.MUTATE_INDEX_ENTRY, startTime);
@@ -203,6 +204,11 @@ public class AtomicMutationIndexMaintainer extends StandardIndexMaintainer {
         return mutation.isIdempotent();
     }
 
+    @Override
+    public boolean needsSerialUpdates() {
+        return false;
+    }
+
     @Override
     public boolean skipUpdateForUnchangedKeys() {
         return !IndexTypes.COUNT_UPDATES.equals(state.index.getType());
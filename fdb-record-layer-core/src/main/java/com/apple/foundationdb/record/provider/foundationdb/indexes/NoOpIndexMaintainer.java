@@ -114,6 +114,11 @@ public class NoOpIndexMaintainer extends IndexMaintainer {
         return false;
     }
 
+    @Override
+    public boolean needsSerialUpdates() {
+        return false;
+    }
+
     @Nonnull
     @Override
     public CompletableFuture<Boolean> addedRangeWithKey(@Nonnull Tuple primaryKey) {
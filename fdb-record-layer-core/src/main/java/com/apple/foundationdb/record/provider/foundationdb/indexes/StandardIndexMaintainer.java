@@ -26,7 +26,6 @@ import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.async.AsyncIterable;
 import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.async.MoreAsyncUtil;
-import com.apple.foundationdb.async.RangeSet;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IsolationLevel;
@@ -53,6 +52,7 @@ import com.apple.foundationdb.record.provider.foundationdb.IndexMaintenanceFilte
 import com.apple.foundationdb.record.provider.foundationdb.IndexOperation;
 import com.apple.foundationdb.record.provider.foundationdb.IndexOperationResult;
 import com.apple.foundationdb.record.provider.foundationdb.KeyValueCursor;
+import com.apple.foundationdb.record.provider.foundationdb.TransactionResourceTracker;
 import com.apple.foundationdb.record.query.QueryToKeyMatcher;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.ByteArrayUtil;
@@ -65,6 +65,8 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
@@ -81,6 +83,13 @@ import static com.apple.foundationdb.record.provider.foundationdb.SplitHelper.un
 @API(API.Status.MAINTAINED)
 public abstract class StandardIndexMaintainer extends IndexMaintainer {
     private static final Logger LOGGER = LoggerFactory.getLogger(StandardIndexMaintainer.class);
+    // Above this many comparisons between old and new entries, sort them instead. They are not hashed because
+    // hashing a tuple packs it, which fails for the incomplete versionstamps of a new record.
+    private static final int SORTED_DIFF_THRESHOLD = 64;
+    private static final Comparator<IndexEntry> ENTRY_COMPARATOR = (entry1, entry2) -> {
+        final int keyComparison = TupleHelpers.compare(entry1.getKey(), entry2.getKey());
+        return keyComparison != 0 ? keyComparison : TupleHelpers.compare(entry1.getValue(), entry2.getValue());
+    };
 
     protected StandardIndexMaintainer(IndexMaintainerState state) {
         super(state);
@@ -112,9 +121,11 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
                 .setContinuation(continuation)
                 .setScanProperties(scanProperties)
                 .build();
+        final String indexName = state.index.getName();
         return keyValues.map(kv -> {
             state.store.countKeyValue(FDBStoreTimer.Counts.LOAD_INDEX_KEY, FDBStoreTimer.Counts.LOAD_INDEX_KEY_BYTES, FDBStoreTimer.Counts.LOAD_INDEX_VALUE_BYTES,
                     kv);
+            state.context.getResourceTracker().chargeIndexRead(indexName, 1, kv.getKey().length + kv.getValue().length);
             return unpackKeyValue(kv);
         });
     }
@@ -160,16 +171,17 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
     @Nonnull
     public <M extends Message> CompletableFuture<Void> update(@Nullable final FDBIndexableRecord<M> oldRecord,
                                                               @Nullable final FDBIndexableRecord<M> newRecord) {
+        if (oldRecord != null && newRecord != null && skipUpdateForUnchangedKeys() && indexedFieldsUnchanged(oldRecord, newRecord)) {
+            return AsyncUtil.DONE;
+        }
         List<IndexEntry> oldIndexEntries = filteredIndexEntries(oldRecord);
         List<IndexEntry> newIndexEntries = filteredIndexEntries(newRecord);
         if (oldIndexEntries != null && newIndexEntries != null && skipUpdateForUnchangedKeys()) {
             // Remove unchanged keys from list of keys to update.
             List<IndexEntry> commonKeys = commonKeys(oldIndexEntries, newIndexEntries);
             if (!commonKeys.isEmpty()) {
-                oldIndexEntries = makeMutable(oldIndexEntries);
-                oldIndexEntries.removeAll(commonKeys);
-                newIndexEntries = makeMutable(newIndexEntries);
-                newIndexEntries.removeAll(commonKeys);
+                oldIndexEntries = removeCommonKeys(oldIndexEntries, commonKeys);
+                newIndexEntries = removeCommonKeys(newIndexEntries, commonKeys);
             }
         }
         // If updateIndexKeys has any async work, allow it to complete before starting the next step.
@@ -196,6 +208,29 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
         return future;
     }
 
+    /**
+     * Check whether the fields that the index's root expression uses are the same in the old and new records.
+     * If they are, the index entries would be the same, so there is no need to evaluate them.
+     * This is only possible for unfiltered maintenance, since a filter can look at any part of the record.
+     * @param <M> the message type of the record
+     * @param oldRecord the previous version of the record
+     * @param newRecord the new version of the record
+     * @return <code>true</code> if the index entries for both records are certain to be the same
+     */
+    protected <M extends Message> boolean indexedFieldsUnchanged(@Nonnull final FDBIndexableRecord<M> oldRecord,
+                                                                 @Nonnull final FDBIndexableRecord<M> newRecord) {
+        if (state.filter != IndexMaintenanceFilter.NORMAL) {
+            return false;
+        }
+        final long startTime = System.nanoTime();
+        final boolean unchanged = state.index.getRootExpressionEvaluator(newRecord.getRecord().getDescriptorForType())
+                .isUnchanged(oldRecord, newRecord);
+        if (unchanged && state.store.getTimer() != null) {
+            state.store.getTimer().recordSinceNanoTime(FDBStoreTimer.Events.SKIP_UNCHANGED_INDEX_UPDATE, startTime);
+        }
+        return unchanged;
+    }
+
     /**
      * Filter out index keys according to {@link IndexMaintenanceFilter}.
      * Keys that do not pass the filter will not be stored / removed from the index.
@@ -249,14 +284,54 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
     protected List<IndexEntry> commonKeys(@Nonnull List<IndexEntry> oldIndexEntries,
                                           @Nonnull List<IndexEntry> newIndexEntries) {
         List<IndexEntry> commonKeys = new ArrayList<>();
-        for (IndexEntry oldEntry : oldIndexEntries) {
-            if (newIndexEntries.contains(oldEntry)) {
-                commonKeys.add(oldEntry);
+        if (oldIndexEntries.size() * newIndexEntries.size() <= SORTED_DIFF_THRESHOLD) {
+            for (IndexEntry oldEntry : oldIndexEntries) {
+                if (newIndexEntries.contains(oldEntry)) {
+                    commonKeys.add(oldEntry);
+                }
+            }
+        } else {
+            final List<IndexEntry> sortedNewEntries = sortedEntries(newIndexEntries);
+            for (IndexEntry oldEntry : oldIndexEntries) {
+                if (Collections.binarySearch(sortedNewEntries, oldEntry, ENTRY_COMPARATOR) >= 0) {
+                    commonKeys.add(oldEntry);
+                }
             }
         }
         return commonKeys;
     }
 
+    /**
+     * Remove every occurrence of the given common keys from a list of index entries.
+     * @param indexEntries the index entries for a record
+     * @param commonKeys entries that are unchanged and so do not need to be updated
+     * @return the remaining entries, which may be the same list modified
+     */
+    @Nonnull
+    protected static List<IndexEntry> removeCommonKeys(@Nonnull List<IndexEntry> indexEntries,
+                                                       @Nonnull List<IndexEntry> commonKeys) {
+        if (indexEntries.size() * commonKeys.size() <= SORTED_DIFF_THRESHOLD) {
+            final List<IndexEntry> remaining = makeMutable(indexEntries);
+            remaining.removeAll(commonKeys);
+            return remaining;
+        }
+        final List<IndexEntry> sortedCommonKeys = sortedEntries(commonKeys);
+        final List<IndexEntry> remaining = new ArrayList<>(Math.max(0, indexEntries.size() - commonKeys.size()));
+        for (IndexEntry entry : indexEntries) {
+            if (Collections.binarySearch(sortedCommonKeys, entry, ENTRY_COMPARATOR) < 0) {
+                remaining.add(entry);
+            }
+        }
+        return remaining;
+    }
+
+    @Nonnull
+    private static List<IndexEntry> sortedEntries(@Nonnull List<IndexEntry> indexEntries) {
+        final List<IndexEntry> sorted = new ArrayList<>(indexEntries);
+        sorted.sort(ENTRY_COMPARATOR);
+        return sorted;
+    }
+
     @Nonnull
     protected static <T> List<T> makeMutable(@Nonnull List<T> list) {
         if (list instanceof ArrayList) {
@@ -307,7 +382,9 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
         final Tuple entryKey = indexEntryKey(valueKey, savedRecord.getPrimaryKey());
         final byte[] keyBytes = state.indexSubspace.pack(entryKey);
         final byte[] valueBytes = value.pack();
+        final TransactionResourceTracker resourceTracker = state.context.getResourceTracker();
         if (remove) {
+            resourceTracker.chargeIndexWrite(state.index.getName(), 1, keyBytes.length);
             state.transaction.clear(keyBytes);
             if (state.store.isIndexWriteOnly(state.index) && state.index.isUnique()) {
                 updateUniquenessViolations(valueKey, savedRecord.getPrimaryKey(), null, true);
@@ -319,6 +396,7 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
             }
         } else {
             checkKeyValueSizes(savedRecord, valueKey, value, keyBytes, valueBytes);
+            resourceTracker.chargeIndexWrite(state.index.getName(), 1, keyBytes.length + valueBytes.length);
             if (state.index.isUnique()) {
                 // This part needs to be synchronous so that if two records within the same transaction
                 // are writing the same field with a unique index that one of them will see the write
@@ -456,8 +534,11 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
     @Override
     @Nonnull
     public CompletableFuture<Boolean> addedRangeWithKey(@Nonnull Tuple primaryKey) {
-        RangeSet rangeSet = new RangeSet(state.store.indexRangeSubspace(state.index));
-        return rangeSet.contains(state.transaction, primaryKey.pack());
+        // Every record saved while the index is being built needs this check, so share one snapshot of the
+        // built ranges across the transaction rather than doing a range read per record.
+        final byte[] key = primaryKey.pack();
+        return state.context.getRangeSetSnapshot(state.store.indexRangeSubspace(state.index))
+                .thenApply(snapshot -> snapshot.contains(state.transaction, key));
     }
 
     protected static boolean canDeleteWhere(@Nonnull IndexMaintainerState state, @Nonnull QueryToKeyMatcher.Match match, @Nonnull Key.Evaluated evaluated) {
@@ -508,7 +589,7 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
     @Nonnull
     protected <M extends Message> List<IndexEntry> evaluateIndex(@Nonnull FDBRecord<M> record) {
         final KeyExpression rootExpression = state.index.getRootExpression();
-        final List<Key.Evaluated> indexKeys = rootExpression.evaluate(record);
+        final List<Key.Evaluated> indexKeys = state.index.getRootExpressionEvaluator(record.getRecord().getDescriptorForType()).evaluate(record);
 
         // A KeyWithValue expression returns a value that is both the key and the value of the index,
         // so we have to tease them apart.
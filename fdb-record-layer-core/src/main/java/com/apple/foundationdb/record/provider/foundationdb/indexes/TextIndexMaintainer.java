@@ -257,6 +257,8 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
                 valueSize += varIntSize(idSize) + idSize + varIntSize(listSize) + listSize;
             }
         }
+        state.context.getResourceTracker().chargeIndexWrite(state.index.getName(),
+                positionMap.size(), remove ? keySize : keySize + valueSize);
         if (state.store.getTimer() != null) {
             state.store.getTimer().increment(remove ? FDBStoreTimer.Counts.DELETE_INDEX_KEY : FDBStoreTimer.Counts.SAVE_INDEX_KEY, positionMap.size());
             state.store.getTimer().increment(remove ? FDBStoreTimer.Counts.DELETE_INDEX_KEY_BYTES : FDBStoreTimer.Counts.SAVE_INDEX_KEY_BYTES, keySize);
@@ -65,6 +65,11 @@ public class ValueIndexMaintainer extends StandardIndexMaintainer {
         return scan(range, continuation, scanProperties);
     }
 
+    @Override
+    public boolean needsSerialUpdates() {
+        return false;
+    }
+
     @Override
     public boolean canEvaluateAggregateFunction(@Nonnull IndexAggregateFunction function) {
         return (function.getName().equals(FunctionNames.MIN) ||
@@ -67,6 +67,11 @@ public class VersionIndexMaintainer extends StandardIndexMaintainer {
         return scan(range, continuation, scanProperties);
     }
 
+    @Override
+    public boolean needsSerialUpdates() {
+        return false;
+    }
+
     // Called by updateIndexKeys in StandardIndexMaintainer.
     @Override
     protected <M extends Message> void updateOneKey(@Nonnull final FDBIndexableRecord<M> savedRecord,
@@ -87,6 +92,7 @@ public class VersionIndexMaintainer extends StandardIndexMaintainer {
             keyBytes = state.indexSubspace.pack(entryKey);
         }
         if (remove) {
+            state.context.getResourceTracker().chargeIndexWrite(state.index.getName(), 1, keyBytes.length);
             if (hasIncomplete) {
                 state.context.removeVersionMutation(keyBytes);
             } else {
@@ -98,6 +104,7 @@ public class VersionIndexMaintainer extends StandardIndexMaintainer {
         } else {
             final byte[] valueBytes = value.pack();
             checkKeyValueSizes(savedRecord, valueKey, value, keyBytes, valueBytes);
+            state.context.getResourceTracker().chargeIndexWrite(state.index.getName(), 1, keyBytes.length + valueBytes.length);
             if (hasIncomplete) {
                 state.context.addVersionMutation(MutationType.SET_VERSIONSTAMPED_KEY, keyBytes, valueBytes);
             } else {
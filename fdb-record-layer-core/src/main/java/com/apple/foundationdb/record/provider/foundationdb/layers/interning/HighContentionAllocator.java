@@ -25,6 +25,8 @@ import com.apple.foundationdb.KeyValue;
 import com.apple.foundationdb.MutationType;
 import com.apple.foundationdb.Range;
 import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpacePath;
 import com.apple.foundationdb.subspace.Subspace;
@@ -33,19 +35,26 @@ import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.annotations.VisibleForTesting;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 /**
  * A supplier of unique integers that tries to balance size of the integer and conflicts on the assignment.
  *
  * Values are chosen randomly from a window that moves forward as the available lower-numbered space fills up.
+ *
+ * For bulk allocation, {@link #reserve(int)} claims a contiguous block of values past the current window in a single
+ * transaction, after which values can be handed out from the {@link AllocationBlock} without any further reads.
  */
 @API(API.Status.INTERNAL)
 public class HighContentionAllocator {
+    private static final byte[] LITTLE_ENDIAN_LONG_ZERO = {0, 0, 0, 0, 0, 0, 0, 0};
     private static final byte[] LITTLE_ENDIAN_LONG_ONE = {1, 0, 0, 0, 0, 0, 0, 0};
     private static final byte[] KEY_UPDATING_BYTE = new byte[0];
     private static final byte[] INVALID_ALLOCATION_VALUE = new byte[]{(byte) 0xFD};
@@ -111,6 +120,122 @@ public class HighContentionAllocator {
                 .thenCompose(window -> chooseCandidate(window, valueBytes));
     }
 
+    /**
+     * Allocate a contiguous block of values, one for each of the given strings, in this transaction.
+     * This takes a fixed number of reads however many values are allocated, unlike calling {@link #allocate(String)}
+     * for each one.
+     * @param valuesToStore the strings to store with the allocated values
+     * @return a future that completes to the allocated values, in the same order as <code>valuesToStore</code>
+     */
+    public CompletableFuture<List<Long>> allocate(@Nonnull List<String> valuesToStore) {
+        return reserve(valuesToStore.size()).thenApply(block -> {
+            final List<Long> allocated = new ArrayList<>(valuesToStore.size());
+            for (String valueToStore : valuesToStore) {
+                allocated.add(allocate(block, valueToStore).orElseThrow(() -> new IllegalStateException("reserved block is too small")));
+            }
+            return allocated;
+        });
+    }
+
+    /**
+     * Allocate the next value from a reserved block, storing the given string with it in this transaction.
+     * Since the block's values were already claimed when it was reserved, this does not read from the database.
+     * @param block a block reserved by {@link #reserve(int)} in a transaction that has committed
+     * @param valueToStore the string to store with the allocated value
+     * @return the allocated value or {@link Optional#empty()} if every value in the block has already been used
+     */
+    public Optional<Long> allocate(@Nonnull AllocationBlock block, @Nonnull String valueToStore) {
+        if (!Arrays.equals(block.allocationSubspaceKey, allocationSubspace.getKey())) {
+            throw new RecordCoreArgumentException("block was reserved from a different allocator")
+                    .addLogInfo("allocationSubspace", allocationSubspace);
+        }
+        final Optional<Long> value = block.take();
+        value.ifPresent(allocated -> {
+            synchronized (transaction) {
+                transaction.set(allocationSubspace.pack(allocated), Tuple.from(valueToStore).pack());
+            }
+        });
+        return value;
+    }
+
+    /**
+     * Reserve a contiguous block of values. The block starts past the current allocation window, which is moved
+     * to start after the block, so that once this transaction commits no other allocation will choose any of its values.
+     * The values are not marked as allocated until handed out by {@link #allocate(AllocationBlock, String)}, and any
+     * not handed out are simply never used.
+     *
+     * <p>
+     * The current window and the block's range are read with conflict ranges, so this transaction will conflict with
+     * any concurrent reservation, or concurrent allocation that moves the window or writes into the block, that
+     * commits first. The block's range is also added as a write conflict range, so that a concurrent allocation that
+     * chose a value inside the block will conflict if this transaction commits first.
+     * </p>
+     * @param count the number of values to reserve
+     * @return a future that completes to the reserved block
+     */
+    public CompletableFuture<AllocationBlock> reserve(int count) {
+        if (count < 1) {
+            throw new RecordCoreArgumentException("must reserve at least one value")
+                    .addLogInfo("count", count);
+        }
+        final CompletableFuture<List<KeyValue>> counter;
+        synchronized (transaction) {
+            transaction.addReadConflictRange(counterSubspace.range().begin, counterSubspace.range().end);
+            counter = transaction.getRange(counterSubspace.range(), 1, true).asList();
+        }
+        return counter.thenCompose(list -> {
+            final AllocationWindow currentWindow = list.isEmpty() ?
+                                                   AllocationWindow.startingFrom(0) :
+                                                   AllocationWindow.startingFrom(counterSubspace.unpack(list.get(0).getKey()).getLong(0));
+            return reserveFrom(currentWindow.getEnd(), count);
+        });
+    }
+
+    private CompletableFuture<AllocationBlock> reserveFrom(long start, int count) {
+        final long end = start + count;
+        final CompletableFuture<List<KeyValue>> existing;
+        synchronized (transaction) {
+            existing = transaction.getRange(allocationSubspace.pack(start), allocationSubspace.pack(end)).asList();
+        }
+        return existing.thenCompose(allocations -> {
+            if (!allocations.isEmpty()) {
+                // values forced ahead of the window; start again after the last of them
+                final long lastAllocated = allocationSubspace.unpack(allocations.get(allocations.size() - 1).getKey()).getLong(0);
+                return reserveFrom(lastAllocated + 1, count);
+            }
+            return checkCandidates(start, end).thenApply(vignore -> {
+                final byte[] counterKey = counterSubspace.pack(end);
+                synchronized (transaction) {
+                    // Nothing is written to the block's keys until its values are handed out, so claim them explicitly
+                    // for allocations that read their candidate with a conflict range.
+                    transaction.addWriteConflictRange(allocationSubspace.pack(start), allocationSubspace.pack(end));
+                    transaction.clear(new Range(counterSubspace.getKey(), counterKey));
+                    transaction.mutate(MutationType.ADD, counterKey, LITTLE_ENDIAN_LONG_ZERO);
+                }
+                return new AllocationBlock(allocationSubspace.getKey(), start, end);
+            });
+        });
+    }
+
+    private CompletableFuture<Void> checkCandidates(long start, long end) {
+        if (candidateCheck == NOOP_CHECK) {
+            return AsyncUtil.DONE;
+        }
+        final List<CompletableFuture<Void>> checks = new ArrayList<>(Math.toIntExact(end - start));
+        for (long candidate = start; candidate < end; candidate++) {
+            final long value = candidate;
+            checks.add(candidateCheck.apply(value).thenAccept(isGood -> {
+                if (!isGood) {
+                    synchronized (transaction) {
+                        transaction.set(allocationSubspace.pack(value), INVALID_ALLOCATION_VALUE);
+                    }
+                    throw new IllegalStateException("database already has keys in allocation range");
+                }
+            }));
+        }
+        return AsyncUtil.whenAll(checks);
+    }
+
     private CompletableFuture<Optional<KeyValue>> currentCounter() {
         return transaction.snapshot().getRange(counterSubspace.range(), 1, true)
                 .asList()
@@ -204,6 +329,53 @@ public class HighContentionAllocator {
         return transaction.snapshot().getRange(checkRange, 1).iterator().onHasNext().thenApply(hasKeys -> !hasKeys);
     }
 
+    /**
+     * A contiguous block of values reserved by {@link #reserve(int)}, from which values can be handed out locally.
+     * A block may be shared by multiple threads and transactions, each value being handed out only once.
+     */
+    public static class AllocationBlock {
+        @Nonnull
+        private final byte[] allocationSubspaceKey;
+        private final long start;
+        private final long end;
+        @Nonnull
+        private final AtomicLong next;
+
+        private AllocationBlock(@Nonnull byte[] allocationSubspaceKey, long start, long end) {
+            this.allocationSubspaceKey = allocationSubspaceKey;
+            this.start = start;
+            this.end = end;
+            this.next = new AtomicLong(start);
+        }
+
+        @Nonnull
+        private Optional<Long> take() {
+            final long value = next.getAndUpdate(current -> current < end ? current + 1 : current);
+            return value < end ? Optional.of(value) : Optional.empty();
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Get the number of values in this block that have not yet been handed out.
+         * @return the number of remaining values
+         */
+        public long remaining() {
+            return end - next.get();
+        }
+
+        @Override
+        public String toString() {
+            return "AllocationBlock[start=" + start + ", end=" + end + ", next=" + next.get() + "]";
+        }
+    }
+
     /**
      * A range of possible values to try.
      */
@@ -142,6 +142,16 @@ public class ScopedInterningLayer extends LocatableResolver {
         return database.runAsync(context -> interningLayer.setWindow(context, count));
     }
 
+    /**
+     * Reserve a block of values so that the next <code>count</code> new mappings created through this resolver
+     * instance do not need to search for a free value. This is meant for bulk loading many new keys.
+     * @param count the number of values to reserve
+     * @return a future that completes when the values are reserved
+     */
+    public CompletableFuture<Void> reserveValues(int count) {
+        return database.runAsync(context -> interningLayer.reserveValues(context, count));
+    }
+
     @Override
     protected Subspace getStateSubspace() {
         return stateSubspace;
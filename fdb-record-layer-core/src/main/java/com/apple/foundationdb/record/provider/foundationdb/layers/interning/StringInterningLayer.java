@@ -38,6 +38,7 @@ import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A persistent bidirectional unique mapping between strings and integers.
@@ -51,6 +52,8 @@ public class StringInterningLayer {
     @Nonnull
     private final Subspace counterSubspace;
     private final boolean isRootLevel;
+    @Nonnull
+    private final AtomicReference<HighContentionAllocator.AllocationBlock> reservedBlock = new AtomicReference<>();
 
     public StringInterningLayer(@Nonnull Subspace baseSubspace) {
         this(baseSubspace, false);
@@ -157,6 +160,19 @@ public class StringInterningLayer {
         return AsyncUtil.DONE;
     }
 
+    /**
+     * Reserve a block of values from which later mappings will be created without the usual allocation reads.
+     * The block only becomes available once <code>context</code> commits, and replaces any block not yet used up.
+     * Values handed out to transactions that do not commit are not reused.
+     * @param context the transaction in which to reserve the values
+     * @param count the number of values to reserve
+     * @return a future that completes when the reservation has been made in the transaction
+     */
+    protected CompletableFuture<Void> reserveValues(@Nonnull final FDBRecordContext context, int count) {
+        return getHca(context).reserve(count)
+                .thenAccept(block -> context.addAfterCommit(() -> reservedBlock.set(block)));
+    }
+
     protected Subspace getMappingSubspace() {
         return mappingSubspace;
     }
@@ -166,12 +182,23 @@ public class StringInterningLayer {
                                                             @Nullable final byte[] metadata) {
         final HighContentionAllocator hca = getHca(context);
         final byte[] mappingKey = mappingSubspace.pack(toIntern);
+        final HighContentionAllocator.AllocationBlock block = reservedBlock.get();
+        if (block != null) {
+            final Optional<Long> reserved = hca.allocate(block, toIntern);
+            if (reserved.isPresent()) {
+                return CompletableFuture.completedFuture(storeMapping(context, mappingKey, reserved.get(), metadata));
+            }
+            reservedBlock.compareAndSet(block, null);
+        }
         return hca.allocate(toIntern)
-                .thenApply(allocated -> {
-                    ResolverResult result = new ResolverResult(allocated, metadata);
-                    context.ensureActive().set(mappingKey, serializeValue(result));
-                    return result;
-                });
+                .thenApply(allocated -> storeMapping(context, mappingKey, allocated, metadata));
+    }
+
+    private ResolverResult storeMapping(@Nonnull FDBRecordContext context, @Nonnull byte[] mappingKey,
+                                        long allocated, @Nullable byte[] metadata) {
+        ResolverResult result = new ResolverResult(allocated, metadata);
+        context.ensureActive().set(mappingKey, serializeValue(result));
+        return result;
     }
 
     private HighContentionAllocator getHca(@Nonnull FDBRecordContext context) {
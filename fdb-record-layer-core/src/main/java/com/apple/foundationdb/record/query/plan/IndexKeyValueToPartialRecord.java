@@ -23,7 +23,15 @@ package com.apple.foundationdb.record.query.plan;
 import com.apple.foundationdb.API;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.metadata.RecordType;
+import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.FieldKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyWithValueExpression;
+import com.apple.foundationdb.record.metadata.expressions.NestingKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.TupleFieldsHelper;
 import com.apple.foundationdb.tuple.Tuple;
 import com.google.protobuf.ByteString;
@@ -32,10 +40,15 @@ import com.google.protobuf.DynamicMessage;
 import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -179,7 +192,12 @@ public class IndexKeyValueToPartialRecord {
                 default:
                     throw new RecordCoreException("only nested message should be handled by MessageCopier");
             }
-            recordBuilder.setField(fieldDescriptor, nested.toRecord(fieldDescriptor.getMessageType(), kv));
+            final Message nestedRecord = nested.toRecord(fieldDescriptor.getMessageType(), kv);
+            // A nested message that the record did not have has no values in the entry. Leave it unset in the
+            // partial record too, so that filters checking whether it is there get the same answer.
+            if (!nestedRecord.getAllFields().isEmpty()) {
+                recordBuilder.setField(fieldDescriptor, nestedRecord);
+            }
         }
 
         @Override
@@ -210,6 +228,145 @@ public class IndexKeyValueToPartialRecord {
         return new Builder(recordDescriptor);
     }
 
+    /**
+     * Get a conversion from entries of the given index to partial records of the given type that have the given
+     * fields and the primary key, if the index contains all of them. The fields can be nested within other messages,
+     * in which case the partial record has just those fields of the nested message, and can come from either the key
+     * or the value of a {@link KeyWithValueExpression} index.
+     * @param index an index on the record type
+     * @param recordType the type of the partial records
+     * @param requiredFields the fields that the partial records need to have
+     * @return a conversion from index entries to partial records or <code>null</code> if the index does not cover the fields
+     */
+    @Nullable
+    public static IndexKeyValueToPartialRecord forIndex(@Nonnull Index index, @Nonnull RecordType recordType,
+                                                        @Nonnull Collection<KeyExpression> requiredFields) {
+        final KeyExpression rootExpression = index.getRootExpression();
+        final List<KeyExpression> normalizedKeys = rootExpression.normalizeKeyForPositions();
+        final List<KeyExpression> keyFields;
+        final List<KeyExpression> valueFields;
+        if (rootExpression instanceof KeyWithValueExpression) {
+            final KeyWithValueExpression keyWithValue = (KeyWithValueExpression) rootExpression;
+            keyFields = new ArrayList<>(normalizedKeys.subList(0, keyWithValue.getSplitPoint()));
+            valueFields = new ArrayList<>(normalizedKeys.subList(keyWithValue.getSplitPoint(), normalizedKeys.size()));
+        } else {
+            keyFields = new ArrayList<>(normalizedKeys);
+            valueFields = Collections.singletonList(EmptyKeyExpression.EMPTY);
+        }
+        final List<KeyExpression> primaryKeys = new ArrayList<>(recordType.getPrimaryKey().normalizeKeyForPositions());
+        index.trimPrimaryKey(primaryKeys);
+        keyFields.addAll(primaryKeys);
+
+        final Set<KeyExpression> fields = new LinkedHashSet<>();
+        for (KeyExpression requiredField : requiredFields) {
+            fields.addAll(requiredField.normalizeKeyForPositions());
+        }
+        final Builder builder = newBuilder(recordType.getDescriptor());
+        for (KeyExpression field : fields) {
+            if (!addCoveringField(field, builder, keyFields, valueFields)) {
+                return null;
+            }
+        }
+        for (KeyExpression primaryKeyField : recordType.getPrimaryKey().normalizeKeyForPositions()) {
+            // Need the primary key, even if it wasn't one of the required fields. But a record type key is not a field.
+            if (!fields.contains(primaryKeyField)) {
+                addCoveringField(primaryKeyField, builder, keyFields, valueFields);
+            }
+        }
+        if (!builder.isValid()) {
+            return null;
+        }
+        return builder.build();
+    }
+
+    static boolean addCoveringField(@Nonnull KeyExpression requiredExpr,
+                                    @Nonnull Builder builder,
+                                    @Nonnull List<KeyExpression> keyFields,
+                                    @Nonnull List<KeyExpression> valueFields) {
+        final TupleSource source;
+        final int index;
+        int i = keyFields.indexOf(requiredExpr);
+        if (i >= 0) {
+            source = TupleSource.KEY;
+            index = i;
+        } else {
+            i = valueFields.indexOf(requiredExpr);
+            if (i >= 0) {
+                source = TupleSource.VALUE;
+                index = i;
+            } else {
+                return addCoveringMessageFields(requiredExpr, builder, keyFields, valueFields);
+            }
+        }
+
+        while (requiredExpr instanceof NestingKeyExpression) {
+            NestingKeyExpression nesting = (NestingKeyExpression)requiredExpr;
+            String fieldName = nesting.getParent().getFieldName();
+            requiredExpr = nesting.getChild();
+            builder = builder.getFieldBuilder(fieldName);
+        }
+        if (requiredExpr instanceof FieldKeyExpression) {
+            String fieldName = ((FieldKeyExpression)requiredExpr).getFieldName();
+            if (!builder.hasField(fieldName)) {
+                // It might already be there as part of a whole nested message.
+                builder.addField(fieldName, source, index);
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    // A whole nested message is covered when each of its fields is, so that the partial record's copy is complete.
+    private static boolean addCoveringMessageFields(@Nonnull KeyExpression requiredExpr,
+                                                    @Nonnull Builder builder,
+                                                    @Nonnull List<KeyExpression> keyFields,
+                                                    @Nonnull List<KeyExpression> valueFields) {
+        final List<Descriptors.Descriptor> enclosing = new ArrayList<>();
+        Descriptors.Descriptor descriptor = builder.recordDescriptor;
+        KeyExpression expr = requiredExpr;
+        while (expr instanceof NestingKeyExpression) {
+            final FieldKeyExpression parent = ((NestingKeyExpression)expr).getParent();
+            final Descriptors.FieldDescriptor fieldDescriptor = descriptor.findFieldByName(parent.getFieldName());
+            if (parent.getFanType() != KeyExpression.FanType.None || fieldDescriptor == null || fieldDescriptor.isRepeated() ||
+                    fieldDescriptor.getType() != Descriptors.FieldDescriptor.Type.MESSAGE) {
+                return false;
+            }
+            enclosing.add(descriptor);
+            descriptor = fieldDescriptor.getMessageType();
+            expr = ((NestingKeyExpression)expr).getChild();
+        }
+        if (!(expr instanceof FieldKeyExpression) || ((FieldKeyExpression)expr).getFanType() != KeyExpression.FanType.None) {
+            return false;
+        }
+        final Descriptors.FieldDescriptor fieldDescriptor = descriptor.findFieldByName(((FieldKeyExpression)expr).getFieldName());
+        if (fieldDescriptor == null || fieldDescriptor.isRepeated() || fieldDescriptor.getType() != Descriptors.FieldDescriptor.Type.MESSAGE ||
+                TupleFieldsHelper.isTupleField(fieldDescriptor.getMessageType())) {
+            return false;
+        }
+        enclosing.add(descriptor);
+        if (enclosing.contains(fieldDescriptor.getMessageType())) {
+            // A recursive message type cannot be complete.
+            return false;
+        }
+        for (Descriptors.FieldDescriptor nestedField : fieldDescriptor.getMessageType().getFields()) {
+            if (!addCoveringField(nestWithin(requiredExpr, Key.Expressions.field(nestedField.getName())), builder, keyFields, valueFields)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    private static KeyExpression nestWithin(@Nonnull KeyExpression expr, @Nonnull KeyExpression child) {
+        if (expr instanceof NestingKeyExpression) {
+            final NestingKeyExpression nesting = (NestingKeyExpression)expr;
+            return new NestingKeyExpression(nesting.getParent(), nestWithin(nesting.getChild(), child));
+        } else {
+            return new NestingKeyExpression((FieldKeyExpression)expr, child);
+        }
+    }
+
     static class Builder {
         @Nonnull
         private final Descriptors.Descriptor recordDescriptor;
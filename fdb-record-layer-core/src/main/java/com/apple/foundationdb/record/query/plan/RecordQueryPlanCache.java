@@ -0,0 +1,193 @@
+/*
+ * RecordQueryPlanCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.IndexState;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.plan.planning.ConstantExtractor;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryConstantBindingPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded cache of query plans keyed by the shape of the query.
+ *
+ * <p>
+ * The literal values in simple field comparisons are replaced by parameters (see {@link ConstantExtractor}) and the
+ * resulting query is planned once. Later queries that differ only in those values reuse the cached plan, which is
+ * wrapped in a {@link RecordQueryConstantBindingPlan} that binds the values of the new query. The cache key also
+ * includes the meta-data version, the states of the store's indexes and the planner's index scan preference, so a
+ * plan is not reused once the indexes it could choose from have changed.
+ * </p>
+ *
+ * <p>
+ * A cache can be shared by the record stores of many transactions, but only among stores that use the same
+ * meta-data, since meta-data is only distinguished by its version. Plans are not cached when the planner has
+ * {@link com.apple.foundationdb.record.IndexStatistics}, since those estimate selectivity from the literal values.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryPlanCache {
+    /**
+     * The default maximum number of plans kept.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    @Nonnull
+    private final Cache<CacheKey, RecordQueryPlan> cache;
+
+    public RecordQueryPlanCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public RecordQueryPlanCache(int maxSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+    }
+
+    /**
+     * Get a plan for the given query, using a cached plan for a query of the same shape if there is one.
+     * @param planner the planner to use on a cache miss, which also determines the meta-data and store state
+     * @param query the query to plan
+     * @return a plan that will return the results of the provided query when executed
+     */
+    @Nonnull
+    public RecordQueryPlan plan(@Nonnull RecordQueryPlanner planner, @Nonnull RecordQuery query) {
+        if (planner.getIndexStatistics() != null) {
+            return planner.plan(query);
+        }
+        // The parameterized query no longer has the values whose types validation checks.
+        query.validate(planner.getRecordMetaData());
+        final ConstantExtractor constantExtractor = new ConstantExtractor(query.getFilter());
+        final CacheKey key = new CacheKey(planner, query, constantExtractor.subFilter());
+        RecordQueryPlan plan = cache.getIfPresent(key);
+        if (plan == null) {
+            plan = planner.plan(query.toBuilder().setFilter(constantExtractor.subFilter()).build());
+            cache.put(key, plan);
+        }
+        if (constantExtractor.getConstants().isEmpty()) {
+            return plan;
+        } else {
+            return new RecordQueryConstantBindingPlan(plan, constantExtractor.getConstants());
+        }
+    }
+
+    /**
+     * Get the number of plans in the cache.
+     * @return the approximate number of cached plans
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Get statistics on cache hits and misses.
+     * @return the cache statistics
+     */
+    @Nonnull
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Remove all cached plans.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private static class CacheKey {
+        private final int metaDataVersion;
+        @Nonnull
+        private final Map<String, IndexState> indexStates;
+        @Nonnull
+        private final QueryPlanner.IndexScanPreference indexScanPreference;
+        @Nonnull
+        private final List<String> recordTypes;
+        @Nullable
+        private final List<String> allowedIndexes;
+        @Nullable
+        private final QueryComponent filter;
+        @Nullable
+        private final KeyExpression sort;
+        private final boolean sortReverse;
+        private final boolean removeDuplicates;
+        @Nullable
+        private final List<KeyExpression> requiredResults;
+        private final int hashCode;
+
+        CacheKey(@Nonnull RecordQueryPlanner planner, @Nonnull RecordQuery query, @Nullable QueryComponent filter) {
+            final RecordMetaData metaData = planner.getRecordMetaData();
+            this.metaDataVersion = metaData.getVersion();
+            this.indexStates = new HashMap<>(planner.getRecordStoreState().getIndexStates());
+            this.indexScanPreference = planner.getIndexScanPreference();
+            this.recordTypes = new ArrayList<>(query.getRecordTypes());
+            this.allowedIndexes = query.getAllowedIndexes() == null ? null : new ArrayList<>(query.getAllowedIndexes());
+            this.filter = filter;
+            this.sort = query.getSort();
+            this.sortReverse = query.isSortReverse();
+            this.removeDuplicates = query.removesDuplicates();
+            this.requiredResults = query.getRequiredResults() == null ? null : new ArrayList<>(query.getRequiredResults());
+            this.hashCode = Objects.hash(metaDataVersion, indexStates, indexScanPreference, recordTypes, allowedIndexes,
+                    filter, sort, sortReverse, removeDuplicates, requiredResults);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return metaDataVersion == that.metaDataVersion &&
+                    sortReverse == that.sortReverse &&
+                    removeDuplicates == that.removeDuplicates &&
+                    hashCode == that.hashCode &&
+                    indexScanPreference == that.indexScanPreference &&
+                    indexStates.equals(that.indexStates) &&
+                    recordTypes.equals(that.recordTypes) &&
+                    Objects.equals(allowedIndexes, that.allowedIndexes) &&
+                    Objects.equals(filter, that.filter) &&
+                    Objects.equals(sort, that.sort) &&
+                    Objects.equals(requiredResults, that.requiredResults);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
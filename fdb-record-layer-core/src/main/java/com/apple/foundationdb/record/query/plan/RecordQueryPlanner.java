@@ -23,6 +23,7 @@ package com.apple.foundationdb.record.query.plan;
 import com.apple.foundationdb.API;
 import com.apple.foundationdb.record.FunctionNames;
 import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IndexStatistics;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordStoreState;
@@ -45,8 +46,10 @@ import com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindo
 import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.expressions.AndComponent;
 import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.expressions.ComponentWithChildren;
 import com.apple.foundationdb.record.query.expressions.FieldWithComparison;
 import com.apple.foundationdb.record.query.expressions.NestedField;
+import com.apple.foundationdb.record.query.expressions.NotComponent;
 import com.apple.foundationdb.record.query.expressions.OneOfThemWithComparison;
 import com.apple.foundationdb.record.query.expressions.OneOfThemWithComponent;
 import com.apple.foundationdb.record.query.expressions.OrComponent;
@@ -56,6 +59,7 @@ import com.apple.foundationdb.record.query.expressions.QueryRecordFunctionWithCo
 import com.apple.foundationdb.record.query.expressions.RecordTypeKeyComparison;
 import com.apple.foundationdb.record.query.plan.planning.BooleanNormalizer;
 import com.apple.foundationdb.record.query.plan.planning.FilterSatisfiedMask;
+import com.apple.foundationdb.record.query.plan.planning.IndexEntryEstimates;
 import com.apple.foundationdb.record.query.plan.planning.InExtractor;
 import com.apple.foundationdb.record.query.plan.planning.RankComparisons;
 import com.apple.foundationdb.record.query.plan.planning.TextScanPlanner;
@@ -83,8 +87,10 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 /**
@@ -116,6 +122,8 @@ public class RecordQueryPlanner implements QueryPlanner {
     private boolean primaryKeyHasRecordTypePrefix;
     @Nonnull
     private IndexScanPreference indexScanPreference;
+    @Nullable
+    private Map<String, IndexStatistics> indexStatistics;
 
     public RecordQueryPlanner(@Nonnull RecordMetaData metaData, @Nonnull RecordStoreState recordStoreState) {
         this(metaData, recordStoreState, null);
@@ -150,6 +158,24 @@ public class RecordQueryPlanner implements QueryPlanner {
                               IndexScanPreference.PREFER_INDEX : IndexScanPreference.PREFER_SCAN;
     }
 
+    /**
+     * Get the meta-data that this planner plans queries against.
+     * @return the record meta-data
+     */
+    @Nonnull
+    public RecordMetaData getRecordMetaData() {
+        return metaData;
+    }
+
+    /**
+     * Get the record store state that determines which indexes this planner can use.
+     * @return the record store state
+     */
+    @Nonnull
+    public RecordStoreState getRecordStoreState() {
+        return recordStoreState;
+    }
+
     /**
      * Get whether {@link RecordQueryIndexPlan} is preferred over {@link RecordQueryScanPlan} even when it does not
      * satisfy any additional conditions.
@@ -173,6 +199,28 @@ public class RecordQueryPlanner implements QueryPlanner {
         this.indexScanPreference = indexScanPreference;
     }
 
+    /**
+     * Get the index statistics used to estimate the number of entries each candidate index scan will return.
+     * @return a map from index name to statistics or <code>null</code> if none have been given
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nullable
+    public Map<String, IndexStatistics> getIndexStatistics() {
+        return indexStatistics;
+    }
+
+    /**
+     * Set the index statistics used to estimate the number of entries each candidate index scan will return.
+     * Candidate index scans are still ranked first by how much of the filter they satisfy. When two of them satisfy
+     * as much and both have statistics, the one estimated to return fewer entries is preferred. Otherwise, indexes
+     * are compared by the usual heuristics.
+     * @param indexStatistics a map from index name to statistics or <code>null</code> to not use statistics
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setIndexStatistics(@Nullable Map<String, IndexStatistics> indexStatistics) {
+        this.indexStatistics = indexStatistics;
+    }
+
     /**
      * Create a plan to get the results of the provided query.
      *
@@ -276,6 +324,40 @@ public class RecordQueryPlanner implements QueryPlanner {
         return new ScoredPlan(0, planScan(new CandidateScan(planContext, index, false), scanComparisons));
     }
 
+    private boolean isBetterPlan(@Nonnull PlanContext planContext, @Nonnull ScoredPlan plan, @Nonnull Index index,
+                                 @Nonnull ScoredPlan bestPlan, @Nullable Index bestIndex) {
+        if (plan.score != bestPlan.score) {
+            return plan.score > bestPlan.score;
+        }
+        // Among plans that satisfy as much of the filter, prefer the one that is estimated to scan less.
+        final double estimate = estimateEntries(plan.plan);
+        final double bestEstimate = estimateEntries(bestPlan.plan);
+        if (estimate >= 0 && bestEstimate >= 0 && estimate != bestEstimate) {
+            return estimate < bestEstimate;
+        }
+        return compareIndexes(planContext, index, bestIndex) > 0;
+    }
+
+    // Estimate the number of index entries that a plan will scan from the index statistics, or -1 if unknown.
+    private double estimateEntries(@Nonnull RecordQueryPlan plan) {
+        if (indexStatistics == null) {
+            return -1;
+        }
+        while (plan instanceof RecordQueryFilterPlan || plan instanceof RecordQueryTypeFilterPlan ||
+                plan instanceof RecordQueryUnorderedPrimaryKeyDistinctPlan) {
+            plan = plan.getChildren().get(0);
+        }
+        if (!(plan instanceof RecordQueryIndexPlan)) {
+            return -1;
+        }
+        final RecordQueryIndexPlan indexPlan = (RecordQueryIndexPlan)plan;
+        final IndexStatistics statistics = indexStatistics.get(indexPlan.getIndexName());
+        if (statistics == null || indexPlan.getScanType() != IndexScanType.BY_VALUE) {
+            return -1;
+        }
+        return IndexEntryEstimates.estimateEntries(statistics, indexPlan.getComparisons());
+    }
+
     private int compareIndexes(PlanContext planContext, @Nullable Index index1, @Nullable Index index2) {
         if (index1 == null) {
             if (index2 == null) {
@@ -364,8 +446,7 @@ public class RecordQueryPlanner implements QueryPlanner {
                 //   * predicates handled / unhandled.
                 //   * size of row.
                 //   * need for type filtering if row scan with multiple types.
-                if (bestPlan == null || p.score > bestPlan.score ||
-                        (p.score == bestPlan.score && compareIndexes(planContext, index, bestIndex) > 0)) {
+                if (bestPlan == null || isBetterPlan(planContext, p, index, bestPlan, bestIndex)) {
                     bestPlan = p;
                     bestIndex = index;
                 }
@@ -1275,17 +1356,46 @@ public class RecordQueryPlanner implements QueryPlanner {
 
     @Nonnull
     private RecordQueryPlan tryToConvertToCoveringPlan(@Nonnull PlanContext planContext, @Nonnull RecordQueryPlan chosenPlan) {
+        if (planContext.query.getRequiredResults() == null) {
+            // This should already be true when calling, but as a safety precaution, check here anyway.
+            return chosenPlan;
+        }
+        final List<KeyExpression> requiredFields = new ArrayList<>(planContext.query.getRequiredResults().size());
+        for (KeyExpression resultField : planContext.query.getRequiredResults()) {
+            requiredFields.addAll(resultField.normalizeKeyForPositions());
+        }
+        return tryToConvertToCoveringPlan(chosenPlan, requiredFields);
+    }
+
+    // Push the covering index transformation down through plans that only need some fields of the records
+    // that come from the index scan, so that it happens before they are used.
+    @Nonnull
+    private RecordQueryPlan tryToConvertToCoveringPlan(@Nonnull RecordQueryPlan chosenPlan, @Nonnull List<KeyExpression> requiredFields) {
         if (chosenPlan instanceof RecordQueryPlanWithIndex) {
             // Check if the index scan covers, then convert it to a covering plan.
-            return tryToConvertToCoveringPlan(planContext, (RecordQueryPlanWithIndex) chosenPlan);
+            return tryToConvertToCoveringPlan((RecordQueryPlanWithIndex) chosenPlan, requiredFields);
         } else if (chosenPlan instanceof RecordQueryUnorderedPrimaryKeyDistinctPlan) {
-            // If possible, push down the covering index transformation so that
-            // it happens before checking for distinct primary keys
+            // The primary key is always part of a covering plan's records.
             final RecordQueryUnorderedPrimaryKeyDistinctPlan distinctPlan = (RecordQueryUnorderedPrimaryKeyDistinctPlan) chosenPlan;
-            if (distinctPlan.getChild() instanceof RecordQueryPlanWithIndex) {
-                final RecordQueryPlan newChildPlan = tryToConvertToCoveringPlan(planContext, (RecordQueryPlanWithIndex) distinctPlan.getChild());
-                if (newChildPlan != distinctPlan.getChild()) {
-                    return new RecordQueryUnorderedPrimaryKeyDistinctPlan(newChildPlan);
+            final RecordQueryPlan newChildPlan = tryToConvertToCoveringPlan(distinctPlan.getChild(), requiredFields);
+            if (newChildPlan != distinctPlan.getChild()) {
+                return new RecordQueryUnorderedPrimaryKeyDistinctPlan(newChildPlan);
+            }
+        } else if (chosenPlan instanceof RecordQueryTypeFilterPlan) {
+            // Each covering plan's record has its actual record type.
+            final RecordQueryTypeFilterPlan typeFilterPlan = (RecordQueryTypeFilterPlan) chosenPlan;
+            final RecordQueryPlan newChildPlan = tryToConvertToCoveringPlan(typeFilterPlan.getInner(), requiredFields);
+            if (newChildPlan != typeFilterPlan.getInner()) {
+                return new RecordQueryTypeFilterPlan(newChildPlan, typeFilterPlan.getRecordTypes());
+            }
+        } else if (chosenPlan instanceof RecordQueryFilterPlan) {
+            // The filter can be evaluated against the partial records if they also have the fields that it tests.
+            final RecordQueryFilterPlan filterPlan = (RecordQueryFilterPlan) chosenPlan;
+            final List<KeyExpression> filterFields = new ArrayList<>(requiredFields);
+            if (addFilterFields(filterPlan.getFilter(), filterFields)) {
+                final RecordQueryPlan newChildPlan = tryToConvertToCoveringPlan(filterPlan.getInner(), filterFields);
+                if (newChildPlan != filterPlan.getInner()) {
+                    return new RecordQueryFilterPlan(newChildPlan, filterPlan.getFilter());
                 }
             }
         }
@@ -1294,101 +1404,56 @@ public class RecordQueryPlanner implements QueryPlanner {
     }
 
     @Nonnull
-    private RecordQueryPlan tryToConvertToCoveringPlan(@Nonnull PlanContext context, @Nonnull RecordQueryPlanWithIndex chosenPlan) {
-        if (context.query.getRequiredResults() == null) {
-            // This should already be true when calling, but as a safety precaution, check here anyway.
-            return chosenPlan;
-        }
+    private RecordQueryPlan tryToConvertToCoveringPlan(@Nonnull RecordQueryPlanWithIndex chosenPlan, @Nonnull List<KeyExpression> requiredFields) {
         final Index index = metaData.getIndex(chosenPlan.getIndexName());
-        Collection<RecordType> recordTypes = metaData.recordTypesForIndex(index);
-        if (recordTypes.size() != 1) {
-            return chosenPlan;
-        }
-        final RecordType recordType = recordTypes.iterator().next();
-        final List<KeyExpression> resultFields = new ArrayList<>(context.query.getRequiredResults().size());
-        for (KeyExpression resultField : context.query.getRequiredResults()) {
-            resultFields.addAll(resultField.normalizeKeyForPositions());
-        }
-        final KeyExpression rootExpression = index.getRootExpression();
-        final List<KeyExpression> normalizedKeys = rootExpression.normalizeKeyForPositions();
-        final List<KeyExpression> keyFields;
-        final List<KeyExpression> valueFields;
-        if (rootExpression instanceof KeyWithValueExpression) {
-            final KeyWithValueExpression keyWithValue = (KeyWithValueExpression) rootExpression;
-            keyFields = new ArrayList<>(normalizedKeys.subList(0, keyWithValue.getSplitPoint()));
-            valueFields = new ArrayList<>(normalizedKeys.subList(keyWithValue.getSplitPoint(), normalizedKeys.size()));
-        } else {
-            keyFields = new ArrayList<>(normalizedKeys);
-            valueFields = Collections.singletonList(EmptyKeyExpression.EMPTY);
-        }
-
-        // Like FDBRecordStoreBase.indexEntryKey(), but with key expressions instead of actual values.
-        final List<KeyExpression> primaryKeys = context.commonPrimaryKey == null
-                ? Collections.emptyList()
-                : context.commonPrimaryKey.normalizeKeyForPositions();
-        index.trimPrimaryKey(primaryKeys);
-        keyFields.addAll(primaryKeys);
-
-        final IndexKeyValueToPartialRecord.Builder builder = IndexKeyValueToPartialRecord.newBuilder(recordType.getDescriptor());
-
-        for (KeyExpression resultField : resultFields) {
-            if (!addCoveringField(resultField, builder, keyFields, valueFields)) {
+        final Collection<RecordType> recordTypes = metaData.recordTypesForIndex(index);
+        if (recordTypes.size() > 1) {
+            // Each entry needs to say which type of partial record to make from it.
+            final KeyExpression primaryKey = commonPrimaryKey(recordTypes);
+            if (primaryKey == null || !Key.Expressions.hasRecordTypePrefix(primaryKey)) {
                 return chosenPlan;
             }
         }
-
-        if (context.commonPrimaryKey != null) {
-            for (KeyExpression primaryKeyField : context.commonPrimaryKey.normalizeKeyForPositions()) {
-                // Need the primary key, even if it wasn't one of the explicit result fields.
-                if (!resultFields.contains(primaryKeyField)) {
-                    addCoveringField(primaryKeyField, builder, keyFields, valueFields);
-                }
+        final Map<String, IndexKeyValueToPartialRecord> toRecords = new TreeMap<>();
+        for (RecordType recordType : recordTypes) {
+            final IndexKeyValueToPartialRecord toRecord = IndexKeyValueToPartialRecord.forIndex(index, recordType, requiredFields);
+            if (toRecord == null) {
+                return chosenPlan;
             }
+            toRecords.put(recordType.getName(), toRecord);
         }
-
-        if (!builder.isValid()) {
-            return chosenPlan;
-        }
-
-        return new RecordQueryCoveringIndexPlan(chosenPlan, recordType.getName(), builder.build());
+        return new RecordQueryCoveringIndexPlan(chosenPlan, toRecords);
     }
 
-    @Nullable
-    private boolean addCoveringField(@Nonnull KeyExpression requiredExpr,
-                                     @Nonnull IndexKeyValueToPartialRecord.Builder builder,
-                                     @Nonnull List<KeyExpression> keyFields,
-                                     @Nonnull List<KeyExpression> valueFields) {
-        final IndexKeyValueToPartialRecord.TupleSource source;
-        final int index;
-        int i = keyFields.indexOf(requiredExpr);
-        if (i >= 0) {
-            source = IndexKeyValueToPartialRecord.TupleSource.KEY;
-            index = i;
-        } else {
-            i = valueFields.indexOf(requiredExpr);
-            if (i >= 0) {
-                source = IndexKeyValueToPartialRecord.TupleSource.VALUE;
-                index = i;
-            } else {
+    // Add the fields that a filter tests to the given list, returning false if it needs more of the record than its fields.
+    private static boolean addFilterFields(@Nonnull QueryComponent filter, @Nonnull List<KeyExpression> fields) {
+        if (filter instanceof FieldWithComparison) {
+            fields.add(Key.Expressions.field(((FieldWithComparison) filter).getFieldName()));
+            return true;
+        } else if (filter instanceof NestedField) {
+            final NestedField nestedField = (NestedField) filter;
+            final List<KeyExpression> childFields = new ArrayList<>();
+            if (!addFilterFields(nestedField.getChild(), childFields)) {
                 return false;
             }
-        }
-
-        while (requiredExpr instanceof NestingKeyExpression) {
-            NestingKeyExpression nesting = (NestingKeyExpression)requiredExpr;
-            String fieldName = nesting.getParent().getFieldName();
-            requiredExpr = nesting.getChild();
-            builder = builder.getFieldBuilder(fieldName);
-        }
-        if (requiredExpr instanceof FieldKeyExpression) {
-            String fieldName = ((FieldKeyExpression)requiredExpr).getFieldName();
-            builder.addField(fieldName, source, index);
+            for (KeyExpression childField : childFields) {
+                fields.add(Key.Expressions.field(nestedField.getFieldName()).nest(childField));
+            }
             return true;
+        } else if (filter instanceof AndComponent || filter instanceof OrComponent) {
+            for (QueryComponent child : ((ComponentWithChildren) filter).getChildren()) {
+                if (!addFilterFields(child, fields)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (filter instanceof NotComponent) {
+            return addFilterFields(((NotComponent) filter).getChild(), fields);
         } else {
-            return false;
+            return filter instanceof RecordTypeKeyComparison;
         }
     }
-    
+
     @Nullable
     public RecordQueryPlan planCoveringAggregateIndex(@Nonnull RecordQuery query, @Nonnull String indexName) {
         final Index index = metaData.getIndex(indexName);
@@ -1418,7 +1483,7 @@ public class RecordQueryPlanner implements QueryPlanner {
         final List<KeyExpression> keyFields = index.getRootExpression().normalizeKeyForPositions();
         final List<KeyExpression> valueFields = Collections.emptyList();
         for (KeyExpression resultField : query.getRequiredResults()) {
-            if (!addCoveringField(resultField, builder, keyFields, valueFields)) {
+            if (!IndexKeyValueToPartialRecord.addCoveringField(resultField, builder, keyFields, valueFields)) {
                 return null;
             }
         }
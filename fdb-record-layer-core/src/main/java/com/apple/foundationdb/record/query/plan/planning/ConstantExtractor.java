@@ -0,0 +1,104 @@
+/*
+ * ConstantExtractor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.planning;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.Bindings;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.expressions.ComponentWithChildren;
+import com.apple.foundationdb.record.query.expressions.ComponentWithComparison;
+import com.apple.foundationdb.record.query.expressions.ComponentWithSingleChild;
+import com.apple.foundationdb.record.query.expressions.FieldWithComparison;
+import com.apple.foundationdb.record.query.expressions.OneOfThemWithComparison;
+import com.apple.foundationdb.record.query.expressions.QueryComponent;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Extract the literal values from the simple field comparisons in a query filter by replacing them with comparisons
+ * against bound parameters. Two filters that differ only in those values have equal extracted filters, so a plan
+ * for one can be reused for the other by binding its constants.
+ *
+ * <p>
+ * Only {@link Comparisons.SimpleComparison}s on fields are extracted. {@code IN} lists, text and record function
+ * comparisons are left alone, since the planner treats those differently depending on their values.
+ * </p>
+ */
+@API(API.Status.INTERNAL)
+public class ConstantExtractor {
+    @Nullable
+    private final QueryComponent subFilter;
+    @Nonnull
+    private final Map<String, Object> constants;
+
+    public ConstantExtractor(@Nullable QueryComponent filter) {
+        constants = new LinkedHashMap<>();
+        subFilter = filter == null ? null : extractConstants(filter);
+    }
+
+    private QueryComponent extractConstants(@Nonnull QueryComponent filter) {
+        if (filter instanceof FieldWithComparison || filter instanceof OneOfThemWithComparison) {
+            final ComponentWithComparison withComparison = (ComponentWithComparison) filter;
+            final Comparisons.Comparison comparison = withComparison.getComparison();
+            if (comparison instanceof Comparisons.SimpleComparison && !comparison.getType().isUnary()) {
+                final String bindingName = Bindings.Internal.CONSTANT.bindingName(Integer.toString(constants.size()));
+                constants.put(bindingName, comparison.getComparand());
+                return withComparison.withOtherComparison(
+                        new Comparisons.ParameterComparison(comparison.getType(), bindingName, Bindings.Internal.CONSTANT));
+            }
+            return filter;
+        } else if (filter instanceof ComponentWithChildren) {
+            final ComponentWithChildren componentWithChildren = (ComponentWithChildren) filter;
+            return componentWithChildren.withOtherChildren(
+                    componentWithChildren.getChildren().stream()
+                            .map(this::extractConstants)
+                            .collect(Collectors.toList()));
+        } else if (filter instanceof ComponentWithSingleChild) {
+            final ComponentWithSingleChild componentWithSingleChild = (ComponentWithSingleChild) filter;
+            return componentWithSingleChild.withOtherChild(extractConstants(componentWithSingleChild.getChild()));
+        } else {
+            return filter;
+        }
+    }
+
+    /**
+     * Get the filter with its constants replaced by parameters.
+     * @return the parameterized filter or <code>null</code> if there was no filter
+     */
+    @Nullable
+    public QueryComponent subFilter() {
+        return subFilter;
+    }
+
+    /**
+     * Get the constants that were extracted.
+     * @return a map from parameter name to the value that was replaced by that parameter, in the order they appear in the filter
+     */
+    @Nonnull
+    public Map<String, Object> getConstants() {
+        return Collections.unmodifiableMap(constants);
+    }
+}
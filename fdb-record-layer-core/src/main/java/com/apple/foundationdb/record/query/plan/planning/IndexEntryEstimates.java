@@ -0,0 +1,75 @@
+/*
+ * IndexEntryEstimates.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.planning;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.IndexStatistics;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Helper methods for estimating how many entries an index scan will read from the index's {@link IndexStatistics}.
+ * These are shared by the planners so that they agree about which scans are cheaper.
+ */
+@API(API.Status.INTERNAL)
+public class IndexEntryEstimates {
+    /**
+     * The fraction of entries assumed to satisfy an inequality that cannot be estimated from the histogram.
+     */
+    public static final double DEFAULT_INEQUALITY_SELECTIVITY = 1.0 / 3;
+
+    private IndexEntryEstimates() {
+    }
+
+    /**
+     * Estimate the number of entries that a scan of an index by value with the given comparisons will read.
+     * Equalities use the distinct prefix counts, or the histogram when a common value spans more than its share of
+     * buckets. Ranges use the histogram, where they are assumed to match at least half a bucket, or
+     * {@link #DEFAULT_INEQUALITY_SELECTIVITY} when they cannot be turned into a range of keys.
+     * @param statistics the statistics of the index being scanned
+     * @param comparisons the comparisons of the index scan
+     * @return the estimated number of index entries scanned
+     */
+    public static double estimateEntries(@Nonnull IndexStatistics statistics, @Nonnull ScanComparisons comparisons) {
+        double selectivity = statistics.getEqualitySelectivity(comparisons.getEqualitySize());
+        boolean simple = true;
+        for (Comparisons.Comparison comparison : comparisons.getEqualityComparisons()) {
+            simple &= comparison instanceof Comparisons.SimpleComparison;
+        }
+        for (Comparisons.Comparison comparison : comparisons.getInequalityComparisons()) {
+            simple &= comparison instanceof Comparisons.SimpleComparison;
+        }
+        final double rangeSelectivity = simple && !comparisons.isEmpty() ?
+                                        statistics.getRangeSelectivity(comparisons.toTupleRange()) : -1;
+        if (comparisons.isEquality()) {
+            // A common value may cover several histogram buckets.
+            selectivity = Math.max(selectivity, rangeSelectivity);
+        } else if (rangeSelectivity >= 0) {
+            // A range narrower than a bucket still probably matches something.
+            selectivity = Math.max(rangeSelectivity, 0.5 / statistics.getHistogram().size());
+        } else {
+            selectivity *= DEFAULT_INEQUALITY_SELECTIVITY;
+        }
+        return statistics.getKeyCount() * selectivity;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * RecordQueryConstantBindingPlan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.plans;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.EvaluationContextBuilder;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.PlannerExpression;
+import com.apple.foundationdb.record.query.plan.temp.SingleExpressionRef;
+import com.google.common.collect.Iterators;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A query plan that binds constant values to parameters before executing its child plan.
+ * This is how a plan made for a parameterized query, such as one from a
+ * {@link com.apple.foundationdb.record.query.plan.RecordQueryPlanCache}, is bound to the values of a particular query.
+ * The plan hash is that of the child, so all queries that share a plan have the same plan hash.
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryConstantBindingPlan implements RecordQueryPlanWithChild {
+    @Nonnull
+    private final ExpressionRef<RecordQueryPlan> inner;
+    @Nonnull
+    private final Map<String, Object> constants;
+
+    public RecordQueryConstantBindingPlan(@Nonnull RecordQueryPlan inner, @Nonnull Map<String, Object> constants) {
+        this.inner = SingleExpressionRef.of(inner);
+        this.constants = Collections.unmodifiableMap(new LinkedHashMap<>(constants));
+    }
+
+    @Nonnull
+    @Override
+    public <M extends Message> RecordCursor<FDBQueriedRecord<M>> execute(@Nonnull FDBRecordStoreBase<M> store,
+                                                                         @Nonnull EvaluationContext context,
+                                                                         @Nullable byte[] continuation,
+                                                                         @Nonnull ExecuteProperties executeProperties) {
+        final EvaluationContextBuilder builder = context.childBuilder();
+        for (Map.Entry<String, Object> entry : constants.entrySet()) {
+            builder.setBinding(entry.getKey(), entry.getValue());
+        }
+        return getInner().execute(store, builder.build(), continuation, executeProperties);
+    }
+
+    @Override
+    public boolean isReverse() {
+        return getInner().isReverse();
+    }
+
+    @Nonnull
+    private RecordQueryPlan getInner() {
+        return inner.get();
+    }
+
+    @Override
+    @Nonnull
+    public RecordQueryPlan getChild() {
+        return getInner();
+    }
+
+    /**
+     * Get the values bound to parameters before executing the child plan.
+     * @return a map from parameter name to value
+     */
+    @Nonnull
+    public Map<String, Object> getConstants() {
+        return constants;
+    }
+
+    @Override
+    public boolean hasRecordScan() {
+        return getInner().hasRecordScan();
+    }
+
+    @Override
+    public boolean hasFullRecordScan() {
+        return getInner().hasFullRecordScan();
+    }
+
+    @Override
+    public boolean hasIndexScan(@Nonnull String indexName) {
+        return getInner().hasIndexScan(indexName);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getUsedIndexes() {
+        return getInner().getUsedIndexes();
+    }
+
+    @Nonnull
+    @Override
+    @API(API.Status.EXPERIMENTAL)
+    public Iterator<? extends ExpressionRef<? extends PlannerExpression>> getPlannerExpressionChildren() {
+        return Iterators.singletonIterator(this.inner);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder(getInner().toString());
+        str.append(" WHERE");
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : constants.entrySet()) {
+            str.append(first ? " $" : ", $").append(entry.getKey()).append(" = ").append(entry.getValue());
+            first = false;
+        }
+        return str.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQueryConstantBindingPlan that = (RecordQueryConstantBindingPlan) o;
+        return Objects.equals(getInner(), that.getInner()) &&
+                Objects.equals(constants, that.constants);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getInner(), constants);
+    }
+
+    @Override
+    public int planHash() {
+        return getInner().planHash();
+    }
+
+    @Override
+    public void logPlanStructure(StoreTimer timer) {
+        getInner().logPlanStructure(timer);
+    }
+
+    @Override
+    public int getComplexity() {
+        return 1 + getInner().getComplexity();
+    }
+}
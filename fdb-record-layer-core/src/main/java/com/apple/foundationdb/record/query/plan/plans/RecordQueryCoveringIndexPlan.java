@@ -23,9 +23,12 @@ package com.apple.foundationdb.record.query.plan.plans;
 import com.apple.foundationdb.API;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.RecordType;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
@@ -37,13 +40,17 @@ import com.apple.foundationdb.record.query.plan.ScanComparisons;
 import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
 import com.apple.foundationdb.record.query.plan.temp.PlannerExpression;
 import com.apple.foundationdb.record.query.plan.temp.SingleExpressionRef;
+import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.collect.Iterators;
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -56,9 +63,7 @@ public class RecordQueryCoveringIndexPlan implements RecordQueryPlanWithChild {
     @Nonnull
     private final ExpressionRef<RecordQueryPlanWithIndex> indexPlan;
     @Nonnull
-    private final String recordTypeName;
-    @Nonnull
-    private final IndexKeyValueToPartialRecord toRecord;
+    private final Map<String, IndexKeyValueToPartialRecord> toRecords;
 
     public RecordQueryCoveringIndexPlan(@Nonnull final String indexName, @Nonnull IndexScanType scanType, @Nonnull final ScanComparisons comparisons, final boolean reverse,
                                         @Nonnull final String recordTypeName, @Nonnull IndexKeyValueToPartialRecord toRecord) {
@@ -67,9 +72,20 @@ public class RecordQueryCoveringIndexPlan implements RecordQueryPlanWithChild {
 
     public RecordQueryCoveringIndexPlan(@Nonnull RecordQueryPlanWithIndex plan,
                                         @Nonnull final String recordTypeName, @Nonnull IndexKeyValueToPartialRecord toRecord) {
+        this(plan, Collections.singletonMap(recordTypeName, toRecord));
+    }
+
+    /**
+     * Create a plan that reconstructs records of several types from the entries in a covering index.
+     * When there is more than one record type, the primary key in each entry must begin with the record type key,
+     * which determines the type of partial record to make from the entry.
+     * @param plan the plan that scans the index
+     * @param toRecords the conversion from index entries to partial records for each record type in the index
+     */
+    public RecordQueryCoveringIndexPlan(@Nonnull RecordQueryPlanWithIndex plan,
+                                        @Nonnull Map<String, IndexKeyValueToPartialRecord> toRecords) {
         this.indexPlan = SingleExpressionRef.of(plan);
-        this.recordTypeName = recordTypeName;
-        this.toRecord = toRecord;
+        this.toRecords = toRecords;
     }
 
     @Nonnull
@@ -80,12 +96,33 @@ public class RecordQueryCoveringIndexPlan implements RecordQueryPlanWithChild {
                                                                          @Nullable byte[] continuation,
                                                                          @Nonnull ExecuteProperties executeProperties) {
         final RecordMetaData metaData = store.getRecordMetaData();
-        final RecordType recordType = metaData.getRecordType(recordTypeName);
         final Index index = metaData.getIndex(getIndexName());
-        final Descriptors.Descriptor recordDescriptor = recordType.getDescriptor();
         boolean hasPrimaryKey = getScanType() != IndexScanType.BY_GROUP;
-        return indexPlan.get().executeEntries(store, context, continuation, executeProperties)
-                .map(indexEntry -> store.coveredIndexQueriedRecord(index, indexEntry, recordType, (M) toRecord.toRecord(recordDescriptor, indexEntry), hasPrimaryKey));
+        final RecordCursor<IndexEntry> entries = indexPlan.get().executeEntries(store, context, continuation, executeProperties);
+        if (toRecords.size() == 1) {
+            final Map.Entry<String, IndexKeyValueToPartialRecord> toRecord = toRecords.entrySet().iterator().next();
+            final RecordType recordType = metaData.getRecordType(toRecord.getKey());
+            final Descriptors.Descriptor recordDescriptor = recordType.getDescriptor();
+            return entries.map(indexEntry -> store.coveredIndexQueriedRecord(index, indexEntry, recordType,
+                    (M) toRecord.getValue().toRecord(recordDescriptor, indexEntry), hasPrimaryKey));
+        }
+        // Record type keys as they come back from a tuple, to match those in primary keys.
+        final Map<Object, RecordType> recordTypesByKey = new HashMap<>();
+        for (String recordTypeName : toRecords.keySet()) {
+            final RecordType recordType = metaData.getRecordType(recordTypeName);
+            recordTypesByKey.put(Tuple.fromBytes(Tuple.from(recordType.getRecordTypeKey()).pack()).get(0), recordType);
+        }
+        return entries.map(indexEntry -> {
+            final Object recordTypeKey = FDBRecordStoreBase.indexEntryPrimaryKey(index, indexEntry.getKey()).get(0);
+            final RecordType recordType = recordTypesByKey.get(recordTypeKey);
+            if (recordType == null) {
+                throw new RecordCoreException("index entry is not for a covered record type",
+                        LogMessageKeys.INDEX_NAME, index.getName(),
+                        LogMessageKeys.KEY, indexEntry.getKey());
+            }
+            return store.coveredIndexQueriedRecord(index, indexEntry, recordType,
+                    (M) toRecords.get(recordType.getName()).toRecord(recordType.getDescriptor(), indexEntry), hasPrimaryKey);
+        });
     }
 
     @Nonnull
@@ -127,7 +164,7 @@ public class RecordQueryCoveringIndexPlan implements RecordQueryPlanWithChild {
     @Nonnull
     @Override
     public String toString() {
-        return "Covering(" + getChild() + " -> " + toRecord + ")";
+        return "Covering(" + getChild() + " -> " + (toRecords.size() == 1 ? toRecords.values().iterator().next() : toRecords) + ")";
     }
 
     @Override
@@ -143,13 +180,12 @@ public class RecordQueryCoveringIndexPlan implements RecordQueryPlanWithChild {
         }
         RecordQueryCoveringIndexPlan that = (RecordQueryCoveringIndexPlan) o;
         return Objects.equals(getChild(), that.getChild()) &&
-               Objects.equals(recordTypeName, that.recordTypeName) &&
-               Objects.equals(toRecord, that.toRecord);
+               Objects.equals(toRecords, that.toRecords);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getChild(), recordTypeName, toRecord);
+        return Objects.hash(getChild(), toRecords);
     }
 
     @Override
@@ -23,17 +23,25 @@ package com.apple.foundationdb.record.query.plan.plans;
 import com.apple.foundationdb.API;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IndexScanType;
 import com.apple.foundationdb.record.PlanHashable;
 import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.RecordType;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyWithValueExpression;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.KeyValueCursor;
 import com.apple.foundationdb.record.provider.foundationdb.cursors.IntersectionCursor;
 import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
 import com.apple.foundationdb.record.query.plan.temp.PlannerExpression;
 import com.apple.foundationdb.record.query.plan.temp.SingleExpressionRef;
+import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.google.protobuf.Message;
@@ -106,9 +114,47 @@ public class RecordQueryIntersectionPlan implements RecordQueryPlanWithChildren
                         .map(childPlan -> (Function<byte[], RecordCursor<FDBQueriedRecord<M>>>)
                                 ((byte[] childContinuation) -> childPlan.get().execute(store, context, childContinuation, childExecuteProperties)))
                         .collect(Collectors.toList()),
+                children.stream()
+                        .map(childPlan -> seekFunction(store, childPlan.get()))
+                        .collect(Collectors.toList()),
                 continuation).skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
     }
 
+    /**
+     * Get a function to position a child's cursor at a given comparison key, if it can be done.
+     * This is possible for a scan of a value index with every indexed column fixed by an equality comparison, when the
+     * comparison key is the primary key. The entries within the scan are then ordered by primary key alone, and the
+     * continuation for a primary key is its packed form.
+     * @param store the record store being queried
+     * @param childPlan a child of this plan
+     * @return a function from comparison key to child continuation or <code>null</code> if the child cannot seek
+     */
+    @Nullable
+    private <M extends Message> Function<List<Object>, byte[]> seekFunction(@Nonnull FDBRecordStoreBase<M> store,
+                                                                            @Nonnull RecordQueryPlan childPlan) {
+        if (childPlan.getClass() != RecordQueryIndexPlan.class) {
+            return null;
+        }
+        final RecordQueryIndexPlan indexPlan = (RecordQueryIndexPlan)childPlan;
+        if (indexPlan.getScanType() != IndexScanType.BY_VALUE || !indexPlan.getComparisons().isEquality()) {
+            return null;
+        }
+        final RecordMetaData metaData = store.getRecordMetaData();
+        final Index index = metaData.getIndex(indexPlan.getIndexName());
+        if (!IndexTypes.VALUE.equals(index.getType()) ||
+                index.getRootExpression() instanceof KeyWithValueExpression ||
+                index.getPrimaryKeyComponentPositions() != null ||
+                indexPlan.getComparisons().getEqualitySize() != index.getColumnSize()) {
+            return null;
+        }
+        for (RecordType recordType : metaData.recordTypesForIndex(index)) {
+            if (!getComparisonKey().equals(recordType.getPrimaryKey())) {
+                return null;
+            }
+        }
+        return comparisonKey -> KeyValueCursor.continuationAtKey(Tuple.fromList(comparisonKey).pack(), reverse);
+    }
+
     @Override
     public boolean isReverse() {
         return reverse;
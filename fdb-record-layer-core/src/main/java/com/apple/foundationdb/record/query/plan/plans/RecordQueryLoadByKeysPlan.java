@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.query.plan.plans;
 
 import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.ByteScanLimiter;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.PipelineOperation;
@@ -31,6 +32,7 @@ import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
 import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
 import com.apple.foundationdb.record.query.plan.temp.PlannerExpression;
 import com.apple.foundationdb.record.query.plan.temp.SingleExpressionRef;
@@ -46,6 +48,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A query plan that returns records whose primary keys are taken from some list.
@@ -82,13 +85,24 @@ public class RecordQueryLoadByKeysPlan implements RecordQueryPlanWithNoChildren
                                                                          @Nonnull ExecuteProperties executeProperties) {
         // Cannot pass down limit(s) because we skip keys that don't load.
         RecordScanLimiter recordScanLimiter = executeProperties.getState().getRecordScanLimiter();
+        ByteScanLimiter byteScanLimiter = executeProperties.getState().getByteScanLimiter();
         return RecordCursor.fromList(store.getExecutor(), getKeysSource().getPrimaryKeys(context), continuation)
                 .mapPipelined(key -> {
                     // TODO: Implement continuation handling and record scan limit for RecordQueryLoadByKeysPlan (https://github.com/FoundationDB/fdb-record-layer/issues/6)
                     if (recordScanLimiter != null) {
                         recordScanLimiter.tryRecordScan();
                     }
-                    return store.loadRecordAsync(key);
+                    CompletableFuture<FDBStoredRecord<M>> loaded = store.loadRecordAsync(key);
+                    if (byteScanLimiter != null) {
+                        // Count the bytes read even though this plan cannot stop early, so that other cursors sharing the limiter do.
+                        loaded = loaded.thenApply(rec -> {
+                            if (rec != null) {
+                                byteScanLimiter.registerScannedBytes((long)rec.getKeySize() + rec.getValueSize());
+                            }
+                            return rec;
+                        });
+                    }
+                    return loaded;
                 }, store.getPipelineSize(PipelineOperation.KEY_TO_RECORD))
                 .filter(Objects::nonNull)
                 .map(store::queriedRecord)
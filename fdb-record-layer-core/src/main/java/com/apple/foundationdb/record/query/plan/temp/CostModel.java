@@ -0,0 +1,346 @@
+/*
+ * CostModel.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.temp;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IndexStatistics;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.expressions.FieldKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyWithValueExpression;
+import com.apple.foundationdb.record.metadata.expressions.ThenKeyExpression;
+import com.apple.foundationdb.record.query.expressions.AndComponent;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.expressions.FieldWithComparison;
+import com.apple.foundationdb.record.query.expressions.NotComponent;
+import com.apple.foundationdb.record.query.expressions.OrComponent;
+import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+import com.apple.foundationdb.record.query.plan.planning.IndexEntryEstimates;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnionPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedUnionPlan;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A simple cost model for choosing among alternative implementations of the same query.
+ *
+ * <p>
+ * The cost of a {@link RecordQueryPlan} is an estimate of the number of records it returns and of the work it does
+ * reading from the database, in units of one key-value read in a range scan. Fetching a record by primary key is a
+ * separate random read and costs more than reading the next entry of a range. Index entry counts come from
+ * {@link IndexStatistics} when the {@link PlanContext} has them and from fixed default selectivities when it does not.
+ * The number of records is taken to be the largest index key count known, since most indexes have one entry per record.
+ * </p>
+ *
+ * <p>
+ * Costs are memoized for each plan expression, so alternatives that share sub-plans only estimate them once.
+ * A cost model is meant to be used for planning a single query.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class CostModel {
+    /**
+     * The number of records assumed when there are no statistics.
+     */
+    public static final double DEFAULT_RECORD_COUNT = 1000;
+    /**
+     * The fraction of records assumed to match an equality comparison when there are no statistics.
+     */
+    public static final double DEFAULT_EQUALITY_SELECTIVITY = 0.1;
+    /**
+     * The cost of reading the next key-value pair of a range.
+     */
+    public static final double RANGE_READ_COST = 1.0;
+    /**
+     * The cost of fetching a record by its primary key.
+     */
+    public static final double RECORD_FETCH_COST = 2.0;
+
+    @Nonnull
+    private final PlanContext context;
+    @Nonnull
+    private final Map<PlannerExpression, Cost> memo = new IdentityHashMap<>();
+    private final double recordCount;
+
+    public CostModel(@Nonnull PlanContext context) {
+        this.context = context;
+        double maxKeyCount = -1;
+        for (Index index : context.getIndexes()) {
+            final IndexStatistics statistics = context.getIndexStatistics(index.getName());
+            if (statistics != null) {
+                maxKeyCount = Math.max(maxKeyCount, statistics.getKeyCount());
+            }
+        }
+        this.recordCount = maxKeyCount >= 0 ? maxKeyCount : DEFAULT_RECORD_COUNT;
+    }
+
+    /**
+     * The estimated cost of a plan.
+     */
+    public static class Cost implements Comparable<Cost> {
+        private final double rows;
+        private final double reads;
+
+        public Cost(double rows, double reads) {
+            this.rows = rows;
+            this.reads = reads;
+        }
+
+        /**
+         * Get the estimated number of records returned.
+         * @return the number of records
+         */
+        public double getRows() {
+            return rows;
+        }
+
+        /**
+         * Get the estimated cost of reading from the database.
+         * @return the read cost in units of {@link #RANGE_READ_COST}
+         */
+        public double getReads() {
+            return reads;
+        }
+
+        @Override
+        public int compareTo(@Nonnull Cost other) {
+            int compare = Double.compare(reads, other.reads);
+            if (compare == 0) {
+                compare = Double.compare(rows, other.rows);
+            }
+            return compare;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cost{rows=%.1f, reads=%.1f}", rows, reads);
+        }
+    }
+
+    /**
+     * Get the number of records assumed to be in the record store.
+     * @return the estimated number of records
+     */
+    public double getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Estimate the cost of a plan.
+     * @param plan the plan to estimate
+     * @return the estimated cost
+     */
+    @Nonnull
+    public Cost estimate(@Nonnull RecordQueryPlan plan) {
+        Cost cost = memo.get(plan);
+        if (cost == null) {
+            cost = computeCost(plan);
+            memo.put(plan, cost);
+        }
+        return cost;
+    }
+
+    /**
+     * Choose the plan with the lowest estimated cost. Ties go to the earlier plan.
+     * @param plans the alternative plans
+     * @param <T> the type of plan
+     * @return the cheapest plan
+     */
+    @Nonnull
+    public <T extends RecordQueryPlan> T cheapest(@Nonnull List<T> plans) {
+        T best = null;
+        Cost bestCost = null;
+        for (T plan : plans) {
+            final Cost cost = estimate(plan);
+            if (bestCost == null || cost.compareTo(bestCost) < 0) {
+                best = plan;
+                bestCost = cost;
+            }
+        }
+        if (best == null) {
+            throw new RecordCoreArgumentException("no plans to choose from");
+        }
+        return best;
+    }
+
+    @Nonnull
+    private Cost computeCost(@Nonnull RecordQueryPlan plan) {
+        if (plan instanceof RecordQueryIndexPlan) {
+            final double entries = estimateEntries((RecordQueryIndexPlan)plan);
+            return new Cost(entries, entries * (RANGE_READ_COST + RECORD_FETCH_COST));
+        } else if (plan instanceof RecordQueryScanPlan) {
+            final double entries = recordCount * defaultSelectivity(((RecordQueryScanPlan)plan).getComparisons());
+            return new Cost(entries, entries * RANGE_READ_COST);
+        } else if (plan instanceof RecordQueryFilterPlan) {
+            final RecordQueryFilterPlan filterPlan = (RecordQueryFilterPlan)plan;
+            final Cost inner = estimate(filterPlan.getChild());
+            return new Cost(inner.getRows() * selectivity(filterPlan.getFilter()), inner.getReads());
+        } else if (plan instanceof RecordQueryIntersectionPlan) {
+            return intersectionCost((RecordQueryIntersectionPlan)plan);
+        } else if (plan instanceof RecordQueryUnionPlan || plan instanceof RecordQueryUnorderedUnionPlan) {
+            double rows = 0;
+            double reads = 0;
+            for (RecordQueryPlan child : plan.getChildren()) {
+                final Cost childCost = estimate(child);
+                rows += childCost.getRows();
+                reads += childCost.getReads();
+            }
+            return new Cost(Math.min(rows, recordCount), reads);
+        } else {
+            // Other plans, such as type filters and distinct, are assumed to pass through records from their children.
+            double rows = 0;
+            double reads = 0;
+            for (RecordQueryPlan child : plan.getChildren()) {
+                final Cost childCost = estimate(child);
+                rows = Math.max(rows, childCost.getRows());
+                reads += childCost.getReads();
+            }
+            return new Cost(rows, reads);
+        }
+    }
+
+    // The matching fraction of each child is independent. A child that can seek ahead only reads about as many entries
+    // as the child with the fewest entries, paying an extra random read for each seek.
+    @Nonnull
+    private Cost intersectionCost(@Nonnull RecordQueryIntersectionPlan plan) {
+        final List<Cost> childCosts = new ArrayList<>();
+        double minRows = Double.MAX_VALUE;
+        for (RecordQueryPlan child : plan.getChildren()) {
+            final Cost childCost = estimate(child);
+            childCosts.add(childCost);
+            minRows = Math.min(minRows, childCost.getRows());
+        }
+        double rows = recordCount;
+        double reads = 0;
+        for (int i = 0; i < childCosts.size(); i++) {
+            final RecordQueryPlan child = plan.getChildren().get(i);
+            final Cost childCost = childCosts.get(i);
+            rows *= recordCount > 0 ? childCost.getRows() / recordCount : 0;
+            if (child instanceof RecordQueryIndexPlan && childCost.getRows() > minRows &&
+                    isPrimaryKeyOrdered(context, (RecordQueryIndexPlan)child) &&
+                    plan.getComparisonKey().equals(context.getCommonPrimaryKey())) {
+                reads += minRows * (RANGE_READ_COST * 2 + RECORD_FETCH_COST);
+            } else {
+                reads += childCost.getReads();
+            }
+        }
+        return new Cost(Math.min(rows, minRows), reads);
+    }
+
+    private double estimateEntries(@Nonnull RecordQueryIndexPlan plan) {
+        final ScanComparisons comparisons = plan.getComparisons();
+        final IndexStatistics statistics = context.getIndexStatistics(plan.getIndexName());
+        if (statistics == null || plan.getScanType() != IndexScanType.BY_VALUE) {
+            return recordCount * defaultSelectivity(comparisons);
+        }
+        return IndexEntryEstimates.estimateEntries(statistics, comparisons);
+    }
+
+    private static double defaultSelectivity(@Nonnull ScanComparisons comparisons) {
+        double selectivity = Math.pow(DEFAULT_EQUALITY_SELECTIVITY, comparisons.getEqualitySize());
+        if (!comparisons.isEquality()) {
+            selectivity *= IndexEntryEstimates.DEFAULT_INEQUALITY_SELECTIVITY;
+        }
+        return selectivity;
+    }
+
+    /**
+     * Estimate the fraction of records that satisfy a filter.
+     * An equality comparison on a field that is the first column of an index with statistics uses the number of
+     * distinct values in that index.
+     * @param filter the filter to estimate
+     * @return the estimated fraction of records that match
+     */
+    public double selectivity(@Nonnull QueryComponent filter) {
+        if (filter instanceof AndComponent) {
+            double selectivity = 1.0;
+            for (QueryComponent child : ((AndComponent)filter).getChildren()) {
+                selectivity *= selectivity(child);
+            }
+            return selectivity;
+        } else if (filter instanceof OrComponent) {
+            double notSelected = 1.0;
+            for (QueryComponent child : ((OrComponent)filter).getChildren()) {
+                notSelected *= 1.0 - selectivity(child);
+            }
+            return 1.0 - notSelected;
+        } else if (filter instanceof NotComponent) {
+            return 1.0 - selectivity(((NotComponent)filter).getChild());
+        } else if (filter instanceof FieldWithComparison &&
+                   ((FieldWithComparison)filter).getComparison().getType() == Comparisons.Type.EQUALS) {
+            final IndexStatistics statistics = statisticsForField(((FieldWithComparison)filter).getFieldName());
+            return statistics != null ? statistics.getEqualitySelectivity(1) : DEFAULT_EQUALITY_SELECTIVITY;
+        } else {
+            return IndexEntryEstimates.DEFAULT_INEQUALITY_SELECTIVITY;
+        }
+    }
+
+    @Nullable
+    private IndexStatistics statisticsForField(@Nonnull String fieldName) {
+        for (Index index : context.getIndexes()) {
+            KeyExpression root = index.getRootExpression();
+            if (root instanceof ThenKeyExpression) {
+                root = ((ThenKeyExpression)root).getChildren().get(0);
+            }
+            if (root instanceof FieldKeyExpression && ((FieldKeyExpression)root).getFieldName().equals(fieldName)) {
+                final IndexStatistics statistics = context.getIndexStatistics(index.getName());
+                if (statistics != null) {
+                    return statistics;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determine whether the entries returned by an index scan are in primary key order. This is true for a scan of a
+     * value index with every indexed column fixed by an equality comparison. Such scans can be merged by
+     * intersection and union plans on the primary key, and intersections can seek ahead within them.
+     * @param context the plan context
+     * @param plan the index scan
+     * @return <code>true</code> if the scan returns entries in primary key order
+     */
+    public static boolean isPrimaryKeyOrdered(@Nonnull PlanContext context, @Nonnull RecordQueryIndexPlan plan) {
+        if (plan.getScanType() != IndexScanType.BY_VALUE || !plan.getComparisons().isEquality()) {
+            return false;
+        }
+        final Index index = context.getIndexByName(plan.getIndexName());
+        return index != null &&
+               IndexTypes.VALUE.equals(index.getType()) &&
+               !(index.getRootExpression() instanceof KeyWithValueExpression) &&
+               index.getPrimaryKeyComponentPositions() == null &&
+               plan.getComparisons().getEqualitySize() == index.getColumnSize();
+    }
+}
@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.query.plan.temp;
 
 import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.IndexStatistics;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordStoreState;
 import com.apple.foundationdb.record.metadata.Index;
@@ -36,6 +37,7 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -54,10 +56,18 @@ public class MetaDataPlanContext implements PlanContext {
     private final BiMap<String, Index> indexesByName = indexes.inverse();
     @Nullable
     private final KeyExpression commonPrimaryKey;
+    @Nullable
+    private final Map<String, IndexStatistics> indexStatistics;
 
     public MetaDataPlanContext(@Nonnull RecordMetaData metaData, @Nonnull RecordStoreState recordStoreState, @Nonnull RecordQuery query) {
+        this(metaData, recordStoreState, query, null);
+    }
+
+    public MetaDataPlanContext(@Nonnull RecordMetaData metaData, @Nonnull RecordStoreState recordStoreState, @Nonnull RecordQuery query,
+                               @Nullable Map<String, IndexStatistics> indexStatistics) {
         this.metaData = metaData;
         this.recordStoreState = recordStoreState;
+        this.indexStatistics = indexStatistics;
 
         recordStoreState.beginRead();
         List<Index> indexList = new ArrayList<>();
@@ -136,6 +146,12 @@ public class MetaDataPlanContext implements PlanContext {
         return metaData;
     }
 
+    @Override
+    @Nullable
+    public IndexStatistics getIndexStatistics(@Nonnull String indexName) {
+        return indexStatistics == null ? null : indexStatistics.get(indexName);
+    }
+
     @Nonnull
     private List<Index> readableOf(@Nonnull List<Index> indexes) {
         if (recordStoreState.allIndexesReadable()) {
@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.query.plan.temp;
 
 import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.IndexStatistics;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
@@ -47,4 +48,14 @@ public interface PlanContext {
 
     @Nonnull
     RecordMetaData getMetaData();
+
+    /**
+     * Get the statistics that have been gathered for an index.
+     * @param indexName the name of the index
+     * @return the statistics for the index or <code>null</code> if there are none
+     */
+    @Nullable
+    default IndexStatistics getIndexStatistics(@Nonnull String indexName) {
+        return null;
+    }
 }
@@ -22,7 +22,9 @@ package com.apple.foundationdb.record.query.plan.temp;
 
 import com.apple.foundationdb.API;
 import com.apple.foundationdb.record.query.plan.temp.rules.CombineFilterRule;
+import com.apple.foundationdb.record.query.plan.temp.rules.FilterWithAndComponentRule;
 import com.apple.foundationdb.record.query.plan.temp.rules.FilterWithFieldWithComparisonRule;
+import com.apple.foundationdb.record.query.plan.temp.rules.FilterWithOrComponentRule;
 import com.apple.foundationdb.record.query.plan.temp.rules.FilterWithScanRule;
 import com.apple.foundationdb.record.query.plan.temp.rules.ImplementTypeFilterRule;
 import com.apple.foundationdb.record.query.plan.temp.rules.RemoveRedundantTypeFilterRule;
@@ -46,6 +48,8 @@ public class PlannerRuleSet {
             new FilterWithScanRule(),
             new CombineFilterRule(),
             new FilterWithFieldWithComparisonRule(),
+            new FilterWithAndComponentRule(),
+            new FilterWithOrComponentRule(),
             new RemoveRedundantTypeFilterRule()
     );
     private static final List<PlannerRule<? extends PlannerExpression>> IMPLEMENTATION_RULES = ImmutableList.of(
@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.query.plan.temp;
 
 import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.IndexStatistics;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordStoreState;
@@ -36,12 +37,14 @@ import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * A simple planner that applies rewrite rules until it can't apply any more of them, then returns the resulting plan.
  * This planner is greedy (applies rule immediately) and doesn't respect any kind of ordering of the rules (such as "try
- * this rule before this rule") and so cannot implement all of the behavior in the current planner.
+ * this rule before this rule") and so cannot implement all of the behavior in the current planner. When a rule yields
+ * several alternative plans, the planner keeps the one with the lowest cost estimated by a {@link CostModel}.
  *
  * TODO this planner might have bugs since we don't currently have enough rules to write good tests for it.
  */
@@ -57,12 +60,35 @@ public class RewritePlanner implements QueryPlanner {
     private SingleExpressionRef<PlannerExpression> currentRoot;
     @Nullable
     private PlanContext context;
+    @Nullable
+    private CostModel costModel;
+    @Nullable
+    private Map<String, IndexStatistics> indexStatistics;
 
     public RewritePlanner(@Nonnull RecordMetaData metaData, @Nonnull RecordStoreState recordStoreState) {
         this.metaData = metaData;
         this.recordStoreState = recordStoreState;
     }
 
+    /**
+     * Get the index statistics used to estimate the cost of alternative plans.
+     * @return a map from index name to statistics or <code>null</code> if none have been given
+     */
+    @Nullable
+    public Map<String, IndexStatistics> getIndexStatistics() {
+        return indexStatistics;
+    }
+
+    /**
+     * Set the index statistics used to estimate the cost of alternative plans.
+     * When a rule yields several alternative plans, the one with the lowest estimated cost according to a
+     * {@link CostModel} is chosen. Without statistics, the cost model uses default selectivities.
+     * @param indexStatistics a map from index name to statistics or <code>null</code> to not use statistics
+     */
+    public void setIndexStatistics(@Nullable Map<String, IndexStatistics> indexStatistics) {
+        this.indexStatistics = indexStatistics;
+    }
+
     /**
      * Plan the given record query by attempting to match rules in a greedy fashion until no rules can be applied.
      * If the final expression is a {@link RecordQueryPlan} then the planning was successful and that plan is returned.
@@ -74,7 +100,8 @@ public class RewritePlanner implements QueryPlanner {
     @Nonnull
     @Override
     public RecordQueryPlan plan(@Nonnull RecordQuery query) {
-        context = new MetaDataPlanContext(metaData, recordStoreState, query);
+        context = new MetaDataPlanContext(metaData, recordStoreState, query, indexStatistics);
+        costModel = new CostModel(context);
         currentRoot = SingleExpressionRef.of(RelationalPlannerExpression.fromRecordQuery(query));
 
         for (PlannerRuleSet ruleSet : PHASES) {
@@ -82,6 +109,7 @@ public class RewritePlanner implements QueryPlanner {
         }
 
         context = null;
+        costModel = null;
         if (currentRoot.get() instanceof RecordQueryPlan) { // turned into a concrete plan
             return (RecordQueryPlan)currentRoot.get();
         } else {
@@ -126,7 +154,7 @@ public class RewritePlanner implements QueryPlanner {
         Iterator<PlannerRule<? extends PlannerExpression>> possibleRules = ruleSet.getRulesMatching(expression.get());
         PlannerRule.ChangesMade madeChanges = PlannerRule.ChangesMade.NO_CHANGE;
         while (possibleRules.hasNext()) {
-            Optional<RewriteRuleCall> attemptedCall = RewriteRuleCall.tryMatchRule(context, possibleRules.next(), expression);
+            Optional<RewriteRuleCall> attemptedCall = RewriteRuleCall.tryMatchRule(context, costModel, possibleRules.next(), expression);
             if (attemptedCall.isPresent()) {
                 if (attemptedCall.get().run().equals(PlannerRule.ChangesMade.MADE_CHANGES)) {
                     possibleRules = ruleSet.getRulesMatching(expression.get());
@@ -22,15 +22,22 @@ package com.apple.foundationdb.record.query.plan.temp;
 
 import com.apple.foundationdb.API;
 import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.record.query.plan.temp.matchers.PlannerBindings;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * A rule call implementation for the {@link com.apple.foundationdb.record.query.plan.temp.RewritePlanner}.
  * When a new expression is yieled by the rule's {@link PlannerRule#onMatch} method, the rule call substitutes the
  * existing contents of the root with the yielded expression.
+ *
+ * A rule may yield several alternative expressions. If they are all {@link RecordQueryPlan}s and the rule call has a
+ * {@link CostModel}, the one with the lowest estimated cost is chosen. Otherwise, the first one yielded is.
  */
 @API(API.Status.EXPERIMENTAL)
 public class RewriteRuleCall implements PlannerRuleCall {
@@ -42,23 +49,50 @@ public class RewriteRuleCall implements PlannerRuleCall {
     private final PlannerBindings bindings;
     @Nonnull
     private final PlanContext context;
+    @Nullable
+    private final CostModel costModel;
+    @Nonnull
+    private final List<PlannerExpression> yielded;
 
     private RewriteRuleCall(@Nonnull PlanContext context,
+                            @Nullable CostModel costModel,
                             @Nonnull PlannerRule<? extends PlannerExpression> rule,
                             @Nonnull SingleExpressionRef<PlannerExpression> root,
                             @Nonnull PlannerBindings bindings) {
         this.context = context;
+        this.costModel = costModel;
         this.rule = rule;
         this.root = root;
         this.bindings = bindings;
+        this.yielded = new ArrayList<>();
     }
 
     /**
-     * Run this rule call by calling the rule's {@link PlannerRule#onMatch(PlannerRuleCall)} method.
+     * Run this rule call by calling the rule's {@link PlannerRule#onMatch(PlannerRuleCall)} method and, if it yielded
+     * more than one alternative, replacing the contents of the root with the chosen one.
      * @return a {@link PlannerRule.ChangesMade} that indicates whether the running the rule yielded a new expression
      */
     public PlannerRule.ChangesMade run() {
-        return rule.onMatch(this);
+        final PlannerRule.ChangesMade changesMade = rule.onMatch(this);
+        if (yielded.size() > 1) {
+            root.insert(chooseYielded());
+        }
+        return changesMade;
+    }
+
+    @Nonnull
+    private PlannerExpression chooseYielded() {
+        if (costModel == null) {
+            return yielded.get(0);
+        }
+        final List<RecordQueryPlan> plans = new ArrayList<>(yielded.size());
+        for (PlannerExpression expression : yielded) {
+            if (!(expression instanceof RecordQueryPlan)) {
+                return yielded.get(0);
+            }
+            plans.add((RecordQueryPlan)expression);
+        }
+        return costModel.cheapest(plans);
     }
 
     @Override
@@ -74,13 +108,17 @@ public class RewriteRuleCall implements PlannerRuleCall {
     }
 
     /**
-     * Replace the expression held by the {@code root} reference with the given expression.
+     * Replace the expression held by the {@code root} reference with the given expression, if it is the first one
+     * yielded, and add it to the alternatives that {@link #run} chooses among.
      * @param expression the expression produced by the rule
      */
     @Override
     public void yield(@Nonnull ExpressionRef<? extends PlannerExpression> expression) {
         if (expression instanceof SingleExpressionRef) {
-            root.insert(expression.get());
+            if (yielded.isEmpty()) {
+                root.insert(expression.get());
+            }
+            yielded.add(expression.get());
         } else {
             throw new RecordCoreArgumentException("a rule returned an incompatible reference to the rewrite planner");
         }
@@ -105,7 +143,25 @@ public class RewriteRuleCall implements PlannerRuleCall {
             @Nonnull PlanContext context,
             @Nonnull PlannerRule<? extends PlannerExpression> rule,
             @Nonnull SingleExpressionRef<PlannerExpression> root) {
-        return root.bindWith(rule.getMatcher()).map(bindings -> new RewriteRuleCall(context, rule, root, bindings));
+        return tryMatchRule(context, null, rule, root);
+    }
+
+    /**
+     * Attempt to match the given {@link PlannerRule} to the planner expression {@code root}, choosing among any
+     * alternative plans that the rule yields using the given cost model.
+     * @param context a plan context with various metadata that could affect planning
+     * @param costModel a cost model for choosing among alternatives or {@code null} to take the first one
+     * @param rule a rule to attempt to apply
+     * @param root a single expression reference containing a planner expression to apply the rule to
+     * @return an {@code Optional} containing a rewrite rule call if the rule's matcher matched or {@code Optional.empty()} otherwise
+     * @see #tryMatchRule(PlanContext, PlannerRule, SingleExpressionRef)
+     */
+    public static Optional<RewriteRuleCall> tryMatchRule(
+            @Nonnull PlanContext context,
+            @Nullable CostModel costModel,
+            @Nonnull PlannerRule<? extends PlannerExpression> rule,
+            @Nonnull SingleExpressionRef<PlannerExpression> root) {
+        return root.bindWith(rule.getMatcher()).map(bindings -> new RewriteRuleCall(context, costModel, rule, root, bindings));
     }
 
 }
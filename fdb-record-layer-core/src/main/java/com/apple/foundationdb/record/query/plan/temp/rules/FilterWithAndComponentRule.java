@@ -0,0 +1,137 @@
+/*
+ * FilterWithAndComponentRule.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.temp.rules;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.query.expressions.AndComponent;
+import com.apple.foundationdb.record.query.expressions.FieldWithComparison;
+import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.apple.foundationdb.record.query.plan.temp.CostModel;
+import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.PlanContext;
+import com.apple.foundationdb.record.query.plan.temp.PlannerRule;
+import com.apple.foundationdb.record.query.plan.temp.PlannerRuleCall;
+import com.apple.foundationdb.record.query.plan.temp.SingleExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.expressions.LogicalFilterExpression;
+import com.apple.foundationdb.record.query.plan.temp.matchers.ExpressionMatcher;
+import com.apple.foundationdb.record.query.plan.temp.matchers.ReferenceMatcher;
+import com.apple.foundationdb.record.query.plan.temp.matchers.TypeMatcher;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rule that implements a conjunction of filters on a full scan of records. It yields every alternative that it can
+ * find, leaving the choice among them to the planner's {@link CostModel}:
+ * <ul>
+ *     <li>A scan of each index that can implement one of the conjuncts, with the rest as a residual filter.</li>
+ *     <li>Intersections of index scans that return entries in primary key order, with any conjuncts not covered by the
+ *     intersection as a residual filter. When there are only a few such scans, every subset of two or more is tried.</li>
+ *     <li>The full scan with the whole filter.</li>
+ * </ul>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class FilterWithAndComponentRule extends PlannerRule<LogicalFilterExpression> {
+    // Above this many candidates, only the intersection of all of them is tried.
+    private static final int MAX_INTERSECTION_SUBSET_CANDIDATES = 4;
+
+    private static final ExpressionMatcher<ExpressionRef<QueryComponent>> filterMatcher = ReferenceMatcher.anyRef();
+    private static final ExpressionMatcher<RecordQueryScanPlan> scanMatcher = TypeMatcher.of(RecordQueryScanPlan.class);
+    private static final ExpressionMatcher<LogicalFilterExpression> root = TypeMatcher.of(LogicalFilterExpression.class, filterMatcher, scanMatcher);
+
+    public FilterWithAndComponentRule() {
+        super(root);
+    }
+
+    @Override
+    public ChangesMade onMatch(@Nonnull PlannerRuleCall call) {
+        final RecordQueryScanPlan scan = call.get(scanMatcher);
+        final QueryComponent filter = call.get(filterMatcher).get();
+        if (!scan.hasFullRecordScan() || !(filter instanceof AndComponent)) {
+            return ChangesMade.NO_CHANGE;
+        }
+        final PlanContext context = call.getContext();
+        final List<QueryComponent> conjuncts = ((AndComponent)filter).getChildren();
+
+        final List<RecordQueryIndexPlan> orderedScans = new ArrayList<>();
+        final List<QueryComponent> orderedConjuncts = new ArrayList<>();
+        for (QueryComponent conjunct : conjuncts) {
+            if (!(conjunct instanceof FieldWithComparison)) {
+                continue;
+            }
+            final List<QueryComponent> rest = new ArrayList<>(conjuncts);
+            rest.remove(conjunct);
+            boolean ordered = false;
+            for (RecordQueryIndexPlan indexScan : FilterWithFieldWithComparisonRule.indexScansFor(context, (FieldWithComparison)conjunct)) {
+                call.yield(SingleExpressionRef.of(new RecordQueryFilterPlan(indexScan, rest)));
+                if (!ordered && CostModel.isPrimaryKeyOrdered(context, indexScan)) {
+                    orderedScans.add(indexScan);
+                    orderedConjuncts.add(conjunct);
+                    ordered = true;
+                }
+            }
+        }
+
+        final KeyExpression primaryKey = context.getCommonPrimaryKey();
+        if (primaryKey != null && orderedScans.size() > 1) {
+            if (orderedScans.size() <= MAX_INTERSECTION_SUBSET_CANDIDATES) {
+                for (int mask = 1; mask < (1 << orderedScans.size()); mask++) {
+                    if (Integer.bitCount(mask) > 1) {
+                        yieldIntersection(call, primaryKey, conjuncts, orderedScans, orderedConjuncts, mask);
+                    }
+                }
+            } else {
+                // A mask with every bit set, for all of the candidates.
+                yieldIntersection(call, primaryKey, conjuncts, orderedScans, orderedConjuncts, -1);
+            }
+        }
+
+        call.yield(SingleExpressionRef.of(new RecordQueryFilterPlan(scan, filter)));
+        return ChangesMade.MADE_CHANGES;
+    }
+
+    private static void yieldIntersection(@Nonnull PlannerRuleCall call, @Nonnull KeyExpression primaryKey,
+                                          @Nonnull List<QueryComponent> conjuncts,
+                                          @Nonnull List<RecordQueryIndexPlan> orderedScans,
+                                          @Nonnull List<QueryComponent> orderedConjuncts,
+                                          int mask) {
+        final List<RecordQueryPlan> children = new ArrayList<>();
+        final List<QueryComponent> rest = new ArrayList<>(conjuncts);
+        for (int i = 0; i < orderedScans.size(); i++) {
+            if ((mask & (1 << i)) != 0) {
+                children.add(orderedScans.get(i));
+                rest.remove(orderedConjuncts.get(i));
+            }
+        }
+        RecordQueryPlan plan = new RecordQueryIntersectionPlan(children, primaryKey, false);
+        if (!rest.isEmpty()) {
+            plan = new RecordQueryFilterPlan(plan, rest);
+        }
+        call.yield(SingleExpressionRef.of(plan));
+    }
+}
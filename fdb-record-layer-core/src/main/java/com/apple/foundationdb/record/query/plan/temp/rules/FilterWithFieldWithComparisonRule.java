@@ -31,6 +31,7 @@ import com.apple.foundationdb.record.query.expressions.FieldWithComparison;
 import com.apple.foundationdb.record.query.plan.ScanComparisons;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.apple.foundationdb.record.query.plan.temp.PlanContext;
 import com.apple.foundationdb.record.query.plan.temp.PlannerRule;
 import com.apple.foundationdb.record.query.plan.temp.PlannerRuleCall;
 import com.apple.foundationdb.record.query.plan.temp.SingleExpressionRef;
@@ -39,6 +40,10 @@ import com.apple.foundationdb.record.query.plan.temp.matchers.ExpressionMatcher;
 import com.apple.foundationdb.record.query.plan.temp.matchers.TypeMatcher;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -72,7 +77,32 @@ public class FilterWithFieldWithComparisonRule extends PlannerRule<LogicalFilter
             return ChangesMade.NO_CHANGE;
         }
 
-        for (Index index : call.getContext().getIndexes()) {
+        final List<RecordQueryIndexPlan> indexScans = indexScansFor(call.getContext(), singleField);
+        if (indexScans.isEmpty()) {
+            // couldn't find an index
+            return ChangesMade.NO_CHANGE;
+        }
+        // Each index is an alternative, to be chosen among by cost.
+        for (RecordQueryIndexPlan indexScan : indexScans) {
+            call.yield(SingleExpressionRef.of(indexScan));
+        }
+        return ChangesMade.MADE_CHANGES;
+    }
+
+    /**
+     * Get the index scans that can implement a comparison on a single field, one for each compatibly ordered index.
+     * @param context the plan context with the available indexes
+     * @param singleField the field comparison
+     * @return a list of index scans, which is empty if there are no suitable indexes
+     */
+    @Nonnull
+    static List<RecordQueryIndexPlan> indexScansFor(@Nonnull PlanContext context, @Nonnull FieldWithComparison singleField) {
+        final ScanComparisons scanComparisons = ScanComparisons.from(singleField.getComparison());
+        if (scanComparisons == null) {
+            return Collections.emptyList();
+        }
+        final List<RecordQueryIndexPlan> indexScans = new ArrayList<>();
+        for (Index index : context.getIndexes()) {
             KeyExpression indexExpression = index.getRootExpression();
 
             if (indexExpression instanceof ThenKeyExpression) {
@@ -84,13 +114,12 @@ public class FilterWithFieldWithComparisonRule extends PlannerRule<LogicalFilter
             if (indexExpression instanceof FieldKeyExpression) {
                 FieldKeyExpression field = (FieldKeyExpression)indexExpression;
                 if (Objects.equals(singleField.getFieldName(), field.getFieldName())) {
-                    call.yield(SingleExpressionRef.of(
-                            new RecordQueryIndexPlan(index.getName(), IndexScanType.BY_VALUE, scanComparisons, false)));
-                    return ChangesMade.MADE_CHANGES;
+                    indexScans.add(new RecordQueryIndexPlan(index.getName(), IndexScanType.BY_VALUE, scanComparisons, false));
                 }
             }
         }
-        // couldn't find an index
-        return ChangesMade.NO_CHANGE;
+        // The set of indexes is not ordered, so make the order of alternatives deterministic.
+        indexScans.sort(Comparator.comparing(RecordQueryIndexPlan::getIndexName));
+        return indexScans;
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * FilterWithOrComponentRule.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.temp.rules;
+
+import com.apple.foundationdb.API;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.query.expressions.FieldWithComparison;
+import com.apple.foundationdb.record.query.expressions.OrComponent;
+import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnionPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedPrimaryKeyDistinctPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedUnionPlan;
+import com.apple.foundationdb.record.query.plan.temp.CostModel;
+import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.PlanContext;
+import com.apple.foundationdb.record.query.plan.temp.PlannerRule;
+import com.apple.foundationdb.record.query.plan.temp.PlannerRuleCall;
+import com.apple.foundationdb.record.query.plan.temp.SingleExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.expressions.LogicalFilterExpression;
+import com.apple.foundationdb.record.query.plan.temp.matchers.ExpressionMatcher;
+import com.apple.foundationdb.record.query.plan.temp.matchers.ReferenceMatcher;
+import com.apple.foundationdb.record.query.plan.temp.matchers.TypeMatcher;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rule that implements a disjunction of filters on a full scan of records. If every disjunct can be implemented by
+ * an index scan, it yields a union of those scans: an ordered union on the primary key if every scan returns entries
+ * in primary key order and an unordered union with primary key deduplication otherwise. It also yields the full scan
+ * with the whole filter, leaving the choice to the planner's {@link CostModel}.
+ */
+@API(API.Status.EXPERIMENTAL)
+public class FilterWithOrComponentRule extends PlannerRule<LogicalFilterExpression> {
+    private static final ExpressionMatcher<ExpressionRef<QueryComponent>> filterMatcher = ReferenceMatcher.anyRef();
+    private static final ExpressionMatcher<RecordQueryScanPlan> scanMatcher = TypeMatcher.of(RecordQueryScanPlan.class);
+    private static final ExpressionMatcher<LogicalFilterExpression> root = TypeMatcher.of(LogicalFilterExpression.class, filterMatcher, scanMatcher);
+
+    public FilterWithOrComponentRule() {
+        super(root);
+    }
+
+    @Override
+    public ChangesMade onMatch(@Nonnull PlannerRuleCall call) {
+        final RecordQueryScanPlan scan = call.get(scanMatcher);
+        final QueryComponent filter = call.get(filterMatcher).get();
+        if (!scan.hasFullRecordScan() || !(filter instanceof OrComponent)) {
+            return ChangesMade.NO_CHANGE;
+        }
+        final PlanContext context = call.getContext();
+        final KeyExpression primaryKey = context.getCommonPrimaryKey();
+
+        final List<RecordQueryPlan> children = new ArrayList<>();
+        boolean allOrdered = primaryKey != null;
+        for (QueryComponent disjunct : ((OrComponent)filter).getChildren()) {
+            if (!(disjunct instanceof FieldWithComparison)) {
+                children.clear();
+                break;
+            }
+            final List<RecordQueryIndexPlan> indexScans = FilterWithFieldWithComparisonRule.indexScansFor(context, (FieldWithComparison)disjunct);
+            if (indexScans.isEmpty()) {
+                children.clear();
+                break;
+            }
+            // Prefer a scan whose entries are in primary key order, since the union can then merge rather than deduplicate.
+            RecordQueryIndexPlan chosen = indexScans.get(0);
+            for (RecordQueryIndexPlan indexScan : indexScans) {
+                if (CostModel.isPrimaryKeyOrdered(context, indexScan)) {
+                    chosen = indexScan;
+                    break;
+                }
+            }
+            allOrdered &= CostModel.isPrimaryKeyOrdered(context, chosen);
+            children.add(chosen);
+        }
+
+        if (children.size() > 1) {
+            if (allOrdered) {
+                call.yield(SingleExpressionRef.of(new RecordQueryUnionPlan(children, primaryKey, false, false)));
+            } else {
+                call.yield(SingleExpressionRef.of(new RecordQueryUnorderedPrimaryKeyDistinctPlan(
+                        new RecordQueryUnorderedUnionPlan(children, false))));
+            }
+        }
+        call.yield(SingleExpressionRef.of(new RecordQueryFilterPlan(scan, filter)));
+        return ChangesMade.MADE_CHANGES;
+    }
+}
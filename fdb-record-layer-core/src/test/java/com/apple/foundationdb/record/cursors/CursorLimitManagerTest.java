@@ -20,13 +20,16 @@
 
 package com.apple.foundationdb.record.cursors;
 
+import com.apple.foundationdb.record.ByteScanLimiter;
 import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.RecordScanLimiter;
+import com.apple.foundationdb.record.ScanLimitReachedException;
 import com.apple.foundationdb.record.TimeScanLimiter;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -128,4 +131,45 @@ public class CursorLimitManagerTest {
         // record scan limit takes precedence over time limit
         assertEquals(RecordCursor.NoNextReason.SCAN_LIMIT_REACHED, manager.getStoppedReason().get());
     }
+
+    @Test
+    public void testByteScanLimiter() {
+        final ByteScanLimiter byteScanLimiter = new ByteScanLimiter(100);
+        final CursorLimitManager manager = new CursorLimitManager(null, byteScanLimiter, false, null);
+
+        // Each scan is allowed while any bytes remain, so the last one can overrun the limit.
+        for (int i = 0; i < 4; i++) {
+            assertTrue(manager.tryRecordScan());
+            assertFalse(manager.isStopped());
+            manager.reportScannedBytes(30);
+        }
+        assertEquals(120, byteScanLimiter.getBytesScanned());
+
+        assertFalse(manager.tryRecordScan());
+        assertTrue(manager.isStopped());
+        assertEquals(RecordCursor.NoNextReason.BYTE_LIMIT_REACHED, manager.getStoppedReason().get());
+    }
+
+    @Test
+    public void testByteScanLimiterSharedAcrossManagers() {
+        final ByteScanLimiter byteScanLimiter = new ByteScanLimiter(100);
+        final CursorLimitManager manager1 = new CursorLimitManager(null, byteScanLimiter, false, null);
+        final CursorLimitManager manager2 = new CursorLimitManager(null, byteScanLimiter, false, null);
+
+        assertTrue(manager1.tryRecordScan());
+        manager1.reportScannedBytes(150);
+
+        // The second manager still gets its free initial pass.
+        assertTrue(manager2.tryRecordScan());
+        manager2.reportScannedBytes(10);
+        assertFalse(manager1.tryRecordScan());
+        assertFalse(manager2.tryRecordScan());
+        assertEquals(RecordCursor.NoNextReason.BYTE_LIMIT_REACHED, manager2.getStoppedReason().get());
+    }
+
+    @Test
+    public void testByteScanLimitFailure() {
+        final CursorLimitManager manager = new CursorLimitManager(null, new ByteScanLimiter(0), true, null);
+        assertThrows(ScanLimitReachedException.class, manager::tryRecordScan);
+    }
 }
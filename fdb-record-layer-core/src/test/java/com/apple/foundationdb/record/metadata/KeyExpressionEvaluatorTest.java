@@ -0,0 +1,216 @@
+/*
+ * KeyExpressionEvaluatorTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.metadata;
+
+import com.apple.foundationdb.record.TupleFieldsProto;
+import com.apple.foundationdb.record.UnstoredRecord;
+import com.apple.foundationdb.record.metadata.ExpressionTestsProto.Customer;
+import com.apple.foundationdb.record.metadata.ExpressionTestsProto.NestedField;
+import com.apple.foundationdb.record.metadata.ExpressionTestsProto.TestScalarFieldAccess;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression.FanType;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpressionEvaluator;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concat;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concatenateFields;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.keyWithValue;
+import static com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression.EMPTY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link KeyExpressionEvaluator}, which should always agree with {@link KeyExpression#evaluate}.
+ */
+public class KeyExpressionEvaluatorTest {
+
+    private static final List<Message> scalarRecords = Arrays.asList(
+            TestScalarFieldAccess.newBuilder()
+                    .setField("Plants")
+                    .addRepeatMe("Boxes").addRepeatMe("Bowls")
+                    .setUuidField(TupleFieldsProto.UUID.newBuilder().setMostSignificantBits(1066L).setLeastSignificantBits(1415L))
+                    .build(),
+            TestScalarFieldAccess.newBuilder().build());
+
+    private static final List<Message> nestedRecords = Arrays.asList(
+            NestedField.newBuilder()
+                    .setRegularOldField("Grandmother")
+                    .setNesty(NestedField.newBuilder()
+                            .setRegularOldField("Mother")
+                            .setRegularIntField(1066)
+                            .addRepeatedField("lily")
+                            .addRepeatedField("rose"))
+                    .addRepeatedNesty(NestedField.newBuilder()
+                            .setRegularOldField("Daughter")
+                            .addRepeatedField("daffodil"))
+                    .addRepeatedNesty(NestedField.newBuilder()
+                            .setRegularOldField("Sister")
+                            .addRepeatedField("lady slipper")
+                            .addRepeatedField("orchid"))
+                    .build(),
+            NestedField.newBuilder()
+                    .setRegularOldField("Lonely")
+                    .setNesty(NestedField.newBuilder())
+                    .addRepeatedNesty(NestedField.newBuilder())
+                    .build(),
+            NestedField.newBuilder().build());
+
+    private static final List<Message> customerRecords = Arrays.asList(
+            Customer.newBuilder()
+                    .setId("customer1")
+                    .setFirstName("first")
+                    .addOrder(Customer.Order.newBuilder()
+                            .setId("order1")
+                            .addItem(Customer.Order.Item.newBuilder().setId("i1").setName("a1"))
+                            .addItem(Customer.Order.Item.newBuilder().setId("j1")))
+                    .addOrder(Customer.Order.newBuilder()
+                            .setId("order2"))
+                    .addOrder(Customer.Order.newBuilder()
+                            .setId("order3")
+                            .addItem(Customer.Order.Item.newBuilder().setId("i3").setName("c1"))
+                            .addItem(Customer.Order.Item.newBuilder().setId("j3").setName("c2")))
+                    .build(),
+            Customer.newBuilder()
+                    .setId("the void")
+                    .build());
+
+    private static void assertSameAsExpression(@Nonnull KeyExpression expression, @Nonnull Descriptors.Descriptor descriptor,
+                                               @Nonnull List<Message> records) {
+        expression.validate(descriptor);
+        final KeyExpressionEvaluator evaluator = KeyExpressionEvaluator.compile(expression, descriptor);
+        for (Message record : records) {
+            final UnstoredRecord<Message> unstoredRecord = new UnstoredRecord<>(record);
+            assertEquals(expression.evaluate(unstoredRecord), evaluator.evaluate(unstoredRecord), expression + " on " + record);
+        }
+        assertEquals(expression.evaluate(null), evaluator.evaluate(null), expression + " on null");
+    }
+
+    @Test
+    public void testScalarFields() throws Exception {
+        final Descriptors.Descriptor descriptor = TestScalarFieldAccess.getDescriptor();
+        assertSameAsExpression(field("field"), descriptor, scalarRecords);
+        assertSameAsExpression(field("field", FanType.None, Key.Evaluated.NullStandin.NOT_NULL), descriptor, scalarRecords);
+        assertSameAsExpression(field("uuid_field"), descriptor, scalarRecords);
+        assertSameAsExpression(concatenateFields("field", "bytes_field"), descriptor, scalarRecords);
+        assertSameAsExpression(EMPTY, descriptor, scalarRecords);
+    }
+
+    @Test
+    public void testRepeatedFields() throws Exception {
+        final Descriptors.Descriptor descriptor = TestScalarFieldAccess.getDescriptor();
+        assertSameAsExpression(field("repeat_me", FanType.FanOut), descriptor, scalarRecords);
+        assertSameAsExpression(field("repeat_me", FanType.Concatenate), descriptor, scalarRecords);
+        assertSameAsExpression(concat(field("field"), field("repeat_me", FanType.FanOut)), descriptor, scalarRecords);
+        assertSameAsExpression(concat(field("repeat_me", FanType.FanOut), field("field")), descriptor, scalarRecords);
+        assertSameAsExpression(concat(field("repeat_me", FanType.FanOut), field("repeat_me", FanType.FanOut)), descriptor, scalarRecords);
+        assertSameAsExpression(concat(field("repeat_me", FanType.Concatenate), field("uuid_field")), descriptor, scalarRecords);
+    }
+
+    @Test
+    public void testNestedFields() throws Exception {
+        final Descriptors.Descriptor descriptor = NestedField.getDescriptor();
+        assertSameAsExpression(field("nesty").nest("regular_old_field"), descriptor, nestedRecords);
+        assertSameAsExpression(field("nesty", FanType.None, Key.Evaluated.NullStandin.NOT_NULL).nest("regular_int_field"), descriptor, nestedRecords);
+        assertSameAsExpression(field("repeated_nesty", FanType.FanOut).nest("regular_old_field"), descriptor, nestedRecords);
+        assertSameAsExpression(field("nesty").nest("repeated_field", FanType.FanOut), descriptor, nestedRecords);
+        assertSameAsExpression(field("nesty").nest("repeated_field", FanType.Concatenate), descriptor, nestedRecords);
+        assertSameAsExpression(field("nesty").nest(concatenateFields("regular_old_field", "regular_int_field")), descriptor, nestedRecords);
+        assertSameAsExpression(field("repeated_nesty", FanType.FanOut).nest(concat(field("regular_old_field"), field("repeated_field", FanType.FanOut))),
+                descriptor, nestedRecords);
+        assertSameAsExpression(field("nesty").nest(field("nesty").nest("regular_old_field")), descriptor, nestedRecords);
+        assertSameAsExpression(concat(field("regular_old_field"), field("repeated_nesty", FanType.FanOut).nest("regular_old_field"), field("nesty").nest("regular_int_field")),
+                descriptor, nestedRecords);
+    }
+
+    @Test
+    public void testMultipleFanOuts() throws Exception {
+        final Descriptors.Descriptor descriptor = Customer.getDescriptor();
+        assertSameAsExpression(field("order", FanType.FanOut).nest(field("item", FanType.FanOut).nest("name")), descriptor, customerRecords);
+        assertSameAsExpression(concat(field("id"), field("order", FanType.FanOut).nest(concat(field("id"), field("item", FanType.FanOut).nest("id")))),
+                descriptor, customerRecords);
+        assertSameAsExpression(concat(field("order", FanType.FanOut).nest("id"), field("first_name"), field("order", FanType.FanOut).nest("id")),
+                descriptor, customerRecords);
+    }
+
+    @Test
+    public void testWrappedExpressions() throws Exception {
+        final Descriptors.Descriptor descriptor = Customer.getDescriptor();
+        assertSameAsExpression(field("order", FanType.FanOut).nest("id").groupBy(field("id")), descriptor, customerRecords);
+        assertSameAsExpression(keyWithValue(concat(field("id"), field("first_name"), field("last_name")), 1), descriptor, customerRecords);
+        assertSameAsExpression(concat(field("id"), field("order", FanType.FanOut).nest("id"), field("order", FanType.FanOut).nest(field("item", FanType.FanOut).nest("id"))), descriptor, customerRecords);
+        assertSameAsExpression(concat(field("field"), field("repeat_me", FanType.FanOut).split(1)), TestScalarFieldAccess.getDescriptor(), scalarRecords);
+    }
+
+    @Test
+    public void testUnchanged() throws Exception {
+        final Descriptors.Descriptor descriptor = NestedField.getDescriptor();
+        final List<KeyExpression> expressions = Arrays.asList(
+                field("regular_old_field"),
+                field("nesty").nest("regular_int_field"),
+                field("repeated_nesty", FanType.FanOut).nest(concat(field("regular_old_field"), field("repeated_field", FanType.FanOut))),
+                concat(field("nesty").nest("repeated_field", FanType.Concatenate), field("regular_int_field")));
+        for (KeyExpression expression : expressions) {
+            final KeyExpressionEvaluator evaluator = KeyExpressionEvaluator.compile(expression, descriptor);
+            for (Message oldMessage : nestedRecords) {
+                for (Message newMessage : nestedRecords) {
+                    final UnstoredRecord<Message> oldRecord = new UnstoredRecord<>(oldMessage);
+                    final UnstoredRecord<Message> newRecord = new UnstoredRecord<>(newMessage);
+                    if (evaluator.isUnchanged(oldRecord, newRecord)) {
+                        assertEquals(expression.evaluate(oldRecord), expression.evaluate(newRecord));
+                    }
+                }
+                // A change to a field that the expression does not use is not a change.
+                final Message changed = ((NestedField)oldMessage).toBuilder().setNesty2(NestedField.OtherNested.getDefaultInstance()).build();
+                assertTrue(evaluator.isUnchanged(new UnstoredRecord<>(oldMessage), new UnstoredRecord<>(changed)), expression.toString());
+            }
+        }
+        final KeyExpressionEvaluator evaluator = KeyExpressionEvaluator.compile(field("nesty").nest("regular_old_field"), descriptor);
+        final NestedField before = (NestedField)nestedRecords.get(0);
+        final NestedField after = before.toBuilder().setNesty(before.getNesty().toBuilder().setRegularOldField("Aunt")).build();
+        assertFalse(evaluator.isUnchanged(new UnstoredRecord<>(before), new UnstoredRecord<>(after)));
+    }
+
+    @Test
+    public void testOtherDescriptor() throws Exception {
+        // An evaluator given a different kind of record evaluates in the ordinary way.
+        final KeyExpression expression = field("nesty").nest("regular_old_field");
+        final KeyExpressionEvaluator evaluator = KeyExpressionEvaluator.compile(expression, NestedField.getDescriptor());
+        final UnstoredRecord<Message> record = new UnstoredRecord<>(customerRecords.get(0));
+        assertEquals(expression.evaluate(record), evaluator.evaluate(record));
+    }
+
+    @Test
+    public void testCachedByIndex() throws Exception {
+        final Index index = new Index("nested", field("repeated_nesty", FanType.FanOut).nest("regular_old_field"));
+        final KeyExpressionEvaluator evaluator = index.getRootExpressionEvaluator(NestedField.getDescriptor());
+        assertSame(evaluator, index.getRootExpressionEvaluator(NestedField.getDescriptor()));
+        assertSame(index.getRootExpression(), evaluator.getExpression());
+    }
+}
@@ -42,15 +42,18 @@ import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.zip.Deflater;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -185,13 +188,112 @@ public class TransformedRecordSerializerTest {
                 "raw_length", rawLength, "compressed_length", serialized.length);
     }
 
+    private static List<MySimpleRecord> jsonLikeRecords(int count) {
+        final String[] statuses = {"active", "suspended", "pending"};
+        final List<MySimpleRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(MySimpleRecord.newBuilder()
+                    .setRecNo(i)
+                    .setStrValueIndexed("{\"user_id\":\"user-" + (i * 7919 % 10007) + "\",\"status\":\"" + statuses[i % statuses.length] +
+                                        "\",\"region\":\"us-west-2\",\"preferences\":{\"notifications\":true,\"theme\":\"dark\"}}")
+                    .build());
+        }
+        return records;
+    }
+
+    @Test
+    public void compressWithDictionary() {
+        final List<MySimpleRecord> records = jsonLikeRecords(100);
+        final List<byte[]> samples = new ArrayList<>();
+        for (MySimpleRecord record : records.subList(0, 50)) {
+            samples.add(serialize(DynamicMessageRecordSerializer.instance(), record));
+        }
+        final CompressionDictionary dictionary = CompressionDictionary.train(1, samples);
+        assertNotNull(dictionary);
+
+        final TransformedRecordSerializer<Message> plain = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .build();
+        final TransformedRecordSerializer<Message> withDictionary = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionDictionary("MySimpleRecord", dictionary)
+                .build();
+
+        int plainLength = 0;
+        int dictionaryLength = 0;
+        for (MySimpleRecord record : records.subList(50, 100)) {
+            final Tuple primaryKey = Tuple.from(record.getRecNo());
+            final byte[] plainSerialized = serialize(plain, record);
+            plainLength += plainSerialized.length;
+            assertEquals(record, deserialize(plain, primaryKey, plainSerialized));
+
+            final byte[] serialized = serialize(withDictionary, record);
+            dictionaryLength += serialized.length;
+            assertEquals(TransformedRecordSerializer.ENCODING_COMPRESSED, serialized[0]);
+            assertEquals(TransformedRecordSerializer.DICTIONARY_COMPRESSION_VERSION, serialized[1]);
+            assertEquals(dictionary.getId(), ByteBuffer.wrap(serialized, 2, 4).order(ByteOrder.BIG_ENDIAN).getInt());
+            assertEquals(record, deserialize(withDictionary, primaryKey, serialized));
+        }
+        assertThat(dictionaryLength, lessThan(plainLength));
+
+        logMetrics("metrics with dictionary compression",
+                "plain_length", plainLength, "dictionary_length", dictionaryLength, "dictionary_size", dictionary.getBytes().length);
+    }
+
+    @Test
+    public void decompressWithRetiredDictionary() {
+        final MySimpleRecord record = jsonLikeRecords(1).get(0);
+        final CompressionDictionary dictionary = new CompressionDictionary(7, serialize(DynamicMessageRecordSerializer.instance(), record));
+        final TransformedRecordSerializer<Message> writer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionDictionary("MySimpleRecord", dictionary)
+                .build();
+        final byte[] serialized = serialize(writer, record);
+        assertEquals(TransformedRecordSerializer.DICTIONARY_COMPRESSION_VERSION, serialized[1]);
+
+        // Records compressed with a dictionary that is no longer used for new records can still be read.
+        final TransformedRecordSerializer<Message> reader = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .addCompressionDictionary(dictionary)
+                .build();
+        assertEquals(record, deserialize(reader, Tuple.from(record.getRecNo()), serialized));
+
+        // But not without the dictionary.
+        final TransformedRecordSerializer<Message> withoutDictionary = TransformedRecordSerializer.newDefaultBuilder().build();
+        RecordSerializationException e = assertThrows(RecordSerializationException.class,
+                () -> deserialize(withoutDictionary, Tuple.from(record.getRecNo()), serialized));
+        assertThat(e.getMessage(), containsString("unknown compression dictionary"));
+    }
+
+    @Test
+    public void conflictingDictionaryIds() {
+        assertThrows(RecordCoreArgumentException.class, () -> TransformedRecordSerializer.newDefaultBuilder()
+                .addCompressionDictionary(new CompressionDictionary(1, new byte[] {1, 2, 3}))
+                .addCompressionDictionary(new CompressionDictionary(1, new byte[] {4, 5, 6})));
+        assertThrows(RecordCoreArgumentException.class, () -> new CompressionDictionary(0, new byte[] {1}));
+    }
+
+    @Test
+    public void reuseCompressorsAcrossLevels() {
+        final MySimpleRecord record = MySimpleRecord.newBuilder().setRecNo(1066L).setStrValueIndexed(SONNET_108).build();
+        for (int i = 0; i < 3; i++) {
+            for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+                TransformedRecordSerializer<Message> serializer = TransformedRecordSerializer.newDefaultBuilder()
+                        .setCompressWhenSerializing(true)
+                        .setCompressionLevel(level)
+                        .build();
+                assertEquals(record, deserialize(serializer, Tuple.from(1066L), serialize(serializer, record)));
+            }
+        }
+    }
+
     @Test
     public void unknownCompressionVersion() {
         RecordSerializationException e = assertThrows(RecordSerializationException.class, () -> {
             TransformedRecordSerializer<Message> serializer = TransformedRecordSerializer.newDefaultBuilder().setCompressWhenSerializing(true).build();
             MySimpleRecord simpleRecord = MySimpleRecord.newBuilder().setRecNo(1066L).setStrValueIndexed(SONNET_108).build();
             byte[] serialized = serialize(serializer, simpleRecord);
-            serialized[1] += 1; // Bump the compression version to an unknown value.
+            serialized[1] = TransformedRecordSerializer.MAX_COMPRESSION_VERSION + 1; // Set the compression version to an unknown value.
             deserialize(serializer, Tuple.from(1066L), serialized);
         });
         assertThat(e.getMessage(), containsString("unknown compression version"));
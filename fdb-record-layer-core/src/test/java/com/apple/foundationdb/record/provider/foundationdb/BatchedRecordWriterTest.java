@@ -0,0 +1,171 @@
+/*
+ * BatchedRecordWriterTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.record.RecordIndexUniquenessViolation;
+import com.apple.foundationdb.record.TestRecords1Proto.MySimpleRecord;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link BatchedRecordWriter}.
+ */
+@Tag(Tags.RequiresFDB)
+public class BatchedRecordWriterTest extends FDBRecordStoreTestBase {
+
+    private BatchedRecordWriter newWriter(int maxBatchCount) throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            commit(context);
+        }
+        return BatchedRecordWriter.newBuilder()
+                .setRecordStore(recordStore)
+                .setMaxBatchCount(maxBatchCount)
+                .setWindowMillis(10000)
+                .build();
+    }
+
+    private static MySimpleRecord simpleRecord(long recNo, int unique) {
+        return MySimpleRecord.newBuilder().setRecNo(recNo).setNumValueUnique(unique).build();
+    }
+
+    @Test
+    public void savesShareTransactions() throws Exception {
+        final List<CompletableFuture<FDBStoredRecord<Message>>> saves = new ArrayList<>();
+        try (BatchedRecordWriter writer = newWriter(25)) {
+            for (int i = 0; i < 50; i++) {
+                saves.add(writer.saveRecord(simpleRecord(i, i)));
+            }
+            for (CompletableFuture<FDBStoredRecord<Message>> save : saves) {
+                assertNotNull(save.join());
+            }
+        }
+        assertEquals(2, timer.getCount(FDBStoreTimer.Counts.BATCHED_WRITER_COMMITS));
+        assertEquals(50, timer.getCount(FDBStoreTimer.Counts.BATCHED_WRITER_REQUESTS));
+        assertEquals(0, timer.getCount(FDBStoreTimer.Counts.BATCHED_WRITER_SPLITS));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < 50; i++) {
+                assertNotNull(recordStore.loadRecord(Tuple.from(i)));
+            }
+        }
+    }
+
+    @Test
+    public void requestsForSameRecordStayInOrder() throws Exception {
+        final CompletableFuture<Boolean> delete;
+        try (BatchedRecordWriter writer = newWriter(100)) {
+            writer.saveRecord(simpleRecord(1066, 1));
+            delete = writer.deleteRecord(Tuple.from(1066));
+            writer.saveRecord(simpleRecord(1415, 2));
+        }
+        assertTrue(delete.join());
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.BATCHED_WRITER_COMMITS));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            assertNull(recordStore.loadRecord(Tuple.from(1066)));
+            assertNotNull(recordStore.loadRecord(Tuple.from(1415)));
+        }
+    }
+
+    @Test
+    public void requestsForSameRecordStayInOrderAcrossBatches() throws Exception {
+        final List<CompletableFuture<FDBStoredRecord<Message>>> saves = new ArrayList<>();
+        try (BatchedRecordWriter writer = newWriter(1)) {
+            for (int i = 0; i < 20; i++) {
+                saves.add(writer.saveRecord(simpleRecord(1066, i)));
+            }
+        }
+        for (CompletableFuture<FDBStoredRecord<Message>> save : saves) {
+            assertNotNull(save.join());
+        }
+        assertEquals(20, timer.getCount(FDBStoreTimer.Counts.BATCHED_WRITER_COMMITS));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final FDBStoredRecord<Message> rec = recordStore.loadRecord(Tuple.from(1066));
+            assertNotNull(rec);
+            assertEquals(19, MySimpleRecord.newBuilder().mergeFrom(rec.getRecord()).getNumValueUnique());
+        }
+    }
+
+    @Test
+    public void failedRequestOnlyFailsItself() throws Exception {
+        final List<CompletableFuture<FDBStoredRecord<Message>>> saves = new ArrayList<>();
+        try (BatchedRecordWriter writer = newWriter(100)) {
+            saves.add(writer.saveRecord(simpleRecord(1, 1)));
+            saves.add(writer.saveRecord(simpleRecord(2, 2)));
+            saves.add(writer.saveRecord(simpleRecord(3, 2)));
+            saves.add(writer.saveRecord(simpleRecord(4, 4)));
+        }
+        assertNotNull(saves.get(0).join());
+        assertNotNull(saves.get(1).join());
+        CompletionException e = assertThrows(CompletionException.class, () -> saves.get(2).join());
+        assertTrue(hasCause(e, RecordIndexUniquenessViolation.class), "failure should be a uniqueness violation");
+        assertNotNull(saves.get(3).join());
+        // A failure that is not retryable is not worth splitting for: each request is run on its own instead.
+        assertEquals(0, timer.getCount(FDBStoreTimer.Counts.BATCHED_WRITER_SPLITS));
+        assertEquals(3, timer.getCount(FDBStoreTimer.Counts.BATCHED_WRITER_COMMITS));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            assertNotNull(recordStore.loadRecord(Tuple.from(1)));
+            assertNotNull(recordStore.loadRecord(Tuple.from(2)));
+            assertNull(recordStore.loadRecord(Tuple.from(3)));
+            assertNotNull(recordStore.loadRecord(Tuple.from(4)));
+        }
+    }
+
+    @Test
+    public void closedWriterRejectsRequests() throws Exception {
+        BatchedRecordWriter writer = newWriter(100);
+        writer.close();
+        assertThrows(RuntimeException.class, () -> writer.saveRecord(simpleRecord(1, 1)));
+        assertFalse(timer.getCount(FDBStoreTimer.Counts.BATCHED_WRITER_COMMITS) > 0);
+    }
+
+    private static boolean hasCause(Throwable e, Class<? extends Throwable> causeClass) {
+        while (e != null) {
+            if (causeClass.isInstance(e)) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+}
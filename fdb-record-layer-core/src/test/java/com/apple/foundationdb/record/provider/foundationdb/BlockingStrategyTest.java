@@ -0,0 +1,84 @@
+/*
+ * BlockingStrategyTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link BlockingStrategy}.
+ */
+public class BlockingStrategyTest {
+
+    @Test
+    public void parkWaitsForCompletion() throws Exception {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final CompletableFuture<String> future = new CompletableFuture<>();
+            executor.schedule(() -> future.complete("done"), 20, TimeUnit.MILLISECONDS);
+            assertEquals("done", BlockingStrategy.PARK.get(future, -1L, TimeUnit.MILLISECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void parkReportsFailure() {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        final IllegalStateException cause = new IllegalStateException("failed");
+        future.completeExceptionally(cause);
+        final ExecutionException err = assertThrows(ExecutionException.class,
+                () -> BlockingStrategy.PARK.get(future, -1L, TimeUnit.MILLISECONDS));
+        assertSame(cause, err.getCause());
+    }
+
+    @Test
+    public void parkTimesOut() {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        final long startTime = System.nanoTime();
+        assertThrows(TimeoutException.class, () -> BlockingStrategy.PARK.get(future, 20L, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void parkIsInterruptible() {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> BlockingStrategy.PARK.get(future, -1L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void futureGet() throws Exception {
+        assertEquals("done", BlockingStrategy.FUTURE_GET.get(CompletableFuture.completedFuture("done"), -1L, TimeUnit.MILLISECONDS));
+        assertThrows(TimeoutException.class, () -> BlockingStrategy.FUTURE_GET.get(new CompletableFuture<>(), 1L, TimeUnit.MILLISECONDS));
+    }
+}
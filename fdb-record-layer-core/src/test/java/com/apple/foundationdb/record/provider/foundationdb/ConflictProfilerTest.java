@@ -0,0 +1,142 @@
+/*
+ * ConflictProfilerTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link ConflictProfiler}'s attribution and counting.
+ */
+public class ConflictProfilerTest {
+
+    private static ConflictProfiler.ConflictRange key(byte[] key, boolean write, String operation) {
+        return new ConflictProfiler.ConflictRange(key, Arrays.copyOf(key, key.length + 1), write, operation);
+    }
+
+    @Test
+    public void attribute() {
+        final ConflictProfiler profiler = new ConflictProfiler();
+        final Subspace store = new Subspace(Tuple.from("store"));
+        final Subspace records = store.subspace(Tuple.from(1L));
+        profiler.registerSubspace(store, "store");
+        profiler.registerSubspace(records, "records");
+        profiler.registerSubspace(store.subspace(Tuple.from(2L, "index")), "index");
+        assertEquals("records", profiler.attribute(records.pack(Tuple.from(10L))));
+        assertEquals("store", profiler.attribute(store.pack(Tuple.from(2L, "other"))));
+        assertEquals("store", profiler.attribute(store.pack(Tuple.from(3L))));
+        assertEquals("index", profiler.attribute(store.pack(Tuple.from(2L, "index", 5L))));
+        assertEquals(ConflictProfiler.UNKNOWN_LABEL, profiler.attribute(Tuple.from("other").pack()));
+        assertEquals(ConflictProfiler.UNKNOWN_LABEL, profiler.attribute(new byte[0]));
+    }
+
+    @Test
+    public void labelsAreBounded() {
+        final ConflictProfiler profiler = new ConflictProfiler(10, 10, 1.0, 2);
+        final Subspace first = new Subspace(Tuple.from("first"));
+        final Subspace second = new Subspace(Tuple.from("second"));
+        final Subspace third = new Subspace(Tuple.from("third"));
+        profiler.registerSubspace(first, "first");
+        profiler.registerSubspace(second, "second");
+        profiler.registerSubspace(first, "first again");
+        profiler.registerSubspace(third, "third");
+        assertFalse(profiler.isRegistered(first));
+        assertEquals(ConflictProfiler.UNKNOWN_LABEL, profiler.attribute(first.pack(Tuple.from(1L))));
+        assertEquals("second", profiler.attribute(second.pack(Tuple.from(1L))));
+        assertEquals("third", profiler.attribute(third.pack(Tuple.from(1L))));
+    }
+
+    @Test
+    public void confirmedConflict() {
+        final ConflictProfiler profiler = new ConflictProfiler();
+        final Subspace subspace = new Subspace(Tuple.from("hot"));
+        profiler.registerSubspace(subspace, "hot");
+        final byte[] hotKey = subspace.pack(Tuple.from(1L));
+        final byte[] coldKey = Tuple.from("cold").pack();
+        profiler.committed(Collections.singletonList(key(hotKey, true, "set")), 100L);
+        assertTrue(profiler.conflicted(Arrays.asList(key(hotKey, false, "get"), key(coldKey, false, "get"), key(hotKey, true, "set")), 50L));
+        final List<ConflictProfiler.HotRangeCount> confirmed = profiler.getConfirmedConflicts();
+        assertEquals(1, confirmed.size());
+        assertEquals("hot", confirmed.get(0).getRange().getLabel());
+        assertEquals("get", confirmed.get(0).getRange().getOperation());
+        assertEquals(1, confirmed.get(0).getCount());
+        assertTrue(profiler.getCandidateConflicts().isEmpty());
+        assertEquals(1, profiler.getHotWrites().size());
+        assertEquals("set", profiler.getHotWrites().get(0).getRange().getOperation());
+    }
+
+    @Test
+    public void candidateConflict() {
+        final ConflictProfiler profiler = new ConflictProfiler();
+        final byte[] hotKey = Tuple.from("hot").pack();
+        // A write at or before the read version cannot have caused the conflict.
+        profiler.committed(Collections.singletonList(key(hotKey, true, "set")), 100L);
+        assertTrue(profiler.conflicted(Collections.singletonList(key(hotKey, false, "get")), 100L));
+        assertTrue(profiler.conflicted(Collections.singletonList(key(hotKey, false, "get")), null));
+        assertTrue(profiler.getConfirmedConflicts().isEmpty());
+        final List<ConflictProfiler.HotRangeCount> candidates = profiler.getCandidateConflicts();
+        assertEquals(1, candidates.size());
+        assertEquals(ConflictProfiler.UNKNOWN_LABEL, candidates.get(0).getRange().getLabel());
+        assertEquals(2, candidates.get(0).getCount());
+
+        profiler.reset();
+        assertTrue(profiler.getCandidateConflicts().isEmpty());
+        assertTrue(profiler.getHotWrites().isEmpty());
+    }
+
+    @Test
+    public void sampling() {
+        final ConflictProfiler profiler = new ConflictProfiler(10, 10, 0.0);
+        assertFalse(profiler.conflicted(Collections.singletonList(key(Tuple.from("a").pack(), false, "get")), null));
+        assertTrue(profiler.getCandidateConflicts().isEmpty());
+    }
+
+    @Test
+    public void topK() {
+        final ConflictProfiler profiler = new ConflictProfiler(2, 10, 1.0);
+        final byte[] a = Tuple.from("a").pack();
+        final byte[] b = Tuple.from("b").pack();
+        final byte[] c = Tuple.from("c").pack();
+        for (int i = 0; i < 5; i++) {
+            profiler.committed(Collections.singletonList(key(a, true, "set")), 0L);
+        }
+        for (int i = 0; i < 3; i++) {
+            profiler.committed(Collections.singletonList(key(b, true, "set")), 0L);
+        }
+        profiler.committed(Collections.singletonList(key(c, true, "set")), 0L);
+        final List<ConflictProfiler.HotRangeCount> hot = profiler.getHotWrites();
+        assertEquals(2, hot.size());
+        assertEquals(5, hot.get(0).getCount());
+        assertEquals(0, hot.get(0).getError());
+        // The new range takes over the least frequent slot, inheriting its count as the error bound.
+        assertEquals(4, hot.get(1).getCount());
+        assertEquals(3, hot.get(1).getError());
+    }
+}
@@ -24,6 +24,7 @@ import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.TestHelpers;
 import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.test.Tags;
 import com.google.protobuf.Message;
@@ -33,6 +34,8 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -41,6 +44,7 @@ import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -158,6 +162,78 @@ public class FDBDatabaseTest {
         assertThat(readVersion5, greaterThanOrEqualTo(outOfBandReadVersion));
     }
 
+    @Test
+    public void batchedReadVersions() {
+        FDBDatabase database = FDBDatabaseFactory.instance().getDatabase();
+        database.setReadVersionBatchWindowMillis(50);
+        try {
+            assertTrue(database.isReadVersionBatching());
+            FDBStoreTimer timer = new FDBStoreTimer();
+            try (FDBRecordContext context1 = database.openContext(null, timer);
+                     FDBRecordContext context2 = database.openContext(null, timer)) {
+                CompletableFuture<Long> readVersion1 = database.getReadVersion(context1);
+                CompletableFuture<Long> readVersion2 = database.getReadVersion(context2);
+                assertEquals(readVersion1.join(), readVersion2.join());
+                assertTrue(context1.hasReadVersion());
+                assertTrue(context2.hasReadVersion());
+                assertEquals(2, timer.getCount(FDBStoreTimer.Counts.BATCHED_READ_VERSION));
+            }
+
+            // The batched version counts as last seen, so a weak read can reuse it.
+            long batchedVersion = database.runAsync(database::getReadVersion).join();
+            assertEquals(batchedVersion, getReadVersion(database, 0L, 5000L));
+        } finally {
+            database.setReadVersionBatchWindowMillis(-1);
+        }
+        assertFalse(database.isReadVersionBatching());
+    }
+
+    @Test
+    public void batchedReadVersionsSkipUsedTransaction() {
+        FDBDatabase database = FDBDatabaseFactory.instance().getDatabase();
+        database.setReadVersionBatchWindowMillis(50);
+        try {
+            FDBStoreTimer timer = new FDBStoreTimer();
+            try (FDBRecordContext context = database.openContext(null, timer)) {
+                // A read gets the transaction its own read version, which must not then be replaced.
+                context.ensureActive().get(Tuple.from("batched-read-version-test").pack()).join();
+                long ownVersion = context.ensureActive().getReadVersion().join();
+                assertEquals(ownVersion, database.getReadVersion(context).join().longValue());
+                assertFalse(context.hasReadVersion());
+                assertEquals(0, timer.getCount(FDBStoreTimer.Counts.BATCHED_READ_VERSION));
+            }
+        } finally {
+            database.setReadVersionBatchWindowMillis(-1);
+        }
+    }
+
+    @Test
+    public void conflictProfiler() {
+        FDBDatabase database = FDBDatabaseFactory.instance().getDatabase();
+        ConflictProfiler profiler = new ConflictProfiler();
+        Subspace subspace = new Subspace(Tuple.from("conflict-profiler-test"));
+        profiler.registerSubspace(subspace, "test");
+        byte[] key = subspace.pack(Tuple.from("hot"));
+        FDBStoreTimer timer = new FDBStoreTimer();
+        try (FDBRecordContext context1 = database.openContext(null, timer);
+                 FDBRecordContext context2 = database.openContext(null, timer)) {
+            context1.setConflictProfiler(profiler);
+            context2.setConflictProfiler(profiler);
+            context1.ensureActive().get(key).join();
+            context2.ensureActive().get(key).join();
+            context1.ensureActive().set(key, Tuple.from(1L).pack());
+            context2.ensureActive().set(key, Tuple.from(2L).pack());
+            context1.commit();
+            assertThrows(FDBExceptions.FDBStoreTransactionConflictException.class, context2::commit);
+        }
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PROFILED_CONFLICTS));
+        List<ConflictProfiler.HotRangeCount> confirmed = profiler.getConfirmedConflicts();
+        assertEquals(1, confirmed.size());
+        assertEquals("test", confirmed.get(0).getRange().getLabel());
+        assertEquals("get", confirmed.get(0).getRange().getOperation());
+        assertEquals("test", profiler.getHotWrites().get(0).getRange().getLabel());
+    }
+
     private long getReadVersionInRetryLoop(FDBDatabase database, Long minVersion, Long stalenessBoundMillis, boolean async) throws InterruptedException, ExecutionException {
         FDBDatabase.WeakReadSemantics weakReadSemantics = minVersion == null ? null : new FDBDatabase.WeakReadSemantics(minVersion, stalenessBoundMillis, false);
         if (async) {
@@ -1030,6 +1030,49 @@ public class FDBRecordStoreIndexTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @Test
+    public void writeOnlyNonIdempotentIndexUsesBuiltRanges() throws Exception {
+        final KeyExpression key = field("num_value_3_indexed").ungrouped();
+        final RecordMetaDataHook hook = md -> md.addIndex("MySimpleRecord", new Index("sum", key, IndexTypes.SUM));
+        final IndexAggregateFunction total = new IndexAggregateFunction(FunctionNames.SUM, key, null);
+        final List<String> types = Collections.singletonList("MySimpleRecord");
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            recordStore.markIndexWriteOnly("sum").get();
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            final Index index = recordStore.getRecordMetaData().getIndex("sum");
+            try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder().setRecordStore(recordStore).setIndex(index).build()) {
+                // Load a snapshot before building, which building must then invalidate.
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(2000L).setNumValue3Indexed(1).build());
+                indexBuilder.buildRange(recordStore, null, Key.Evaluated.scalar(1000L)).get();
+            }
+            timer.reset();
+            for (long recNo = 1; recNo <= 5; recNo++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(recNo).setNumValue3Indexed(10).build());
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(recNo + 1000L).setNumValue3Indexed(100).build());
+            }
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.LOAD_RANGE_SET_SNAPSHOT));
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            final Index index = recordStore.getRecordMetaData().getIndex("sum");
+            try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder().setRecordStore(recordStore).setIndex(index).build()) {
+                indexBuilder.buildRange(recordStore, Key.Evaluated.scalar(1000L), null).get();
+            }
+            assertTrue(recordStore.markIndexReadable("sum").get());
+            // Records within the built range were indexed when saved and the rest only by the build.
+            assertEquals(5 * 10 + 5 * 100 + 1, recordStore.evaluateAggregateFunction(types, total, Key.Evaluated.EMPTY, IsolationLevel.SERIALIZABLE).join().getLong(0));
+            commit(context);
+        }
+    }
+
     @Test
     public void markReadable() throws Exception {
         final String indexName = "MySimpleRecord$str_value_indexed";
@@ -1665,6 +1708,52 @@ public class FDBRecordStoreIndexTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @Test
+    public void skipUnchangedIndexUpdates() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                    .setRecNo(1066L).setStrValueIndexed("abc").setNumValue2(1).setNumValue3Indexed(10).build());
+            commit(context);
+        }
+
+        // Only an unindexed field changes, so no index needs to be updated.
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            context.getTimer().reset();
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                    .setRecNo(1066L).setStrValueIndexed("abc").setNumValue2(2).setNumValue3Indexed(10).build());
+            commit(context);
+
+            Collection<StoreTimer.Event> events = context.getTimer().getEvents();
+            assertFalse(events.contains(FDBStoreTimer.Events.SAVE_INDEX_ENTRY));
+            assertFalse(events.contains(FDBStoreTimer.Events.DELETE_INDEX_ENTRY));
+            assertTrue(events.contains(FDBStoreTimer.Events.SKIP_UNCHANGED_INDEX_UPDATE));
+        }
+
+        // Changing an indexed field updates just that index.
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            context.getTimer().reset();
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                    .setRecNo(1066L).setStrValueIndexed("xyz").setNumValue2(2).setNumValue3Indexed(10).build());
+            commit(context);
+
+            assertEquals(1, context.getTimer().getCount(FDBStoreTimer.Events.SAVE_INDEX_ENTRY));
+            assertEquals(1, context.getTimer().getCount(FDBStoreTimer.Events.DELETE_INDEX_ENTRY));
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final Index index = recordStore.getRecordMetaData().getIndex("MySimpleRecord$str_value_indexed");
+            List<Tuple> indexed = recordStore.scanIndex(index, IndexScanType.BY_VALUE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                    .map(IndexEntry::getKey)
+                    .asList()
+                    .join();
+            assertEquals(Collections.singletonList(Tuple.from("xyz", 1066L)), indexed);
+        }
+    }
+
 
     public void invalidIndexField() throws Exception {
         assertThrows(KeyExpression.InvalidExpressionException.class, () ->
@@ -20,6 +20,7 @@
 
 package com.apple.foundationdb.record.provider.foundationdb;
 
+import com.apple.foundationdb.record.ByteScanLimiter;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.IndexScanType;
 import com.apple.foundationdb.record.IsolationLevel;
@@ -36,13 +37,16 @@ import com.apple.foundationdb.record.query.expressions.Query;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
 import com.apple.foundationdb.record.query.plan.ScanComparisons;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryInValuesJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryLoadByKeysPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlanWithNoChildren;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryTypeFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnionPlan;
+import com.apple.foundationdb.tuple.Tuple;
 import com.apple.test.Tags;
 import com.google.common.base.Strings;
 import com.google.protobuf.Message;
@@ -63,9 +67,13 @@ import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
@@ -313,6 +321,98 @@ public class FDBRecordStoreScanLimitTest extends FDBRecordStoreTestBase {
         }
     }
 
+    public Stream<Arguments> plansWithInJoin() {
+        RecordQueryPlan inJoinPlan = new RecordQueryInValuesJoinPlan(
+                new RecordQueryIndexPlan("MySimpleRecord$num_value_3_indexed", IndexScanType.BY_VALUE,
+                        new ScanComparisons(Arrays.asList(new Comparisons.ParameterComparison(Comparisons.Type.EQUALS, "in_num")), Collections.emptyList()), false),
+                "in_num", Arrays.asList(0, 2), false, false);
+        return Stream.concat(plans(false), Stream.of(Arguments.of("in join", false, inJoinPlan)));
+    }
+
+    @ParameterizedTest(name = "plansByContinuationWithByteLimit() [{index}] {0}")
+    @MethodSource("plansWithInJoin")
+    public void plansByContinuationWithByteLimit(String description, boolean fail, RecordQueryPlan plan) throws Exception {
+        final Function<FDBQueriedRecord<Message>, Long> getRecNo = r -> {
+            TestRecords1Proto.MySimpleRecord.Builder record = TestRecords1Proto.MySimpleRecord.newBuilder();
+            record.mergeFrom(r.getRecord());
+            return record.getRecNo();
+        };
+
+        // include a byte limit of 0, in which case all progress happens via the first "free" key-value scan.
+        for (long byteLimit : new long[] {0L, 100L, 1000L, 5000L}) {
+            final ExecuteProperties.Builder properties = ExecuteProperties.newBuilder().setScannedBytesLimit(byteLimit);
+
+            try (FDBRecordContext context = openContext()) {
+                openSimpleRecordStore(context);
+                final List<Long> allAtOnce;
+                try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan)) {
+                    allAtOnce = cursor.map(getRecNo).asList().get();
+                }
+
+                final List<Long> byContinuation = new ArrayList<>();
+                byte[] continuation = null;
+                do {
+                    try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan, continuation, properties.build())) {
+                        while (cursor.hasNext()) {
+                            byContinuation.add(getRecNo.apply(cursor.next()));
+                        }
+                        continuation = cursor.getContinuation();
+                        if (continuation != null) {
+                            assertEquals(RecordCursor.NoNextReason.BYTE_LIMIT_REACHED, cursor.getNoNextReason());
+                        }
+                    }
+                } while (continuation != null);
+                assertEquals(allAtOnce, byContinuation);
+            }
+        }
+    }
+
+    @Test
+    public void testByteLimitOverrun() throws Exception {
+        final RecordQueryPlan plan = new RecordQueryIndexPlan("MySimpleRecord$str_value_indexed",
+                IndexScanType.BY_VALUE, ScanComparisons.EMPTY, false);
+        final ExecuteProperties properties = ExecuteProperties.newBuilder().setScannedBytesLimit(500L).build();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan, null, properties)) {
+                int retrieved = 0;
+                while (cursor.hasNext()) {
+                    cursor.next();
+                    retrieved++;
+                }
+                assertEquals(RecordCursor.NoNextReason.BYTE_LIMIT_REACHED, cursor.getNoNextReason());
+                assertThat(retrieved, lessThan(100));
+            }
+            final ByteScanLimiter byteScanLimiter = properties.getState().getByteScanLimiter();
+            assertNotNull(byteScanLimiter);
+            // The index entries and records are small, so at most one of each is read past the limit.
+            assertThat(byteScanLimiter.getBytesScanned(), greaterThanOrEqualTo(500L));
+            assertThat(byteScanLimiter.getBytesScanned(), lessThan(1000L));
+        }
+    }
+
+    @Test
+    public void testLoadByKeysCountsBytes() throws Exception {
+        final List<Tuple> primaryKeys = LongStream.range(0, 10).mapToObj(Tuple::from).collect(Collectors.toList());
+        final RecordQueryPlan plan = new RecordQueryLoadByKeysPlan(primaryKeys);
+        final ExecuteProperties properties = ExecuteProperties.newBuilder().setScannedBytesLimit(1L).build();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            long expectedBytes = 0;
+            for (Tuple primaryKey : primaryKeys) {
+                FDBStoredRecord<Message> rec = recordStore.loadRecord(primaryKey);
+                expectedBytes += rec.getKeySize() + rec.getValueSize();
+            }
+            try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan, null, properties)) {
+                // The plan cannot stop early, so it returns every record but charges them to the shared limiter.
+                assertEquals(primaryKeys.size(), cursor.getCount().get().intValue());
+            }
+            final ByteScanLimiter byteScanLimiter = properties.getState().getByteScanLimiter();
+            assertNotNull(byteScanLimiter);
+            assertEquals(expectedBytes, byteScanLimiter.getBytesScanned());
+        }
+    }
+
     @Test
     public void testSplitContinuation() throws Exception {
         try (FDBRecordContext context = openContext()) {
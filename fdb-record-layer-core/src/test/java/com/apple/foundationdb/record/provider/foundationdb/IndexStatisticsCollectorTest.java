@@ -0,0 +1,186 @@
+/*
+ * IndexStatisticsCollectorTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IndexStatistics;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.TestRecords1Proto.MySimpleRecord;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concatenateFields;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests of the {@link IndexStatisticsCollector}.
+ */
+@Tag(Tags.RequiresFDB)
+public class IndexStatisticsCollectorTest extends FDBRecordStoreTestBase {
+
+    @Test
+    public void empty() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            IndexStatisticsCollector statisticsCollector = IndexStatisticsCollector.ofIndex(recordStore, "MySimpleRecord$str_value_indexed");
+            assertThat(statisticsCollector.collect(context, ExecuteProperties.SERIAL_EXECUTE), is(true));
+            IndexStatistics statistics = statisticsCollector.getStatistics();
+            assertEquals(0L, statistics.getKeyCount());
+            assertEquals(0L, statistics.getDistinctPrefixCount(1));
+            assertEquals(Collections.emptyList(), statistics.getHistogram());
+            commit(context);
+        }
+    }
+
+    @Test
+    public void collectAndPlan() throws Exception {
+        final int recordCount = 100;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < recordCount; i++) {
+                MySimpleRecord simpleRecord = MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed(i % 2 == 0 ? "even" : "odd")
+                        .setNumValue3Indexed(i)
+                        .build();
+                recordStore.saveRecord(simpleRecord);
+            }
+            commit(context);
+        }
+
+        final RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.and(
+                        Query.field("str_value_indexed").equalsValue("even"),
+                        Query.field("num_value_3_indexed").greaterThanOrEquals(95)))
+                .build();
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (String indexName : new String[] {"MySimpleRecord$str_value_indexed", "MySimpleRecord$num_value_3_indexed"}) {
+                // Batches of 10
+                IndexStatisticsCollector statisticsCollector = IndexStatisticsCollector.ofIndex(recordStore, indexName);
+                ExecuteProperties executeProperties = ExecuteProperties.newBuilder().setReturnedRowLimit(10).build();
+                while (!statisticsCollector.collect(context, executeProperties)) {
+                    assertThat(statisticsCollector.isDone(), is(false));
+                }
+                statisticsCollector.saveStatistics(recordStore);
+            }
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            Map<String, IndexStatistics> statistics = recordStore.loadIndexStatistics();
+            assertEquals(2, statistics.size());
+
+            IndexStatistics strStatistics = statistics.get("MySimpleRecord$str_value_indexed");
+            assertEquals(recordCount, strStatistics.getKeyCount());
+            assertEquals(2L, strStatistics.getDistinctPrefixCount(1));
+            assertEquals(0.5, strStatistics.getEqualitySelectivity(1));
+            assertEquals(Tuple.from("even"), strStatistics.getHistogram().get(0));
+            assertEquals(Tuple.from("odd"), strStatistics.getHistogram().get(strStatistics.getHistogram().size() - 1));
+
+            IndexStatistics numStatistics = statistics.get("MySimpleRecord$num_value_3_indexed");
+            assertEquals(recordCount, numStatistics.getKeyCount());
+            assertEquals(recordCount, numStatistics.getDistinctPrefixCount(1));
+            assertEquals(IndexStatisticsCollector.DEFAULT_HISTOGRAM_BUCKETS, numStatistics.getHistogram().size());
+            assertEquals(numStatistics.toString(), IndexStatistics.fromTuple(numStatistics.toTuple()).toString());
+
+            // The range on num_value_3_indexed is much more selective than the equality on str_value_indexed.
+            RecordQueryPlan plan = recordStore.planQuery(query);
+            assertEquals(Collections.singleton("MySimpleRecord$num_value_3_indexed"), plan.getUsedIndexes());
+            assertEquals(2, recordStore.executeQuery(plan).getCount().join().intValue());
+
+            recordStore.clearAndMarkIndexWriteOnly("MySimpleRecord$num_value_3_indexed").join();
+            assertEquals(Collections.singleton("MySimpleRecord$str_value_indexed"),
+                    recordStore.loadIndexStatistics().keySet());
+        }
+    }
+
+    /**
+     * Verify that statistics only choose between plans that satisfy as much of the filter, so that an estimate
+     * that favors leaving part of the filter to be checked on each record does not win over an index that
+     * matches all of it.
+     */
+    @Test
+    public void statisticsDoNotOverrideScore() throws Exception {
+        final RecordMetaDataHook hook = metaData -> metaData.addIndex("MySimpleRecord",
+                new Index("str_num3", concatenateFields("str_value_indexed", "num_value_3_indexed")));
+        final RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.and(
+                        Query.field("str_value_indexed").equalsValue("even"),
+                        Query.field("num_value_3_indexed").greaterThanOrEquals(95)))
+                .build();
+
+        final List<Tuple> numHistogram = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            numHistogram.add(Tuple.from(i * 10));
+        }
+        final Map<String, IndexStatistics> statistics = new HashMap<>();
+        statistics.put("MySimpleRecord$str_value_indexed", new IndexStatistics(100, new long[] {2}, Arrays.asList(Tuple.from("even"), Tuple.from("odd"))));
+        statistics.put("MySimpleRecord$num_value_3_indexed", new IndexStatistics(100, new long[] {100}, numHistogram));
+        // Without a histogram, the range part of the scan falls back to a default selectivity and seems the larger.
+        statistics.put("str_num3", new IndexStatistics(100, new long[] {2, 100}, Collections.emptyList()));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            final RecordQueryPlanner statisticsPlanner = new RecordQueryPlanner(recordStore.getRecordMetaData(), recordStore.getRecordStoreState());
+            statisticsPlanner.setIndexStatistics(statistics);
+            RecordQueryPlan plan = statisticsPlanner.plan(query);
+            assertEquals(Collections.singleton("str_num3"), plan.getUsedIndexes());
+
+            // Between the two single field indexes, which each satisfy half the filter, the statistics decide.
+            final RecordQuery singleQuery = query.toBuilder().setAllowedIndexes(Arrays.asList(
+                    "MySimpleRecord$str_value_indexed", "MySimpleRecord$num_value_3_indexed")).build();
+            plan = statisticsPlanner.plan(singleQuery);
+            assertEquals(Collections.singleton("MySimpleRecord$num_value_3_indexed"), plan.getUsedIndexes());
+        }
+    }
+
+    @Test
+    public void badArguments() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            assertThrows(RecordCoreArgumentException.class, () -> IndexStatisticsCollector.ofIndex(
+                    recordStore, recordStore.getRecordMetaData().getIndex("MySimpleRecord$str_value_indexed"), 0, 10));
+            assertThrows(RecordCoreArgumentException.class, () -> IndexStatisticsCollector.ofIndex(
+                    recordStore, recordStore.getRecordMetaData().getIndex("MySimpleRecord$str_value_indexed"), 10, 5));
+        }
+    }
+}
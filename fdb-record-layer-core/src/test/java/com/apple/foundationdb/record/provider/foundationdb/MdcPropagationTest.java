@@ -0,0 +1,138 @@
+/*
+ * MdcPropagationTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the MDC propagation modes of {@link FDBRecordContext}'s executor.
+ */
+public class MdcPropagationTest {
+
+    @AfterEach
+    public void clearMdc() {
+        MDC.clear();
+    }
+
+    @Test
+    public void restore() {
+        final FDBRecordContext.ContextRestoringExecutor executor = new FDBRecordContext.ContextRestoringExecutor(
+                Runnable::run, Collections.singletonMap("uuid", "context"), FDBRecordContext.MdcPropagation.RESTORE);
+        MDC.put("other", "value");
+        final List<String> seen = new ArrayList<>();
+        executor.execute(() -> {
+            seen.add(MDC.get("uuid"));
+            seen.add(MDC.get("other"));
+        });
+        assertEquals(Arrays.asList("context", null), seen);
+        assertNull(MDC.get("uuid"));
+    }
+
+    @Test
+    public void restoreIfDifferent() {
+        final FDBRecordContext.ContextRestoringExecutor executor = new FDBRecordContext.ContextRestoringExecutor(
+                Runnable::run, Collections.singletonMap("uuid", "context"), FDBRecordContext.MdcPropagation.RESTORE_IF_DIFFERENT);
+        MDC.put("uuid", "previous");
+        MDC.put("other", "value");
+        final List<String> seen = new ArrayList<>();
+        executor.execute(() -> {
+            seen.add(MDC.get("uuid"));
+            seen.add(MDC.get("other"));
+        });
+        // The thread had not been set up for this context yet, so its whole MDC was replaced.
+        assertEquals(Arrays.asList("context", null), seen);
+        // Left in place for the next task from the same context.
+        assertEquals("context", MDC.get("uuid"));
+    }
+
+    @Test
+    public void restoreIfDifferentSwitchingContexts() {
+        final FDBRecordContext.ContextRestoringExecutor executor1 = new FDBRecordContext.ContextRestoringExecutor(
+                Runnable::run, Collections.singletonMap("uuid", "first"), FDBRecordContext.MdcPropagation.RESTORE_IF_DIFFERENT);
+        final Map<String, String> mdcContext2 = new HashMap<>();
+        mdcContext2.put("other", "second");
+        final FDBRecordContext.ContextRestoringExecutor executor2 = new FDBRecordContext.ContextRestoringExecutor(
+                Runnable::run, mdcContext2, FDBRecordContext.MdcPropagation.RESTORE_IF_DIFFERENT);
+        final List<String> seen = new ArrayList<>();
+        executor1.execute(() -> MDC.put("added", "by task"));
+        executor1.execute(() -> seen.add(MDC.get("added")));
+        executor2.execute(() -> {
+            seen.add(MDC.get("uuid"));
+            seen.add(MDC.get("added"));
+            seen.add(MDC.get("other"));
+        });
+        executor1.execute(() -> {
+            seen.add(MDC.get("uuid"));
+            seen.add(MDC.get("other"));
+        });
+        assertEquals(Arrays.asList("by task", null, null, "second", "first", null), seen);
+    }
+
+    @Test
+    public void propagationFixedAtSubmission() {
+        final List<Runnable> submitted = new ArrayList<>();
+        final FDBRecordContext.ContextRestoringExecutor executor = new FDBRecordContext.ContextRestoringExecutor(
+                submitted::add, Collections.singletonMap("uuid", "context"), FDBRecordContext.MdcPropagation.RESTORE);
+        final List<String> seen = new ArrayList<>();
+        executor.execute(() -> seen.add(MDC.get("uuid")));
+        executor.setMdcPropagation(FDBRecordContext.MdcPropagation.NONE);
+        submitted.get(0).run();
+        assertEquals(Collections.singletonList("context"), seen);
+        assertNull(MDC.get("uuid"));
+    }
+
+    @Test
+    public void none() {
+        final List<Runnable> submitted = new ArrayList<>();
+        final FDBRecordContext.ContextRestoringExecutor executor = new FDBRecordContext.ContextRestoringExecutor(
+                submitted::add, Collections.singletonMap("uuid", "context"), FDBRecordContext.MdcPropagation.RESTORE);
+        executor.setMdcPropagation(FDBRecordContext.MdcPropagation.NONE);
+        final Runnable task = () -> assertNull(MDC.get("uuid"));
+        executor.execute(task);
+        assertSame(task, submitted.get(0));
+        submitted.get(0).run();
+    }
+
+    @Test
+    public void snapshotIsImmutable() {
+        final Map<String, String> mdcContext = new HashMap<>();
+        mdcContext.put("uuid", "context");
+        final FDBRecordContext.ContextRestoringExecutor executor = new FDBRecordContext.ContextRestoringExecutor(
+                Runnable::run, mdcContext, FDBRecordContext.MdcPropagation.RESTORE);
+        mdcContext.put("uuid", "changed");
+        assertEquals("context", executor.getMdcContext().get("uuid"));
+        assertThrows(UnsupportedOperationException.class, () -> executor.getMdcContext().put("uuid", "changed"));
+    }
+}
@@ -26,13 +26,17 @@ import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.async.RangeSet;
 import com.apple.foundationdb.directory.DirectoryLayer;
 import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.IndexScanType;
 import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.PipelineOperation;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCoreRetriableTransactionException;
 import com.apple.foundationdb.record.RecordIndexUniquenessViolation;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordMetaDataBuilder;
 import com.apple.foundationdb.record.RecordStoreState;
+import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.TestRecords1Proto;
 import com.apple.foundationdb.record.TupleRange;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
@@ -99,7 +103,9 @@ import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -255,11 +261,18 @@ public class OnlineIndexerTest {
     private void singleRebuild(@Nonnull List<TestRecords1Proto.MySimpleRecord> records, @Nullable List<TestRecords1Proto.MySimpleRecord> recordsWhileBuilding,
                                int agents, boolean overlap, boolean splitLongRecords,
                                @Nonnull Index index, @Nonnull Runnable beforeBuild, @Nonnull Runnable afterBuild, @Nonnull Runnable afterReadable) {
+        singleRebuild(records, recordsWhileBuilding, agents, overlap, 1, splitLongRecords, index, beforeBuild, afterBuild, afterReadable);
+    }
+
+    private void singleRebuild(@Nonnull List<TestRecords1Proto.MySimpleRecord> records, @Nullable List<TestRecords1Proto.MySimpleRecord> recordsWhileBuilding,
+                               int agents, boolean overlap, int parallelism, boolean splitLongRecords,
+                               @Nonnull Index index, @Nonnull Runnable beforeBuild, @Nonnull Runnable afterBuild, @Nonnull Runnable afterReadable) {
         LOGGER.info(KeyValueLogMessage.of("beginning rebuild test",
                 "records", records.size(),
                 "recordsWhileBuilding", recordsWhileBuilding == null ? 0 : recordsWhileBuilding.size(),
                 "agents", agents,
                 "overlap", overlap,
+                "parallelism", parallelism,
                 "splitLongRecords", splitLongRecords,
                 "index", index)
         );
@@ -304,6 +317,7 @@ public class OnlineIndexerTest {
         try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder()
                 .setDatabase(fdb).setMetaData(metaData).setIndex(index).setSubspace(subspace)
                 .setLimit(20).setMaxRetries(Integer.MAX_VALUE).setRecordsPerSecond(OnlineIndexer.DEFAULT_RECORDS_PER_SECOND * 100)
+                .setParallelism(parallelism)
                 .build()) {
             CompletableFuture<Void> buildFuture;
             LOGGER.info(KeyValueLogMessage.of("building index", "index", index, "agents", agents, "recordsWhileBuilding", recordsWhileBuilding == null ? 0 : recordsWhileBuilding.size(), "overlap", overlap));
@@ -385,6 +399,11 @@ public class OnlineIndexerTest {
 
     private void valueRebuild(@Nonnull List<TestRecords1Proto.MySimpleRecord> records, @Nullable List<TestRecords1Proto.MySimpleRecord> recordsWhileBuilding,
                               int agents, boolean overlap, boolean splitLongRecords) {
+        valueRebuild(records, recordsWhileBuilding, agents, overlap, 1, splitLongRecords);
+    }
+
+    private void valueRebuild(@Nonnull List<TestRecords1Proto.MySimpleRecord> records, @Nullable List<TestRecords1Proto.MySimpleRecord> recordsWhileBuilding,
+                              int agents, boolean overlap, int parallelism, boolean splitLongRecords) {
         Index index = new Index("newIndex", field("num_value_2"));
         Function<FDBQueriedRecord<Message>,Integer> projection = rec -> {
             TestRecords1Proto.MySimpleRecord simple = TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(rec.getRecord()).build();
@@ -474,7 +493,7 @@ public class OnlineIndexerTest {
             }
         };
 
-        singleRebuild(records, recordsWhileBuilding, agents, overlap, splitLongRecords, index, beforeBuild, afterBuild, afterReadable);
+        singleRebuild(records, recordsWhileBuilding, agents, overlap, parallelism, splitLongRecords, index, beforeBuild, afterBuild, afterReadable);
     }
 
     private void valueRebuild(@Nonnull List<TestRecords1Proto.MySimpleRecord> records, @Nullable List<TestRecords1Proto.MySimpleRecord> recordsWhileBuilding,
@@ -917,6 +936,26 @@ public class OnlineIndexerTest {
         valueRebuild(records, null, 5, true);
     }
 
+    @Test
+    @Tag(Tags.Slow)
+    public void oneHundredElementsParallelWorkers() {
+        Random r = new Random(0xdeadc0de);
+        List<TestRecords1Proto.MySimpleRecord> records = Stream.generate(() ->
+                TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(r.nextLong() / 2).setNumValue2(r.nextInt(10)).build()
+        ).limit(100).sorted(Comparator.comparingLong(TestRecords1Proto.MySimpleRecord::getRecNo)).collect(Collectors.toList());
+        valueRebuild(records, null, 1, false, 4, false);
+    }
+
+    @Test
+    @Tag(Tags.Slow)
+    public void oneHundredElementsParallelWorkersOverlap() {
+        Random r = new Random(0xc0ffee);
+        List<TestRecords1Proto.MySimpleRecord> records = Stream.generate(() ->
+                TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(r.nextLong() / 2).setNumValue2(r.nextInt(10)).build()
+        ).limit(100).sorted(Comparator.comparingLong(TestRecords1Proto.MySimpleRecord::getRecNo)).collect(Collectors.toList());
+        valueRebuild(records, null, 3, true, 4, false);
+    }
+
     @Test
     public void tenSplitElements() {
         String bigOlString = Strings.repeat("x", SplitHelper.SPLIT_RECORD_SIZE + 2);
@@ -2056,6 +2095,283 @@ public class OnlineIndexerTest {
         }
     }
 
+    @Test
+    public void buildMultipleIndexes() {
+        List<TestRecords1Proto.MySimpleRecord> records = LongStream.range(0, 50).mapToObj(val ->
+                TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(val).setNumValue2((int)val + 1).build()
+        ).collect(Collectors.toList());
+        Index valueIndex = new Index("newValueIndex", field("num_value_2"));
+        Index sumIndex = new Index("newSumIndex", field("num_value_2").ungrouped(), IndexTypes.SUM);
+        RecordMetaDataHook hook = metaDataBuilder -> {
+            metaDataBuilder.addIndex("MySimpleRecord", valueIndex);
+            metaDataBuilder.addIndex("MySimpleRecord", sumIndex);
+            metaDataBuilder.addIndex("MyOtherRecord", new Index("otherIndex", field("num_value_2")));
+        };
+
+        openSimpleMetaData();
+        try (FDBRecordContext context = openContext()) {
+            records.forEach(recordStore::saveRecord);
+            context.commit();
+        }
+
+        openSimpleMetaData(hook);
+        try (FDBRecordContext context = openContext()) {
+            recordStore.clearAndMarkIndexWriteOnly(valueIndex).join();
+            recordStore.clearAndMarkIndexWriteOnly(sumIndex).join();
+            context.commit();
+        }
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setTargetIndexes(Arrays.asList(valueIndex, sumIndex)).setSubspace(subspace)
+                .setLimit(7).setTimer(timer)
+                .build()) {
+            assertEquals(Arrays.asList(valueIndex, sumIndex), indexBuilder.getTargetIndexes());
+            indexBuilder.buildIndex();
+        }
+        // Each record was only scanned once for both indexes.
+        assertEquals(records.size(), timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_INDEXED));
+
+        try (FDBRecordContext context = openContext()) {
+            assertTrue(recordStore.isIndexReadable(valueIndex));
+            assertTrue(recordStore.isIndexReadable(sumIndex));
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.field("num_value_2").equalsValue(10))
+                    .build();
+            executeQuery(query, "Index(newValueIndex [[10],[10]])", Collections.singletonList(records.get(9)));
+            IndexAggregateFunction aggregateFunction = new IndexAggregateFunction(FunctionNames.SUM, sumIndex.getRootExpression(), sumIndex.getName());
+            assertEquals(50 * 51 / 2, recordStore.evaluateAggregateFunction(Collections.singletonList("MySimpleRecord"), aggregateFunction,
+                    TupleRange.ALL, IsolationLevel.SERIALIZABLE).join().getLong(0));
+        }
+
+        // Indexes on different record types cannot be built together.
+        try {
+            OnlineIndexer.newBuilder().setDatabase(fdb).setMetaData(metaData).setIndex(valueIndex)
+                    .addTargetIndex("otherIndex").setSubspace(subspace).build();
+            fail("Did not catch indexes on different record types.");
+        } catch (MetaDataException e) {
+            assertEquals("Index otherIndex is not on the same record types as newValueIndex", e.getMessage());
+        }
+    }
+
+    @Test
+    public void pipelinedIndexUpdates() {
+        Index valueIndex = new Index("newValueIndex", field("num_value_2"));
+        Index sumIndex = new Index("newSumIndex", field("num_value_2").ungrouped(), IndexTypes.SUM);
+        Index versionIndex = new Index("newVersionIndex", concat(field("num_value_2"), VersionKeyExpression.VERSION), IndexTypes.VERSION);
+        Index rankIndex = new Index("newRankIndex", field("num_value_2").ungrouped(), IndexTypes.RANK);
+        openSimpleMetaData(metaDataBuilder -> {
+            metaDataBuilder.addIndex("MySimpleRecord", valueIndex);
+            metaDataBuilder.addIndex("MySimpleRecord", sumIndex);
+            metaDataBuilder.addIndex("MySimpleRecord", versionIndex);
+            metaDataBuilder.addIndex("MySimpleRecord", rankIndex);
+        });
+        try (FDBRecordContext context = openContext()) {
+            // Updates to these only write their own entries or apply atomic mutations, so builds can overlap them.
+            assertFalse(recordStore.getIndexMaintainer(valueIndex).needsSerialUpdates());
+            assertFalse(recordStore.getIndexMaintainer(sumIndex).needsSerialUpdates());
+            assertFalse(recordStore.getIndexMaintainer(versionIndex).needsSerialUpdates());
+            // But a rank index's skip list needs to see each update before the next.
+            assertTrue(recordStore.getIndexMaintainer(rankIndex).needsSerialUpdates());
+        }
+    }
+
+    @Test
+    public void pipelinedBuildMatchesSerialBuild() {
+        List<TestRecords1Proto.MySimpleRecord> records = LongStream.range(0, 200).mapToObj(val ->
+                TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(val).setNumValue2((int)val % 17).build()
+        ).collect(Collectors.toList());
+        Index valueIndex = new Index("newValueIndex", field("num_value_2"));
+        Index sumIndex = new Index("newSumIndex", field("num_value_2").ungrouped(), IndexTypes.SUM);
+        IndexAggregateFunction aggregateFunction = new IndexAggregateFunction(FunctionNames.SUM, sumIndex.getRootExpression(), sumIndex.getName());
+
+        openSimpleMetaData();
+        try (FDBRecordContext context = openContext()) {
+            records.forEach(recordStore::saveRecord);
+            context.commit();
+        }
+
+        openSimpleMetaData(metaDataBuilder -> {
+            metaDataBuilder.addIndex("MySimpleRecord", valueIndex);
+            metaDataBuilder.addIndex("MySimpleRecord", sumIndex);
+        });
+        List<List<Tuple>> builtEntries = new ArrayList<>();
+        List<Long> builtSums = new ArrayList<>();
+        // Build once with updates for several records in flight at once and then again one record at a time.
+        for (int pipelineSize : new int[] {10, 1}) {
+            try (FDBRecordContext context = openContext()) {
+                recordStore.clearAndMarkIndexWriteOnly(valueIndex).join();
+                recordStore.clearAndMarkIndexWriteOnly(sumIndex).join();
+                context.commit();
+            }
+            final AtomicInteger updatePipelines = new AtomicInteger();
+            final FDBRecordStore.Builder storeBuilder = FDBRecordStore.newBuilder()
+                    .setMetaDataProvider(metaData).setSubspace(subspace)
+                    .setPipelineSizer(pipelineOperation -> {
+                        if (pipelineOperation == PipelineOperation.INDEX_BUILD_UPDATE) {
+                            updatePipelines.incrementAndGet();
+                            return pipelineSize;
+                        }
+                        return FDBRecordStore.DEFAULT_PIPELINE_SIZE;
+                    });
+            try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder()
+                    .setDatabase(fdb).setRecordStoreBuilder(storeBuilder).setTargetIndexes(Arrays.asList(valueIndex, sumIndex))
+                    .setLimit(50)
+                    .build()) {
+                indexBuilder.buildIndex();
+            }
+            // Neither index needs serial updates, so the build used the store's pipeline size for them.
+            assertThat(updatePipelines.get(), greaterThan(0));
+
+            try (FDBRecordContext context = openContext()) {
+                assertTrue(recordStore.isIndexReadable(valueIndex));
+                assertTrue(recordStore.isIndexReadable(sumIndex));
+                builtEntries.add(recordStore.scanIndex(valueIndex, IndexScanType.BY_VALUE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                        .map(IndexEntry::getKey)
+                        .asList()
+                        .join());
+                builtSums.add(recordStore.evaluateAggregateFunction(Collections.singletonList("MySimpleRecord"), aggregateFunction, TupleRange.ALL, IsolationLevel.SNAPSHOT)
+                        .join().getLong(0));
+            }
+        }
+
+        List<Tuple> expected = records.stream()
+                .map(rec -> Tuple.from(rec.getNumValue2(), rec.getRecNo()))
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(expected, builtEntries.get(1));
+        assertEquals(builtEntries.get(1), builtEntries.get(0));
+        assertEquals(records.stream().mapToLong(TestRecords1Proto.MySimpleRecord::getNumValue2).sum(), builtSums.get(1).longValue());
+        assertEquals(builtSums.get(1), builtSums.get(0));
+    }
+
+    @Test
+    public void buildFromSourceIndex() {
+        List<TestRecords1Proto.MySimpleRecord> records = LongStream.range(0, 50).mapToObj(val ->
+                TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(val).setNumValue2((int)val % 5)
+                        .setStrValueIndexed(val % 2 == 0 ? "even" : "odd").build()
+        ).collect(Collectors.toList());
+        Index sourceIndex = new Index("sourceIndex", concat(field("num_value_2"), field("str_value_indexed")));
+        Index reorderedIndex = new Index("reorderedIndex", concat(field("str_value_indexed"), field("num_value_2")));
+        Index otherIndex = new Index("otherIndex", field("num_value_3_indexed"));
+        RecordMetaDataHook sourceHook = metaDataBuilder -> metaDataBuilder.addIndex("MySimpleRecord", sourceIndex);
+        RecordMetaDataHook hook = metaDataBuilder -> {
+            sourceHook.apply(metaDataBuilder);
+            metaDataBuilder.addIndex("MySimpleRecord", reorderedIndex);
+            metaDataBuilder.addIndex("MySimpleRecord", otherIndex);
+        };
+
+        openSimpleMetaData(sourceHook);
+        try (FDBRecordContext context = openContext()) {
+            records.forEach(recordStore::saveRecord);
+            context.commit();
+        }
+
+        openSimpleMetaData(hook);
+        try (FDBRecordContext context = openContext()) {
+            recordStore.clearAndMarkIndexWriteOnly(reorderedIndex).join();
+            recordStore.clearAndMarkIndexWriteOnly(otherIndex).join();
+            context.commit();
+        }
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setIndex(reorderedIndex).setSourceIndex("sourceIndex").setSubspace(subspace)
+                .setLimit(7).setTimer(timer)
+                .build()) {
+            indexBuilder.buildIndex();
+        }
+        // Each record was made from its entry in the source index.
+        assertEquals(records.size(), timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED));
+
+        try (FDBRecordContext context = openContext()) {
+            assertTrue(recordStore.isIndexReadable(reorderedIndex));
+            List<Tuple> expected = records.stream()
+                    .map(rec -> Tuple.from(rec.getStrValueIndexed(), rec.getNumValue2(), rec.getRecNo()))
+                    .sorted()
+                    .collect(Collectors.toList());
+            List<Tuple> actual = recordStore.scanIndex(reorderedIndex, IndexScanType.BY_VALUE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                    .map(IndexEntry::getKey)
+                    .asList()
+                    .join();
+            assertEquals(expected, actual);
+        }
+
+        // The source index must have all of the fields needed.
+        try {
+            OnlineIndexer.newBuilder().setDatabase(fdb).setMetaData(metaData).setIndex(otherIndex)
+                    .setSourceIndex(sourceIndex).setSubspace(subspace).build();
+            fail("Did not catch source index that does not cover the index.");
+        } catch (MetaDataException e) {
+            assertEquals("Source index sourceIndex does not cover the fields of the indexes being built", e.getMessage());
+        }
+    }
+
+    @Test
+    public void adaptiveLimit() {
+        List<TestRecords1Proto.MySimpleRecord> records = LongStream.range(0, 200).mapToObj(val ->
+                TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(val).setNumValue2((int)val + 1).build()
+        ).collect(Collectors.toList());
+        Index index = new Index("newIndex", field("num_value_2"));
+        Index otherIndex = new Index("otherIndex", field("num_value_2"));
+        RecordMetaDataHook hook = metaDataBuilder -> {
+            metaDataBuilder.addIndex("MySimpleRecord", index);
+            metaDataBuilder.addIndex("MySimpleRecord", otherIndex);
+        };
+
+        openSimpleMetaData();
+        try (FDBRecordContext context = openContext()) {
+            records.forEach(recordStore::saveRecord);
+            context.commit();
+        }
+
+        openSimpleMetaData(hook);
+        try (FDBRecordContext context = openContext()) {
+            recordStore.clearAndMarkIndexWriteOnly(index).join();
+            recordStore.clearAndMarkIndexWriteOnly(otherIndex).join();
+            context.commit();
+        }
+
+        // These small transactions finish well within the targets, so the limit keeps growing up to the maximum.
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setIndex(index).setSubspace(subspace)
+                .setLimit(2).setAdaptiveLimit(true).setMaxLimit(20).setRecordsPerSecond(OnlineIndexer.UNLIMITED).setTimer(timer)
+                .build()) {
+            indexBuilder.buildIndex();
+            assertThat(indexBuilder.getLimit(), greaterThan(2));
+            assertThat(indexBuilder.getLimit(), lessThanOrEqualTo(20));
+        }
+        assertThat(timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_LIMIT_INCREASED), greaterThan(0));
+        assertThat(timer.getCount(FDBStoreTimer.Events.ONLINE_INDEX_BUILDER_TRANSACTION), greaterThan(0));
+        // Fewer transactions were needed than with the initial limit.
+        assertThat(timer.getCount(FDBStoreTimer.Events.ONLINE_INDEX_BUILDER_TRANSACTION), lessThanOrEqualTo(records.size() / 2));
+        assertEquals(records.size(), timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED));
+        assertThat(timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_BYTES_SCANNED), greaterThan(0));
+
+        // Without it, the limit stays where it was set.
+        try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setIndex(otherIndex).setSubspace(subspace)
+                .setLimit(2).setRecordsPerSecond(OnlineIndexer.UNLIMITED)
+                .build()) {
+            indexBuilder.buildIndex();
+            assertEquals(2, indexBuilder.getLimit());
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            for (Index builtIndex : Arrays.asList(index, otherIndex)) {
+                assertTrue(recordStore.isIndexReadable(builtIndex));
+                List<Tuple> expected = records.stream()
+                        .map(rec -> Tuple.from(rec.getNumValue2(), rec.getRecNo()))
+                        .collect(Collectors.toList());
+                List<Tuple> actual = recordStore.scanIndex(builtIndex, IndexScanType.BY_VALUE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                        .map(IndexEntry::getKey)
+                        .asList()
+                        .join();
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
     @Test
     public void run() {
         Index index = new Index("newIndex", field("num_value_2"));
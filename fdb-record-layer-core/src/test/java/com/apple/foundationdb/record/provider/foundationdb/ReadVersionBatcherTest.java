@@ -0,0 +1,88 @@
+/*
+ * ReadVersionBatcherTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link ReadVersionBatcher}.
+ */
+public class ReadVersionBatcherTest {
+
+    @Test
+    public void requestsWithinWindowShareVersion() {
+        final AtomicInteger grvs = new AtomicInteger();
+        final CompletableFuture<Long> grv = new CompletableFuture<>();
+        final ReadVersionBatcher batcher = new ReadVersionBatcher(() -> {
+            grvs.incrementAndGet();
+            return grv;
+        }, 50);
+        final CompletableFuture<Long> first = batcher.getReadVersion();
+        final CompletableFuture<Long> second = batcher.getReadVersion();
+        assertFalse(first.isDone());
+        grv.complete(1066L);
+        assertEquals(1066L, first.join().longValue());
+        assertEquals(1066L, second.join().longValue());
+        assertEquals(1, grvs.get());
+    }
+
+    @Test
+    public void requestsAfterSendStartNewBatch() {
+        final AtomicInteger grvs = new AtomicInteger();
+        final ReadVersionBatcher batcher = new ReadVersionBatcher(() ->
+                CompletableFuture.completedFuture((long)grvs.incrementAndGet()), 0);
+        assertEquals(1L, batcher.getReadVersion().join().longValue());
+        assertEquals(2L, batcher.getReadVersion().join().longValue());
+        assertEquals(2, grvs.get());
+    }
+
+    @Test
+    public void cancelledRequestDoesNotCancelBatch() {
+        final CompletableFuture<Long> grv = new CompletableFuture<>();
+        final ReadVersionBatcher batcher = new ReadVersionBatcher(() -> grv, 50);
+        final CompletableFuture<Long> first = batcher.getReadVersion();
+        final CompletableFuture<Long> second = batcher.getReadVersion();
+        first.cancel(false);
+        grv.complete(1415L);
+        assertEquals(1415L, second.join().longValue());
+    }
+
+    @Test
+    public void errorsReachEveryRequest() {
+        final RuntimeException error = new IllegalStateException("no version");
+        final CompletableFuture<Long> grv = new CompletableFuture<>();
+        final ReadVersionBatcher batcher = new ReadVersionBatcher(() -> grv, 50);
+        final CompletableFuture<Long> first = batcher.getReadVersion();
+        final CompletableFuture<Long> second = batcher.getReadVersion();
+        grv.completeExceptionally(error);
+        assertSame(error, assertThrows(CompletionException.class, first::join).getCause());
+        assertSame(error, assertThrows(CompletionException.class, second::join).getCause());
+    }
+}
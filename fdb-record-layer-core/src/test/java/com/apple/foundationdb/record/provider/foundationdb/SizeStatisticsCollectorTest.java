@@ -21,8 +21,10 @@
 package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
 import com.apple.foundationdb.record.TestRecords1Proto.MySimpleRecord;
 import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.test.Tags;
 import com.google.common.base.Strings;
@@ -32,10 +34,12 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -180,6 +184,75 @@ public class SizeStatisticsCollectorTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @Test
+    public void sampled() throws Exception {
+        final int recordCount = 200;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < recordCount; i++) {
+                MySimpleRecord simpleRecord = MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed(Strings.repeat("x", i % 20))
+                        .build();
+                recordStore.saveRecord(simpleRecord);
+            }
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            SizeStatisticsCollector fullCollector = SizeStatisticsCollector.ofRecords(recordStore);
+            assertThat(fullCollector.collect(context, ExecuteProperties.SERIAL_EXECUTE), is(true));
+
+            // Samples large enough to cover the whole (single) shard are exact.
+            SizeStatisticsCollector exactCollector = SizeStatisticsCollector.ofRecords(recordStore).setSampling(4, recordCount * 10, new Random(0x5eed));
+            assertThat(exactCollector.isSampling(), is(true));
+            assertThat(exactCollector.collect(context, ExecuteProperties.SERIAL_EXECUTE), is(true));
+            assertEquals(fullCollector.getKeyCount(), exactCollector.getKeyCount());
+            assertEquals(fullCollector.getKeySize(), exactCollector.getKeySize());
+            assertEquals(fullCollector.getValueSize(), exactCollector.getValueSize());
+            assertArrayEquals(fullCollector.getSizeBuckets(), exactCollector.getSizeBuckets());
+            assertEquals(0.0, exactCollector.getKeyCountStandardError());
+
+            SizeStatisticsCollector sampledCollector = SizeStatisticsCollector.ofRecords(recordStore).setSampling(8, 20, new Random(0x5eed));
+            assertThat(sampledCollector.collect(context, ExecuteProperties.SERIAL_EXECUTE), is(true));
+            assertThat(sampledCollector.getKeyCount(), allOf(greaterThanOrEqualTo(fullCollector.getKeyCount() / 3),
+                    lessThanOrEqualTo(fullCollector.getKeyCount() * 3)));
+            assertThat(sampledCollector.getKeyCountStandardError(), greaterThan(0.0));
+            assertThat(sampledCollector.getMaxKeySize(), lessThanOrEqualTo(fullCollector.getMaxKeySize()));
+
+            assertThrows(RecordCoreArgumentException.class, () -> sampledCollector.setSampling(1, 1));
+            assertThrows(RecordCoreArgumentException.class, () -> SizeStatisticsCollector.ofRecords(recordStore).setSampling(0, 1));
+
+            commit(context);
+        }
+    }
+
+    /**
+     * Verify that keys too close together to tell how much of a shard a read covered give an estimate with an
+     * unbounded error rather than one that looks exact.
+     */
+    @Test
+    public void sampledDenseKeys() throws Exception {
+        final Subspace denseSubspace;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            denseSubspace = recordStore.getSubspace().subspace(Tuple.from("dense"));
+            // Each key differs from the last only by a trailing zero byte, so they all have the same position.
+            for (int i = 0; i < 10; i++) {
+                context.ensureActive().set(ByteArrayUtil.join(denseSubspace.getKey(), new byte[i + 1]), new byte[] { 0x01 });
+            }
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            SizeStatisticsCollector collector = SizeStatisticsCollector.ofSubspace(denseSubspace).setSampling(2, 3, new Random(0x5eed));
+            assertThat(collector.collect(context, ExecuteProperties.SERIAL_EXECUTE), is(true));
+            assertThat(collector.getKeyCount(), allOf(greaterThanOrEqualTo(3L), lessThanOrEqualTo(10L)));
+            assertEquals(Double.POSITIVE_INFINITY, collector.getKeyCountStandardError());
+        }
+    }
+
     /**
      * Verify that if the collector encounters a retriable error that it gracefully handles it by continuing to work.
      * A better version of this test would throw the error *during* the read, but that's hard, so this just sets the
@@ -0,0 +1,138 @@
+/*
+ * TransactionResourceBudgetTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.test.Tags;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link TransactionResourceTracker} accounting and {@link TransactionResourceBudget} enforcement.
+ */
+@Tag(Tags.RequiresFDB)
+public class TransactionResourceBudgetTest extends FDBRecordStoreTestBase {
+
+    private static final String RECORD_TYPE = TransactionResourceTracker.recordTypeCategory("MySimpleRecord");
+    private static final String STR_INDEX = TransactionResourceTracker.indexCategory("MySimpleRecord$str_value_indexed");
+
+    private void saveRecords(int count) {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < count; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed((i & 1) == 1 ? "odd" : "even")
+                        .setNumValueUnique(i + 1000)
+                        .build());
+            }
+            final TransactionResourceTracker tracker = context.getResourceTracker();
+            assertThat(tracker.getUsage(RECORD_TYPE).getMutations(), greaterThanOrEqualTo((long)count));
+            assertEquals(count, tracker.getUsage(STR_INDEX).getMutations());
+            assertThat(tracker.getUsage(RECORD_TYPE).getBytesWritten(), greaterThan(0L));
+            assertThat(tracker.getUsage().getMutations(), greaterThanOrEqualTo(2L * count));
+            commit(context);
+        }
+    }
+
+    @Test
+    public void accounting() throws Exception {
+        clearAndInitialize();
+        saveRecords(10);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            assertEquals(10, recordStore.scanRecords(null, ScanProperties.FORWARD_SCAN).getCount().join().intValue());
+            final TransactionResourceTracker tracker = context.getResourceTracker();
+            assertThat(tracker.getUsage(RECORD_TYPE).getKeysRead(), greaterThanOrEqualTo(10L));
+            assertThat(tracker.getUsage(RECORD_TYPE).getBytesRead(), greaterThan(0L));
+            assertEquals(0, tracker.getUsage(RECORD_TYPE).getMutations());
+            assertEquals(0, tracker.getUsage(STR_INDEX).getKeysRead());
+            assertEquals(tracker.getUsage(RECORD_TYPE).getBytesRead(), tracker.getUsage().getBytesRead());
+        }
+    }
+
+    @Test
+    public void softBudgetStopsCursor() throws Exception {
+        clearAndInitialize();
+        saveRecords(100);
+        int total = 0;
+        int transactions = 0;
+        byte[] continuation = null;
+        do {
+            try (FDBRecordContext context = openContext()) {
+                context.setSoftResourceBudget(TransactionResourceBudget.newBuilder().setMaxKeysRead(20).build());
+                openSimpleRecordStore(context);
+                int count = 0;
+                try (RecordCursor<FDBStoredRecord<Message>> cursor = recordStore.scanRecords(continuation, ScanProperties.FORWARD_SCAN)) {
+                    while (cursor.hasNext()) {
+                        assertNotNull(cursor.next());
+                        count++;
+                    }
+                    continuation = cursor.getContinuation();
+                    if (continuation != null) {
+                        assertEquals(RecordCursor.NoNextReason.TRANSACTION_BUDGET_REACHED, cursor.getNoNextReason());
+                        assertThat(count, lessThan(100));
+                    }
+                }
+                total += count;
+                transactions++;
+            }
+        } while (continuation != null);
+        assertEquals(100, total);
+        assertThat(transactions, greaterThan(1));
+    }
+
+    @Test
+    public void hardBudgetFailsEarly() throws Exception {
+        clearAndInitialize();
+        try (FDBRecordContext context = openContext()) {
+            context.setHardResourceBudget(TransactionResourceBudget.newBuilder().setMaxMutations(10).build());
+            openSimpleRecordStore(context);
+            TransactionBudgetExceededException ex = assertThrows(TransactionBudgetExceededException.class, () -> {
+                for (int i = 0; i < 100; i++) {
+                    recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                            .setRecNo(i)
+                            .setNumValueUnique(i)
+                            .build());
+                }
+            });
+            assertEquals("mutations", ex.getLogInfo().get("resource"));
+            assertThat(context.getResourceTracker().getUsage().getMutations(), greaterThan(10L));
+            assertSame(ex, context.getResourceTracker().getHardBudgetExceeded());
+
+            // Catching the failure must not allow the partial work to be committed.
+            TransactionBudgetExceededException commitEx = assertThrows(TransactionBudgetExceededException.class, context::commit);
+            assertSame(ex, commitEx.getCause());
+        }
+    }
+}
@@ -362,6 +362,29 @@ public class UnionIntersectionTest extends FDBRecordStoreTestBase {
         }
     }
 
+    /**
+     * Validate that comparing packed keys merges children in tuple order, even for keys of different types, which
+     * cannot be compared element by element.
+     */
+    @Test
+    public void packedComparisonKeys() throws Exception {
+        final List<List<Object>> leftKeys = Arrays.asList(Collections.singletonList(null), Collections.singletonList("a"),
+                Collections.singletonList(1L), Collections.singletonList(true));
+        final List<List<Object>> rightKeys = Arrays.asList(Collections.singletonList("a"), Collections.singletonList("b"),
+                Collections.singletonList(2L));
+        final List<Function<byte[], RecordCursor<List<Object>>>> cursorFunctions = Arrays.asList(
+                continuation -> RecordCursor.fromList(leftKeys, continuation),
+                continuation -> RecordCursor.fromList(rightKeys, continuation));
+
+        List<List<Object>> union = UnionCursor.create((List<Object> key) -> key, false, true, cursorFunctions, null, null).asList().get();
+        assertEquals(Arrays.asList(Collections.singletonList(null), Collections.singletonList("a"), Collections.singletonList("b"),
+                Collections.singletonList(1L), Collections.singletonList(2L), Collections.singletonList(true)), union);
+
+        List<List<Object>> intersection = IntersectionCursor.create((List<Object> key) -> key, false, true, cursorFunctions,
+                Collections.nCopies(cursorFunctions.size(), null), null, null).asList().get();
+        assertEquals(Collections.singletonList(Collections.singletonList("a")), intersection);
+    }
+
     private RecordCursor<FDBStoredRecord<Message>> scanRecordsBetween(Long start, Long end, byte[] continuation) {
         return recordStore.scanRecords(
                 start == null ? null : Tuple.from(start),
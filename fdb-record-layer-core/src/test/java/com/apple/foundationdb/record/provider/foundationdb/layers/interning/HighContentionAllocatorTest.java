@@ -26,6 +26,7 @@ import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseFactory;
+import com.apple.foundationdb.record.provider.foundationdb.FDBExceptions;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpace;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpaceDirectory;
@@ -43,6 +44,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -59,6 +61,7 @@ import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
 @Tag(Tags.RequiresFDB)
@@ -147,6 +150,96 @@ class HighContentionAllocatorTest {
         }
     }
 
+    @Test
+    void testBlockAllocation() {
+        final Map<Long, String> allocated = new HashMap<>();
+        try (FDBRecordContext context = database.openContext()) {
+            HighContentionAllocator hca = new HighContentionAllocator(context, keySpace.path("test-path"));
+            for (int i = 0; i < 10; i++) {
+                String storedValue = "allocate-" + i;
+                allocated.put(hca.allocate(storedValue).join(), storedValue);
+            }
+            context.commit();
+        }
+
+        final List<String> bulkValues = IntStream.range(0, 500).mapToObj(i -> "bulk-" + i).collect(Collectors.toList());
+        try (FDBRecordContext context = database.openContext()) {
+            HighContentionAllocator hca = new HighContentionAllocator(context, keySpace.path("test-path"));
+            List<Long> bulkAllocations = hca.allocate(bulkValues).join();
+            assertThat(bulkAllocations, hasSize(bulkValues.size()));
+            for (int i = 0; i < bulkValues.size(); i++) {
+                assertThat("block allocations are contiguous", bulkAllocations.get(i), is(bulkAllocations.get(0) + i));
+                assertThat("block allocations are unique", allocated, not(hasKey(bulkAllocations.get(i))));
+                allocated.put(bulkAllocations.get(i), bulkValues.get(i));
+            }
+            validateAllocation(context, hca, allocated);
+            context.commit();
+        }
+
+        try (FDBRecordContext context = database.openContext()) {
+            HighContentionAllocator hca = new HighContentionAllocator(context, keySpace.path("test-path"));
+            for (int i = 0; i < 10; i++) {
+                Long newAllocation = hca.allocate("after-block-" + i).join();
+                assertThat("allocations after a block do not reuse its values", allocated, not(hasKey(newAllocation)));
+            }
+        }
+    }
+
+    @Test
+    void testReservedBlock() {
+        final HighContentionAllocator.AllocationBlock block = database.run(context ->
+                new HighContentionAllocator(context, keySpace.path("test-path")).reserve(20).join());
+        assertThat(block.remaining(), is(20L));
+
+        final Map<Long, String> allocated = new HashMap<>();
+        for (int i = 0; i < 2; i++) {
+            try (FDBRecordContext context = database.openContext()) {
+                HighContentionAllocator hca = new HighContentionAllocator(context, keySpace.path("test-path"));
+                for (int j = 0; j < 15; j++) {
+                    String storedValue = "reserved-" + i + "-" + j;
+                    Optional<Long> fromBlock = hca.allocate(block, storedValue);
+                    Long value = fromBlock.orElseGet(() -> hca.allocate(storedValue).join());
+                    if (fromBlock.isPresent()) {
+                        assertThat("reserved values are in the block", value, allOf(
+                                greaterThanOrEqualTo(block.getStart()), lessThan(block.getEnd())));
+                    }
+                    assertThat("allocations are unique", allocated, not(hasKey(value)));
+                    allocated.put(value, storedValue);
+                }
+                context.commit();
+            }
+        }
+        assertThat(block.remaining(), is(0L));
+
+        try (FDBRecordContext context = database.openContext()) {
+            validateAllocation(context, new HighContentionAllocator(context, keySpace.path("test-path")), allocated);
+        }
+    }
+
+    @Test
+    void testReservedBlockConflictsWithConcurrentAllocation() {
+        try (FDBRecordContext reserveContext = database.openContext();
+                 FDBRecordContext allocateContext = database.openContext()) {
+            // get the allocating transaction's read version before the reservation commits
+            allocateContext.ensureActive().getReadVersion().join();
+
+            // reserve a whole window's worth, so that any candidate chosen from that window is in the block
+            final HighContentionAllocator.AllocationBlock block =
+                    new HighContentionAllocator(reserveContext, keySpace.path("test-path")).reserve(64).join();
+            final AllocationWindow blockWindow = AllocationWindow.startingFrom(block.getStart());
+            assertThat(blockWindow.getEnd(), is(block.getEnd()));
+            reserveContext.commit();
+
+            // move the allocating transaction's window onto the block, which it has not seen reserved
+            HighContentionAllocator hca = new HighContentionAllocator(allocateContext, keySpace.path("test-path"));
+            hca.setWindow(block.getStart());
+            Long value = hca.allocate("concurrent").join();
+            assertThat("the candidate is in the reserved block", value, allOf(
+                    greaterThanOrEqualTo(block.getStart()), lessThan(block.getEnd())));
+            assertThrows(FDBExceptions.FDBStoreTransactionConflictException.class, allocateContext::commit);
+        }
+    }
+
     @Test
     @Tag(Tags.WipesFDB)
     void testCheckForRootConflicts() {
@@ -29,7 +29,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashSet;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.CompletionException;
 
 import static com.apple.foundationdb.record.TestHelpers.ExceptionMessageMatcher.hasMessageContaining;
@@ -73,4 +75,17 @@ public class ScopedInterningLayerTest extends LocatableResolverTest {
         }
     }
 
+    @Test
+    public void testReserveValues() {
+        ScopedInterningLayer resolver = ScopedInterningLayer.global(database);
+        resolver.reserveValues(10).join();
+        Set<Long> values = new HashSet<>();
+        for (int i = 0; i < 15; i++) {
+            String key = "reserved-key-" + i;
+            Long value = resolver.resolve(null, key).join();
+            assertThat("values are unique", values.add(value), is(true));
+            assertThat(resolver.reverseLookup(null, value).join(), is(key));
+        }
+    }
+
 }
@@ -28,6 +28,7 @@ import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.apple.foundationdb.record.metadata.RecordTypeBuilder;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.expressions.Query;
 import com.apple.foundationdb.record.query.plan.QueryPlanner;
@@ -37,7 +38,9 @@ import com.google.protobuf.Message;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static com.apple.foundationdb.record.ExecuteProperties.newBuilder;
 import static com.apple.foundationdb.record.TestHelpers.RealAnythingMatcher.anything;
@@ -58,6 +61,7 @@ import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
@@ -477,6 +481,60 @@ public class FDBAndQueryToIntersectionTest extends FDBRecordStoreQueryTestBase {
         }
     }
 
+    /**
+     * Verify that an intersection of a selective index scan with a broad one seeks in the broad one rather than reading it all.
+     */
+    @Test
+    public void testSelectiveIntersectionSeeks() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < 200; i++) {
+                TestRecords1Proto.MySimpleRecord.Builder recBuilder = TestRecords1Proto.MySimpleRecord.newBuilder();
+                recBuilder.setRecNo(i);
+                recBuilder.setStrValueIndexed((i & 1) == 1 ? "odd" : "even");
+                recBuilder.setNumValue3Indexed(i == 150 || i == 180 ? 1 : 0);
+                recordStore.saveRecord(recBuilder.build());
+            }
+            commit(context);
+        }
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.and(
+                        Query.field("str_value_indexed").equalsValue("even"),
+                        Query.field("num_value_3_indexed").equalsValue(1)))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, intersection(
+                indexScan(allOf(indexName("MySimpleRecord$str_value_indexed"), bounds(hasTupleString("[[even],[even]]")))),
+                indexScan(allOf(indexName("MySimpleRecord$num_value_3_indexed"), bounds(hasTupleString("[[1],[1]]")))),
+                equalTo(field("rec_no"))));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan)) {
+                assertEquals(Arrays.asList(150L, 180L), cursor.map(rec -> rec.getPrimaryKey().getLong(0)).asList().join());
+            }
+            assertThat(context.getTimer().getCount(FDBStoreTimer.Counts.QUERY_INTERSECTION_PLAN_SEEKS), greaterThan(0));
+            assertDiscardedAtMost(10, context);
+        }
+
+        // Resuming after a seek gives the same results.
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            List<Long> recNos = new ArrayList<>();
+            byte[] continuation = null;
+            do {
+                try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan, continuation, newBuilder().setReturnedRowLimit(1).build())) {
+                    while (cursor.hasNext()) {
+                        recNos.add(cursor.next().getPrimaryKey().getLong(0));
+                    }
+                    continuation = cursor.getContinuation();
+                }
+            } while (continuation != null);
+            assertEquals(Arrays.asList(150L, 180L), recNos);
+        }
+    }
+
     private RecordMetaDataHook sortingShapesHook() {
         return metaData -> {
             final RecordTypeBuilder type = metaData.getRecordType("MyShapeRecord");
@@ -22,11 +22,13 @@ package com.apple.foundationdb.record.provider.foundationdb.query;
 
 import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TestRecords4Proto;
 import com.apple.foundationdb.record.TestRecordsWithHeaderProto;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.IndexOptions;
 import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.RecordTypeBuilder;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.query.RecordQuery;
@@ -46,8 +48,10 @@ import java.util.List;
 
 import static com.apple.foundationdb.record.TestHelpers.RealAnythingMatcher.anything;
 import static com.apple.foundationdb.record.TestHelpers.assertDiscardedNone;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concat;
 import static com.apple.foundationdb.record.metadata.Key.Expressions.concatenateFields;
 import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.recordType;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.bounds;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.coveringIndexScan;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.filter;
@@ -181,6 +185,49 @@ public class FDBCoveringIndexQueryTest extends FDBRecordStoreQueryTestBase {
         assertEquals(-1408807323, plan.planHash());
     }
 
+    /**
+     * Verify that a filter that cannot be satisfied by the index scan is evaluated against the partial record if
+     * the fields it needs are in the value of the index.
+     */
+    @Test
+    public void coveringWithAdditionalFilter() throws Exception {
+        RecordMetaDataHook hook = metaData -> {
+            metaData.removeIndex("MySimpleRecord$num_value_unique");
+            metaData.addIndex("MySimpleRecord", new Index(
+                    "multi_index_value",
+                    field("num_value_unique"),
+                    field("num_value_2"),
+                    IndexTypes.VALUE,
+                    IndexOptions.UNIQUE_OPTIONS));
+        };
+        complexQuerySetup(hook);
+
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.and(Query.field("num_value_unique").greaterThan(990), Query.field("num_value_2").equalsValue(1)))
+                .setRequiredResults(Collections.singletonList(field("num_value_unique")))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, filter(equalTo(Query.field("num_value_2").equalsValue(1)),
+                coveringIndexScan(indexScan(allOf(indexName("multi_index_value"), bounds(hasTupleString("([990],>")))))));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            List<Integer> results = new ArrayList<>();
+            try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan)) {
+                while (cursor.hasNext()) {
+                    FDBQueriedRecord<Message> rec = cursor.next();
+                    TestRecords1Proto.MySimpleRecord.Builder myrec = TestRecords1Proto.MySimpleRecord.newBuilder();
+                    myrec.mergeFrom(rec.getRecord());
+                    assertEquals(1, myrec.getNumValue2());
+                    results.add(myrec.getNumValueUnique());
+                }
+            }
+            assertEquals(Arrays.asList(993, 996, 999), results);
+            assertDiscardedNone(context);
+        }
+    }
+
     /**
      * Verify that an index can be covering if more than one field is required and they are in the key.
      */
@@ -397,6 +444,181 @@ public class FDBCoveringIndexQueryTest extends FDBRecordStoreQueryTestBase {
         }
     }
 
+    /**
+     * Verify that an index can be covering for a whole nested message if every field of that message is in the
+     * index entry.
+     */
+    @Test
+    public void coveringWithWholeHeader() throws Exception {
+        RecordMetaDataHook hook = metaData -> {
+            metaData.getRecordType("MyRecord")
+                    .setPrimaryKey(field("header").nest(field("rec_no")));
+            metaData.addIndex("MyRecord", new Index("MyRecord$str_value", field("str_value"),
+                    field("header").nest(concatenateFields("path", "num")),
+                    IndexTypes.VALUE, Collections.emptyMap()));
+        };
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordWithHeader(context, hook);
+
+            saveHeaderRecord(1, "a", 0, "lynx");
+            saveHeaderRecord(2, "a", 1, "bobcat");
+            saveHeaderRecord(3, "b", 5, "lion");
+            context.commit();
+        }
+
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MyRecord")
+                .setFilter(Query.field("str_value").equalsValue("lion"))
+                .setRequiredResults(Collections.singletonList(field("header")))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, coveringIndexScan(indexScan(allOf(indexName("MyRecord$str_value"), bounds(hasTupleString("[[lion],[lion]]"))))));
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordWithHeader(context, hook);
+            int count = 0;
+            try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan)) {
+                while (cursor.hasNext()) {
+                    FDBQueriedRecord<Message> rec = cursor.next();
+                    TestRecordsWithHeaderProto.MyRecord.Builder myrec = TestRecordsWithHeaderProto.MyRecord.newBuilder();
+                    myrec.mergeFrom(rec.getRecord());
+                    assertEquals(3, myrec.getHeader().getRecNo());
+                    assertEquals("b", myrec.getHeader().getPath());
+                    assertEquals(5, myrec.getHeader().getNum());
+                    count++;
+                }
+            }
+            assertEquals(1, count);
+            assertDiscardedNone(context);
+        }
+    }
+
+    /**
+     * Verify that a nested message that a record does not have is not present in its partial record, so that a filter
+     * on whether it is there gives the same result with a covering index as with the full record.
+     */
+    @Test
+    public void coveringWithMissingNestedMessage() throws Exception {
+        RecordMetaDataHook hook = metaData -> {
+            metaData.removeIndex("RestaurantReviewer$name");
+            metaData.addIndex("RestaurantReviewer", new Index("stats$name", field("name"),
+                    field("stats").nest(concatenateFields("start_date", "school_name", "hometown")),
+                    IndexTypes.VALUE, Collections.emptyMap()));
+        };
+
+        try (FDBRecordContext context = openContext()) {
+            openAnyRecordStore(TestRecords4Proto.getDescriptor(), context, hook);
+            recordStore.saveRecord(TestRecords4Proto.RestaurantReviewer.newBuilder()
+                    .setId(1).setName("alice")
+                    .setStats(TestRecords4Proto.ReviewerStats.newBuilder().setStartDate(100).setHometown("Cupertino"))
+                    .build());
+            recordStore.saveRecord(TestRecords4Proto.RestaurantReviewer.newBuilder()
+                    .setId(2).setName("bob")
+                    .build());
+            recordStore.saveRecord(TestRecords4Proto.RestaurantReviewer.newBuilder()
+                    .setId(3).setName("carol")
+                    .setStats(TestRecords4Proto.ReviewerStats.newBuilder().setSchoolName("Stanford"))
+                    .build());
+            commit(context);
+        }
+
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("RestaurantReviewer")
+                .setFilter(Query.field("stats").notNull())
+                .setSort(field("name"))
+                .setRequiredResults(Collections.singletonList(field("name")))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, filter(equalTo(Query.field("stats").notNull()),
+                coveringIndexScan(indexScan(allOf(indexName("stats$name"), bounds(unbounded()))))));
+
+        try (FDBRecordContext context = openContext()) {
+            openAnyRecordStore(TestRecords4Proto.getDescriptor(), context, hook);
+            List<String> names = new ArrayList<>();
+            try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan)) {
+                while (cursor.hasNext()) {
+                    FDBQueriedRecord<Message> rec = cursor.next();
+                    TestRecords4Proto.RestaurantReviewer.Builder reviewer = TestRecords4Proto.RestaurantReviewer.newBuilder();
+                    reviewer.mergeFrom(rec.getRecord());
+                    assertTrue(reviewer.hasStats());
+                    names.add(reviewer.getName());
+                }
+            }
+            assertEquals(Arrays.asList("alice", "carol"), names);
+            assertDiscardedNone(context);
+        }
+    }
+
+    /**
+     * Verify that a multi-type index can be covering when the record types share a primary key that starts with the
+     * record type key, and that each partial record is made with the type given by its entry's primary key.
+     */
+    @Test
+    public void coveringMultiType() throws Exception {
+        RecordMetaDataHook hook = metaData -> {
+            final RecordTypeBuilder simpleRecordType = metaData.getRecordType("MySimpleRecord");
+            final RecordTypeBuilder otherRecordType = metaData.getRecordType("MyOtherRecord");
+            simpleRecordType.setPrimaryKey(concat(recordType(), field("rec_no")));
+            otherRecordType.setPrimaryKey(concat(recordType(), field("rec_no")));
+            metaData.addMultiTypeIndex(Arrays.asList(simpleRecordType, otherRecordType),
+                    new Index("multi$num_value_2", field("num_value_2")));
+        };
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            for (int i = 0; i < 10; i++) {
+                if (i % 2 == 0) {
+                    recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                            .setRecNo(i).setNumValue2(i % 3).setStrValueIndexed("simple").build());
+                } else {
+                    recordStore.saveRecord(TestRecords1Proto.MyOtherRecord.newBuilder()
+                            .setRecNo(i).setNumValue2(i % 3).setNumValue3Indexed(i).build());
+                }
+            }
+            commit(context);
+        }
+
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordTypes(Arrays.asList("MySimpleRecord", "MyOtherRecord"))
+                .setFilter(Query.field("num_value_2").equalsValue(1))
+                .setRequiredResults(Collections.singletonList(field("num_value_2")))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, coveringIndexScan(indexScan(allOf(indexName("multi$num_value_2"), bounds(hasTupleString("[[1],[1]]"))))));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            List<Long> recNos = new ArrayList<>();
+            try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan)) {
+                while (cursor.hasNext()) {
+                    FDBQueriedRecord<Message> rec = cursor.next();
+                    final long recNo = rec.getPrimaryKey().getLong(1);
+                    final String expectedType = recNo % 2 == 0 ? "MySimpleRecord" : "MyOtherRecord";
+                    assertEquals(expectedType, rec.getRecordType().getName());
+                    assertEquals(expectedType, rec.getRecord().getDescriptorForType().getName());
+                    if (recNo % 2 == 0) {
+                        TestRecords1Proto.MySimpleRecord.Builder myrec = TestRecords1Proto.MySimpleRecord.newBuilder();
+                        myrec.mergeFrom(rec.getRecord());
+                        assertEquals(recNo, myrec.getRecNo());
+                        assertEquals(1, myrec.getNumValue2());
+                        assertFalse(myrec.hasStrValueIndexed());
+                    } else {
+                        TestRecords1Proto.MyOtherRecord.Builder myrec = TestRecords1Proto.MyOtherRecord.newBuilder();
+                        myrec.mergeFrom(rec.getRecord());
+                        assertEquals(recNo, myrec.getRecNo());
+                        assertEquals(1, myrec.getNumValue2());
+                        assertFalse(myrec.hasNumValue3Indexed());
+                    }
+                    recNos.add(recNo);
+                }
+            }
+            Collections.sort(recNos);
+            assertEquals(Arrays.asList(1L, 4L, 7L), recNos);
+            assertDiscardedNone(context);
+        }
+    }
+
     /**
      * Verify that if given a concatenated required-results field that a covering index is returned.
      */
@@ -0,0 +1,152 @@
+/*
+ * FDBPlanCacheQueryTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.query;
+
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanCache;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryConstantBindingPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.test.Tags;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexName;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexScan;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for reusing query plans from a {@link RecordQueryPlanCache}.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBPlanCacheQueryTest extends FDBRecordStoreQueryTestBase {
+
+    private static RecordQuery num3Query(int value) {
+        return RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.field("num_value_3_indexed").equalsValue(value))
+                .build();
+    }
+
+    private int countNum3(RecordQueryPlan plan, int value) throws Exception {
+        int count = 0;
+        try (RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan)) {
+            while (cursor.hasNext()) {
+                TestRecords1Proto.MySimpleRecord.Builder myrec = TestRecords1Proto.MySimpleRecord.newBuilder();
+                myrec.mergeFrom(cursor.next().getRecord());
+                assertEquals(value, myrec.getNumValue3Indexed());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Verify that queries that differ only in their literal values share a plan, which is bound to each query's values.
+     */
+    @Test
+    public void reuseForSameShape() throws Exception {
+        complexQuerySetup(null);
+        final RecordQueryPlanCache planCache = new RecordQueryPlanCache();
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            recordStore.setPlanCache(planCache);
+
+            RecordQueryPlan plan1 = recordStore.planQuery(num3Query(1));
+            assertThat(plan1, instanceOf(RecordQueryConstantBindingPlan.class));
+            RecordQueryPlan inner1 = ((RecordQueryConstantBindingPlan)plan1).getChild();
+            assertThat(inner1, indexScan(indexName("MySimpleRecord$num_value_3_indexed")));
+            assertEquals(20, countNum3(plan1, 1));
+
+            RecordQueryPlan plan3 = recordStore.planQuery(num3Query(3));
+            assertSame(inner1, ((RecordQueryConstantBindingPlan)plan3).getChild());
+            assertEquals(plan1.planHash(), plan3.planHash());
+            assertEquals(20, countNum3(plan3, 3));
+
+            assertEquals(1, planCache.size());
+            assertEquals(1, planCache.getStats().missCount());
+            assertEquals(1, planCache.getStats().hitCount());
+        }
+    }
+
+    /**
+     * Verify that queries of different shapes are cached separately.
+     */
+    @Test
+    public void differentShapes() throws Exception {
+        complexQuerySetup(null);
+        final RecordQueryPlanCache planCache = new RecordQueryPlanCache();
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            recordStore.setPlanCache(planCache);
+
+            recordStore.planQuery(num3Query(1));
+            recordStore.planQuery(RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.field("num_value_3_indexed").greaterThan(1))
+                    .build());
+            recordStore.planQuery(RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.field("num_value_3_indexed").equalsValue(1))
+                    .setRemoveDuplicates(false)
+                    .build());
+
+            assertEquals(3, planCache.size());
+            assertEquals(0, planCache.getStats().hitCount());
+        }
+    }
+
+    /**
+     * Verify that a cached plan is not reused once an index it might use is no longer readable.
+     */
+    @Test
+    public void indexStateChange() throws Exception {
+        complexQuerySetup(null);
+        final RecordQueryPlanCache planCache = new RecordQueryPlanCache();
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            recordStore.setPlanCache(planCache);
+
+            RecordQueryPlan plan = recordStore.planQuery(num3Query(1));
+            assertThat(((RecordQueryConstantBindingPlan)plan).getChild(), indexScan(indexName("MySimpleRecord$num_value_3_indexed")));
+
+            recordStore.markIndexDisabled("MySimpleRecord$num_value_3_indexed").join();
+            plan = recordStore.planQuery(num3Query(2));
+            assertFalse(plan.hasIndexScan("MySimpleRecord$num_value_3_indexed"));
+            assertEquals(20, countNum3(plan, 2));
+
+            assertEquals(2, planCache.size());
+            assertEquals(0, planCache.getStats().hitCount());
+        }
+    }
+}
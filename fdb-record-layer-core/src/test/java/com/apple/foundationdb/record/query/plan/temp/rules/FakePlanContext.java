@@ -20,6 +20,7 @@
 
 package com.apple.foundationdb.record.query.plan.temp.rules;
 
+import com.apple.foundationdb.record.IndexStatistics;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
@@ -29,6 +30,7 @@ import com.google.common.collect.Sets;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -38,13 +40,24 @@ import java.util.TreeMap;
  */
 public class FakePlanContext implements PlanContext {
     private final Map<String, Index> indexes;
+    @Nullable
+    private final KeyExpression primaryKey;
+    @Nonnull
+    private final Map<String, IndexStatistics> indexStatistics;
 
     public FakePlanContext(Collection<Index> fakeIndexes) {
+        this(fakeIndexes, null, Collections.emptyMap());
+    }
+
+    public FakePlanContext(Collection<Index> fakeIndexes, @Nullable KeyExpression primaryKey,
+                           @Nonnull Map<String, IndexStatistics> indexStatistics) {
         indexes = new TreeMap<>();
 
         for (Index index : fakeIndexes) {
             indexes.put(index.getName(), index);
         }
+        this.primaryKey = primaryKey;
+        this.indexStatistics = indexStatistics;
     }
 
     @Nonnull
@@ -62,7 +75,16 @@ public class FakePlanContext implements PlanContext {
     @Nullable
     @Override
     public KeyExpression getCommonPrimaryKey() {
-        throw new UnsupportedOperationException();
+        if (primaryKey == null) {
+            throw new UnsupportedOperationException();
+        }
+        return primaryKey;
+    }
+
+    @Nullable
+    @Override
+    public IndexStatistics getIndexStatistics(@Nonnull String indexName) {
+        return indexStatistics.get(indexName);
     }
 
     @Nonnull
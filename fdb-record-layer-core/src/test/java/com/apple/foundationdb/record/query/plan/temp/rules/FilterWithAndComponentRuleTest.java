@@ -0,0 +1,106 @@
+/*
+ * FilterWithAndComponentRuleTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.temp.rules;
+
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IndexStatistics;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.apple.foundationdb.record.query.plan.temp.CostModel;
+import com.apple.foundationdb.record.query.plan.temp.PlanContext;
+import com.apple.foundationdb.record.query.plan.temp.PlannerExpression;
+import com.apple.foundationdb.record.query.plan.temp.PlannerRule;
+import com.apple.foundationdb.record.query.plan.temp.RewriteRuleCall;
+import com.apple.foundationdb.record.query.plan.temp.SingleExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.expressions.LogicalFilterExpression;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test that the rule yields index, intersection and scan alternatives for a conjunction and that the cost model
+ * chooses among them using index statistics.
+ */
+public class FilterWithAndComponentRuleTest {
+    private static PlannerRule<LogicalFilterExpression> rule = new FilterWithAndComponentRule();
+    private static Index aIndex = new Index("aIndex", field("a"));
+    private static Index bIndex = new Index("bIndex", field("b"));
+    private static QueryComponent aEquals = Query.field("a").equalsValue(1);
+    private static QueryComponent bEquals = Query.field("b").equalsValue(2);
+
+    private static IndexStatistics statistics(long distinct) {
+        return new IndexStatistics(10000, new long[] {distinct}, Collections.emptyList());
+    }
+
+    private static RecordQueryIndexPlan indexScan(Index index, Object value) {
+        return new RecordQueryIndexPlan(index.getName(), IndexScanType.BY_VALUE,
+                ScanComparisons.from(new Comparisons.SimpleComparison(Comparisons.Type.EQUALS, value)), false);
+    }
+
+    private static PlannerExpression plan(Map<String, IndexStatistics> indexStatistics) {
+        PlanContext context = new FakePlanContext(ImmutableList.of(aIndex, bIndex), field("id"), indexStatistics);
+        SingleExpressionRef<PlannerExpression> root = SingleExpressionRef.of(new LogicalFilterExpression(
+                Query.and(aEquals, bEquals), new RecordQueryScanPlan(ScanComparisons.EMPTY, false)));
+        Optional<RewriteRuleCall> possibleMatch = RewriteRuleCall.tryMatchRule(context, new CostModel(context), rule, root);
+        assertTrue(possibleMatch.isPresent());
+        possibleMatch.get().run();
+        return root.get();
+    }
+
+    @Test
+    public void chooseMoreSelectiveIndex() {
+        assertEquals(new RecordQueryFilterPlan(indexScan(aIndex, 1), bEquals),
+                plan(ImmutableMap.of(aIndex.getName(), statistics(1000), bIndex.getName(), statistics(10))));
+        assertEquals(new RecordQueryFilterPlan(indexScan(bIndex, 2), aEquals),
+                plan(ImmutableMap.of(aIndex.getName(), statistics(10), bIndex.getName(), statistics(1000))));
+    }
+
+    @Test
+    public void chooseFirstIndexWithoutStatistics() {
+        assertEquals(new RecordQueryFilterPlan(indexScan(aIndex, 1), bEquals), plan(Collections.emptyMap()));
+    }
+
+    @Test
+    public void intersectionSeeksPastUnselectiveChild() {
+        PlanContext context = new FakePlanContext(ImmutableList.of(aIndex, bIndex), field("id"),
+                ImmutableMap.of(aIndex.getName(), statistics(1000), bIndex.getName(), statistics(10)));
+        CostModel costModel = new CostModel(context);
+        CostModel.Cost unselective = costModel.estimate(indexScan(bIndex, 2));
+        CostModel.Cost intersection = costModel.estimate(new RecordQueryIntersectionPlan(
+                indexScan(aIndex, 1), indexScan(bIndex, 2), field("id"), false));
+        assertTrue(intersection.compareTo(unselective) < 0);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * FilterWithOrComponentRuleTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2018 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.temp.rules;
+
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IndexStatistics;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnionPlan;
+import com.apple.foundationdb.record.query.plan.temp.CostModel;
+import com.apple.foundationdb.record.query.plan.temp.PlanContext;
+import com.apple.foundationdb.record.query.plan.temp.PlannerExpression;
+import com.apple.foundationdb.record.query.plan.temp.PlannerRule;
+import com.apple.foundationdb.record.query.plan.temp.RewriteRuleCall;
+import com.apple.foundationdb.record.query.plan.temp.SingleExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.expressions.LogicalFilterExpression;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test that the rule yields union and scan alternatives for a disjunction and that the cost model chooses between
+ * them using index statistics.
+ */
+public class FilterWithOrComponentRuleTest {
+    private static PlannerRule<LogicalFilterExpression> rule = new FilterWithOrComponentRule();
+    private static Index aIndex = new Index("aIndex", field("a"));
+    private static Index bIndex = new Index("bIndex", field("b"));
+    private static QueryComponent filter = Query.or(Query.field("a").equalsValue(1), Query.field("b").equalsValue(2));
+    private static RecordQueryScanPlan scan = new RecordQueryScanPlan(ScanComparisons.EMPTY, false);
+
+    private static PlannerExpression plan(long distinct) {
+        IndexStatistics statistics = new IndexStatistics(10000, new long[] {distinct}, Collections.emptyList());
+        PlanContext context = new FakePlanContext(ImmutableList.of(aIndex, bIndex), field("id"),
+                ImmutableMap.of(aIndex.getName(), statistics, bIndex.getName(), statistics));
+        SingleExpressionRef<PlannerExpression> root = SingleExpressionRef.of(new LogicalFilterExpression(filter, scan));
+        Optional<RewriteRuleCall> possibleMatch = RewriteRuleCall.tryMatchRule(context, new CostModel(context), rule, root);
+        assertTrue(possibleMatch.isPresent());
+        possibleMatch.get().run();
+        return root.get();
+    }
+
+    private static RecordQueryIndexPlan indexScan(Index index, Object value) {
+        return new RecordQueryIndexPlan(index.getName(), IndexScanType.BY_VALUE,
+                ScanComparisons.from(new Comparisons.SimpleComparison(Comparisons.Type.EQUALS, value)), false);
+    }
+
+    @Test
+    public void chooseUnionOfSelectiveIndexes() {
+        assertEquals(new RecordQueryUnionPlan(indexScan(aIndex, 1), indexScan(bIndex, 2), field("id"), false, false),
+                plan(1000));
+    }
+
+    @Test
+    public void chooseScanForUnselectiveIndexes() {
+        assertEquals(new RecordQueryFilterPlan(scan, filter), plan(2));
+    }
+}